@@ -18,6 +18,11 @@ public enum ErrorCauses {
     /**
      * Third party call returned error
      */
-    API_ERROR;
+    API_ERROR,
+
+    /**
+     * Proxy's rate limit for calls to third party exceeded; so call not made
+     */
+    RATE_LIMITED;
 
 }
@@ -1,5 +1,6 @@
 package co.worklytics.psoxy;
 
+import co.worklytics.psoxy.utils.EmailAddresses;
 import com.avaulta.gateway.pseudonyms.Pseudonym;
 import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
 import com.avaulta.gateway.pseudonyms.impl.UrlSafeTokenPseudonymEncoder;
@@ -14,9 +15,6 @@ import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.java.Log;
 import org.apache.commons.lang3.StringUtils;
-import org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria;
-import org.hazlewood.connor.bottema.emailaddress.EmailAddressParser;
-import org.hazlewood.connor.bottema.emailaddress.EmailAddressValidator;
 
 import javax.inject.Inject;
 import java.util.Base64;
@@ -53,11 +51,14 @@ public class PseudonymizerImpl implements Pseudonymizer {
     }
 
     String emailCanonicalization(String original) {
-        String domain = EmailAddressParser.getDomain(original, EmailAddressCriteria.RECOMMENDED, true);
+        return emailCanonicalization(EmailAddresses.parse(original));
+    }
+
+    String emailCanonicalization(EmailAddresses.Address address) {
+        String domain = address.getDomain();
 
         //NOTE: lower-case here is NOT stipulated by RFC
-        String mailboxLowercase = EmailAddressParser.getLocalPart(original, EmailAddressCriteria.RECOMMENDED, true)
-            .toLowerCase();
+        String mailboxLowercase = address.getLocalPart().toLowerCase();
 
         //trim off any + and anything after it (sub-address)
         if (mailboxLowercase.contains("+")) {
@@ -99,9 +100,13 @@ public class PseudonymizerImpl implements Pseudonymizer {
 
         Function<String, String> canonicalization;
         String domain = null;
-        if (duckTypesAsEmails(value)) {
-            canonicalization = this::emailCanonicalization;
-            domain = EmailAddressParser.getDomain((String) value, EmailAddressCriteria.RECOMMENDED, true);
+        EmailAddresses.Address address = asEmail(value);
+        if (address != null) {
+            // parse once; strategies apply canonicalization to value.toString(), so reuse result
+            String original = (String) value;
+            String canonical = emailCanonicalization(address);
+            canonicalization = s -> original.equals(s) ? canonical : emailCanonicalization(s);
+            domain = address.getDomain();
             builder.domain(domain);
             scope = PseudonymizedIdentity.EMAIL_SCOPE;
             //q: do something with the personal name??
@@ -155,8 +160,11 @@ public class PseudonymizerImpl implements Pseudonymizer {
         return builder.build();
     }
 
-    boolean duckTypesAsEmails(Object value) {
-        return value instanceof String && EmailAddressValidator.isValid((String) value);
+    /**
+     * @return value, parsed as an email address, if it duck-types as one; null otherwise
+     */
+    EmailAddresses.Address asEmail(Object value) {
+        return value instanceof String ? EmailAddresses.parse((String) value) : null;
     }
 
     //converts 'scope' to legacy value (eg, equivalents to original Worklytics scheme, where no scope
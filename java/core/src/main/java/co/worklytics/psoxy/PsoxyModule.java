@@ -5,6 +5,7 @@ import co.worklytics.psoxy.gateway.ProxyConfigProperty;
 import co.worklytics.psoxy.gateway.SecretStore;
 import co.worklytics.psoxy.gateway.SourceAuthStrategy;
 import co.worklytics.psoxy.gateway.impl.EnvVarsConfigService;
+import co.worklytics.psoxy.gateway.impl.ResponseCompression;
 import co.worklytics.psoxy.gateway.impl.oauth.OAuthRefreshTokenSourceAuthStrategy;
 import co.worklytics.psoxy.rules.RulesUtils;
 import co.worklytics.psoxy.storage.BulkDataSanitizerFactory;
@@ -12,6 +13,8 @@ import co.worklytics.psoxy.storage.impl.BulkDataSanitizerFactoryImpl;
 import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
 import com.avaulta.gateway.pseudonyms.impl.Base64UrlSha256HashPseudonymEncoder;
 import com.avaulta.gateway.pseudonyms.impl.UrlSafeTokenPseudonymEncoder;
+import com.avaulta.gateway.rules.JsonPathCompiler;
+import com.avaulta.gateway.rules.JsonPathSpecializer;
 import com.avaulta.gateway.rules.JsonSchemaFilterUtils;
 import com.avaulta.gateway.rules.ParameterSchemaUtils;
 import com.avaulta.gateway.rules.PathTemplateUtils;
@@ -285,12 +288,34 @@ public class PsoxyModule {
                 })));
     }
 
+    /**
+     * per proxy's config, wherever that's set (env vars, or secret/parameter stores), as for any
+     * other config property
+     */
+    @Provides
+    @Singleton
+    static ResponseCompression responseCompression(ConfigService config) {
+        return ResponseCompression.fromConfig(config);
+    }
+
     @Provides
     @Singleton
     PathTemplateUtils pathTemplateUtils() {
         return new PathTemplateUtils();
     }
 
+    @Provides
+    @Singleton
+    JsonPathSpecializer jsonPathSpecializer() {
+        return new JsonPathSpecializer();
+    }
+
+    @Provides
+    @Singleton
+    JsonPathCompiler jsonPathCompiler() {
+        return new JsonPathCompiler();
+    }
+
 
     //TODO: utils method for this somewhere??
     @SafeVarargs
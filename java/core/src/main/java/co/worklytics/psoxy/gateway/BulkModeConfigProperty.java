@@ -39,6 +39,90 @@ public enum BulkModeConfigProperty implements ConfigService.ConfigProperty {
      * default: 65536 (64KB)
      */
     BUFFER_SIZE,
+
+    /**
+     * **alpha feature**
+     *
+     * max number of records to sanitize as a batch, after which output is flushed; for record-based
+     * formats (eg, NDJSON)
+     *
+     * default: 1000
+     */
+    RECORD_BATCH_SIZE,
+
+    /**
+     * **alpha feature**
+     *
+     * max size, in chars, of a batch of records; batch will be closed (and output flushed) once
+     * this is exceeded, even if it holds fewer than {@link #RECORD_BATCH_SIZE} records
+     *
+     * default: 1048576 (1M chars)
+     */
+    RECORD_BATCH_MAX_CHARS,
+
+    /**
+     * **alpha feature**
+     *
+     * number of threads over which to parallelize sanitization of batches of records; output
+     * order is preserved regardless
+     *
+     * default: 1 (eg, sanitize records sequentially, on thread reading input)
+     */
+    RECORD_PROCESSING_THREADS,
+
+    /**
+     * **alpha feature**
+     *
+     * max number of record batches being sanitized, or waiting to be written, at once; bounds
+     * memory used when {@link #RECORD_PROCESSING_THREADS} > 1
+     *
+     * default: 2 * {@link #RECORD_PROCESSING_THREADS}
+     */
+    MAX_RECORD_BATCHES_IN_FLIGHT,
+
+    /**
+     * **alpha feature**
+     *
+     * codec with which to compress output: 'gzip', 'zstd' or 'none'; chosen independently of how
+     * input is compressed (which is detected from content itself)
+     *
+     * 'zstd' only if deployment is built with `zstd` Maven profile
+     *
+     * default: same as input, as indicated by its 'Content-Encoding' or filename extension
+     */
+    OUTPUT_COMPRESSION,
+
+    /**
+     * **alpha feature**
+     *
+     * number of threads over which to parallelize compression of output, when it's compressed;
+     * if > 1, for gzip output is split into blocks that are compressed independently, written as
+     * a multi-member gzip stream; for zstd, native multi-threaded compression is used
+     *
+     * default: 1 (eg, single-threaded compression, as single gzip member)
+     */
+    OUTPUT_COMPRESSION_THREADS,
+
+    /**
+     * **alpha feature**
+     *
+     * size, in bytes, of blocks into which gzip output is split to compress in parallel; only
+     * applicable if {@link #OUTPUT_COMPRESSION_THREADS} > 1. Larger blocks compress slightly
+     * better, but use more memory.
+     *
+     * default: 1048576 (1MB)
+     */
+    OUTPUT_COMPRESSION_BLOCK_SIZE,
+
+    /**
+     * **alpha feature**
+     *
+     * compression level for output, when it's compressed; for gzip, 1 (fastest) - 9 (best
+     * compression); for zstd, 1 (fastest) - 22 (best compression)
+     *
+     * default: 6 for gzip; 3 for zstd
+     */
+    OUTPUT_COMPRESSION_LEVEL,
     ;
 
 }
@@ -1,5 +1,6 @@
 package co.worklytics.psoxy.gateway;
 
+import co.worklytics.psoxy.storage.CompressionCodec;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
@@ -41,16 +42,24 @@ public class StorageEventRequest {
     String destinationObjectPath;
 
     /**
-     * whether to decompress (gunzip) input
+     * whether input is expected to be compressed, per its metadata; actual codec with which to
+     * decompress it is detected from content
      */
     @Builder.Default
     Boolean decompressInput = false;
 
     /**
-     * whether to compress (gzip) output
+     * whether to compress output, with {@link #outputCodec}
      */
     @Builder.Default
     Boolean compressOutput = false;
 
+    /**
+     * codec with which to compress output, if {@link #compressOutput}
+     */
+    @NonNull
+    @Builder.Default
+    CompressionCodec outputCodec = CompressionCodec.GZIP;
+
 
 }
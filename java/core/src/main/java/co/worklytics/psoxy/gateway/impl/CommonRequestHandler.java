@@ -6,15 +6,16 @@ import co.worklytics.psoxy.rules.RESTRules;
 import co.worklytics.psoxy.rules.RulesUtils;
 import co.worklytics.psoxy.utils.ComposedHttpRequestInitializer;
 import co.worklytics.psoxy.utils.GzipedContentHttpRequestInitializer;
+import co.worklytics.psoxy.utils.StageTimings;
 import co.worklytics.psoxy.utils.URLUtils;
 import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
 import com.avaulta.gateway.pseudonyms.impl.UrlSafeTokenPseudonymEncoder;
 import com.avaulta.gateway.tokens.ReversibleTokenizationStrategy;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.*;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.auth.Credentials;
 import com.google.auth.http.HttpCredentialsAdapter;
+import com.google.auth.http.HttpTransportFactory;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
@@ -31,11 +32,17 @@ import org.apache.http.entity.ContentType;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Instant;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
@@ -74,6 +81,8 @@ public class CommonRequestHandler {
     ReversibleTokenizationStrategy reversibleTokenizationStrategy;
     @Inject
     UrlSafeTokenPseudonymEncoder pseudonymEncoder;
+    @Inject
+    HttpTransportFactory httpTransportFactory;
 
     /**
      * Basic headers to pass: content, caching, retries. Can be expanded by connection later.
@@ -115,6 +124,84 @@ public class CommonRequestHandler {
     private volatile RESTApiSanitizer sanitizer;
     private final Object $writeLock = new Object[0];
 
+    /**
+     * SHA of {@link #rules}; computed once, rather than re-serializing them per request
+     */
+    private volatile String rulesSha;
+
+    @VisibleForTesting
+    volatile Optional<SanitizedResponseCache> responseCache;
+
+    Optional<SanitizedResponseCache> getResponseCache() {
+        if (this.responseCache == null) {
+            synchronized ($writeLock) {
+                if (this.responseCache == null) {
+                    this.responseCache = SanitizedResponseCache.fromConfig(config);
+                }
+            }
+        }
+        return this.responseCache;
+    }
+
+    @VisibleForTesting
+    volatile Optional<RequestCoalescer<RequestCoalescer.Key, HttpEventResponse>> requestCoalescer;
+
+    Optional<RequestCoalescer<RequestCoalescer.Key, HttpEventResponse>> getRequestCoalescer() {
+        if (this.requestCoalescer == null) {
+            synchronized ($writeLock) {
+                if (this.requestCoalescer == null) {
+                    this.requestCoalescer = RequestCoalescer.fromConfig(config);
+                }
+            }
+        }
+        return this.requestCoalescer;
+    }
+
+    @VisibleForTesting
+    volatile UpstreamRetryPolicy upstreamRetryPolicy;
+
+    UpstreamRetryPolicy getUpstreamRetryPolicy() {
+        if (this.upstreamRetryPolicy == null) {
+            synchronized ($writeLock) {
+                if (this.upstreamRetryPolicy == null) {
+                    this.upstreamRetryPolicy = UpstreamRetryPolicy.fromConfig(config);
+                }
+            }
+        }
+        return this.upstreamRetryPolicy;
+    }
+
+    @VisibleForTesting
+    volatile Optional<PaginationPrefetcher> paginationPrefetcher;
+
+    Optional<PaginationPrefetcher> getPaginationPrefetcher() {
+        if (this.paginationPrefetcher == null) {
+            synchronized ($writeLock) {
+                if (this.paginationPrefetcher == null) {
+                    this.paginationPrefetcher = PaginationPrefetcher.fromConfig(config);
+                }
+            }
+        }
+        return this.paginationPrefetcher;
+    }
+
+    /**
+     * limits rate of calls to source from this instance; so across all requests it handles
+     */
+    @VisibleForTesting
+    volatile Optional<TokenBucket> upstreamRateLimiter;
+
+    Optional<TokenBucket> getUpstreamRateLimiter() {
+        if (this.upstreamRateLimiter == null) {
+            synchronized ($writeLock) {
+                if (this.upstreamRateLimiter == null) {
+                    this.upstreamRateLimiter = UpstreamRetryPolicy.rateLimiterFromConfig(config);
+                }
+            }
+        }
+        return this.upstreamRateLimiter;
+    }
+
     private RESTApiSanitizer loadSanitizerRules() {
         if (this.sanitizer == null) {
             synchronized ($writeLock) {
@@ -131,8 +218,107 @@ public class CommonRequestHandler {
         return this.sanitizer;
     }
 
-    @SneakyThrows
+    /**
+     * @return SHA of rules with which responses are sanitized
+     */
+    String getRulesSha() {
+        if (this.rulesSha == null) {
+            synchronized ($writeLock) {
+                if (this.rulesSha == null) {
+                    this.rulesSha = rulesUtils.sha(rules);
+                }
+            }
+        }
+        return this.rulesSha;
+    }
+
+    /**
+     * @param request to proxy
+     * @return response to request; in development mode, with breakdown of time spent in each stage
+     * of handling it, as 'Server-Timing' header
+     */
     public HttpEventResponse handle(HttpEventRequest request) {
+        if (!config.isDevelopment()) {
+            return coalesceOrHandleRequest(request);
+        }
+
+        try (StageTimings timings = StageTimings.collect()) {
+            HttpEventResponse response = coalesceOrHandleRequest(request);
+            return response.toBuilder()
+                .header(StageTimings.SERVER_TIMING_HEADER, timings.toServerTimingHeader())
+                .build();
+        }
+    }
+
+    /**
+     * @param request to proxy
+     * @return response to request; if coalescing configured, shared with any identical request
+     * already in flight
+     */
+    HttpEventResponse coalesceOrHandleRequest(HttpEventRequest request) {
+        Optional<RequestCoalescer<RequestCoalescer.Key, HttpEventResponse>> coalescer = getRequestCoalescer();
+        if (coalescer.isPresent() && isCoalescable(request)) {
+            RequestCoalescer.Key key;
+            try {
+                key = coalescingKey(request);
+            } catch (Exception e) {
+                // eg, malformed URL; so handle as usual, which will fail it as usual
+                log.log(Level.WARNING, "Failed to build key to coalesce request, so not coalesced: " + e.getMessage(), e);
+                key = null;
+            }
+            if (key != null) {
+                return coalescer.get().execute(key, () -> handleRequest(request));
+            }
+        }
+        return handleRequest(request);
+    }
+
+    /**
+     * @param request to proxy
+     * @return whether request is an ordinary GET, which may be coalesced with identical ones; safe,
+     * so sharing one call to source for several identical requests is equivalent to making each
+     */
+    boolean isCoalescable(HttpEventRequest request) {
+        return Objects.equals(request.getHttpMethod(), HttpMethods.GET)
+            && request.getBody() == null
+            && !healthCheckRequestHandler.isHealthCheckRequest(request);
+    }
+
+    /**
+     * @param request to proxy, which may be coalesced
+     * @return key identifying requests that would get the same response as request
+     * @throws MalformedURLException if requested target isn't a valid URL
+     */
+    RequestCoalescer.Key coalescingKey(HttpEventRequest request) throws MalformedURLException {
+        String clearTargetUrl = reverseTokenizedUrlComponents(parseRequestedTarget(request));
+
+        // control headers (pseudonym implementation, impersonation, etc) and those forwarded to source
+        Map<String, String> headers = new TreeMap<>();
+        for (ControlHeader controlHeader : ControlHeader.values()) {
+            request.getHeader(controlHeader.getHttpHeader())
+                .ifPresent(value -> headers.put(controlHeader.getHttpHeader(), value));
+        }
+        loadSanitizerRules().getAllowedHeadersToForward(request.getHttpMethod(), new URL(clearTargetUrl))
+            .ifPresent(forwarded -> forwarded.forEach(h -> request.getHeader(h).ifPresent(value -> headers.put(h, value))));
+
+        return new RequestCoalescer.Key(request.getHttpMethod(), clearTargetUrl, headers);
+    }
+
+    HttpEventResponse handleRequest(HttpEventRequest request) {
+        return handleRequest(request, nextPage -> prefetchNextPage(request, nextPage));
+    }
+
+    /**
+     * @param request    to proxy
+     * @param onNextPage called with next page of response, if it's a page of results that may be
+     *                   prefetched
+     * @return response to request
+     */
+    @SneakyThrows
+    HttpEventResponse handleRequest(HttpEventRequest request, Consumer<PaginationPrefetcher.NextPage> onNextPage) {
+
+        UpstreamRetryPolicy retryPolicy = getUpstreamRetryPolicy();
+        Instant deadline = retryPolicy.deadline(retryPolicy.getClock().instant());
 
         logRequestIfAllowed(request);
 
@@ -156,9 +342,9 @@ public class CommonRequestHandler {
 
         boolean skipSanitization = skipSanitization(request);
 
-        HttpEventResponse.HttpEventResponseBuilder builder = HttpEventResponse.builder();
-
-        this.sanitizer = loadSanitizerRules();
+        try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.CONFIG)) {
+            this.sanitizer = loadSanitizerRules();
+        }
 
         String callLog = String.format("%s %s TokenInUrlReversed=%b", request.getHttpMethod(), URLUtils.relativeURL(toLog), tokenizedURLReversed);
         if (skipSanitization) {
@@ -166,14 +352,58 @@ public class CommonRequestHandler {
         } else if (sanitizer.isAllowed(request.getHttpMethod(), targetUrl)) {
             log.info(String.format("%s. Rules allowed call.", callLog));
         } else {
-            builder.statusCode(HttpStatus.SC_FORBIDDEN);
-            builder.header(ResponseHeader.ERROR.getHttpHeader(), ErrorCauses.BLOCKED_BY_RULES.name());
             log.warning(String.format("%s. Blocked call by rules %s", callLog, objectMapper.writeValueAsString(rules)));
-            return builder.build();
+            return HttpEventResponse.builder()
+                .statusCode(HttpStatus.SC_FORBIDDEN)
+                .header(ResponseHeader.ERROR.getHttpHeader(), ErrorCauses.BLOCKED_BY_RULES.name())
+                .build();
         }
 
+        // if next page of results already prefetched, serve it; and prefetch page after that
+        Optional<PaginationPrefetcher> prefetcher = getPaginationPrefetcher();
+        SanitizedResponseCache.Key pageKey = null;
+        if (prefetcher.isPresent() && isCacheable(request, targetUrl, skipSanitization)) {
+            pageKey = responseKey(request, PaginationPrefetcher.normalize(clearTargetUrl));
+            Optional<PaginationPrefetcher.Page> prefetched = prefetcher.get().take(pageKey);
+            if (prefetched.isPresent()) {
+                log.info("next page of results already prefetched; returned as prefetched");
+                Optional.ofNullable(prefetched.get().getNext()).ifPresent(onNextPage);
+                return prefetched.get().getResponse();
+            }
+        }
+
+        return fetchAndSanitize(request, clearTargetUrl, toLog, skipSanitization, pageKey, deadline, false, onNextPage);
+    }
+
+    /**
+     * fetch response to request from source (or revalidate cached one), and sanitize it; request
+     * must already be allowed by rules
+     *
+     * @param request          to proxy
+     * @param clearTargetUrl   to which request is sent
+     * @param toLog            URL to log for request
+     * @param skipSanitization whether to return response as-is
+     * @param pageKey          of response, if it's a page of results that may be prefetched
+     * @param deadline         for final attempt of call to source
+     * @param prefetch         whether request is a prefetch, rather than from client; if so, it
+     *                         isn't retried, and is made only if rate limit leaves spare capacity
+     * @param onNextPage       called with next page of response, if any and pageKey given
+     * @return response to request
+     */
+    @SneakyThrows
+    HttpEventResponse fetchAndSanitize(HttpEventRequest request, String clearTargetUrl, URL toLog,
+                                       boolean skipSanitization, SanitizedResponseCache.Key pageKey,
+                                       Instant deadline, boolean prefetch,
+                                       Consumer<PaginationPrefetcher.NextPage> onNextPage) {
+        URL targetUrl = new URL(clearTargetUrl);
+
+        String callLog = String.format("%s %s", request.getHttpMethod(), URLUtils.relativeURL(toLog));
+
+        HttpEventResponse.HttpEventResponseBuilder builder = HttpEventResponse.builder();
+
         com.google.api.client.http.HttpRequest sourceApiRequest;
-        try {
+        // building request initializes it with credentials, so includes any token refresh
+        try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.AUTH)) {
             HttpRequestFactory requestFactory = getRequestFactory(request);
 
             HttpContent content = null;
@@ -204,15 +434,55 @@ public class CommonRequestHandler {
         //TODO: what headers to forward???
         populateHeadersFromSource(sourceApiRequest, request, targetUrl);
 
+        // if have cached sanitized response for request, revalidate it rather than fetch in full
+        Optional<SanitizedResponseCache> cache = getResponseCache();
+        SanitizedResponseCache.Key cacheKey = null;
+        Optional<SanitizedResponseCache.Entry> cached = Optional.empty();
+        if (cache.isPresent() && isCacheable(request, targetUrl, skipSanitization)) {
+            cacheKey = responseKey(request, clearTargetUrl);
+            cached = cache.get().get(cacheKey);
+            if (cached.isPresent()) {
+                sourceApiRequest.getHeaders().setIfNoneMatch(cached.get().getEtag());
+                sourceApiRequest.getHeaders().setIfModifiedSince(cached.get().getLastModified());
+            }
+        }
+
         //setup request
         sourceApiRequest
                 .setThrowExceptionOnExecuteError(false)
                 .setConnectTimeout(SOURCE_API_REQUEST_CONNECT_TIMEOUT_MILLISECONDS)
                 .setReadTimeout(SOURCE_API_REQUEST_READ_TIMEOUT);
 
-        //q: add exception handlers for IOExceptions / HTTP error responses, so those retries
-        // happen in proxy rather than on Worklytics-side?
-        com.google.api.client.http.HttpResponse sourceApiResponse = sourceApiRequest.execute();
+        Optional<TokenBucket> rateLimiter = getUpstreamRateLimiter();
+        if (prefetch) {
+            // speculative, so mustn't delay (or take tokens needed by) requests from clients; and
+            // if it fails, client's request for page goes to source as usual
+            if (rateLimiter.isPresent() && !rateLimiter.get().tryAcquireSpare(rateLimiter.get().getCapacity() / 2)) {
+                log.info(String.format("%s. Not prefetched, as rate limit has no spare capacity", callLog));
+                return builder.statusCode(HttpStatus.SC_TOO_MANY_REQUESTS)
+                    .header(ResponseHeader.ERROR.getHttpHeader(), ErrorCauses.RATE_LIMITED.name())
+                    .build();
+            }
+        } else {
+            // retry transient failures of idempotent requests here, within time budget, rather than
+            // on client-side
+            UpstreamRetryPolicy retryPolicy = getUpstreamRetryPolicy();
+            retryPolicy.apply(sourceApiRequest, deadline, rateLimiter.orElse(null));
+
+            if (rateLimiter.isPresent() && !rateLimiter.get().tryAcquire(retryPolicy.remaining(deadline))) {
+                builder.statusCode(HttpStatus.SC_TOO_MANY_REQUESTS);
+                builder.header(ResponseHeader.ERROR.getHttpHeader(), ErrorCauses.RATE_LIMITED.name());
+                builder.header(normalizeHeader(HttpHeaders.RETRY_AFTER),
+                    Long.toString((long) Math.max(1, Math.ceil(1 / rateLimiter.get().getPermitsPerSecond()))));
+                log.warning(String.format("%s. Not sent to source, as rate limit would be exceeded within time budget", callLog));
+                return builder.build();
+            }
+        }
+
+        com.google.api.client.http.HttpResponse sourceApiResponse;
+        try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.UPSTREAM, URLUtils.relativeURL(toLog))) {
+            sourceApiResponse = sourceApiRequest.execute();
+        }
 
         // return response
         builder.statusCode(sourceApiResponse.getStatusCode());
@@ -221,10 +491,23 @@ public class CommonRequestHandler {
             // return response
             builder.statusCode(sourceApiResponse.getStatusCode());
 
+            if (cached.isPresent() && sourceApiResponse.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                // cached response still current; so return it, with any fresh headers (eg, rate limits)
+                builder.statusCode(cached.get().getStatusCode());
+                builder.headers(cached.get().getHeaders());
+                passThroughHeaders(builder, sourceApiResponse);
+                builder.body(cached.get().getBody());
+                log.info("response not modified; returned as cached, sanitized with rule set " + cacheKey.getRulesSha());
+                return builder.build();
+            }
+
             String responseContent = StringUtils.EMPTY;
-            // could be empty in HEAD calls
-            if (sourceApiResponse.getContent() != null) {
-                responseContent = new String(sourceApiResponse.getContent().readAllBytes(), sourceApiResponse.getContentCharset());
+            // reading response content is still part of call to source
+            try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.UPSTREAM, "response content")) {
+                // could be empty in HEAD calls
+                if (sourceApiResponse.getContent() != null) {
+                    responseContent = new String(sourceApiResponse.getContent().readAllBytes(), sourceApiResponse.getContentCharset());
+                }
             }
 
             passThroughHeaders(builder, sourceApiResponse);
@@ -235,9 +518,8 @@ public class CommonRequestHandler {
                     proxyResponseContent = responseContent;
                 } else {
                     RESTApiSanitizer sanitizerForRequest = getSanitizerForRequest(request);
-
                     proxyResponseContent = sanitizerForRequest.sanitize(request.getHttpMethod(), targetUrl, responseContent);
-                    String rulesSha = rulesUtils.sha(sanitizerForRequest.getRules());
+                    String rulesSha = getRulesSha();
                     builder.header(ResponseHeader.RULES_SHA.getHttpHeader(), rulesSha);
                     log.info("response sanitized with rule set " + rulesSha);
                 }
@@ -249,13 +531,89 @@ public class CommonRequestHandler {
                 proxyResponseContent = responseContent;
             }
             builder.body(StringUtils.trimToEmpty(proxyResponseContent));
-            return builder.build();
+            HttpEventResponse response = builder.build();
+
+            if (cacheKey != null && isSuccessFamily(sourceApiResponse.getStatusCode())) {
+                cache.get().put(cacheKey, SanitizedResponseCache.Entry.builder()
+                    .statusCode(sourceApiResponse.getStatusCode())
+                    .etag(sourceApiResponse.getHeaders().getETag())
+                    .lastModified(sourceApiResponse.getHeaders().getLastModified())
+                    .headers(response.getHeaders())
+                    .body(response.getBody())
+                    .build());
+            }
+
+            if (pageKey != null && isSuccessFamily(sourceApiResponse.getStatusCode())) {
+                SanitizedResponseCache.Key currentPageKey = pageKey;
+                PaginationPrefetcher.nextPageUrl(objectMapper, clearTargetUrl,
+                        HEADER_JOINER.join(sourceApiResponse.getHeaders().getHeaderStringValues(HttpHeaders.LINK)),
+                        responseContent)
+                    .map(nextPageUrl -> new PaginationPrefetcher.NextPage(
+                        currentPageKey.toBuilder().targetUrl(PaginationPrefetcher.normalize(nextPageUrl)).build(), nextPageUrl))
+                    .ifPresent(onNextPage);
+            }
+            return response;
         } finally {
             sourceApiResponse.disconnect();
         }
     }
 
 
+    /**
+     * @param request   to proxy
+     * @param targetUrl clear URL to which request is sent
+     * @return key identifying sanitized response to request; without building sanitizer for it,
+     * so that's done only if response must be sanitized
+     */
+    SanitizedResponseCache.Key responseKey(HttpEventRequest request, String targetUrl) {
+        return SanitizedResponseCache.Key.builder()
+            .targetUrl(targetUrl)
+            .impersonatedAccount(request.getHeader(ControlHeader.USER_TO_IMPERSONATE.getHttpHeader()).orElse(null))
+            .pseudonymImplementation(parsePseudonymImplementation(request)
+                .orElseGet(() -> loadSanitizerRules().getPseudonymizer().getOptions().getPseudonymImplementation()))
+            .rulesSha(getRulesSha())
+            .build();
+    }
+
+    /**
+     * prefetch next page of results in background, if it's one that could be requested via proxy
+     * and rules allow
+     *
+     * @param request  for current page
+     * @param nextPage of results
+     */
+    @SneakyThrows
+    void prefetchNextPage(HttpEventRequest request, PaginationPrefetcher.NextPage nextPage) {
+        Optional<HttpEventRequest> nextPageRequest = PaginationPrefetcher.nextPageRequest(request,
+            config.getConfigPropertyOrError(ProxyConfigProperty.TARGET_HOST), nextPage.getUrl());
+        if (nextPageRequest.isEmpty()
+            || !loadSanitizerRules().isAllowed(nextPageRequest.get().getHttpMethod(), new URL(nextPage.getUrl()))) {
+            return;
+        }
+
+        // avoid logging clear URL outside of dev; so log current page, as requested, instead
+        URL toLog = new URL(envVarsConfigService.isDevelopment() ? nextPage.getUrl() : parseRequestedTarget(request));
+        getPaginationPrefetcher().ifPresent(prefetcher -> prefetcher.prefetch(nextPage, () -> {
+            AtomicReference<PaginationPrefetcher.NextPage> pageAfter = new AtomicReference<>();
+            UpstreamRetryPolicy retryPolicy = getUpstreamRetryPolicy();
+            HttpEventResponse response = fetchAndSanitize(nextPageRequest.get(), nextPage.getUrl(), toLog,
+                false, nextPage.getKey(), retryPolicy.deadline(retryPolicy.getClock().instant()), true, pageAfter::set);
+            return new PaginationPrefetcher.Page(response, pageAfter.get());
+        }));
+    }
+
+    /**
+     * @return whether response to request may be cached, and revalidated from cache
+     */
+    boolean isCacheable(HttpEventRequest request, URL targetUrl, boolean skipSanitization) {
+        return !skipSanitization
+            && Objects.equals(request.getHttpMethod(), HttpMethods.GET)
+            // forwarded headers may affect response, unlike those in cache key
+            && sanitizer.getAllowedHeadersToForward(request.getHttpMethod(), targetUrl)
+                .map(headers -> headers.stream().noneMatch(h -> request.getHeader(h).isPresent()))
+                .orElse(true);
+    }
+
     /**
      * encapsulates dynamically configuring Sanitizer based on request (to support some aspects of
      * its behavior being controlled via HTTP headers)
@@ -325,7 +683,7 @@ public class CommonRequestHandler {
     @SneakyThrows
     HttpRequestFactory getRequestFactory(HttpEventRequest request) {
         // per connection request factory, abstracts auth ...
-        HttpTransport transport = new NetHttpTransport();
+        HttpTransport transport = httpTransportFactory.create();
 
         //TODO: changing impl of credentials/initializer should support sources authenticated by
         // something OTHER than a Google Service account
@@ -8,6 +8,7 @@ import com.google.api.client.http.HttpTransport;
 import com.google.api.client.testing.http.MockHttpTransport;
 import com.google.auth.Credentials;
 import com.google.auth.http.HttpTransportFactory;
+import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.auth.oauth2.ServiceAccountCredentials;
 import com.google.common.annotations.VisibleForTesting;
@@ -15,6 +16,7 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
@@ -24,8 +26,18 @@ import org.apache.commons.lang3.StringUtils;
 
 import javax.inject.Inject;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 
@@ -45,9 +57,47 @@ public class GoogleCloudPlatformServiceAccountKeyAuthStrategy implements SourceA
         // cloud function
         // see "https://cloud.google.com/functions/docs/configuring/secrets#gcloud"
         SERVICE_ACCOUNT_KEY,
+
+        /**
+         * max number of impersonated credentials to keep in memory; OPTIONAL
+         *
+         * as we usually shard per Google Workspace user account, this should be ~ number of active
+         * shards
+         */
+        IMPERSONATED_CREDENTIALS_CACHE_SIZE,
+
+        /**
+         * comma-separated list of accounts to impersonate, for which access tokens will be
+         * pre-minted (asynchronously) when impersonated credentials are first requested, and then
+         * re-minted before they expire, while proxy instance is handling requests; OPTIONAL
+         */
+        IMPERSONATION_SUBJECTS_TO_PREFETCH,
     }
 
+    @VisibleForTesting
+    static final int DEFAULT_IMPERSONATED_CREDENTIALS_CACHE_SIZE = 500;
+
+    /**
+     * access tokens that expire within this margin will be refreshed in background, so that
+     * requests don't stall on token refresh
+     *
+     * NOTE: must be larger than google-auth-library's own expiration margin (3 min), which beyond
+     * which it will refresh tokens synchronously anyways
+     */
+    @VisibleForTesting
+    static final Duration PROACTIVE_REFRESH_MARGIN = Duration.ofMinutes(5);
+
+    /**
+     * how often to check whether tokens of {@link ConfigProperty#IMPERSONATION_SUBJECTS_TO_PREFETCH}
+     * need to be (re-)minted; so not checked on every request
+     */
+    @VisibleForTesting
+    static final Duration PREFETCH_CHECK_INTERVAL = Duration.ofMinutes(1);
+
+    private static final int TOKEN_REFRESH_THREADS = 4;
+
     @Inject ConfigService config;
+    @Inject Clock clock;
     @Inject SecretStore secretStore;
     @Inject HttpTransportFactory httpTransportFactory;
 
@@ -64,17 +114,154 @@ public class GoogleCloudPlatformServiceAccountKeyAuthStrategy implements SourceA
      */
     transient GoogleCredentials baseCredentials;
 
-    transient LoadingCache<String, GoogleCredentials> credentialsCache = CacheBuilder.newBuilder()
-        .concurrencyLevel(1)
-        .maximumSize(50) // as we usually shard per Google Workspace user account, this should be ~ number of active shards
-        .recordStats()
-        .build(CacheLoader.from(this::buildImpersonatedCredentials));
+    private transient volatile LoadingCache<String, GoogleCredentials> credentialsCache;
+
+    private final Object $writeLock = new Object[0];
+
+    /**
+     * accounts for which a background token refresh is in flight; to avoid piling up redundant
+     * refreshes for same account
+     */
+    private final Set<String> refreshesInFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * when tokens of {@link ConfigProperty#IMPERSONATION_SUBJECTS_TO_PREFETCH} are next due to be
+     * checked; null until first checked
+     */
+    private final AtomicReference<Instant> nextPrefetchCheck = new AtomicReference<>();
+
+    private transient volatile ExecutorService tokenRefreshExecutor;
 
 
     @Override
     public Credentials getCredentials(Optional<String> userToImpersonate) {
-        return userToImpersonate.map(credentialsCache::getUnchecked)
-            .orElseGet(this::getBaseCredentials);
+        if (userToImpersonate.isPresent()) {
+            prefetchImpersonatedTokensIfDue();
+            GoogleCredentials credentials = getCredentialsCache().getUnchecked(userToImpersonate.get());
+            refreshInBackgroundIfExpiring(userToImpersonate.get(), credentials);
+            return credentials;
+        } else {
+            return getBaseCredentials();
+        }
+    }
+
+    /**
+     * @return future that completes once any tokens due to be prefetched have been minted (or
+     * failed to be); completed already if not due
+     * @see #prefetchImpersonatedTokens()
+     */
+    @VisibleForTesting
+    CompletableFuture<Void> prefetchImpersonatedTokensIfDue() {
+        Instant now = clock.instant();
+        Instant due = nextPrefetchCheck.get();
+        if ((due == null || !now.isBefore(due))
+            && nextPrefetchCheck.compareAndSet(due, now.plus(PREFETCH_CHECK_INTERVAL))) {
+            return prefetchImpersonatedTokens();
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * pre-mints access tokens for accounts configured in
+     * {@link ConfigProperty#IMPERSONATION_SUBJECTS_TO_PREFETCH}, if any; unless already minted
+     * and not yet expiring
+     *
+     * @return future that completes once all tokens have been minted (or failed to be)
+     */
+    @VisibleForTesting
+    CompletableFuture<Void> prefetchImpersonatedTokens() {
+        List<String> subjects = config.getConfigPropertyAsOptional(ConfigProperty.IMPERSONATION_SUBJECTS_TO_PREFETCH)
+            .map(value -> Arrays.stream(value.split(","))
+                .map(StringUtils::trimToNull)
+                .filter(Objects::nonNull)
+                .distinct()
+                .filter(this::needsToken)
+                .collect(Collectors.toList()))
+            .orElse(Collections.emptyList());
+
+        if (!subjects.isEmpty()) {
+            log.info("Prefetching access tokens for " + subjects.size() + " impersonated accounts");
+        }
+
+        return CompletableFuture.allOf(subjects.stream()
+            .map(subject -> CompletableFuture.runAsync(
+                () -> refreshIfExpiring(subject, getCredentialsCache().getUnchecked(subject)),
+                getTokenRefreshExecutor()))
+            .toArray(CompletableFuture[]::new));
+    }
+
+    @VisibleForTesting
+    LoadingCache<String, GoogleCredentials> getCredentialsCache() {
+        if (this.credentialsCache == null) {
+            synchronized ($writeLock) {
+                if (this.credentialsCache == null) {
+                    int maximumSize = config.getConfigPropertyAsOptional(ConfigProperty.IMPERSONATED_CREDENTIALS_CACHE_SIZE)
+                        .map(Integer::parseInt)
+                        .orElse(DEFAULT_IMPERSONATED_CREDENTIALS_CACHE_SIZE);
+
+                    this.credentialsCache = CacheBuilder.newBuilder()
+                        // striped by segments; so concurrent requests for distinct accounts don't contend
+                        .concurrencyLevel(Math.max(4, Runtime.getRuntime().availableProcessors()))
+                        .maximumSize(maximumSize)
+                        .recordStats()
+                        .build(CacheLoader.from(this::buildImpersonatedCredentials));
+                }
+            }
+        }
+        return this.credentialsCache;
+    }
+
+    private ExecutorService getTokenRefreshExecutor() {
+        if (this.tokenRefreshExecutor == null) {
+            synchronized ($writeLock) {
+                if (this.tokenRefreshExecutor == null) {
+                    this.tokenRefreshExecutor = Executors.newFixedThreadPool(TOKEN_REFRESH_THREADS,
+                        new ThreadFactoryBuilder()
+                            .setNameFormat("gcp-token-refresh-%d")
+                            .setDaemon(true) // don't block function runtime from shutting down
+                            .build());
+                }
+            }
+        }
+        return this.tokenRefreshExecutor;
+    }
+
+    private void refreshInBackgroundIfExpiring(String accountToImpersonate, GoogleCredentials credentials) {
+        // tokens not yet minted are fetched synchronously on use, as before; only refresh those
+        // that are close to expiry
+        if (credentials.getAccessToken() != null && isExpiring(credentials.getAccessToken())) {
+            getTokenRefreshExecutor().execute(() -> refreshIfExpiring(accountToImpersonate, credentials));
+        }
+    }
+
+    private void refreshIfExpiring(String accountToImpersonate, GoogleCredentials credentials) {
+        if (refreshesInFlight.add(accountToImpersonate)) {
+            try {
+                AccessToken token = credentials.getAccessToken();
+                if (token == null || isExpiring(token)) {
+                    credentials.refresh();
+                }
+            } catch (IOException | RuntimeException e) {
+                //not fatal; token will be refreshed synchronously when used, as usual
+                log.log(Level.WARNING, "Failed to refresh access token in background", e);
+            } finally {
+                refreshesInFlight.remove(accountToImpersonate);
+            }
+        }
+    }
+
+    /**
+     * @return whether account to impersonate has no cached credentials with an access token that's
+     * not yet expiring
+     */
+    private boolean needsToken(String accountToImpersonate) {
+        GoogleCredentials cached = getCredentialsCache().getIfPresent(accountToImpersonate);
+        return cached == null || cached.getAccessToken() == null || isExpiring(cached.getAccessToken());
+    }
+
+    private boolean isExpiring(@NonNull AccessToken token) {
+        return token.getExpirationTime() == null
+            || token.getExpirationTime().toInstant().isBefore(clock.instant().plus(PROACTIVE_REFRESH_MARGIN));
     }
 
     @Override
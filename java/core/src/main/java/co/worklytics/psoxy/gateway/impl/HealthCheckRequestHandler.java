@@ -53,7 +53,7 @@ public class HealthCheckRequestHandler {
         return Optional.empty();
     }
 
-    private boolean isHealthCheckRequest(HttpEventRequest request) {
+    public boolean isHealthCheckRequest(HttpEventRequest request) {
         return request.getHeader(ControlHeader.HEALTH_CHECK.getHttpHeader()).isPresent();
     }
 
@@ -0,0 +1,518 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import co.worklytics.psoxy.gateway.ConfigService;
+import co.worklytics.psoxy.gateway.HttpEventRequest;
+import co.worklytics.psoxy.gateway.HttpEventResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.HttpMethods;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.java.Log;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URIBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * prefetches next page of paginated responses, so that client's request for it (which it can't
+ * make until it has received current page) is answered without waiting on source
+ *
+ * after a page is sanitized, its next page is fetched and sanitized in background, just as if
+ * client had requested it, and held until client requests it. Next page is found from:
+ *   - `Link` header, with `rel="next"` (GitHub, etc)
+ *   - `@odata.nextLink` (Microsoft Graph)
+ *   - `nextPageToken`, as `pageToken` param (Google Workspace)
+ *   - `response_metadata.next_cursor`, as `cursor` param (Slack)
+ *
+ * prefetched pages are keyed like {@link SanitizedResponseCache.Key}, by clear URL (so matches
+ * client's request for it after any reversible tokens in URL are reversed) and everything else
+ * that determines sanitized output. URLs are normalized (params sorted and decoded), so order or
+ * encoding of params doesn't prevent a match.
+ *
+ * bounded in time (pages not requested within TTL are dropped), memory (total size of pages held)
+ * and concurrency (prefetches in flight). Client's request for a page still in flight waits on it
+ * only briefly (max wait), then goes to source as usual. Pages are served at most once. Per proxy instance, so
+ * only effective for client's next request if routed to same instance. Prefetches are speculative,
+ * so callers should make them only with spare capacity under any rate limit, and not retry them.
+ */
+@Log
+public class PaginationPrefetcher {
+
+    public enum ConfigProperty implements ConfigService.ConfigProperty {
+
+        /**
+         * how long, in milliseconds, a prefetched page is held for client to request it; if not set
+         * (or not positive), pages aren't prefetched
+         *
+         * NOTE: only worth enabling on hosts that keep running background work between requests
+         * (eg, GCP Cloud Functions with CPU always allocated); not AWS Lambda, which freezes
+         * instance between invocations
+         */
+        PAGINATION_PREFETCH_TTL_MS,
+
+        /**
+         * max total size, in bytes, of prefetched pages held; default 8 MB
+         */
+        PAGINATION_PREFETCH_MAX_BYTES,
+
+        /**
+         * max prefetches in flight at once; default 2
+         */
+        PAGINATION_PREFETCH_MAX_IN_FLIGHT,
+
+        /**
+         * max time, in milliseconds, client's request for a page waits on its prefetch, if still in
+         * flight, before going to source itself; default 1000. Never longer than TTL.
+         */
+        PAGINATION_PREFETCH_MAX_WAIT_MS,
+        ;
+    }
+
+    static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+
+    static final int DEFAULT_MAX_IN_FLIGHT = 2;
+
+    static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(1);
+
+    /**
+     * matches each link in `Link` header, with its params
+     *
+     * @see "https://www.rfc-editor.org/rfc/rfc8288#section-3"
+     */
+    static final Pattern LINK = Pattern.compile("<([^>]*)>([^<]*)");
+
+    static final Pattern LINK_REL = Pattern.compile("rel\\s*=\\s*(?:\"([^\"]*)\"|([^\\s;,]+))", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * next page of a response
+     */
+    @Value
+    public static class NextPage {
+
+        /**
+         * of next page's sanitized response
+         */
+        @NonNull
+        SanitizedResponseCache.Key key;
+
+        /**
+         * clear URL of next page, as returned by source
+         */
+        @NonNull
+        String url;
+    }
+
+    /**
+     * a prefetched page
+     */
+    @Value
+    public static class Page {
+
+        /**
+         * sanitized response, as would be returned to client
+         */
+        @NonNull
+        HttpEventResponse response;
+
+        /**
+         * next page after this one, if any
+         */
+        NextPage next;
+
+        long sizeInBytes() {
+            long size = SanitizedResponseCache.ENTRY_OVERHEAD_BYTES + 2L * StringUtils.length(response.getBody());
+            for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+                size += 2L * (header.getKey().length() + StringUtils.length(header.getValue()));
+            }
+            return size;
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class Prefetch {
+
+        final long startedNanos;
+
+        final CompletableFuture<Page> page = new CompletableFuture<>();
+
+        /**
+         * size of page, once fetched and held
+         */
+        long sizeInBytes = 0;
+    }
+
+    @Getter
+    final Duration ttl;
+
+    @Getter
+    final Duration maxWait;
+
+    @Getter
+    final long maxBytes;
+
+    @Getter
+    final int maxInFlight;
+
+    /**
+     * pages served from prefetch
+     */
+    @Getter
+    final AtomicLong hits = new AtomicLong();
+
+    /**
+     * pages prefetched, but dropped before client requested them (expired or evicted)
+     */
+    @Getter
+    final AtomicLong dropped = new AtomicLong();
+
+    private final Executor executor;
+
+    private final LongSupplier nanoClock;
+
+    // in order started; so oldest first
+    private final LinkedHashMap<SanitizedResponseCache.Key, Prefetch> prefetches = new LinkedHashMap<>();
+
+    private long sizeInBytes = 0;
+
+    private int inFlight = 0;
+
+    public PaginationPrefetcher(@NonNull Duration ttl, @NonNull Duration maxWait, long maxBytes, int maxInFlight) {
+        // at most maxInFlight prefetches run at once, so no more threads than that ever needed
+        this(ttl, maxWait, maxBytes, maxInFlight, Executors.newFixedThreadPool(maxInFlight,
+            new ThreadFactoryBuilder()
+                .setNameFormat("pagination-prefetch-%d")
+                .setDaemon(true) // don't block function runtime from shutting down
+                .build()), System::nanoTime);
+    }
+
+    @VisibleForTesting
+    PaginationPrefetcher(@NonNull Duration ttl, @NonNull Duration maxWait, long maxBytes, int maxInFlight,
+                         @NonNull Executor executor, @NonNull LongSupplier nanoClock) {
+        Preconditions.checkArgument(!ttl.isNegative() && !ttl.isZero(), "ttl must be positive");
+        Preconditions.checkArgument(!maxWait.isNegative(), "maxWait must not be negative");
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive");
+        Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+        this.ttl = ttl;
+        this.maxWait = maxWait;
+        this.maxBytes = maxBytes;
+        this.maxInFlight = maxInFlight;
+        this.executor = executor;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param config to read TTL and limits from
+     * @return prefetcher, if configured; empty otherwise
+     */
+    public static Optional<PaginationPrefetcher> fromConfig(@NonNull ConfigService config) {
+        long ttlMillis = config.getConfigPropertyAsOptional(ConfigProperty.PAGINATION_PREFETCH_TTL_MS)
+            .map(String::trim)
+            .map(Long::parseLong)
+            .orElse(0L);
+        if (ttlMillis <= 0) {
+            return Optional.empty();
+        }
+        long maxBytes = config.getConfigPropertyAsOptional(ConfigProperty.PAGINATION_PREFETCH_MAX_BYTES)
+            .map(String::trim)
+            .map(Long::parseLong)
+            .orElse(DEFAULT_MAX_BYTES);
+        int maxInFlight = config.getConfigPropertyAsOptional(ConfigProperty.PAGINATION_PREFETCH_MAX_IN_FLIGHT)
+            .map(String::trim)
+            .map(Integer::parseInt)
+            .orElse(DEFAULT_MAX_IN_FLIGHT);
+        Duration maxWait = config.getConfigPropertyAsOptional(ConfigProperty.PAGINATION_PREFETCH_MAX_WAIT_MS)
+            .map(String::trim)
+            .map(Long::parseLong)
+            .map(Duration::ofMillis)
+            .orElse(DEFAULT_MAX_WAIT);
+        return Optional.of(new PaginationPrefetcher(Duration.ofMillis(ttlMillis), maxWait, maxBytes, maxInFlight));
+    }
+
+    /**
+     * prefetch page in background, unless already prefetched or at max prefetches in flight
+     *
+     * @param next  page to prefetch
+     * @param fetch fetches and sanitizes page, as if requested by client
+     * @return whether prefetch started
+     */
+    public boolean prefetch(@NonNull NextPage next, @NonNull Supplier<Page> fetch) {
+        Prefetch prefetch;
+        synchronized (this) {
+            dropExpired();
+            if (prefetches.containsKey(next.getKey()) || inFlight >= maxInFlight) {
+                return false;
+            }
+            prefetch = new Prefetch(nanoClock.getAsLong());
+            prefetches.put(next.getKey(), prefetch);
+            inFlight++;
+        }
+
+        executor.execute(() -> {
+            Page page = null;
+            try {
+                page = fetch.get();
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Failed to prefetch next page", e);
+            } finally {
+                completed(next.getKey(), prefetch, page);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * take prefetched page, waiting for it if still in flight (but no longer than max wait, nor its
+     * TTL); if it's not done by then, it's abandoned (completes in background, but isn't held) and
+     * caller should fetch page itself
+     *
+     * @param key of requested page
+     * @return page, if prefetched successfully and not expired; empty otherwise
+     */
+    public Optional<Page> take(@NonNull SanitizedResponseCache.Key key) {
+        Prefetch prefetch;
+        synchronized (this) {
+            dropExpired();
+            prefetch = prefetches.remove(key);
+            if (prefetch == null) {
+                return Optional.empty();
+            }
+            sizeInBytes -= prefetch.sizeInBytes;
+        }
+
+        long remainingNanos = ttl.toNanos() - (nanoClock.getAsLong() - prefetch.startedNanos);
+        long waitNanos = Math.max(0, Math.min(maxWait.toNanos(), remainingNanos));
+        try {
+            Page page = prefetch.page.get(waitNanos, TimeUnit.NANOSECONDS);
+            if (page != null) {
+                hits.incrementAndGet();
+            }
+            return Optional.ofNullable(page);
+        } catch (TimeoutException | ExecutionException e) {
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return prefetches held, including those in flight
+     */
+    public synchronized int size() {
+        return prefetches.size();
+    }
+
+    private void completed(SanitizedResponseCache.Key key, Prefetch prefetch, Page page) {
+        boolean successful = page != null && page.getResponse().getStatusCode() / 100 == 2;
+        synchronized (this) {
+            inFlight--;
+            // if already taken, or expired, nothing held
+            if (prefetches.get(key) == prefetch) {
+                long size = successful ? page.sizeInBytes() : 0;
+                if (!successful || size > maxBytes) {
+                    prefetches.remove(key);
+                } else {
+                    prefetch.sizeInBytes = size;
+                    sizeInBytes += size;
+                    Iterator<Prefetch> oldest = prefetches.values().iterator();
+                    while (sizeInBytes > maxBytes && oldest.hasNext()) {
+                        Prefetch evicted = oldest.next();
+                        if (evicted.page.isDone() || evicted == prefetch) {
+                            sizeInBytes -= evicted.sizeInBytes;
+                            oldest.remove();
+                            dropped.incrementAndGet();
+                        }
+                    }
+                }
+            }
+        }
+        // failed pages are never served; client's request goes to source as usual
+        prefetch.page.complete(successful ? page : null);
+    }
+
+    private void dropExpired() {
+        long now = nanoClock.getAsLong();
+        Iterator<Prefetch> oldest = prefetches.values().iterator();
+        while (oldest.hasNext()) {
+            Prefetch prefetch = oldest.next();
+            if (now - prefetch.startedNanos <= ttl.toNanos()) {
+                break;
+            }
+            sizeInBytes -= prefetch.sizeInBytes;
+            oldest.remove();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param currentUrl clear URL of current page
+     * @param linkHeader value of `Link` header of source's response, if any
+     * @param content    of source's response
+     * @return clear URL of next page, if any
+     */
+    static Optional<String> nextPageUrl(@NonNull ObjectMapper objectMapper, @NonNull String currentUrl,
+                                        String linkHeader, String content) {
+        if (StringUtils.isNotBlank(linkHeader)) {
+            Matcher link = LINK.matcher(linkHeader);
+            while (link.find()) {
+                Matcher rel = LINK_REL.matcher(link.group(2));
+                if (rel.find()) {
+                    String relations = rel.group(1) == null ? rel.group(2) : rel.group(1);
+                    for (String relation : StringUtils.split(relations)) {
+                        if ("next".equalsIgnoreCase(relation)) {
+                            return Optional.of(link.group(1).trim());
+                        }
+                    }
+                }
+            }
+        }
+
+        // cheap check before parsing, as most responses aren't paginated this way
+        if (StringUtils.isBlank(content)
+            || !StringUtils.containsAny(content, "@odata.nextLink", "nextPageToken", "next_cursor")) {
+            return Optional.empty();
+        }
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(content);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        if (root == null || !root.isObject()) {
+            return Optional.empty();
+        }
+
+        String nextLink = root.path("@odata.nextLink").asText(null);
+        if (StringUtils.isNotBlank(nextLink)) {
+            return Optional.of(nextLink);
+        }
+        String nextPageToken = root.path("nextPageToken").asText(null);
+        if (StringUtils.isNotBlank(nextPageToken)) {
+            return withParameter(currentUrl, "pageToken", nextPageToken);
+        }
+        String nextCursor = root.path("response_metadata").path("next_cursor").asText(null);
+        if (StringUtils.isNotBlank(nextCursor)) {
+            return withParameter(currentUrl, "cursor", nextCursor);
+        }
+        return Optional.empty();
+    }
+
+    static Optional<String> withParameter(String url, String name, String value) {
+        try {
+            return Optional.of(new URIBuilder(url).setParameter(name, value).build().toString());
+        } catch (URISyntaxException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param url to normalize
+     * @return url, with query params decoded and sorted; so equal for URLs that differ only in
+     * order or encoding of params
+     */
+    static String normalize(@NonNull String url) {
+        try {
+            URIBuilder builder = new URIBuilder(url);
+            List<NameValuePair> params = builder.getQueryParams();
+            if (params.isEmpty()) {
+                return url;
+            }
+            return builder.setParameters(params.stream()
+                    .sorted(Comparator.comparing(NameValuePair::getName)
+                        .thenComparing(NameValuePair::getValue, Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .collect(Collectors.toList()))
+                .build().toString();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    /**
+     * @param original   request for current page
+     * @param targetHost host to which proxy sends requests
+     * @param url        clear URL of next page
+     * @return request for next page, with same headers as original, if URL is one that could be
+     * requested via proxy; empty otherwise
+     */
+    static Optional<HttpEventRequest> nextPageRequest(@NonNull HttpEventRequest original, @NonNull String targetHost, @NonNull String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return Optional.empty();
+        }
+        if (!"https".equalsIgnoreCase(uri.getScheme()) || !targetHost.equalsIgnoreCase(uri.getRawAuthority())) {
+            return Optional.empty();
+        }
+        return Optional.of(new NextPageRequest(original, StringUtils.defaultIfEmpty(uri.getRawPath(), "/"), uri.getRawQuery()));
+    }
+
+    @RequiredArgsConstructor
+    static class NextPageRequest implements HttpEventRequest {
+
+        final HttpEventRequest original;
+
+        final String path;
+
+        final String query;
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public Optional<String> getQuery() {
+            return Optional.ofNullable(query);
+        }
+
+        @Override
+        public Optional<String> getHeader(String headerName) {
+            return original.getHeader(headerName);
+        }
+
+        @Override
+        public Optional<List<String>> getMultiValueHeader(String headerName) {
+            return original.getMultiValueHeader(headerName);
+        }
+
+        @Override
+        public String getHttpMethod() {
+            return HttpMethods.GET;
+        }
+
+        @Override
+        public byte[] getBody() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import co.worklytics.psoxy.gateway.ConfigService;
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * coalesces identical concurrent requests ('single-flight'): while a request is in flight, others
+ * with same key wait for and share its result, rather than each calling source and sanitizing
+ * response again
+ *
+ * eg, parallel workers paging the same list, or a client retrying after timing out while its
+ * original request is still being handled.
+ *
+ * waiters are bounded by a timeout; if in-flight request hasn't completed by then, waiter makes its
+ * own request, as if not coalesced. If in-flight request fails, waiters fail likewise.
+ *
+ * @param <K> key identifying requests that would get identical results
+ * @param <V> result of request
+ */
+public class RequestCoalescer<K, V> {
+
+    public enum ConfigProperty implements ConfigService.ConfigProperty {
+
+        /**
+         * max time, in milliseconds, a request waits for an identical in-flight request's result;
+         * if not set (or not positive), requests aren't coalesced
+         */
+        REQUEST_COALESCING_TIMEOUT_MS,
+        ;
+    }
+
+    /**
+     * key of a proxy request, by everything that determines its response
+     */
+    @Value
+    public static class Key {
+
+        @NonNull
+        String httpMethod;
+
+        /**
+         * clear target URL (eg, after reversing any tokenized components)
+         */
+        @NonNull
+        String targetUrl;
+
+        /**
+         * values of request headers that affect response (eg, control headers, headers forwarded
+         * to source), by header name
+         */
+        @NonNull
+        Map<String, String> headers;
+    }
+
+    @Getter
+    final Duration timeout;
+
+    /**
+     * requests that shared result of another, in-flight request
+     */
+    @Getter
+    final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * requests that gave up waiting for an in-flight request, so made their own
+     */
+    @Getter
+    final AtomicLong timedOut = new AtomicLong();
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(@NonNull Duration timeout) {
+        Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive");
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param config to read timeout from
+     * @return coalescer, if configured; empty otherwise
+     */
+    public static <K, V> Optional<RequestCoalescer<K, V>> fromConfig(@NonNull ConfigService config) {
+        long timeoutMillis = config.getConfigPropertyAsOptional(ConfigProperty.REQUEST_COALESCING_TIMEOUT_MS)
+            .map(String::trim)
+            .map(Long::parseLong)
+            .orElse(0L);
+        if (timeoutMillis <= 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new RequestCoalescer<>(Duration.ofMillis(timeoutMillis)));
+    }
+
+    /**
+     * @param key     of request
+     * @param request to make, if no identical request in flight (or waiting for it times out)
+     * @return result of request, or of identical request in flight
+     */
+    @SneakyThrows
+    public V execute(@NonNull K key, @NonNull Supplier<V> request) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, result);
+        if (existing == null) {
+            try {
+                V value = request.get();
+                result.complete(value);
+                return value;
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, result);
+            }
+        }
+
+        try {
+            V value = existing.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            coalesced.incrementAndGet();
+            return value;
+        } catch (TimeoutException e) {
+            timedOut.incrementAndGet();
+            return request.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return number of requests currently in flight, each possibly with others waiting on it
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,323 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import co.worklytics.psoxy.gateway.ConfigService;
+import co.worklytics.psoxy.storage.LeveledGZIPOutputStream;
+import co.worklytics.psoxy.storage.ZstdStreams;
+import co.worklytics.psoxy.storage.ZstdSupport;
+import com.google.common.base.Preconditions;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Singular;
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * compression of API responses, as negotiated with client via 'Accept-Encoding'
+ *
+ * shared by host platforms' handlers, so responses are compressed consistently regardless of where
+ * proxy is deployed; handlers are responsible only for where compressed bytes are written (eg,
+ * base64-encoded into a Lambda response, or directly onto a Cloud Function's response stream)
+ */
+@Builder
+@Value
+public class ResponseCompression {
+
+    public enum ConfigProperty implements ConfigService.ConfigProperty {
+
+        /**
+         * compression level; either a single level for all encodings (eg, '6'), or per encoding
+         * (eg, 'gzip=6,zstd=3'). gzip/deflate: 1-9, default 6; zstd: 1-22, default 3
+         */
+        RESPONSE_COMPRESSION_LEVEL,
+
+        /**
+         * min size, in bytes, of response body to compress; either a single value for all
+         * content types (eg, '2048'), or per content type (eg, 'application/json=1024,image/*=-1,*=2048'),
+         * first match wins. Negative value disables compression for that content type.
+         */
+        RESPONSE_COMPRESSION_MIN_BYTES,
+        ;
+    }
+
+    /**
+     * encodings supported for responses, in order of preference when client accepts several
+     * equally; gzip first, as universally supported, so clients listing every encoding they know
+     * (eg, 'gzip, deflate, br, zstd') don't switch encoding just because a newer one is offered
+     *
+     * NOTE: brotli ('br') is not offered. zstd compresses JSON faster than brotli at similar
+     * ratios, and clients that accept 'br' nearly all accept 'gzip' too, so get one of these
+     * instead; so another native encoder (beyond zstd-jni) isn't worth its weight in bundles
+     */
+    @RequiredArgsConstructor
+    public enum Encoding {
+
+        GZIP("gzip", Deflater.DEFAULT_COMPRESSION, 1, 9) {
+            @Override
+            public OutputStream compress(@NonNull OutputStream out, int level) throws IOException {
+                return new LeveledGZIPOutputStream(out, BUFFER_SIZE, level);
+            }
+        },
+
+        /**
+         * zlib format (RFC 1950), as 'deflate' content-coding is defined
+         */
+        DEFLATE("deflate", Deflater.DEFAULT_COMPRESSION, 1, 9) {
+            @Override
+            public OutputStream compress(@NonNull OutputStream out, int level) {
+                Deflater deflater = new Deflater(level);
+                return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            // as not default deflater, not ended by DeflaterOutputStream itself
+                            deflater.end();
+                        }
+                    }
+                };
+            }
+        },
+
+        /**
+         * much cheaper to compress than gzip, at similar ratio; offered only if deployment
+         * bundles zstd-jni (see {@link ZstdSupport}); least preferred, so negotiated only if client
+         * prefers it (by q-value) over gzip and deflate
+         */
+        ZSTD("zstd", 3, 1, 22) {
+            @Override
+            public OutputStream compress(@NonNull OutputStream out, int level) throws IOException {
+                ZstdSupport.checkAvailable();
+                return ZstdStreams.compress(out, level, 1);
+            }
+
+            @Override
+            boolean isAvailable() {
+                return ZstdSupport.isAvailable();
+            }
+        },
+        ;
+
+        /**
+         * value of 'Content-Encoding'/'Accept-Encoding' for this encoding
+         */
+        @Getter
+        private final String contentEncoding;
+
+        @Getter
+        private final int defaultLevel;
+
+        private final int minLevel;
+
+        private final int maxLevel;
+
+        /**
+         * @param out   to which to write compressed content
+         * @param level of compression
+         * @return stream to which to write uncompressed content; closing it finishes compression
+         * and closes out
+         */
+        public abstract OutputStream compress(OutputStream out, int level) throws IOException;
+
+        /**
+         * @return whether this encoding is supported by this deployment, so may be negotiated
+         */
+        boolean isAvailable() {
+            return true;
+        }
+
+        static Optional<Encoding> fromContentEncoding(String contentEncoding) {
+            return Arrays.stream(values())
+                .filter(encoding -> encoding.contentEncoding.equalsIgnoreCase(contentEncoding))
+                .findFirst();
+        }
+    }
+
+    static final int BUFFER_SIZE = 8192;
+
+    public static final int DEFAULT_MIN_BYTES = 2048;
+
+    /**
+     * level per encoding; encodings not included use their default
+     */
+    @Singular
+    Map<Encoding, Integer> levels;
+
+    /**
+     * (content type pattern, min bytes) pairs, in order of precedence; patterns are exact media
+     * types (eg, 'application/json'), 'type/*' or '*'
+     */
+    @Singular("minBytesForContentType")
+    List<Pair<String, Integer>> minBytesByContentType;
+
+    @Builder.Default
+    int defaultMinBytes = DEFAULT_MIN_BYTES;
+
+    /**
+     * @return compression per proxy's config
+     * @throws IllegalArgumentException if config is invalid
+     */
+    public static ResponseCompression fromConfig(@NonNull ConfigService config) {
+        ResponseCompressionBuilder builder = ResponseCompression.builder();
+
+        config.getConfigPropertyAsOptional(ConfigProperty.RESPONSE_COMPRESSION_LEVEL)
+            .map(ResponseCompression::parseKeyedValues)
+            .ifPresent(levels -> levels.forEach((key, level) -> {
+                if (key == null) {
+                    Arrays.stream(Encoding.values()).forEach(encoding -> builder.level(encoding, level));
+                } else {
+                    builder.level(Encoding.fromContentEncoding(key)
+                        .orElseThrow(() -> new IllegalArgumentException("Unsupported encoding in " + ConfigProperty.RESPONSE_COMPRESSION_LEVEL + ": " + key)), level);
+                }
+            }));
+
+        config.getConfigPropertyAsOptional(ConfigProperty.RESPONSE_COMPRESSION_MIN_BYTES)
+            .map(ResponseCompression::parseKeyedValues)
+            .ifPresent(thresholds -> thresholds.forEach((key, minBytes) -> {
+                if (key == null) {
+                    builder.defaultMinBytes(minBytes);
+                } else {
+                    builder.minBytesForContentType(Pair.of(key, minBytes));
+                }
+            }));
+
+        ResponseCompression compression = builder.build();
+        compression.getLevels().forEach((encoding, level) ->
+            Preconditions.checkArgument(level >= encoding.minLevel && level <= encoding.maxLevel,
+                "Invalid %s level for %s: %s", ConfigProperty.RESPONSE_COMPRESSION_LEVEL, encoding.getContentEncoding(), level));
+        return compression;
+    }
+
+    /**
+     * negotiate encoding of response, per RFC 9110 section 12.5.3
+     *
+     * @param acceptEncoding value of request's 'Accept-Encoding' header, if any
+     * @return encoding with highest q-value among those client accepts (and this deployment
+     * supports); ties broken by {@link Encoding} order. Empty if client accepts none of them.
+     */
+    public static Optional<Encoding> negotiate(@Nullable String acceptEncoding) {
+        if (StringUtils.isBlank(acceptEncoding)) {
+            return Optional.empty();
+        }
+
+        Map<Encoding, Double> qValues = new EnumMap<>(Encoding.class);
+        Double wildcardQValue = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            double q = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0; // malformed, so treat as not acceptable
+                    }
+                }
+            }
+
+            if (name.equals("*")) {
+                wildcardQValue = q;
+            } else {
+                // 'x-gzip' is an alias of 'gzip', per RFC 9110 section 8.4.1.3
+                String normalized = name.equalsIgnoreCase("x-gzip") ? Encoding.GZIP.getContentEncoding() : name;
+                double qValue = q;
+                Encoding.fromContentEncoding(normalized).ifPresent(encoding -> qValues.merge(encoding, qValue, Math::max));
+            }
+        }
+
+        Encoding best = null;
+        double bestQValue = 0;
+        for (Encoding encoding : Encoding.values()) {
+            if (!encoding.isAvailable()) {
+                continue;
+            }
+            double q = qValues.getOrDefault(encoding, wildcardQValue == null ? 0 : wildcardQValue);
+            if (q > bestQValue) {
+                best = encoding;
+                bestQValue = q;
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * @param contentType of response, if known
+     * @param length      of response body, in bytes (or approximation thereof)
+     * @return whether response is large enough, for its content type, that compressing it is
+     * worth the overhead
+     */
+    public boolean shouldCompress(@Nullable String contentType, long length) {
+        int minBytes = minBytes(contentType);
+        return minBytes >= 0 && length >= minBytes;
+    }
+
+    int minBytes(@Nullable String contentType) {
+        String mediaType = StringUtils.trimToEmpty(StringUtils.substringBefore(contentType, ";")).toLowerCase();
+        for (Pair<String, Integer> entry : minBytesByContentType) {
+            if (matches(entry.getKey(), mediaType)) {
+                return entry.getValue();
+            }
+        }
+        return defaultMinBytes;
+    }
+
+    /**
+     * @param encoding to use
+     * @param out      to which to write compressed content
+     * @return stream to which to write uncompressed content; closing it finishes compression and
+     * closes out
+     */
+    public OutputStream compress(@NonNull Encoding encoding, @NonNull OutputStream out) throws IOException {
+        return encoding.compress(out, levels.getOrDefault(encoding, encoding.getDefaultLevel()));
+    }
+
+    private static boolean matches(String pattern, String mediaType) {
+        String normalized = pattern.trim().toLowerCase();
+        if (normalized.equals("*") || normalized.equals("*/*")) {
+            return true;
+        } else if (normalized.endsWith("/*")) {
+            return mediaType.startsWith(normalized.substring(0, normalized.length() - 1));
+        } else {
+            return normalized.equals(mediaType);
+        }
+    }
+
+    /**
+     * parse config value that is either a single integer, or comma-separated 'key=integer' pairs
+     *
+     * @return integers by key, in order; null key for a value without one
+     */
+    static Map<String, Integer> parseKeyedValues(String value) {
+        Map<String, Integer> parsed = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            if (StringUtils.isBlank(entry)) {
+                continue;
+            }
+            String key = entry.contains("=") ? StringUtils.trimToNull(StringUtils.substringBefore(entry, "=")) : null;
+            String number = entry.contains("=") ? StringUtils.substringAfter(entry, "=") : entry;
+            try {
+                parsed.put(key, Integer.parseInt(number.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value '" + entry.trim() + "'; expected integer or 'key=integer'", e);
+            }
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,220 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import co.worklytics.psoxy.gateway.ConfigService;
+import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
+import com.google.common.base.Preconditions;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+import org.apache.http.HttpStatus;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * bounded, in-memory cache of sanitized responses to GET requests, for sources that return
+ * validators (`ETag` / `Last-Modified`) with their responses
+ *
+ * many endpoints (lists of users, channels, projects, etc) are re-polled by clients but rarely
+ * change between polls. For those, proxy revalidates its cached response with a conditional request
+ * (`If-None-Match` / `If-Modified-Since`); if source replies `304 Not Modified`, the cached
+ * sanitized body is returned as-is, without transferring the full response from source or
+ * sanitizing it again.
+ *
+ * entries are keyed by everything that determines sanitized output: clear target URL, the account
+ * impersonated (if any), pseudonym implementation and sha of rules. So a change to rules, or to
+ * pseudonymization requested, never returns a response sanitized differently.
+ *
+ * bounded by total size of entries (approximated as 2 bytes per char of body / headers); least
+ * recently used entries are evicted first. Per proxy instance; so in serverless deployments, only
+ * effective while an instance stays warm.
+ */
+public class SanitizedResponseCache {
+
+    public enum ConfigProperty implements ConfigService.ConfigProperty {
+
+        /**
+         * max total size, in bytes, of cached responses; if not set (or not positive), responses
+         * aren't cached
+         */
+        RESPONSE_CACHE_MAX_BYTES,
+
+        /**
+         * max size, in bytes, of any single cached response; default 1/8 of
+         * RESPONSE_CACHE_MAX_BYTES, so a few large responses can't evict all others
+         */
+        RESPONSE_CACHE_MAX_ENTRY_BYTES,
+        ;
+    }
+
+    static final int DEFAULT_MAX_ENTRY_FRACTION = 8;
+
+    /**
+     * fixed overhead per entry, approximating key, entry objects and map node
+     */
+    static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Key {
+
+        @NonNull
+        String targetUrl;
+
+        /**
+         * account source was asked to impersonate, if any; as data returned usually depends on it
+         */
+        String impersonatedAccount;
+
+        @NonNull
+        PseudonymImplementation pseudonymImplementation;
+
+        @NonNull
+        String rulesSha;
+    }
+
+    @Value
+    @Builder
+    public static class Entry {
+
+        /**
+         * status of proxy's response, as returned by source; so a 2xx
+         */
+        @Builder.Default
+        int statusCode = HttpStatus.SC_OK;
+
+        /**
+         * `ETag` returned by source with response, if any
+         */
+        String etag;
+
+        /**
+         * `Last-Modified` returned by source with response, if any
+         */
+        String lastModified;
+
+        /**
+         * headers of proxy's response, as sanitized
+         */
+        @NonNull
+        Map<String, String> headers;
+
+        /**
+         * body of proxy's response, as sanitized
+         */
+        @NonNull
+        String body;
+
+        long sizeInBytes() {
+            long size = ENTRY_OVERHEAD_BYTES + 2L * body.length();
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                size += 2L * (header.getKey().length() + header.getValue().length());
+            }
+            return size;
+        }
+
+        boolean hasValidator() {
+            return etag != null || lastModified != null;
+        }
+    }
+
+    @Getter
+    final long maxBytes;
+
+    @Getter
+    final long maxEntryBytes;
+
+    @Getter
+    final AtomicLong hits = new AtomicLong();
+
+    @Getter
+    final AtomicLong misses = new AtomicLong();
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long sizeInBytes = 0;
+
+    public SanitizedResponseCache(long maxBytes, long maxEntryBytes) {
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes must be positive");
+        Preconditions.checkArgument(maxEntryBytes > 0 && maxEntryBytes <= maxBytes,
+            "maxEntryBytes must be positive and no more than maxBytes");
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    /**
+     * @param config to read size limits from
+     * @return cache, if configured; empty otherwise
+     */
+    public static Optional<SanitizedResponseCache> fromConfig(@NonNull ConfigService config) {
+        long maxBytes = config.getConfigPropertyAsOptional(ConfigProperty.RESPONSE_CACHE_MAX_BYTES)
+            .map(String::trim)
+            .map(Long::parseLong)
+            .orElse(0L);
+        if (maxBytes <= 0) {
+            return Optional.empty();
+        }
+        long maxEntryBytes = config.getConfigPropertyAsOptional(ConfigProperty.RESPONSE_CACHE_MAX_ENTRY_BYTES)
+            .map(String::trim)
+            .map(Long::parseLong)
+            .orElse(Math.max(1, maxBytes / DEFAULT_MAX_ENTRY_FRACTION));
+        return Optional.of(new SanitizedResponseCache(maxBytes, Math.min(maxBytes, maxEntryBytes)));
+    }
+
+    /**
+     * @param key of request
+     * @return cached response for key, if any
+     */
+    public synchronized Optional<Entry> get(@NonNull Key key) {
+        Entry entry = entries.get(key);
+        (entry == null ? misses : hits).incrementAndGet();
+        return Optional.ofNullable(entry);
+    }
+
+    /**
+     * cache entry for key, replacing any previous one, if it has a validator with which to
+     * revalidate it and is within size limits
+     *
+     * @return whether entry was cached
+     */
+    public synchronized boolean put(@NonNull Key key, @NonNull Entry entry) {
+        long size = entry.sizeInBytes();
+        if (!entry.hasValidator() || size > maxEntryBytes) {
+            // drop any stale entry, so not revalidated against validator no longer current
+            invalidate(key);
+            return false;
+        }
+
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            sizeInBytes -= previous.sizeInBytes();
+        }
+        sizeInBytes += size;
+
+        Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+        while (sizeInBytes > maxBytes && leastRecentlyUsed.hasNext()) {
+            sizeInBytes -= leastRecentlyUsed.next().sizeInBytes();
+            leastRecentlyUsed.remove();
+        }
+        return true;
+    }
+
+    public synchronized void invalidate(@NonNull Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            sizeInBytes -= removed.sizeInBytes();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long sizeInBytes() {
+        return sizeInBytes;
+    }
+}
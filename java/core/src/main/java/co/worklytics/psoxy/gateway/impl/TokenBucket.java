@@ -0,0 +1,106 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * token-bucket rate limiter: allows bursts of up to `capacity` requests, then sustains
+ * `permitsPerSecond`
+ *
+ * waiters reserve tokens in arrival order (a waiter's token may be 'borrowed' from the future, so
+ * that later arrivals queue behind it), so bounded waits are fair across threads.
+ */
+public class TokenBucket {
+
+    @Getter
+    final double permitsPerSecond;
+
+    @Getter
+    final double capacity;
+
+    private final LongSupplier nanoClock;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        this(permitsPerSecond, capacity, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    TokenBucket(double permitsPerSecond, double capacity, @NonNull LongSupplier nanoClock) {
+        Preconditions.checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive");
+        Preconditions.checkArgument(capacity >= 1, "capacity must be at least 1");
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * take a token, waiting for one if none available, but not longer than maxWait
+     *
+     * @param maxWait max time to wait for a token
+     * @return whether token taken; if false, none was (so no effect on other callers)
+     */
+    public boolean tryAcquire(@NonNull Duration maxWait) throws InterruptedException {
+        long waitNanos = reserve(maxWait.toNanos());
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+        return true;
+    }
+
+    /**
+     * take a token, without waiting, only if bucket would still hold at least `reserved` tokens
+     * afterwards; for optional calls (eg, prefetches), so they use only spare capacity and never
+     * delay others
+     *
+     * @param reserved tokens to leave in bucket for others
+     * @return whether token taken
+     */
+    public synchronized boolean tryAcquireSpare(double reserved) {
+        refill();
+        if (tokens - 1 < reserved) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * @return nanos to wait until reserved token available (0 if available now); negative if
+     * token wouldn't be available within maxWaitNanos, in which case nothing reserved
+     */
+    @VisibleForTesting
+    synchronized long reserve(long maxWaitNanos) {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        long waitNanos = (long) Math.ceil((1 - tokens) / permitsPerSecond * 1_000_000_000L);
+        if (waitNanos > maxWaitNanos) {
+            return -1;
+        }
+        // borrow against future refill, so next caller waits behind this one
+        tokens -= 1;
+        return waitNanos;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1e9 * permitsPerSecond);
+        lastRefillNanos = now;
+    }
+}
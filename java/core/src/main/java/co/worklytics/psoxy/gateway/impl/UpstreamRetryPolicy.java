@@ -0,0 +1,295 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import co.worklytics.psoxy.gateway.ConfigService;
+import com.google.api.client.http.HttpMethods;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.util.Sleeper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.java.Log;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * policy for retrying idempotent requests to source that fail transiently (429 Too Many Requests,
+ * 5xx), rather than passing failure straight back to client (which would likely have to re-pull
+ * much more data later)
+ *
+ * delay before each retry is source's `Retry-After`, if it sent one; otherwise decorrelated
+ * jitter between {@link #baseDelay} and {@link #maxDelay}. All retries must complete within
+ * {@link #timeBudget} of request to proxy, so proxy still responds within host platform's timeout;
+ * if next retry wouldn't, source's failure is returned as-is (with its `Retry-After`, if any).
+ *
+ * @see "https://aws.amazon.com/blogs/architecture/exponential-backoff-and-jitter/"
+ */
+@Log
+@Builder(toBuilder = true)
+@Value
+public class UpstreamRetryPolicy {
+
+    public enum ConfigProperty implements ConfigService.ConfigProperty {
+
+        /**
+         * max retries of a request to source; if not set (or 0), requests aren't retried
+         */
+        UPSTREAM_RETRY_MAX_ATTEMPTS,
+
+        /**
+         * min delay, in milliseconds, before retrying; default 500
+         */
+        UPSTREAM_RETRY_BASE_DELAY_MS,
+
+        /**
+         * max delay, in milliseconds, before retrying, unless source's `Retry-After` asks for
+         * longer; default 20000
+         */
+        UPSTREAM_RETRY_MAX_DELAY_MS,
+
+        /**
+         * max time, in milliseconds, from receiving request to proxy until final attempt of call to
+         * source; so should be well within function's timeout (and API gateway's, if any; eg 30s
+         * for AWS API Gateway). Also bounds wait for rate limit. default 20000
+         */
+        UPSTREAM_RETRY_TIME_BUDGET_MS,
+
+        /**
+         * max rate, in requests per second, at which proxy instance calls source; if not set,
+         * unlimited. Requests that would exceed it wait (within time budget); if they can't, proxy
+         * responds 429 without calling source.
+         */
+        UPSTREAM_RATE_LIMIT_PER_SECOND,
+
+        /**
+         * max burst of requests to source above rate limit, after period of less use; default
+         * UPSTREAM_RATE_LIMIT_PER_SECOND (ie, 1s worth of requests)
+         */
+        UPSTREAM_RATE_LIMIT_BURST,
+        ;
+    }
+
+    /**
+     * statuses with which source indicates failure that may succeed if retried
+     */
+    static final Set<Integer> RETRYABLE_STATUS_CODES = Set.of(
+        HttpStatus.SC_TOO_MANY_REQUESTS,
+        HttpStatus.SC_INTERNAL_SERVER_ERROR,
+        HttpStatus.SC_BAD_GATEWAY,
+        HttpStatus.SC_SERVICE_UNAVAILABLE,
+        HttpStatus.SC_GATEWAY_TIMEOUT);
+
+    /**
+     * methods that may be retried without side effects
+     */
+    static final Set<String> IDEMPOTENT_METHODS = Set.of(HttpMethods.GET, HttpMethods.HEAD);
+
+    @Builder.Default
+    int maxRetries = 0;
+
+    @Builder.Default
+    Duration baseDelay = Duration.ofMillis(500);
+
+    @Builder.Default
+    Duration maxDelay = Duration.ofSeconds(20);
+
+    @Builder.Default
+    Duration timeBudget = Duration.ofSeconds(20);
+
+    @Builder.Default
+    Clock clock = Clock.systemUTC();
+
+    @Builder.Default
+    Sleeper sleeper = Sleeper.DEFAULT;
+
+    public static UpstreamRetryPolicy fromConfig(@NonNull ConfigService config) {
+        UpstreamRetryPolicyBuilder builder = UpstreamRetryPolicy.builder();
+        config.getConfigPropertyAsOptional(ConfigProperty.UPSTREAM_RETRY_MAX_ATTEMPTS)
+            .map(String::trim)
+            .map(Integer::parseInt)
+            .ifPresent(builder::maxRetries);
+        config.getConfigPropertyAsOptional(ConfigProperty.UPSTREAM_RETRY_BASE_DELAY_MS)
+            .map(String::trim)
+            .map(Long::parseLong)
+            .map(Duration::ofMillis)
+            .ifPresent(builder::baseDelay);
+        config.getConfigPropertyAsOptional(ConfigProperty.UPSTREAM_RETRY_MAX_DELAY_MS)
+            .map(String::trim)
+            .map(Long::parseLong)
+            .map(Duration::ofMillis)
+            .ifPresent(builder::maxDelay);
+        config.getConfigPropertyAsOptional(ConfigProperty.UPSTREAM_RETRY_TIME_BUDGET_MS)
+            .map(String::trim)
+            .map(Long::parseLong)
+            .map(Duration::ofMillis)
+            .ifPresent(builder::timeBudget);
+
+        UpstreamRetryPolicy policy = builder.build();
+        Preconditions.checkArgument(policy.getMaxRetries() >= 0, "%s must not be negative", ConfigProperty.UPSTREAM_RETRY_MAX_ATTEMPTS);
+        Preconditions.checkArgument(policy.getBaseDelay().compareTo(policy.getMaxDelay()) <= 0,
+            "%s must not exceed %s", ConfigProperty.UPSTREAM_RETRY_BASE_DELAY_MS, ConfigProperty.UPSTREAM_RETRY_MAX_DELAY_MS);
+        return policy;
+    }
+
+    /**
+     * @param config to read rate limit from
+     * @return limiter of calls to source, if rate limit configured; empty otherwise
+     */
+    public static Optional<TokenBucket> rateLimiterFromConfig(@NonNull ConfigService config) {
+        Optional<Double> permitsPerSecond = config.getConfigPropertyAsOptional(ConfigProperty.UPSTREAM_RATE_LIMIT_PER_SECOND)
+            .map(String::trim)
+            .map(Double::parseDouble)
+            .filter(rate -> rate > 0);
+        return permitsPerSecond.map(rate -> new TokenBucket(rate,
+            config.getConfigPropertyAsOptional(ConfigProperty.UPSTREAM_RATE_LIMIT_BURST)
+                .map(String::trim)
+                .map(Double::parseDouble)
+                .orElse(Math.max(1, rate))));
+    }
+
+    /**
+     * @param requestReceived when request to proxy was received
+     * @return deadline for final attempt of call to source
+     */
+    public Instant deadline(@NonNull Instant requestReceived) {
+        return requestReceived.plus(timeBudget);
+    }
+
+    /**
+     * @return time remaining until deadline; zero if passed
+     */
+    public Duration remaining(@NonNull Instant deadline) {
+        Duration remaining = Duration.between(clock.instant(), deadline);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    /**
+     * configure request to be retried per this policy, if it's idempotent; otherwise left as-is
+     *
+     * @param request     to source
+     * @param deadline    for final attempt
+     * @param rateLimiter to take a token from before each retry, if any
+     */
+    public void apply(@NonNull HttpRequest request, @NonNull Instant deadline, TokenBucket rateLimiter) {
+        if (maxRetries <= 0 || !IDEMPOTENT_METHODS.contains(request.getRequestMethod())) {
+            return;
+        }
+        request.setNumberOfRetries(maxRetries);
+        // preserve any existing handler (eg, credentials' refresh of token on 401)
+        request.setUnsuccessfulResponseHandler(
+            new RetryHandler(request.getUnsuccessfulResponseHandler(), deadline, rateLimiter));
+    }
+
+    /**
+     * @param value of `Retry-After` header; either delay in seconds, or HTTP-date
+     * @param now   to compute delay until HTTP-date relative to
+     * @return delay requested, if value valid; empty otherwise
+     */
+    static Optional<Duration> parseRetryAfter(String value, @NonNull Instant now) {
+        if (StringUtils.isBlank(value)) {
+            return Optional.empty();
+        }
+        String trimmed = value.trim();
+        if (StringUtils.isNumeric(trimmed)) {
+            return Optional.of(Duration.ofSeconds(Long.parseLong(trimmed)));
+        }
+        try {
+            Duration delay = Duration.between(now, ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+            return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param previous delay before previous retry (or base delay, if none)
+     * @return delay before next retry, random between base delay and 3x previous, capped at max
+     */
+    @VisibleForTesting
+    Duration decorrelatedJitter(@NonNull Duration previous) {
+        long base = baseDelay.toMillis();
+        long upper = Math.max(base, Math.min(maxDelay.toMillis(), previous.toMillis() * 3));
+        return Duration.ofMillis(upper > base ? ThreadLocalRandom.current().nextLong(base, upper + 1) : base);
+    }
+
+    /**
+     * state of retries for a single request to source
+     */
+    class RetryHandler implements HttpUnsuccessfulResponseHandler {
+
+        final HttpUnsuccessfulResponseHandler delegate;
+
+        final Instant deadline;
+
+        final TokenBucket rateLimiter;
+
+        Duration previousDelay = baseDelay;
+
+        int retries = 0;
+
+        RetryHandler(HttpUnsuccessfulResponseHandler delegate, Instant deadline, TokenBucket rateLimiter) {
+            this.delegate = delegate;
+            this.deadline = deadline;
+            this.rateLimiter = rateLimiter;
+        }
+
+        @Override
+        public boolean handleResponse(HttpRequest request, HttpResponse response, boolean supportsRetry) throws IOException {
+            if (delegate != null && delegate.handleResponse(request, response, supportsRetry)) {
+                return true;
+            }
+            if (!supportsRetry || !RETRYABLE_STATUS_CODES.contains(response.getStatusCode())) {
+                return false;
+            }
+
+            Optional<Duration> retryAfter =
+                parseRetryAfter(response.getHeaders().getFirstHeaderStringValue(HttpHeaders.RETRY_AFTER), clock.instant());
+            Duration delay;
+            if (retryAfter.isPresent()) {
+                delay = retryAfter.get();
+            } else {
+                delay = decorrelatedJitter(previousDelay);
+                previousDelay = delay;
+            }
+
+            Duration remaining = remaining(deadline);
+            if (delay.compareTo(remaining) > 0) {
+                log.warning(String.format("Source responded %d; not retrying, as delay of %d ms exceeds remaining time budget of %d ms",
+                    response.getStatusCode(), delay.toMillis(), remaining.toMillis()));
+                return false;
+            }
+
+            try {
+                sleeper.sleep(delay.toMillis());
+                if (rateLimiter != null && !rateLimiter.tryAcquire(remaining.minus(delay))) {
+                    log.warning(String.format("Source responded %d; not retrying, as rate limit would be exceeded within remaining time budget",
+                        response.getStatusCode()));
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            retries++;
+            log.info(String.format("Source responded %d; retry %d of %d, after %d ms%s",
+                response.getStatusCode(), retries, maxRetries, delay.toMillis(), retryAfter.isPresent() ? " (per Retry-After)" : ""));
+            return true;
+        }
+    }
+}
@@ -8,8 +8,6 @@ import com.google.api.client.http.UrlEncodedContent;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.webtoken.JsonWebSignature;
 import com.google.api.client.json.webtoken.JsonWebToken;
-import com.google.api.client.util.PemReader;
-import com.google.api.client.util.SecurityUtils;
 import com.google.common.annotations.VisibleForTesting;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -23,21 +21,13 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.Period;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.logging.Level;
 
 /**
  * implementation of an Access Token Request (per RFC6749 4.4.2) authenticated by an assertion (RFC 7521)
@@ -101,6 +91,8 @@ public class ClientCredentialsGrantTokenRequestBuilder
     Clock clock;
     @Inject
     Provider<UUID> uuidGenerator;
+    @Inject
+    CredentialMaterialCache credentialMaterialCache;
 
     @Override
     public Set<ConfigService.ConfigProperty> getRequiredConfigProperties() {
@@ -140,6 +132,9 @@ public class ClientCredentialsGrantTokenRequestBuilder
     /**
      * build JWT assertion to authenticate client based on config
      *
+     * assertions are re-used until shortly before they expire, and the private key is parsed only
+     * when its value in the secret store changes
+     *
      * @param clientId both subject + issuer of token
      * @param audience for the token (the endpoint/service being called)
      * @return JWT assertion as a string
@@ -153,10 +148,19 @@ public class ClientCredentialsGrantTokenRequestBuilder
 
         setJWTCustomHeaders(header);
 
-        JsonWebToken.Payload payload = buildPayload(clientId, audience);
+        Instant now = clock.instant();
+        PrivateKey privateKey = getServiceAccountPrivateKey(now);
 
-        return JsonWebSignature.signUsingRsaSha256(
-                getServiceAccountPrivateKey(), jsonFactory, header, payload);
+        //everything that goes into assertion, other than time-dependent claims + jti
+        String assertionCacheKey = String.join("|",
+            getClass().getName(), clientId, audience, Objects.toString(header.getX509Thumbprint(), ""));
+
+        return credentialMaterialCache.getSignedAssertion(assertionCacheKey, now, () -> {
+            JsonWebToken.Payload payload = buildPayload(clientId, audience, now);
+            return new CredentialMaterialCache.SignedAssertion(
+                JsonWebSignature.signUsingRsaSha256(privateKey, jsonFactory, header, payload),
+                Instant.ofEpochSecond(payload.getExpirationTimeSeconds()));
+        });
     }
 
     @VisibleForTesting
@@ -209,9 +213,8 @@ public class ClientCredentialsGrantTokenRequestBuilder
         return data;
     }
 
-    private JsonWebToken.Payload buildPayload(String clientId, String audience) {
+    private JsonWebToken.Payload buildPayload(String clientId, String audience, Instant currentTime) {
         JsonWebToken.Payload payload = new JsonWebToken.Payload();
-        Instant currentTime = clock.instant();
 
         payload.setAudience(audience);
 
@@ -235,30 +238,12 @@ public class ClientCredentialsGrantTokenRequestBuilder
         return Base64.getUrlEncoder().encodeToString(fromHex);
     }
 
-    private PrivateKey getServiceAccountPrivateKey() throws IOException {
+    private PrivateKey getServiceAccountPrivateKey(Instant now) throws IOException {
 
         ConfigService.ConfigValueWithMetadata value = secretStore.getConfigPropertyWithMetadata(ConfigProperty.PRIVATE_KEY)
             .orElseThrow(() -> new NoSuchElementException("No PRIVATE_KEY found in secret store"));
 
-        value.getLastModifiedDate().ifPresent(lastModified -> {
-            if (lastModified.isBefore(clock.instant().minus(180, ChronoUnit.DAYS))) {
-                log.log(Level.WARNING, "Private key last modified in secret store more than 180 days ago, may be expired");
-            }
-        });
-
-        Reader reader = new StringReader(value.getValue());
-        PemReader.Section section = PemReader.readFirstSectionAndClose(reader, "PRIVATE KEY");
-        if (section == null) {
-            throw new IOException("Invalid PKCS8 data.");
-        }
-        byte[] bytes = section.getBase64DecodedBytes();
-        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(bytes);
-        try {
-            KeyFactory keyFactory = SecurityUtils.getRsaKeyFactory();
-            return keyFactory.generatePrivate(keySpec);
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException exception) {
-            throw new IOException("Unexpected exception reading PKCS data", exception);
-        }
+        return credentialMaterialCache.getPrivateKey(ConfigProperty.PRIVATE_KEY.name(), now, value);
     }
 
     private CredentialFlowType getCredentialsType() {
@@ -0,0 +1,202 @@
+package co.worklytics.psoxy.gateway.impl.oauth;
+
+import co.worklytics.psoxy.gateway.ConfigService;
+import com.google.api.client.util.PemReader;
+import com.google.api.client.util.SecurityUtils;
+import com.google.common.annotations.VisibleForTesting;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.java.Log;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.StringReader;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * caches credential material derived from secrets, so that token refreshes don't re-parse the
+ * same private key and re-sign assertions that are still valid.
+ *
+ *  - parsed private keys are kept until the value of the secret from which they were parsed changes
+ *  - signed assertions are re-used until shortly before they expire
+ *
+ * shared across all token request builders of the process, which matters when many instances
+ * (eg, shards) cold-start at once and all need to refresh tokens.
+ */
+@Log
+@Singleton
+@NoArgsConstructor(onConstructor_ = @Inject)
+public class CredentialMaterialCache {
+
+    /**
+     * how long before its expiration to stop re-using a signed assertion; should cover clock skew
+     * between us and the token endpoint + the time to complete the token request
+     */
+    @VisibleForTesting
+    static final Duration ASSERTION_EXPIRATION_MARGIN = Duration.ofMinutes(1);
+
+    /**
+     * age of key material, beyond which we warn that it may be expired
+     */
+    private static final Duration KEY_AGE_WARNING_THRESHOLD = Duration.of(180, ChronoUnit.DAYS);
+
+    private final Map<String, ParsedPrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    private final Map<String, SignedAssertion> assertions = new ConcurrentHashMap<>();
+
+    private final AtomicLong keysParsed = new AtomicLong();
+    private final AtomicLong assertionsSigned = new AtomicLong();
+    private final AtomicLong assertionCacheHits = new AtomicLong();
+    private final AtomicLong signingNanos = new AtomicLong();
+
+    @FunctionalInterface
+    public interface AssertionSigner {
+
+        /**
+         * @return freshly signed assertion
+         */
+        SignedAssertion sign() throws IOException, GeneralSecurityException;
+    }
+
+    @Value
+    public static class SignedAssertion {
+
+        /**
+         * serialized assertion (eg, JWT in compact serialization)
+         */
+        @NonNull
+        String value;
+
+        /**
+         * when assertion expires (`exp` claim, in JWT case)
+         */
+        @NonNull
+        Instant expiresAt;
+    }
+
+    @Value
+    static class ParsedPrivateKey {
+
+        /**
+         * value of secret from which key was parsed; if this changes, key must be re-parsed
+         */
+        String source;
+
+        PrivateKey privateKey;
+    }
+
+    @Value
+    public static class Stats {
+        long keysParsed;
+        long assertionsSigned;
+        long assertionCacheHits;
+        Duration totalSigningTime;
+    }
+
+    /**
+     * @param cacheKey identifies key material (eg, the config property it's stored in)
+     * @param now      effective time of check
+     * @param value    current value of the secret holding PKCS8 PEM-encoded private key
+     * @return parsed private key; from cache, unless value of the secret changed since it was parsed
+     * @throws IOException if value can't be parsed as PKCS8 private key
+     */
+    public PrivateKey getPrivateKey(@NonNull String cacheKey,
+                                    @NonNull Instant now,
+                                    @NonNull ConfigService.ConfigValueWithMetadata value) throws IOException {
+        ParsedPrivateKey cached = privateKeys.get(cacheKey);
+        if (cached != null && Objects.equals(cached.getSource(), value.getValue())) {
+            return cached.getPrivateKey();
+        }
+
+        value.getLastModifiedDate().ifPresent(lastModified -> {
+            if (lastModified.isBefore(now.minus(KEY_AGE_WARNING_THRESHOLD))) {
+                log.log(Level.WARNING, "Private key last modified in secret store more than 180 days ago, may be expired");
+            }
+        });
+
+        PrivateKey privateKey = parsePkcs8PrivateKey(value.getValue());
+        keysParsed.incrementAndGet();
+
+        //key changed, so any assertions signed with prior version shouldn't be re-used
+        if (cached != null) {
+            assertions.clear();
+        }
+
+        privateKeys.put(cacheKey, new ParsedPrivateKey(value.getValue(), privateKey));
+        return privateKey;
+    }
+
+    /**
+     * @param cacheKey identifies everything that went into assertion, other than time-dependent
+     *                 claims (eg, issuer, subject, audience, key)
+     * @param now      effective time of check
+     * @param signer   to sign a new assertion, if no re-usable one is cached
+     * @return serialized assertion, re-used if one was cached that doesn't expire soon
+     */
+    public String getSignedAssertion(@NonNull String cacheKey,
+                                     @NonNull Instant now,
+                                     @NonNull AssertionSigner signer) throws IOException, GeneralSecurityException {
+        SignedAssertion cached = assertions.get(cacheKey);
+        if (cached != null && now.isBefore(cached.getExpiresAt().minus(ASSERTION_EXPIRATION_MARGIN))) {
+            assertionCacheHits.incrementAndGet();
+            return cached.getValue();
+        }
+
+        long start = System.nanoTime();
+        SignedAssertion signed = signer.sign();
+        long elapsed = System.nanoTime() - start;
+
+        assertionsSigned.incrementAndGet();
+        signingNanos.addAndGet(elapsed);
+        log.log(Level.FINE, "Signed new assertion in {0}ms", Duration.ofNanos(elapsed).toMillis());
+
+        assertions.put(cacheKey, signed);
+        return signed.getValue();
+    }
+
+    /**
+     * @return metrics about usage of this cache, since process start
+     */
+    public Stats getStats() {
+        return new Stats(keysParsed.get(),
+            assertionsSigned.get(),
+            assertionCacheHits.get(),
+            Duration.ofNanos(signingNanos.get()));
+    }
+
+    @VisibleForTesting
+    void invalidateAll() {
+        privateKeys.clear();
+        assertions.clear();
+    }
+
+    private PrivateKey parsePkcs8PrivateKey(String pem) throws IOException {
+        PemReader.Section section = PemReader.readFirstSectionAndClose(new StringReader(pem), "PRIVATE KEY");
+        if (section == null) {
+            throw new IOException("Invalid PKCS8 data.");
+        }
+        byte[] bytes = section.getBase64DecodedBytes();
+        PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(bytes);
+        try {
+            KeyFactory keyFactory = SecurityUtils.getRsaKeyFactory();
+            return keyFactory.generatePrivate(keySpec);
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException exception) {
+            throw new IOException("Unexpected exception reading PKCS data", exception);
+        }
+    }
+}
@@ -6,18 +6,24 @@ import co.worklytics.psoxy.RESTApiSanitizer;
 import co.worklytics.psoxy.gateway.ConfigService;
 import co.worklytics.psoxy.gateway.ProxyConfigProperty;
 import co.worklytics.psoxy.rules.RESTRules;
+import co.worklytics.psoxy.utils.EmailAddresses;
+import co.worklytics.psoxy.utils.StageTimings;
 import co.worklytics.psoxy.utils.URLUtils;
 import com.avaulta.gateway.pseudonyms.Pseudonym;
 import com.avaulta.gateway.pseudonyms.PseudonymEncoder;
 import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
 import com.avaulta.gateway.pseudonyms.impl.UrlSafeTokenPseudonymEncoder;
+import com.avaulta.gateway.rules.CompiledJsonPath;
 import com.avaulta.gateway.rules.Endpoint;
 import com.avaulta.gateway.rules.JsonSchemaFilter;
+import com.avaulta.gateway.rules.JsonPathCompiler;
+import com.avaulta.gateway.rules.JsonPathSpecializer;
 import com.avaulta.gateway.rules.JsonSchemaFilterUtils;
 import com.avaulta.gateway.rules.ParameterSchemaUtils;
 import com.avaulta.gateway.rules.transforms.EncryptIp;
 import com.avaulta.gateway.rules.transforms.HashIp;
 import com.avaulta.gateway.rules.PathTemplateUtils;
+import com.avaulta.gateway.rules.RegexEngine;
 import com.avaulta.gateway.rules.transforms.Transform;
 import com.avaulta.gateway.tokens.DeterministicTokenizationStrategy;
 import com.avaulta.gateway.tokens.ReversibleTokenizationStrategy;
@@ -26,20 +32,19 @@ import com.google.common.base.Preconditions;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.MapFunction;
+import com.jayway.jsonpath.Option;
 import dagger.assisted.Assisted;
 import dagger.assisted.AssistedInject;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.java.Log;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria;
-import org.hazlewood.connor.bottema.emailaddress.EmailAddressParser;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import javax.mail.internet.InternetAddress;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -72,7 +77,30 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
     Map<Endpoint, Pattern> compiledAllowedEndpoints;
 
     private final Object $writeLock = new Object[0];
-    Map<Transform, List<JsonPath>> compiledTransforms = new ConcurrentHashMap<>();
+
+    // NOTE: Endpoint has identity equality, so cheap to key by
+    Map<Endpoint, TransformPlan> transformPlans = new ConcurrentHashMap<>();
+
+    /**
+     * whether to replace deep scans ('$..') in transforms of endpoints with a response schema with
+     * the concrete paths that schema permits
+     */
+    @Setter(onMethod_ = {@VisibleForTesting})
+    boolean specializeDeepScans = true;
+
+    /**
+     * whether to apply consecutive transforms with simple JsonPaths in a single traversal of
+     * document, rather than path by path
+     */
+    @Setter(onMethod_ = {@VisibleForTesting})
+    boolean mergeTraversals = true;
+
+    /**
+     * whether to apply transforms' JsonPaths, where possible, as compiled directly against parsed
+     * document, rather than as interpreted by JsonPath
+     */
+    @Setter(onMethod_ = {@VisibleForTesting})
+    boolean compileJsonPaths = true;
 
     JsonSchemaFilter rootDefinitions;
 
@@ -100,6 +128,10 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
     @Inject
     PathTemplateUtils pathTemplateUtils;
     @Inject
+    JsonPathSpecializer jsonPathSpecializer;
+    @Inject
+    JsonPathCompiler jsonPathCompiler;
+    @Inject
     ConfigService configService;
 
     @Inject @Named("ipEncryptionStrategy")
@@ -139,7 +171,7 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
             String filteredJson = match.getValue().getResponseSchemaOptional()
                     .map(schema -> {
                         //q: this read
-                        try {
+                        try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.FILTER)) {
                             return jsonSchemaFilterUtils.filterJsonBySchema(jsonResponse, schema, getRootDefinitions());
                         } catch (Exception e) {
                             throw new RuntimeException(e);
@@ -157,8 +189,15 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
             if (ObjectUtils.isNotEmpty(match.getValue().getTransforms())) {
                 Object document = jsonConfiguration.jsonProvider().parse(filteredJson);
 
-                for (Transform transform : match.getValue().getTransforms()) {
-                    applyTransform(transform, document);
+                List<Transform> transforms = match.getValue().getTransforms();
+                TransformPlan plan = transformPlans.computeIfAbsent(match.getValue(), this::planTransforms);
+                for (TransformPlan.Step step : plan.getSteps()) {
+                    if (step instanceof TransformPlan.Traversal) {
+                        applyTraversal(transforms, (TransformPlan.Traversal) step, document);
+                    } else {
+                        TransformPlan.PerPath perPath = (TransformPlan.PerPath) step;
+                        applyTransform(transforms.get(perPath.getTransformIndex()), perPath.getPaths(), document);
+                    }
                 }
 
                 filteredJson = jsonConfiguration.jsonProvider().toJson(document);
@@ -169,28 +208,89 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
     }
 
 
-    Object applyTransform(Transform transform, Object document) {
-        List<JsonPath> paths = compiledTransforms.computeIfAbsent(transform,
-                t -> t.getJsonPaths().stream()
-                        .map(JsonPath::compile)
-                        .collect(Collectors.toList()));
+    /**
+     * @param endpoint whose transforms to plan
+     * @return plan for applying endpoint's transforms; where endpoint has a response schema, deep
+     * scans are specialized to the concrete paths that schema permits
+     */
+    TransformPlan planTransforms(Endpoint endpoint) {
+        List<List<String>> jsonPaths = new ArrayList<>(endpoint.getTransforms().size());
+        for (Transform transform : endpoint.getTransforms()) {
+            Stream<String> paths = transform.getJsonPaths().stream();
+            if (specializeDeepScans && endpoint.getResponseSchemaOptional().isPresent()) {
+                paths = paths.flatMap(path -> jsonPathSpecializer.specialize(path,
+                        endpoint.getResponseSchemaOptional().get(), rules.getDefinitions())
+                    .map(List::stream)
+                    .orElse(Stream.of(path)));
+            }
+            jsonPaths.add(paths.collect(Collectors.toList()));
+        }
+        Function<String, Optional<CompiledJsonPath>> compiler = compileJsonPaths
+            ? jsonPathCompiler::compile
+            : path -> Optional.empty();
+        return mergeTraversals
+            ? TransformPlan.plan(endpoint.getTransforms(), jsonPaths, compiler)
+            : TransformPlan.perPath(endpoint.getTransforms(), jsonPaths, compiler);
+    }
+
+    /**
+     * apply transforms of traversal to document; timed as a single span, as transforms' work is
+     * interleaved, attributed to pseudonymization only if all of them are
+     */
+    void applyTraversal(List<Transform> transforms, TransformPlan.Traversal traversal, Object document) {
+        List<Transform> applied = traversal.getTransformIndexes().stream()
+            .map(transforms::get)
+            .collect(Collectors.toList());
+        StageTimings.Stage stage = applied.stream().allMatch(t -> stageOf(t) == StageTimings.Stage.PSEUDONYMIZE)
+            ? StageTimings.Stage.PSEUDONYMIZE : StageTimings.Stage.TRANSFORM;
+        try (StageTimings.Span span = StageTimings.start(stage,
+            () -> applied.stream().map(t -> String.valueOf(t.getJsonPaths())).collect(Collectors.joining(" ")))) {
+            MapFunction[] functions = new MapFunction[transforms.size()];
+            for (int i : traversal.getTransformIndexes()) {
+                if (!(transforms.get(i) instanceof Transform.Redact)) {
+                    MapFunction f = getTransformImpl(transforms.get(i));
+                    functions[i] = (value, configuration) -> {
+                        span.count(1);
+                        return f.map(value, configuration);
+                    };
+                }
+            }
+            traversal.apply(document, functions, jsonConfiguration);
+        }
+    }
 
+    /**
+     * apply transform to document, path by path; by compiled path, if any, unless document's
+     * content is such that it can't be certain to match as JsonPath would
+     * <p>
+     * paths that match nothing - the usual case for many rules - are no-ops, rather than signalled
+     * by exceptions
+     */
+    Object applyTransform(Transform transform, List<TransformPlan.Path> paths, Object document) {
         if (transformApplies(transform, document)) {
-            if (transform instanceof Transform.Redact) {
-                for (JsonPath path : paths) {
-                    try {
-                        path.delete(document, jsonConfiguration);
-                    } catch (com.jayway.jsonpath.PathNotFoundException e) {
-                        //expected if rule doesn't apply
+            Configuration lenientConfiguration = jsonConfiguration.addOptions(Option.SUPPRESS_EXCEPTIONS);
+            try (StageTimings.Span span = StageTimings.start(stageOf(transform), () -> String.valueOf(transform.getJsonPaths()))) {
+                if (transform instanceof Transform.Redact) {
+                    for (TransformPlan.Path path : paths) {
+                        if (path.getCompiled() != null && path.getCompiled().delete(document)) {
+                            continue;
+                        }
+                        // fall back to JsonPath
+                        path.getInterpreted().delete(document, lenientConfiguration);
                     }
-                }
-            } else {
-                MapFunction f = getTransformImpl(transform);
-                for (JsonPath path : paths) {
-                    try {
-                        path.map(document, f, jsonConfiguration);
-                    } catch (com.jayway.jsonpath.PathNotFoundException e) {
-                        //expected if rule doesn't apply
+                } else {
+                    MapFunction f = getTransformImpl(transform);
+                    MapFunction counted = (value, configuration) -> {
+                        span.count(1);
+                        return f.map(value, configuration);
+                    };
+                    for (TransformPlan.Path path : paths) {
+                        if (path.getCompiled() != null
+                            && path.getCompiled().map(document, value -> counted.map(value, jsonConfiguration))) {
+                            continue;
+                        }
+                        // fall back to JsonPath
+                        path.getInterpreted().map(document, counted, lenientConfiguration);
                     }
                 }
             }
@@ -198,7 +298,18 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
         return document;
     }
 
-    private static boolean transformApplies(Transform transform, Object document) {
+    private static StageTimings.Stage stageOf(Transform transform) {
+        if (transform instanceof Transform.Pseudonymize
+            || transform instanceof Transform.PseudonymizeEmailHeader
+            || transform instanceof Transform.PseudonymizeRegexMatches) {
+            return StageTimings.Stage.PSEUDONYMIZE;
+        } else {
+            return StageTimings.Stage.TRANSFORM;
+        }
+    }
+
+    @VisibleForTesting
+    static boolean transformApplies(Transform transform, Object document) {
         if (transform.getApplyOnlyWhen() != null) {
             Object filterResult = JsonPath.compile(transform.getApplyOnlyWhen()).read(document);
 
@@ -301,8 +412,17 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
     }
 
 
+    /**
+     * @return engine with which to evaluate regexes supplied by rules; endpoints' path regexes, which
+     * are matched against (short) URL paths, and use named groups, are always evaluated by Java's
+     */
+    RegexEngine regexEngine() {
+        // rules may not be set, if transforms used directly (eg, in tests of rules)
+        return RegexEngine.orDefault(rules == null ? null : rules.getRegexEngine());
+    }
+
     MapFunction getRedactRegexMatches(Transform.RedactRegexMatches transform) {
-        List<Pattern> patterns = transform.getRedactions().stream().map(Pattern::compile).collect(Collectors.toList());
+        List<RegexEngine.Regex> patterns = transform.getRedactions().stream().map(regexEngine()::compile).collect(Collectors.toList());
         return (s, jsonConfiguration) -> {
             if (!(s instanceof String)) {
                 if (s != null) {
@@ -313,8 +433,8 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
                 return s;
             } else {
                 String result = (String) s;
-                for (Pattern p : patterns) {
-                    result = p.matcher(result).replaceAll("");
+                for (RegexEngine.Regex p : patterns) {
+                    result = p.replaceAll(result, "");
                 }
                 return result;
             }
@@ -322,9 +442,9 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
     }
 
     MapFunction getRedactExceptSubstringsMatchingRegexes(Transform.RedactExceptSubstringsMatchingRegexes transform) {
-        List<Pattern> patterns = transform.getExceptions().stream()
+        List<RegexEngine.Regex> patterns = transform.getExceptions().stream()
                 .map(p -> ".*(" + p + ").*") //wrap in .* to match anywhere in the string
-                .map(Pattern::compile).collect(Collectors.toList());
+                .map(regexEngine()::compile).collect(Collectors.toList());
         return (s, jsonConfiguration) -> {
             if (!(s instanceof String)) {
                 if (s != null) {
@@ -336,7 +456,7 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
             } else {
                 return patterns.stream()
                         .map(p -> p.matcher((String) s))
-                        .filter(Matcher::matches)
+                        .filter(RegexEngine.Matcher::matches)
                         .findFirst()
                         .map(m -> m.group(1))
                         .orElse("");
@@ -345,9 +465,8 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
     }
 
     MapFunction getFilterTokenByRegex(Transform.FilterTokenByRegex transform) {
-        List<java.util.function.Predicate<String>> patterns =
-                transform.getFilters().stream().map(Pattern::compile)
-                        .map(Pattern::asMatchPredicate)
+        List<RegexEngine.Regex> patterns =
+                transform.getFilters().stream().map(regexEngine()::compile)
                         .collect(Collectors.toList());
 
         return (s, jsonConfiguration) -> {
@@ -365,14 +484,14 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
                         .orElse(Stream.of(result));
 
                 return StringUtils.trimToNull(stream
-                        .filter(token -> patterns.stream().anyMatch(p -> p.test(token)))
+                        .filter(token -> patterns.stream().anyMatch(p -> p.matches(token)))
                         .collect(Collectors.joining(" ")));
             }
         };
     }
 
     MapFunction getTokenize(Transform.Tokenize transform) {
-        Optional<Pattern> pattern = Optional.ofNullable(transform.getRegex()).map(Pattern::compile);
+        Optional<RegexEngine.Regex> pattern = Optional.ofNullable(transform.getRegex()).map(regexEngine()::compile);
         return (s, jsonConfiguration) -> {
             if (!(s instanceof String)) {
                 if (s != null) {
@@ -383,7 +502,7 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
                 return s;
             } else {
                 String toTokenize = (String) s;
-                Optional<Matcher> matcher = pattern
+                Optional<RegexEngine.Matcher> matcher = pattern
                         .map(p -> p.matcher(toTokenize));
                 if (matcher.isPresent()) {
                     if (matcher.get().matches()) {
@@ -430,12 +549,12 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
 
 
     public MapFunction getPseudonymizeRegexMatches(Transform.PseudonymizeRegexMatches transform) {
-        Pattern pattern = Pattern.compile(transform.getRegex());
+        RegexEngine.Regex pattern = regexEngine().compile(transform.getRegex());
 
         return (Object s, Configuration configuration) -> {
 
             String fullString = (String) s;
-            Matcher matcher = pattern.matcher(fullString);
+            RegexEngine.Matcher matcher = pattern.matcher(fullString);
 
             if (matcher.matches()) {
                 String toPseudonymize;
@@ -499,13 +618,9 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
         if (StringUtils.isBlank((String) value)) {
             return new ArrayList<>();
         } else {
-            //NOTE: this does NOT seem to work for lists containing empty values (eg ",,"), which
-            // per RFC should be allowed ....
-            if (EmailAddressParser.isValidAddressList((String) value, EmailAddressCriteria.RECOMMENDED)) {
-                InternetAddress[] addresses =
-                        EmailAddressParser.extractHeaderAddresses((String) value, EmailAddressCriteria.RECOMMENDED, true);
-                return Arrays.stream(addresses)
-                        .map(InternetAddress::getAddress)
+            List<String> addresses = EmailAddresses.parseAddressList((String) value);
+            if (addresses != null) {
+                return addresses.stream()
                         .map(pseudonymizer::pseudonymize)
                         .collect(Collectors.toList());
             } else {
@@ -540,7 +655,7 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
                 .orElse(true);
         return matchesAllowed
                 && endpoint.getQueryParamSchemasOptional()
-                    .map(schemas -> parameterSchemaUtils.validateAll(schemas, queryParams))
+                    .map(schemas -> parameterSchemaUtils.validateAll(schemas, queryParams, regexEngine()))
                     .orElse(true);
     }
 
@@ -598,7 +713,7 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
                     boolean allParamsValid =
                         entry.getKey().getPathParameterSchemasOptional()
                             .map(schemas -> schemas.entrySet().stream()
-                                .allMatch(paramSchema -> parameterSchemaUtils.validate(paramSchema.getValue(), matcher.group(paramSchema.getKey()))))
+                                .allMatch(paramSchema -> parameterSchemaUtils.validate(paramSchema.getValue(), matcher.group(paramSchema.getKey()), regexEngine())))
                             .orElse(true);
 
                     //q: need to catch possible IllegalArgumentException if path parameter defined in `pathParameterSchemas`
@@ -628,7 +743,8 @@ public class RESTApiSanitizerImpl implements RESTApiSanitizer {
     }
 
 
-    private Optional<Pair<Pattern, Endpoint>> getEndpoint(String httpMethod, URL url) {
+    @VisibleForTesting
+    Optional<Pair<Pattern, Endpoint>> getEndpoint(String httpMethod, URL url) {
         String relativeUrl = stripTargetHostPath(URLUtils.relativeURL(url));
 
         Predicate<Map.Entry<Endpoint, Pattern>> hasPathRegexMatchingUrl =
@@ -0,0 +1,383 @@
+package co.worklytics.psoxy.impl;
+
+import com.avaulta.gateway.rules.CompiledJsonPath;
+import com.avaulta.gateway.rules.transforms.Transform;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.MapFunction;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * plan for applying an endpoint's transforms to a document, in steps
+ * <p>
+ * consecutive transforms whose JsonPaths are all simple (properties and wildcards only, eg
+ * `$.value[*].attendees[*].email`) are merged into a single {@link Traversal} of a tree of their
+ * paths' segments, so a prefix shared by many paths is walked once rather than once per path.
+ * Others - deep scans, filters, array indexes, conditional transforms - are applied
+ * {@link PerPath}, as JsonPath would (or by equivalent {@link CompiledJsonPath}s).
+ * <p>
+ * Traversal applies same changes as applying its transforms per path in declared order:
+ * <ul>
+ *   <li>each transform maps or removes values, independently of any other value, so changes to
+ *   values in disjoint subtrees commute</li>
+ *   <li>at each node, changes to it are interleaved with descents to its descendants such that
+ *   changes to any node and its ancestors are made in declared order (eg, a value redacted by an
+ *   earlier transform isn't there for a later one to pseudonymize)</li>
+ *   <li>no node is matched by two branches of tree, as a node never has both a wildcard child and
+ *   named ones</li>
+ * </ul>
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class TransformPlan {
+
+    /**
+     * applied in order
+     */
+    final List<Step> steps;
+
+    interface Step {
+
+    }
+
+    /**
+     * transform applied by JsonPath, path by path
+     */
+    @Value
+    static class PerPath implements Step {
+
+        int transformIndex;
+
+        List<Path> paths;
+    }
+
+    /**
+     * path as interpreted by JsonPath, and compiled, if it can be
+     */
+    @Value
+    static class Path {
+
+        JsonPath interpreted;
+
+        /**
+         * null if path can't be compiled
+         */
+        CompiledJsonPath compiled;
+    }
+
+    /**
+     * transforms applied by a single traversal of document
+     */
+    @Value
+    static class Traversal implements Step {
+
+        /**
+         * indexes of transforms traversal applies, in order
+         */
+        List<Integer> transformIndexes;
+
+        Node root;
+
+        /**
+         * @param functions to apply for each transform, by transform index; null for redactions
+         */
+        void apply(Object document, MapFunction[] functions, Configuration configuration) {
+            root.descend(document, 0, Integer.MAX_VALUE, functions, configuration);
+        }
+    }
+
+    /**
+     * @param transforms of endpoint
+     * @param jsonPaths  to apply each transform to, by transform index (eg, after specialization)
+     * @param compiler   to compile paths of transforms applied per path, if it can
+     * @return plan that merges traversals where possible
+     */
+    static TransformPlan plan(@NonNull List<Transform> transforms, @NonNull List<List<String>> jsonPaths,
+                              @NonNull Function<String, Optional<CompiledJsonPath>> compiler) {
+        List<Step> steps = new ArrayList<>();
+        Node root = null;
+        List<Integer> traversed = new ArrayList<>();
+        int ordinal = 0;
+        for (int i = 0; i < transforms.size(); i++) {
+            Optional<Node> tree = tree(transforms.get(i), i, jsonPaths.get(i), ordinal);
+            if (tree.isPresent() && root != null && root.compatible(tree.get())) {
+                root.merge(tree.get());
+                traversed.add(i);
+            } else {
+                if (root != null) {
+                    steps.add(new Traversal(List.copyOf(traversed), root));
+                    root = null;
+                    traversed.clear();
+                }
+                if (tree.isPresent()) {
+                    root = tree.get();
+                    traversed.add(i);
+                } else {
+                    steps.add(perPath(i, jsonPaths.get(i), compiler));
+                }
+            }
+            ordinal += jsonPaths.get(i).size();
+        }
+        if (root != null) {
+            steps.add(new Traversal(List.copyOf(traversed), root));
+        }
+        return new TransformPlan(steps);
+    }
+
+    /**
+     * @return plan that applies each transform path by path, as JsonPath would
+     */
+    static TransformPlan perPath(@NonNull List<Transform> transforms, @NonNull List<List<String>> jsonPaths,
+                                 @NonNull Function<String, Optional<CompiledJsonPath>> compiler) {
+        List<Step> steps = new ArrayList<>(transforms.size());
+        for (int i = 0; i < transforms.size(); i++) {
+            steps.add(perPath(i, jsonPaths.get(i), compiler));
+        }
+        return new TransformPlan(steps);
+    }
+
+    static PerPath perPath(int transformIndex, List<String> jsonPaths,
+                           Function<String, Optional<CompiledJsonPath>> compiler) {
+        return new PerPath(transformIndex, jsonPaths.stream()
+            .map(jsonPath -> new Path(JsonPath.compile(jsonPath), compiler.apply(jsonPath).orElse(null)))
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * @param ordinal of transform's first path, among all paths of all transforms
+     * @return tree of transform's paths, if all can be traversed
+     */
+    static Optional<Node> tree(Transform transform, int transformIndex, List<String> jsonPaths, int ordinal) {
+        if (transform.getApplyOnlyWhen() != null) {
+            // condition must be evaluated against document as transformed by all prior transforms
+            return Optional.empty();
+        }
+        boolean redact = transform instanceof Transform.Redact;
+        Node root = new Node();
+        for (String jsonPath : jsonPaths) {
+            Optional<List<String>> segments = segments(jsonPath);
+            if (segments.isEmpty()
+                || (redact && segments.get().get(segments.get().size() - 1) == null)) {
+                // redacting array items shifts indexes of those after them
+                return Optional.empty();
+            }
+            Node tree = new Node();
+            Node leaf = tree;
+            for (String segment : segments.get()) {
+                leaf = leaf.child(segment);
+            }
+            leaf.actions.add(new Action(ordinal++, transformIndex, redact));
+            if (!root.compatible(tree)) {
+                return Optional.empty();
+            }
+            root.merge(tree);
+        }
+        return Optional.of(root);
+    }
+
+    static final Pattern PROPERTY = Pattern.compile("^\\.([A-Za-z_$@][A-Za-z0-9_$@\\-]*)");
+    static final Pattern QUOTED_PROPERTY = Pattern.compile("^\\[\\s*(?:'([^'\",\\\\]+)'|\"([^'\",\\\\]+)\")\\s*]");
+    static final Pattern WILDCARD = Pattern.compile("^(\\.\\*|\\[\\s*\\*\\s*])");
+
+    /**
+     * @return segments of jsonPath, as property names or null for wildcards; if only of those
+     */
+    static Optional<List<String>> segments(String jsonPath) {
+        if (!jsonPath.startsWith("$")) {
+            return Optional.empty();
+        }
+        List<String> segments = new ArrayList<>();
+        String remaining = jsonPath.substring(1).trim();
+        while (!remaining.isEmpty()) {
+            Matcher matcher;
+            if ((matcher = PROPERTY.matcher(remaining)).find()) {
+                segments.add(matcher.group(1));
+            } else if ((matcher = QUOTED_PROPERTY.matcher(remaining)).find()) {
+                segments.add(Optional.ofNullable(matcher.group(1)).orElse(matcher.group(2)));
+            } else if ((matcher = WILDCARD.matcher(remaining)).find()) {
+                segments.add(null);
+            } else {
+                return Optional.empty();
+            }
+            remaining = remaining.substring(matcher.end());
+        }
+        return segments.isEmpty() ? Optional.empty() : Optional.of(segments);
+    }
+
+    /**
+     * change to make to value matched by a path
+     */
+    @Value
+    static class Action {
+
+        /**
+         * order among all paths of all transforms of endpoint
+         */
+        int ordinal;
+
+        int transformIndex;
+
+        boolean redact;
+    }
+
+    /**
+     * node of tree of path segments; either has named children, or a wildcard child
+     */
+    static class Node {
+
+        final Map<String, Node> properties = new LinkedHashMap<>();
+
+        Node wildcard;
+
+        /**
+         * changes to make to values matched by this node, by ordinal
+         */
+        final List<Action> actions = new ArrayList<>();
+
+        /**
+         * range of ordinals of actions of this node's descendants
+         */
+        int minDescendantOrdinal = Integer.MAX_VALUE;
+        int maxDescendantOrdinal = Integer.MIN_VALUE;
+
+        Node child(String segment) {
+            if (segment == null) {
+                if (wildcard == null) {
+                    wildcard = new Node();
+                }
+                return wildcard;
+            } else {
+                return properties.computeIfAbsent(segment, s -> new Node());
+            }
+        }
+
+        /**
+         * @return whether other can be merged into this, without a node having both wildcard and
+         * named children
+         */
+        boolean compatible(Node other) {
+            boolean hasWildcard = wildcard != null || other.wildcard != null;
+            boolean hasProperties = !properties.isEmpty() || !other.properties.isEmpty();
+            if (hasWildcard && hasProperties) {
+                return false;
+            }
+            if (wildcard != null && other.wildcard != null && !wildcard.compatible(other.wildcard)) {
+                return false;
+            }
+            for (Map.Entry<String, Node> property : other.properties.entrySet()) {
+                Node existing = properties.get(property.getKey());
+                if (existing != null && !existing.compatible(property.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * merge other, all of whose actions must be ordered after those of this
+         */
+        void merge(Node other) {
+            actions.addAll(other.actions);
+            if (other.wildcard != null) {
+                mergeChild(null, other.wildcard);
+            }
+            other.properties.forEach(this::mergeChild);
+        }
+
+        private void mergeChild(String segment, Node other) {
+            Node child = child(segment);
+            child.merge(other);
+            minDescendantOrdinal = Math.min(minDescendantOrdinal, Math.min(child.minDescendantOrdinal, child.minOrdinal()));
+            maxDescendantOrdinal = Math.max(maxDescendantOrdinal, Math.max(child.maxDescendantOrdinal, child.maxOrdinal()));
+        }
+
+        private int minOrdinal() {
+            return actions.isEmpty() ? Integer.MAX_VALUE : actions.get(0).ordinal;
+        }
+
+        private int maxOrdinal() {
+            return actions.isEmpty() ? Integer.MIN_VALUE : actions.get(actions.size() - 1).ordinal;
+        }
+
+        /**
+         * make changes with ordinals in [from, to) to value at key of container, and its descendants
+         *
+         * @param key property name, if container is an object; otherwise, index in array
+         */
+        void apply(Object container, Object key, int from, int to,
+                   MapFunction[] functions, Configuration configuration) {
+            JsonProvider provider = configuration.jsonProvider();
+            int next = from;
+            for (Action action : actions) {
+                if (action.ordinal < from || action.ordinal >= to) {
+                    continue;
+                }
+                // changes to descendants ordered before this one
+                descend(value(provider, container, key), next, action.ordinal, functions, configuration);
+
+                Object value = value(provider, container, key);
+                if (value != JsonProvider.UNDEFINED) {
+                    if (action.redact) {
+                        provider.removeProperty(container, key);
+                    } else if (key instanceof Integer) {
+                        provider.setArrayIndex(container, (Integer) key, functions[action.transformIndex].map(value, configuration));
+                    } else {
+                        provider.setProperty(container, key, functions[action.transformIndex].map(value, configuration));
+                    }
+                }
+                next = action.ordinal + 1;
+            }
+            descend(value(provider, container, key), next, to, functions, configuration);
+        }
+
+        /**
+         * make changes with ordinals in [from, to) to descendants of value
+         */
+        void descend(Object value, int from, int to, MapFunction[] functions, Configuration configuration) {
+            if (from >= to || maxDescendantOrdinal < from || minDescendantOrdinal >= to) {
+                return;
+            }
+            JsonProvider provider = configuration.jsonProvider();
+            if (wildcard != null) {
+                if (provider.isArray(value)) {
+                    int length = provider.length(value);
+                    for (int i = 0; i < length; i++) {
+                        wildcard.apply(value, i, from, to, functions, configuration);
+                    }
+                } else if (provider.isMap(value)) {
+                    // copy, as actions may remove properties
+                    for (String key : new ArrayList<>(provider.getPropertyKeys(value))) {
+                        wildcard.apply(value, key, from, to, functions, configuration);
+                    }
+                }
+            } else if (provider.isMap(value)) {
+                for (Map.Entry<String, Node> property : properties.entrySet()) {
+                    property.getValue().apply(value, property.getKey(), from, to, functions, configuration);
+                }
+            }
+        }
+
+        private static Object value(JsonProvider provider, Object container, Object key) {
+            if (key instanceof Integer) {
+                return provider.getArrayIndex(container, (Integer) key);
+            } else {
+                return provider.isMap(container) ? provider.getMapValue(container, (String) key) : JsonProvider.UNDEFINED;
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package co.worklytics.psoxy.rules;
 
 import com.avaulta.gateway.rules.Endpoint;
 import com.avaulta.gateway.rules.JsonSchemaFilter;
+import com.avaulta.gateway.rules.RegexEngine;
 
 import java.io.Serializable;
 import java.util.List;
@@ -19,5 +20,10 @@ public interface RESTRules extends RuleSet, Serializable {
      */
     Map<String, JsonSchemaFilter> getDefinitions();
 
+    /**
+     * engine with which to evaluate regexes of rules; if null, JAVA
+     */
+    RegexEngine getRegexEngine();
+
 
 }
@@ -3,6 +3,7 @@ package co.worklytics.psoxy.rules;
 
 import com.avaulta.gateway.rules.Endpoint;
 import com.avaulta.gateway.rules.JsonSchemaFilter;
+import com.avaulta.gateway.rules.RegexEngine;
 import com.avaulta.gateway.rules.transforms.Transform;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
@@ -43,6 +44,14 @@ public class Rules2 implements RESTRules {
     @Builder.Default
     Boolean allowAllEndpoints = false;
 
+    /**
+     * engine with which to evaluate regexes of endpoints' transforms and parameter schemas; if
+     * null, JAVA
+     *
+     * @see RegexEngine
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    RegexEngine regexEngine;
 
 
     Map<String, JsonSchemaFilter> definitions;
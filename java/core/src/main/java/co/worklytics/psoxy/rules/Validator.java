@@ -2,6 +2,7 @@ package co.worklytics.psoxy.rules;
 
 import com.avaulta.gateway.pseudonyms.PseudonymEncoder;
 import com.avaulta.gateway.rules.*;
+import com.avaulta.gateway.rules.transforms.FieldTransform;
 import com.avaulta.gateway.rules.transforms.Transform;
 import com.google.common.base.Preconditions;
 import com.jayway.jsonpath.JsonPath;
@@ -13,12 +14,15 @@ import org.apache.commons.lang3.StringUtils;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.apache.commons.lang3.ObjectUtils.isEmpty;
 
@@ -50,10 +54,14 @@ public class Validator {
             !Collections.disjoint(rules.getColumnsToRedact(), rules.getColumnsToDuplicate().values())) {
             log.log(Level.WARNING, "Replacing columns produced via columnsToDuplicate is nonsensical");
         }
+
+        validateRegexes(rules, rules.getRegexEngine());
     }
 
     public void validate(@NonNull RecordRules rules) {
         Preconditions.checkNotNull(rules.getFormat());
+        Preconditions.checkArgument(rules.getRecordsPath() == null || rules.getFormat() == RecordRules.Format.JSON,
+            "recordsPath only applies to JSON format");
     }
 
     public void validate(@NonNull MultiTypeBulkDataRules rules) {
@@ -84,6 +92,85 @@ public class Validator {
 
     public void validate(@NonNull Rules2 rules) {
         rules.getEndpoints().forEach(this::validate);
+
+        validateRegexes(rules, rules.getRegexEngine());
+    }
+
+    /**
+     * @throws Error if any regex of rules can't be evaluated by engine that rules select
+     */
+    void validateRegexes(@NonNull com.avaulta.gateway.rules.RuleSet rules, RegexEngine regexEngine) {
+        Map<String, String> incompatible = incompatibleRegexes(rules, RegexEngine.orDefault(regexEngine));
+        if (!incompatible.isEmpty()) {
+            throw new Error("Regexes not supported by regex engine " + RegexEngine.orDefault(regexEngine) + ":\n" +
+                incompatible.entrySet().stream()
+                    .map(e -> e.getKey() + " - " + e.getValue())
+                    .collect(Collectors.joining("\n")));
+        }
+    }
+
+    /**
+     * regexes of rules that engine can't evaluate; eg, to check whether rules written for JAVA may
+     * switch to RE2J, which can't evaluate backreferences, lookaround, etc.
+     *
+     * @param rules   to check
+     * @param engine  to check regexes against
+     * @return regex --> why engine can't evaluate it; empty if engine can evaluate all
+     */
+    public Map<String, String> incompatibleRegexes(@NonNull com.avaulta.gateway.rules.RuleSet rules,
+                                                   @NonNull RegexEngine engine) {
+        Map<String, String> incompatible = new LinkedHashMap<>();
+        regexes(rules).distinct()
+            .forEach(regex -> engine.incompatibility(regex).ifPresent(reason -> incompatible.put(regex, reason)));
+        return incompatible;
+    }
+
+    /**
+     * @return regexes of rules evaluated by rules' RegexEngine, as they'll be compiled
+     */
+    Stream<String> regexes(com.avaulta.gateway.rules.RuleSet rules) {
+        if (rules instanceof Rules2) {
+            return ((Rules2) rules).getEndpoints().stream()
+                .flatMap(endpoint -> Stream.concat(
+                    Stream.of(endpoint.getPathParameterSchemasOptional(), endpoint.getQueryParamSchemasOptional())
+                        .flatMap(schemas -> schemas.map(Map::values).map(Collection::stream).orElse(Stream.empty()))
+                        .map(ParameterSchema::getPattern),
+                    endpoint.getTransforms().stream().flatMap(this::regexes)))
+                .filter(StringUtils::isNotEmpty);
+        } else if (rules instanceof ColumnarRules) {
+            return ((ColumnarRules) rules).getFieldsToTransform().values().stream()
+                .flatMap(pipeline -> pipeline.getTransforms().stream())
+                .map(transform -> {
+                    if (transform instanceof FieldTransform.Filter) {
+                        return ((FieldTransform.Filter) transform).getFilter();
+                    } else if (transform instanceof FieldTransform.JavaRegExpReplace) {
+                        return ((FieldTransform.JavaRegExpReplace) transform).getRegExp();
+                    } else {
+                        return null;
+                    }
+                })
+                .filter(StringUtils::isNotEmpty);
+        } else {
+            return Stream.empty();
+        }
+    }
+
+    Stream<String> regexes(Transform transform) {
+        if (transform instanceof Transform.RedactRegexMatches) {
+            return ((Transform.RedactRegexMatches) transform).getRedactions().stream();
+        } else if (transform instanceof Transform.RedactExceptSubstringsMatchingRegexes) {
+            // as wrapped by RESTApiSanitizerImpl
+            return ((Transform.RedactExceptSubstringsMatchingRegexes) transform).getExceptions().stream()
+                .map(p -> ".*(" + p + ").*");
+        } else if (transform instanceof Transform.FilterTokenByRegex) {
+            return ((Transform.FilterTokenByRegex) transform).getFilters().stream();
+        } else if (transform instanceof Transform.PseudonymizeRegexMatches) {
+            return Stream.of(((Transform.PseudonymizeRegexMatches) transform).getRegex());
+        } else if (transform instanceof Transform.Tokenize) {
+            return Stream.of(((Transform.Tokenize) transform).getRegex());
+        } else {
+            return Stream.empty();
+        }
     }
 
     void validate(@NonNull Endpoint endpoint) {
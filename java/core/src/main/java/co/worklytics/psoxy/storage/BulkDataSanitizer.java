@@ -2,9 +2,8 @@ package co.worklytics.psoxy.storage;
 
 import co.worklytics.psoxy.Pseudonymizer;
 
-import java.io.IOException;
-import java.io.Reader;
-import java.io.Writer;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 
 /**
  * sanitize bulk data content according to rules
@@ -25,4 +24,33 @@ public interface BulkDataSanitizer {
     void sanitize(Reader reader,
                   Writer writer,
                   Pseudonymizer pseudonymizer) throws IOException;
+
+    /**
+     * as {@link #sanitize(Reader, Writer, Pseudonymizer)}, but over streams of UTF-8 encoded
+     * content.
+     *
+     * implementations that can work directly on bytes should override this, to avoid decoding /
+     * re-encoding content that they don't need to transform.
+     *
+     * @param input         stream of source content
+     * @param output        stream to which sanitized content should be written
+     * @param pseudonymizer The pseudonymizer to use
+     * @throws IOException  IO problem reading or writing
+     */
+    default void sanitize(InputStream input,
+                          OutputStream output,
+                          Pseudonymizer pseudonymizer) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+             Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            sanitize(reader, writer, pseudonymizer);
+        }
+    }
+
+    /**
+     * @return whether content is line-oriented text; if not (eg, Parquet), it can't be validated by
+     * sanitizing just its first few lines
+     */
+    default boolean isLineOriented() {
+        return true;
+    }
 }
@@ -0,0 +1,219 @@
+package co.worklytics.psoxy.storage;
+
+import com.google.common.base.Preconditions;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * compression codecs supported for bulk data input/output
+ *
+ * input codec is detected from content's magic bytes (see {@link #detect(InputStream)}), with
+ * object metadata ('Content-Encoding') and filename extension as hints; output codec is chosen
+ * independently, via {@link co.worklytics.psoxy.gateway.BulkModeConfigProperty#OUTPUT_COMPRESSION}
+ */
+@RequiredArgsConstructor
+public enum CompressionCodec {
+
+    NONE(null, null, new byte[0], 0) {
+        @Override
+        public InputStream decompress(@NonNull InputStream in, int bufferSize) {
+            return in;
+        }
+
+        @Override
+        public OutputStream compress(@NonNull OutputStream out, int bufferSize, @NonNull Options options) {
+            return out;
+        }
+    },
+
+    /**
+     * RFC 1952; multi-member streams (such as written by {@link ParallelGzipOutputStream}) are
+     * decompressed to concatenated content
+     */
+    GZIP("gzip", ".gz", new byte[]{0x1f, (byte) 0x8b}, Deflater.DEFAULT_COMPRESSION) {
+        @Override
+        public InputStream decompress(@NonNull InputStream in, int bufferSize) throws IOException {
+            return new GZIPInputStream(in, bufferSize);
+        }
+
+        @Override
+        public OutputStream compress(@NonNull OutputStream out, int bufferSize, @NonNull Options options) throws IOException {
+            int level = options.getLevel() == null ? getDefaultLevel() : options.getLevel();
+            if (options.getThreads() > 1) {
+                return new ParallelGzipOutputStream(new BufferedOutputStream(out, bufferSize), options.getBlockSize(), options.getThreads(), level);
+            } else {
+                return new LeveledGZIPOutputStream(out, bufferSize, level);
+            }
+        }
+    },
+
+    /**
+     * RFC 8878; much faster than gzip, at similar or better compression ratio. Multi-threaded
+     * compression is done natively by zstd, so {@link Options#getBlockSize()} is ignored
+     *
+     * only available if deployment bundles zstd-jni (see {@link ZstdSupport}); still detected
+     * without it, so such input fails with clear error rather than being treated as uncompressed
+     */
+    ZSTD("zstd", ".zst", new byte[]{0x28, (byte) 0xb5, 0x2f, (byte) 0xfd}, 3) {
+        @Override
+        public InputStream decompress(@NonNull InputStream in, int bufferSize) throws IOException {
+            ZstdSupport.checkAvailable();
+            return new BufferedInputStream(ZstdStreams.decompress(in), bufferSize);
+        }
+
+        @Override
+        public OutputStream compress(@NonNull OutputStream out, int bufferSize, @NonNull Options options) throws IOException {
+            ZstdSupport.checkAvailable();
+            int level = options.getLevel() == null ? getDefaultLevel() : options.getLevel();
+            return ZstdStreams.compress(new BufferedOutputStream(out, bufferSize), level, options.getThreads());
+        }
+    },
+    ;
+
+    /**
+     * value of 'Content-Encoding' for content compressed with this codec, if any
+     */
+    @Getter
+    @Nullable
+    private final String contentEncoding;
+
+    /**
+     * conventional filename extension for content compressed with this codec, if any
+     */
+    @Getter
+    @Nullable
+    private final String extension;
+
+    private final byte[] magicBytes;
+
+    @Getter
+    private final int defaultLevel;
+
+    private static final int MAX_MAGIC_BYTES_LENGTH = 4;
+
+    /**
+     * options for compressing output
+     */
+    @Builder
+    @Value
+    public static class Options {
+
+        /**
+         * compression level; if null, codec's default
+         */
+        Integer level;
+
+        /**
+         * number of threads over which to parallelize compression
+         */
+        @Builder.Default
+        int threads = 1;
+
+        /**
+         * size of blocks to compress independently, if codec parallelizes by splitting into blocks
+         */
+        @Builder.Default
+        int blockSize = 1_048_576;
+    }
+
+    /**
+     * @param in         compressed with this codec
+     * @param bufferSize to use, if codec buffers
+     * @return stream of decompressed content
+     */
+    public abstract InputStream decompress(InputStream in, int bufferSize) throws IOException;
+
+    /**
+     * @param out        to which to write compressed content
+     * @param bufferSize to use, if codec buffers
+     * @param options    for compression
+     * @return stream to which to write uncompressed content; closing it finishes compression and
+     * closes out
+     */
+    public abstract OutputStream compress(OutputStream out, int bufferSize, Options options) throws IOException;
+
+    /**
+     * detect codec from magic bytes at start of content, leaving stream positioned at start
+     *
+     * as magic bytes of supported codecs aren't valid UTF-8 sequences, text content is never
+     * mistaken for compressed content
+     *
+     * @param in from which to peek content; must support mark/reset
+     * @return codec with which content is compressed; NONE if not recognized
+     */
+    public static CompressionCodec detect(@NonNull InputStream in) throws IOException {
+        Preconditions.checkArgument(in.markSupported(), "Stream must support mark/reset");
+
+        byte[] prefix = new byte[MAX_MAGIC_BYTES_LENGTH];
+        int length = 0;
+        in.mark(MAX_MAGIC_BYTES_LENGTH);
+        try {
+            int read;
+            while (length < prefix.length && (read = in.read(prefix, length, prefix.length - length)) != -1) {
+                length += read;
+            }
+        } finally {
+            in.reset();
+        }
+
+        for (CompressionCodec codec : values()) {
+            if (codec.magicBytes.length > 0
+                && length >= codec.magicBytes.length
+                && Arrays.equals(codec.magicBytes, Arrays.copyOf(prefix, codec.magicBytes.length))) {
+                return codec;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @param contentEncoding value of 'Content-Encoding' metadata, if any
+     * @return codec indicated by it, if it's a supported compression
+     */
+    public static Optional<CompressionCodec> fromContentEncoding(@Nullable String contentEncoding) {
+        return Arrays.stream(values())
+            .filter(codec -> codec.contentEncoding != null)
+            .filter(codec -> StringUtils.equalsIgnoreCase(codec.contentEncoding, StringUtils.trim(contentEncoding)))
+            .findFirst();
+    }
+
+    /**
+     * @param path of object
+     * @return codec indicated by its extension, if any
+     */
+    public static Optional<CompressionCodec> fromPath(@NonNull String path) {
+        return Arrays.stream(values())
+            .filter(codec -> codec.extension != null)
+            .filter(codec -> path.endsWith(codec.extension))
+            .findFirst();
+    }
+
+    /**
+     * @param name of codec, case-insensitive; eg, 'gzip', 'zstd', 'none'
+     * @return codec
+     * @throws IllegalArgumentException if no such codec
+     * @throws IllegalStateException if codec isn't bundled in this deployment
+     */
+    public static CompressionCodec parse(@NonNull String name) {
+        CompressionCodec codec = Arrays.stream(values())
+            .filter(c -> c.name().equalsIgnoreCase(name.trim()))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("Unsupported compression codec: " + name
+                + "; expected one of " + Arrays.toString(values())));
+        if (codec == ZSTD) {
+            ZstdSupport.checkAvailable();
+        }
+        return codec;
+    }
+}
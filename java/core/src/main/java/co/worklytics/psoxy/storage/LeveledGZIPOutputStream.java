@@ -0,0 +1,27 @@
+package co.worklytics.psoxy.storage;
+
+import com.google.common.base.Preconditions;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link GZIPOutputStream} at a given compression level, rather than always the default
+ */
+public class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+    /**
+     * @param out        to write compressed content to
+     * @param bufferSize output buffer size
+     * @param level      compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public LeveledGZIPOutputStream(@NonNull OutputStream out, int bufferSize, int level) throws IOException {
+        super(out, bufferSize);
+        Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION),
+            "Invalid compression level: %s", level);
+        def.setLevel(level);
+    }
+}
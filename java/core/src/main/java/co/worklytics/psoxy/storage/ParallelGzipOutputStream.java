@@ -0,0 +1,215 @@
+package co.worklytics.psoxy.storage;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * gzip-compresses blocks of content in parallel, pigz-style, writing them to the underlying
+ * stream in order
+ *
+ * each block is written as a complete gzip member (RFC 1952, section 2.2), so output is a
+ * standard multi-member gzip stream, which any gzip decoder (including
+ * {@link java.util.zip.GZIPInputStream}) decompresses to the concatenated content. Compared
+ * to single-threaded {@link java.util.zip.GZIPOutputStream}, compression ratio is slightly worse,
+ * as back-references can't cross block boundaries.
+ *
+ * as with {@link java.util.zip.GZIPOutputStream}, {@link #flush()} doesn't force out content
+ * that's been written but not yet compressed; only {@link #close()} does.
+ *
+ * not thread-safe; expects to be written from a single thread.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    // ID1, ID2, CM (deflate), FLG, MTIME (4 bytes), XFL, OS; as written by GZIPOutputStream
+    private static final byte[] MEMBER_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final int MEMBER_TRAILER_LENGTH = 8;
+
+    private final OutputStream out;
+
+    private final int blockSize;
+
+    private final int level;
+
+    private final int maxBlocksInFlight;
+
+    private final ExecutorService executor;
+
+    private final Deque<Future<byte[]>> inFlight;
+
+    private byte[] block;
+
+    private int blockLength;
+
+    private boolean anyBlockSubmitted = false;
+
+    private boolean closed = false;
+
+    /**
+     * @param out       to write compressed content to
+     * @param blockSize size, in bytes, of uncompressed blocks to compress independently
+     * @param threads   number of threads to compress blocks on
+     * @param level     compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public ParallelGzipOutputStream(@NonNull OutputStream out, int blockSize, int threads, int level) {
+        Preconditions.checkArgument(blockSize > 0, "blockSize must be positive");
+        Preconditions.checkArgument(threads > 0, "threads must be positive");
+        Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION),
+            "Invalid compression level: %s", level);
+
+        this.out = out;
+        this.blockSize = blockSize;
+        this.level = level;
+        // enough that workers don't wait for blocks to be written, while bounding memory used
+        this.maxBlocksInFlight = 2 * threads;
+        this.inFlight = new ArrayDeque<>(maxBlocksInFlight);
+        this.block = new byte[blockSize];
+        this.executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder()
+                .setNameFormat("gzip-compressor-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if (blockLength == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int toCopy = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, toCopy);
+            blockLength += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * writes any blocks that have already been compressed, and flushes underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        while (!inFlight.isEmpty() && inFlight.peekFirst().isDone()) {
+            writeMember(inFlight.removeFirst());
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            // at least one member, so that even empty content is a valid gzip stream
+            if (blockLength > 0 || !anyBlockSubmitted) {
+                submitBlock();
+            }
+            while (!inFlight.isEmpty()) {
+                writeMember(inFlight.removeFirst());
+            }
+        } finally {
+            closed = true;
+            executor.shutdownNow();
+            // even if compressing/writing a block failed, so underlying stream isn't leaked
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (inFlight.size() >= maxBlocksInFlight) {
+            writeMember(inFlight.removeFirst());
+        }
+
+        byte[] toCompress = block;
+        int length = blockLength;
+        inFlight.addLast(executor.submit(() -> compress(toCompress, length, level)));
+        anyBlockSubmitted = true;
+
+        block = new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private void writeMember(Future<byte[]> member) throws IOException {
+        try {
+            out.write(member.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for block to be compressed", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress block", e.getCause());
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * @return gzip member holding content
+     */
+    static byte[] compress(byte[] content, int length, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(content, 0, length);
+            deflater.finish();
+
+            // generally much smaller than content; grows if not
+            ByteArrayOutputStream member = new ByteArrayOutputStream(MEMBER_HEADER.length + length / 2 + 64);
+            member.write(MEMBER_HEADER, 0, MEMBER_HEADER.length);
+            byte[] buffer = new byte[Math.max(512, Math.min(length, 65_536))];
+            while (!deflater.finished()) {
+                int deflated = deflater.deflate(buffer);
+                member.write(buffer, 0, deflated);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(content, 0, length);
+
+            byte[] trailer = new byte[MEMBER_TRAILER_LENGTH];
+            writeIntLittleEndian(trailer, 0, (int) crc.getValue());
+            writeIntLittleEndian(trailer, 4, length); // ISIZE is input size mod 2^32
+            member.write(trailer, 0, trailer.length);
+            return member.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeIntLittleEndian(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+}
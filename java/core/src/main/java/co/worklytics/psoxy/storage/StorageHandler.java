@@ -3,6 +3,7 @@ package co.worklytics.psoxy.storage;
 import co.worklytics.psoxy.Pseudonymizer;
 import co.worklytics.psoxy.gateway.*;
 import co.worklytics.psoxy.rules.RulesUtils;
+import co.worklytics.psoxy.utils.StageTimings;
 import com.avaulta.gateway.rules.BulkDataRules;
 import com.avaulta.gateway.rules.MultiTypeBulkDataRules;
 import com.avaulta.gateway.rules.PathTemplateUtils;
@@ -21,8 +22,6 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * solves a DaggerMissingBinding exception in tests
@@ -35,8 +34,11 @@ public class StorageHandler {
     // as writing to remote storage, err on size of larger buffer
     private static final int DEFAULT_BUFFER_SIZE = 1_048_576; //1 MB
 
-    private static final String CONTENT_ENCODING_GZIP = "gzip";
-    public static final String EXTENSION_GZIP = ".gz";
+    private static final int DEFAULT_OUTPUT_COMPRESSION_THREADS = 1;
+
+    private static final int DEFAULT_OUTPUT_COMPRESSION_BLOCK_SIZE = 1_048_576; //1 MB
+
+    public static final String EXTENSION_GZIP = CompressionCodec.GZIP.getExtension();
 
     /**
      * how many lines to process as a 'validation' of the file/transform/etc; if fails, then we abort
@@ -67,10 +69,10 @@ public class StorageHandler {
     PathTemplateUtils pathTemplateUtils;
 
     static void warnIfEncodingDoesNotMatchFilename(@NonNull StorageEventRequest request, @Nullable String contentEncoding) {
-        if (request.getSourceObjectPath().endsWith(EXTENSION_GZIP)
-            && !StringUtils.equals(contentEncoding, CONTENT_ENCODING_GZIP)) {
-            log.warning("Input filename ends with .gz, but 'Content-Encoding' metadata is not 'gzip'; is this correct? Decompression is based on object's 'Content-Encoding'");
-        }
+        CompressionCodec.fromPath(request.getSourceObjectPath())
+            .filter(codec -> !StringUtils.equalsIgnoreCase(contentEncoding, codec.getContentEncoding()))
+            .ifPresent(codec -> log.warning("Input filename ends with " + codec.getExtension() + ", but 'Content-Encoding' metadata is not '"
+                + codec.getContentEncoding() + "'; is this correct? Decompression is based on object's content"));
     }
 
     @RequiredArgsConstructor
@@ -141,16 +143,22 @@ public class StorageHandler {
                 .map(inputBasePath -> sourceObjectPath.replace(inputBasePath, ""))
                 .orElse(sourceObjectPath);
 
-        boolean isSourceCompressed = isSourceCompressed(sourceContentEncoding, sourceObjectPath);
+        Optional<CompressionCodec> sourceCodec = sourceCompression(sourceContentEncoding, sourceObjectPath);
+
+        // unless configured otherwise, output follows the input
+        CompressionCodec outputCodec = config.getConfigPropertyAsOptional(BulkModeConfigProperty.OUTPUT_COMPRESSION)
+            .filter(StringUtils::isNotBlank)
+            .map(CompressionCodec::parse)
+            .orElse(sourceCodec.orElse(CompressionCodec.NONE));
 
         StorageEventRequest request = StorageEventRequest.builder()
             .sourceBucketName(sourceBucketName)
             .sourceObjectPath(sourceObjectPath)
             .destinationBucketName(transform.getDestinationBucketName())
-            .destinationObjectPath(transform.getPathWithinBucket() + sourceObjectPathWithinBase)
-            .decompressInput(isSourceCompressed)
-            //TODO: specify compressOutput as part of the rule. For now, follow the input
-            .compressOutput(isSourceCompressed)
+            .destinationObjectPath(destinationObjectPath(transform.getPathWithinBucket() + sourceObjectPathWithinBase, sourceCodec, outputCodec))
+            .decompressInput(sourceCodec.isPresent())
+            .compressOutput(outputCodec != CompressionCodec.NONE)
+            .outputCodec(outputCodec)
             .build();
 
         warnIfEncodingDoesNotMatchFilename(request, sourceContentEncoding);
@@ -304,6 +312,13 @@ public class StorageHandler {
     void validate(StorageEventRequest request,
                   StorageHandler.ObjectTransform transform,
                   Supplier<InputStream> inputStreamSupplier) {
+        Optional<BulkDataRules> applicableRules =
+            getApplicableRules(transform.getRules(), request.getSourceObjectPath());
+        if (applicableRules.isPresent() && !bulkDataSanitizerFactory.get(applicableRules.get()).isLineOriented()) {
+            // eg, Parquet; structure (schema, etc) is validated from its footer, before any rows are written
+            return;
+        }
+
         int bufferSize = getBufferSize();
         try (
             InputStream inputStream = readInputStream(request, bufferSize, inputStreamSupplier);
@@ -346,27 +361,38 @@ public class StorageHandler {
 
         try (
             InputStream inputStream = readInputStream(request, bufferSize, inputStreamSupplier);
-            Reader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), bufferSize);
-            OutputStream outputStream = writeOutputStream(request, bufferSize, outputStreamSupplier);
-            OutputStreamWriter writer = new OutputStreamWriter(outputStream)
+            OutputStream outputStream = writeOutputStream(request, bufferSize, outputStreamSupplier)
         ) {
 
-            Optional<BulkDataRules> applicableRules =
-                getApplicableRules(transform.getRules(), request.getSourceObjectPath());
+            BulkDataSanitizer fileHandler;
+            try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.CONFIG)) {
+                Optional<BulkDataRules> applicableRules =
+                    getApplicableRules(transform.getRules(), request.getSourceObjectPath());
 
-            if (applicableRules.isEmpty()) {
-                throw new IllegalArgumentException("No applicable rules found for " + request.getSourceObjectPath());
-            }
+                if (applicableRules.isEmpty()) {
+                    throw new IllegalArgumentException("No applicable rules found for " + request.getSourceObjectPath());
+                }
 
-            BulkDataSanitizer fileHandler = bulkDataSanitizerFactory.get(applicableRules.get());
+                fileHandler = bulkDataSanitizerFactory.get(applicableRules.get());
+            }
 
-            fileHandler.sanitize(reader, writer, pseudonymizer);
+            // sanitization streams from input to output, so this includes reading/writing (and any
+            // (de)compression of) the files
+            try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.TRANSFORM, request.getSourceObjectPath())) {
+                // sanitizers that can work directly on bytes (eg, CSV) avoid decoding columns they don't transform
+                fileHandler.sanitize(inputStream, outputStream, pseudonymizer);
+            }
         }
 
     }
 
     /**
      * Reads an input stream, decompressing if necessary
+     *
+     * codec is detected from content's magic bytes, rather than trusted from metadata; so
+     * compressed content lacking 'Content-Encoding' is still decompressed, and content that's
+     * labeled as compressed but isn't (eg, decompressed in transit) is read as-is
+     *
      * @param request
      * @param bufferSize
      * @param inputStreamSupplier
@@ -374,7 +400,12 @@ public class StorageHandler {
      * @throws IOException
      */
     private InputStream readInputStream(StorageEventRequest request, int bufferSize, Supplier<InputStream> inputStreamSupplier) throws IOException {
-        return request.getDecompressInput() ? new GZIPInputStream(inputStreamSupplier.get(), bufferSize) : inputStreamSupplier.get();
+        InputStream inputStream = new BufferedInputStream(inputStreamSupplier.get(), bufferSize);
+        CompressionCodec codec = CompressionCodec.detect(inputStream);
+        if (request.getDecompressInput() && codec == CompressionCodec.NONE) {
+            log.warning("Input " + request.getSourceObjectPath() + " expected to be compressed per its metadata, but content is not; reading as-is");
+        }
+        return codec.decompress(inputStream, bufferSize);
     }
 
     /**
@@ -386,17 +417,67 @@ public class StorageHandler {
      * @throws IOException
      */
     private OutputStream writeOutputStream(StorageEventRequest request, int bufferSize, Supplier<OutputStream> outputStreamSupplier) throws IOException {
-        return request.getCompressOutput() ? new GZIPOutputStream(outputStreamSupplier.get(), bufferSize) : outputStreamSupplier.get();
+        if (!request.getCompressOutput()) {
+            return outputStreamSupplier.get();
+        }
+
+        CompressionCodec.Options options = CompressionCodec.Options.builder()
+            .level(config.getConfigPropertyAsOptional(BulkModeConfigProperty.OUTPUT_COMPRESSION_LEVEL)
+                .map(Integer::parseInt)
+                .orElse(null))
+            .threads(config.getConfigPropertyAsOptional(BulkModeConfigProperty.OUTPUT_COMPRESSION_THREADS)
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_OUTPUT_COMPRESSION_THREADS))
+            .blockSize(config.getConfigPropertyAsOptional(BulkModeConfigProperty.OUTPUT_COMPRESSION_BLOCK_SIZE)
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_OUTPUT_COMPRESSION_BLOCK_SIZE))
+            .build();
+
+        return request.getOutputCodec().compress(outputStreamSupplier.get(), bufferSize, options);
     }
 
     /**
-     * Check if the source content is compressed based on file's content encoding or assuming it's
-     * encoded if extension is .gz
-     * @param contentEncoding
-     * @return
+     * compression of source content, as indicated by its 'Content-Encoding' or, failing that,
+     * its filename extension
+     *
+     * NOTE: this is a hint; content is actually decompressed per its magic bytes
+     *
+     * @param contentEncoding of source object, if any
+     * @param sourceObjectPath of source object
+     * @return codec with which source is expected to be compressed, if any
+     */
+    Optional<CompressionCodec> sourceCompression(@Nullable String contentEncoding, String sourceObjectPath) {
+        Optional<CompressionCodec> fromContentEncoding = CompressionCodec.fromContentEncoding(contentEncoding);
+        return fromContentEncoding.isPresent() ? fromContentEncoding : CompressionCodec.fromPath(sourceObjectPath);
+    }
+
+    /**
+     * @param request               for which output is written
+     * @param sourceContentEncoding 'Content-Encoding' of source object, if any
+     * @return 'Content-Encoding' to set on output object, if any
      */
-    boolean isSourceCompressed(String contentEncoding, String sourceObjectPath) {
-        return StringUtils.equals(contentEncoding, CONTENT_ENCODING_GZIP) || sourceObjectPath.endsWith(EXTENSION_GZIP);
+    public Optional<String> getOutputContentEncoding(StorageEventRequest request, @Nullable String sourceContentEncoding) {
+        if (request.getCompressOutput()) {
+            return Optional.ofNullable(request.getOutputCodec().getContentEncoding());
+        } else {
+            // other encodings pass through, but not compression that's been undone
+            return Optional.ofNullable(sourceContentEncoding)
+                .filter(encoding -> CompressionCodec.fromContentEncoding(encoding).isEmpty());
+        }
+    }
+
+    /**
+     * if output is compressed differently than source, and source's path has the extension of
+     * its codec, swap for that of the output codec (eg, 'file.csv.gz' --> 'file.csv.zst')
+     */
+    String destinationObjectPath(String path, Optional<CompressionCodec> sourceCodec, CompressionCodec outputCodec) {
+        if (sourceCodec.isEmpty()
+            || sourceCodec.get() == outputCodec
+            || !path.endsWith(sourceCodec.get().getExtension())) {
+            return path;
+        }
+        String withoutExtension = path.substring(0, path.length() - sourceCodec.get().getExtension().length());
+        return withoutExtension + StringUtils.defaultString(outputCodec.getExtension());
     }
 
     Map<String, BulkDataRules> effectiveTemplates(Map<String, BulkDataRules> original) {
@@ -0,0 +1,40 @@
+package co.worklytics.psoxy.storage;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * zstd streams, from zstd-jni; only referenced once {@link ZstdSupport#checkAvailable()} has
+ * passed, so deployments without zstd-jni never load this
+ */
+public class ZstdStreams {
+
+    /**
+     * @param out     to which to write compressed content
+     * @param level   of compression
+     * @param workers number of threads over which zstd compresses natively; if < 2, compressed on
+     *                calling thread
+     * @return stream to which to write uncompressed content; closing it finishes compression and
+     * closes out
+     */
+    public static OutputStream compress(@NonNull OutputStream out, int level, int workers) throws IOException {
+        ZstdOutputStream zstd = new ZstdOutputStream(out, level);
+        if (workers > 1) {
+            zstd.setWorkers(workers);
+        }
+        return zstd;
+    }
+
+    /**
+     * @param in compressed with zstd
+     * @return stream of decompressed content
+     */
+    public static InputStream decompress(@NonNull InputStream in) throws IOException {
+        return new ZstdInputStream(in);
+    }
+}
@@ -0,0 +1,40 @@
+package co.worklytics.psoxy.storage;
+
+/**
+ * zstd support depends on zstd-jni, which bundles native binaries for every platform; so it's an
+ * optional dependency of core, bundled into a deployment only if built with the `zstd` Maven
+ * profile (eg, `mvn package -Pzstd`)
+ *
+ * NOTE: no zstd-jni classes referenced here, so this can be loaded without them; those are
+ * referenced only by {@link ZstdStreams}, which isn't loaded unless zstd is used
+ */
+public class ZstdSupport {
+
+    static final String REQUIRED_CLASS = "com.github.luben.zstd.ZstdOutputStream";
+
+    private static volatile Boolean available;
+
+    /**
+     * @return whether zstd support is bundled in this deployment
+     */
+    public static boolean isAvailable() {
+        if (available == null) {
+            try {
+                Class.forName(REQUIRED_CLASS, false, ZstdSupport.class.getClassLoader());
+                available = true;
+            } catch (ClassNotFoundException e) {
+                available = false;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * @throws IllegalStateException if zstd support isn't bundled in this deployment
+     */
+    public static void checkAvailable() {
+        if (!isAvailable()) {
+            throw new IllegalStateException("zstd support isn't bundled in this deployment; build with Maven profile 'zstd' (-Pzstd)");
+        }
+    }
+}
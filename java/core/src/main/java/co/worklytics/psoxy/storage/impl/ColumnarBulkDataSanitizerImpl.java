@@ -9,6 +9,7 @@ import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
 import com.avaulta.gateway.pseudonyms.impl.Base64UrlSha256HashPseudonymEncoder;
 import com.avaulta.gateway.pseudonyms.impl.UrlSafeTokenPseudonymEncoder;
 import com.avaulta.gateway.rules.ColumnarRules;
+import com.avaulta.gateway.rules.RegexEngine;
 import com.avaulta.gateway.rules.transforms.FieldTransform;
 import com.avaulta.gateway.rules.transforms.FieldTransformPipeline;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -21,7 +22,9 @@ import dagger.assisted.AssistedInject;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import lombok.Setter;
+import lombok.Value;
 import lombok.extern.java.Log;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -36,14 +39,14 @@ import org.apache.commons.lang3.tuple.Triple;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.*;
-import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -81,6 +84,8 @@ public class ColumnarBulkDataSanitizerImpl implements BulkDataSanitizer {
     public void sanitize(@NonNull Reader reader,
                          @NonNull Writer writer,
                          @NonNull Pseudonymizer pseudonymizer) throws IOException {
+        Preconditions.checkArgument(rules.getFormat() != ColumnarRules.Format.PARQUET,
+            "Parquet is binary, so must be sanitized as a stream");
 
         CSVParser records = CSVFormat
                 .DEFAULT
@@ -92,6 +97,160 @@ public class ColumnarBulkDataSanitizerImpl implements BulkDataSanitizer {
 
         Preconditions.checkArgument(records.getHeaderMap() != null, "Failed to parse header from file");
 
+        OutputPlan plan = compileOutputPlan(records.getHeaderMap(), pseudonymizer);
+
+        CSVFormat csvFormat = CSVFormat.Builder.create()
+            .setHeader(plan.getColumnNames().toArray(new String[0]))
+            .setRecordSeparator(records.getFirstEndOfLine())
+            .build();
+
+        List<OutputColumn> outputColumns = plan.getColumns();
+
+        // re-used for every row, ensuring all rows have the same columns
+        String[] newRecord = new String[outputColumns.size()];
+
+        try (CSVPrinter printer = new CSVPrinter(writer, csvFormat)) {
+            UnmodifiableIterator<List<CSVRecord>> chunks =
+                Iterators.partition(records.iterator(), this.getRecordShuffleChunkSize());
+
+            for (UnmodifiableIterator<List<CSVRecord>> chunkIterator = chunks; chunkIterator.hasNext(); ) {
+                List<CSVRecord> chunk = new ArrayList<>(chunkIterator.next());
+                shuffleImplementation.accept(chunk);
+
+                for (CSVRecord record : chunk) {
+                    for (int i = 0; i < newRecord.length; i++) {
+                        newRecord[i] = outputColumns.get(i).apply(record);
+                    }
+
+                    try {
+                        printer.printRecord((Object[]) newRecord);
+                    } catch (Throwable e) {
+                        throw new RuntimeException("Failed to write row", e);
+                    }
+                }
+            }
+            writer.flush();
+        }
+    }
+
+    /**
+     * as {@link #sanitize(Reader, Writer, Pseudonymizer)}, but tokenizing UTF-8 bytes directly; values
+     * of columns that are copied to output as-is are never decoded
+     */
+    @Override
+    public void sanitize(@NonNull InputStream input,
+                         @NonNull OutputStream output,
+                         @NonNull Pseudonymizer pseudonymizer) throws IOException {
+        if (rules.getFormat() == ColumnarRules.Format.PARQUET) {
+            sanitizeParquet(input, output, pseudonymizer);
+            return;
+        }
+
+        if (!Utf8CsvReader.supportsDelimiter(rules.getDelimiter())) {
+            BulkDataSanitizer.super.sanitize(input, output, pseudonymizer);
+            return;
+        }
+
+        try (Utf8CsvReader reader = new Utf8CsvReader(input, rules.getDelimiter())) {
+            Utf8CsvRecord header = reader.next();
+
+            Preconditions.checkArgument(header != null, "Failed to parse header from file");
+
+            OutputPlan plan = compileOutputPlan(Utf8CsvReader.caseInsensitiveHeaderMap(header), pseudonymizer);
+            List<OutputColumn> outputColumns = plan.getColumns();
+
+            try (Utf8CsvWriter writer = new Utf8CsvWriter(output, reader.getFirstEndOfLine())) {
+                writer.writeRecord(plan.getColumnNames());
+
+                List<Utf8CsvRecord> chunk = new ArrayList<>(this.getRecordShuffleChunkSize());
+                Utf8CsvRecord record;
+                do {
+                    record = reader.next();
+                    if (record != null) {
+                        chunk.add(record);
+                    }
+                    if (chunk.size() == this.getRecordShuffleChunkSize() || (record == null && !chunk.isEmpty())) {
+                        shuffleImplementation.accept(chunk);
+
+                        for (Utf8CsvRecord toWrite : chunk) {
+                            for (OutputColumn outputColumn : outputColumns) {
+                                outputColumn.write(toWrite, writer);
+                            }
+                            writer.endRecord();
+                        }
+                        chunk.clear();
+                    }
+                } while (record != null);
+                writer.flush();
+            }
+        }
+    }
+
+    @Override
+    public boolean isLineOriented() {
+        return rules.getFormat() != ColumnarRules.Format.PARQUET;
+    }
+
+    /**
+     * sanitize Parquet file, row group by row group; columns copied as-is are passed through without
+     * being decoded, while transformed ones are written as strings
+     *
+     * NOTE: rows are shuffled in chunks, as for CSV, so every column is decoded and re-encoded
+     */
+    void sanitizeParquet(@NonNull InputStream input,
+                         @NonNull OutputStream output,
+                         @NonNull Pseudonymizer pseudonymizer) throws IOException {
+        ParquetSupport.checkAvailable();
+        // NOTE: Parquet types referenced only by ParquetColumnRewriter, so this class loads without them
+        new ParquetColumnRewriter(shuffleImplementation, this.getRecordShuffleChunkSize()).rewriteByFieldNames(input, output, fieldNames -> {
+            // ignoring case, as for CSV header
+            Map<String, Integer> headerMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < fieldNames.size(); i++) {
+                headerMap.putIfAbsent(fieldNames.get(i), i);
+            }
+
+            OutputPlan plan = compileOutputPlan(headerMap, pseudonymizer);
+
+            List<ParquetColumnRewriter.OutputColumn> columns = new ArrayList<>(plan.getColumns().size());
+            for (int i = 0; i < plan.getColumns().size(); i++) {
+                OutputColumn column = plan.getColumns().get(i);
+                if (column.sourceIndex < 0) {
+                    throw new IllegalArgumentException(String.format("Mapping for %s not found", column.sourceColumn));
+                }
+                columns.add(ParquetColumnRewriter.OutputColumn.builder()
+                    .name(plan.getColumnNames().get(i))
+                    .sourceIndex(column.sourceIndex)
+                    .transform(column.transforms.length == 0 ? null :
+                        value -> column.transform(value == null ? null : ParquetColumnRewriter.asString(value)))
+                    .build());
+            }
+            return columns;
+        });
+    }
+
+    /**
+     * columns of output file, compiled against header of input file
+     */
+    @Value
+    static class OutputPlan {
+
+        /**
+         * names of output columns, in order
+         */
+        List<String> columnNames;
+
+        /**
+         * output columns, in same order
+         */
+        List<OutputColumn> columns;
+    }
+
+    /**
+     * @param headerMap     of input file, column name --> index; case-insensitive, as ignoring header case
+     * @param pseudonymizer to use for pseudonymization transforms
+     * @return plan to build each row of output file from a row of input file
+     */
+    OutputPlan compileOutputPlan(Map<String, Integer> headerMap, Pseudonymizer pseudonymizer) {
         /*
          * Table to store the transformation to be applied to each column
          * K = new column name
@@ -99,10 +258,10 @@ public class ColumnarBulkDataSanitizerImpl implements BulkDataSanitizer {
          * Note, can't use Guava Table as order of the transformations to apply is not deterministic.
          * Using LinkedHashMap will use insertion order
          */
-        Map<String, Pair<String, List<Function<String, Optional<String>>>>> columnTransforms = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, Pair<String, List<UnaryOperator<String>>>> columnTransforms = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 
         // just for make the code more readable, consumer that fills the table
-        TriConsumer<String, String, Function<String, Optional<String>>> addColumnTransform = (newColumn, sourceColumn, transform) ->
+        TriConsumer<String, String, UnaryOperator<String>> addColumnTransform = (newColumn, sourceColumn, transform) ->
             columnTransforms.computeIfAbsent(newColumn, (s) -> Pair.of(sourceColumn, new ArrayList<>())).getValue().add(transform);
 
         Set<String> columnsToRedact = asSetWithCaseInsensitiveComparator(rules.getColumnsToRedact());
@@ -167,7 +326,7 @@ public class ColumnarBulkDataSanitizerImpl implements BulkDataSanitizer {
         // headers respecting insertion order
         // when constructing the parser with ignore header case the keySet may not return values in
         // order. header map is <key, position>, order by position first, then construct the key set
-        Set<String> headers = records.getHeaderMap()
+        Set<String> headers = headerMap
                 .entrySet()
                 .stream()
                 .sorted(Comparator.comparingInt(Map.Entry::getValue))
@@ -197,80 +356,36 @@ public class ColumnarBulkDataSanitizerImpl implements BulkDataSanitizer {
         TriFunction<String, String, Pseudonymizer, String> pseudonymizationFunction = buildPseudonymizationFunction(rules);
 
         Map<String, Pseudonymizer> pseudonymizers = new HashMap<>();
-        BiFunction<String, FieldTransformPipeline, String> applyTransform = (originalValue, pipeline) -> {
-          String value = originalValue;
-          for ( FieldTransform transform : pipeline.getTransforms()) {
-
-              if (value != null) {
-                  if (transform instanceof FieldTransform.Filter) {
-                      Matcher matcher = ((FieldTransform.Filter) transform).getCompiledPattern().matcher(value);
-                      if (matcher.matches()) {
-                          if (matcher.groupCount() > 0) {
-                              value = matcher.group(1);
-                          }
-                      } else {
-                          value = null;
-                      }
-                  }
-
-                  if (transform instanceof FieldTransform.FormatString) {
-                      value = String.format(((FieldTransform.FormatString) transform).getFormatString(), value);
-                  }
-
-                  if (transform instanceof FieldTransform.PseudonymizeWithScope) {
-                      Pseudonymizer scopedPseudonymizer = pseudonymizer;
-                      if (pseudonymizer.getOptions().getPseudonymImplementation() == PseudonymImplementation.LEGACY) {
-                          scopedPseudonymizer = pseudonymizers.computeIfAbsent(
-                              ((FieldTransform.PseudonymizeWithScope) transform).getPseudonymizeWithScope(),
-                              scope -> pseudonymizerImplFactory.create(pseudonymizer.getOptions().withDefaultScopeId(scope)));
-                      }
-                      value = pseudonymizationFunction.apply(value, pipeline.getNewName(), scopedPseudonymizer);
-                  }
-
-                  if (transform instanceof FieldTransform.JavaRegExpReplace) {
-                      Matcher matcher = ((FieldTransform.JavaRegExpReplace) transform).getCompiledPattern().matcher(value);
-                      if (matcher.matches()) {
-                          value = matcher.replaceAll(((FieldTransform.JavaRegExpReplace) transform).getReplaceString());
-                      }
-                  }
-
-                  if (transform instanceof FieldTransform.Pseudonymize) {
-                      if (((FieldTransform.Pseudonymize) transform).isPseudonymize()) {
-                          value = pseudonymizationFunction.apply(value, pipeline.getNewName(), pseudonymizer);
-                      }
-                  }
-              }
-          }
-          return value;
-        };
+        Function<FieldTransformPipeline, UnaryOperator<String>> compilePipeline =
+            pipeline -> compilePipeline(pipeline, pseudonymizer, pseudonymizers, pseudonymizationFunction);
 
 
         // duplicated just copy the original value
-        columnsToDuplicate.forEach((original, duplicated) -> addColumnTransform.accept(duplicated, original, Optional::ofNullable));
+        columnsToDuplicate.forEach((original, duplicated) -> addColumnTransform.accept(duplicated, original, COPY));
         // The table holds the transformation to be applied to each original column to produce the new column
         // we apply pseudonymization in the renamed columns
         columnsToRename.forEach((original, renamed) -> {
-            addColumnTransform.accept(renamed, original, Optional::ofNullable);
+            addColumnTransform.accept(renamed, original, COPY);
         });
         // we apply the pipeline defined for each new column
         columnsToTransform.forEach((sourceColumn, pipelineSpec) -> pipelineSpec.forEach(pipeline -> {
-            addColumnTransform.accept(pipeline.getNewName(), sourceColumn, (s) -> Optional.ofNullable(applyTransform.apply(s, pipeline)));
+            addColumnTransform.accept(pipeline.getNewName(), sourceColumn, compilePipeline.apply(pipeline));
         }));
         // we apply pseudonymization in the pseudonymized columns
         columnsToPseudonymize.forEach(column -> {
-            addColumnTransform.accept(column, column, (s) -> Optional.of(pseudonymizationFunction.apply(s, column, pseudonymizer)));
+            addColumnTransform.accept(column, column, (s) -> pseudonymizationFunction.apply(s, column, pseudonymizer));
         });
         // we apply pseudonymization in the pseudonymized columns, only if present
         columnsToPseudonymizeIfPresent.forEach(column -> {
             if (headers.contains(column)) {
-                addColumnTransform.accept(column, column, (s) -> Optional.of(pseudonymizationFunction.apply(s, column, pseudonymizer)));
+                addColumnTransform.accept(column, column, (s) -> pseudonymizationFunction.apply(s, column, pseudonymizer));
             }
         });
         // all headers that are not in the table are copied as is
         headers.forEach(header -> {
             if (!columnTransforms.containsKey(header) && !columnsToRename.containsKey(header)) {
                 // add it as is, no transformation, unless is a rename, we don't want the original
-                addColumnTransform.accept(header, header, Optional::ofNullable);
+                addColumnTransform.accept(header, header, COPY);
             }
         });
 
@@ -278,8 +393,8 @@ public class ColumnarBulkDataSanitizerImpl implements BulkDataSanitizer {
         // leave the headers with the original case (not sure why we would want to do this, but respect tests)
         // and new transformed columns after, in natural order to be consistent
         Comparator<String> originalHeadersOrRenamedFirst = Comparator.comparingInt(a -> ObjectUtils.min(
-            records.getHeaderMap().getOrDefault(a, Integer.MAX_VALUE),
-            columnsToRename.entrySet().stream().filter(e -> e.getValue().equalsIgnoreCase(a)).findFirst().map(e -> records.getHeaderMap().getOrDefault(e.getKey(), Integer.MAX_VALUE)).orElse(Integer.MAX_VALUE)));
+            headerMap.getOrDefault(a, Integer.MAX_VALUE),
+            columnsToRename.entrySet().stream().filter(e -> e.getValue().equalsIgnoreCase(a)).findFirst().map(e -> headerMap.getOrDefault(e.getKey(), Integer.MAX_VALUE)).orElse(Integer.MAX_VALUE)));
         Comparator<String> byColumnName = Comparator.naturalOrder();
 
         List<String> columnNamesForOutputFile = columnTransforms.keySet()
@@ -291,73 +406,149 @@ public class ColumnarBulkDataSanitizerImpl implements BulkDataSanitizer {
             .map( h -> headers.stream().filter(h::equalsIgnoreCase).findFirst().orElse(h))
             .collect(Collectors.toList());
 
-        CSVFormat csvFormat = CSVFormat.Builder.create()
-            .setHeader(columnNamesForOutputFile.toArray(new String[0]))
-            .setRecordSeparator(records.getFirstEndOfLine())
-            .build();
+        // compile plan against header of the file, so each row can be processed by column index
+        List<OutputColumn> outputColumns = columnNamesForOutputFile.stream()
+            .map(h -> {
+                Pair<String, List<UnaryOperator<String>>> transforms = columnTransforms.get(h);
+                return new OutputColumn(transforms.getKey(),
+                    headerMap.getOrDefault(transforms.getKey(), -1),
+                    transforms.getValue().stream()
+                        .filter(transform -> transform != COPY)
+                        .toArray(UnaryOperator[]::new));
+            })
+            .collect(Collectors.toList());
 
-        // create an empty record to fill with the transformed values, ensuring all rows have
-        // the same columns
-        // linked hash map: need predictable iteration order and null values
+        return new OutputPlan(columnNamesForOutputFile, outputColumns);
+    }
 
-        LinkedHashMap<String, String> newRecord = new LinkedHashMap<>();
-        columnNamesForOutputFile.forEach(h -> newRecord.put(h, null));
+    /**
+     * copies value as-is; dropped from compiled plans
+     */
+    private static final UnaryOperator<String> COPY = value -> value;
 
-        try (CSVPrinter printer = new CSVPrinter(writer, csvFormat)) {
-            UnmodifiableIterator<List<CSVRecord>> chunks =
-                Iterators.partition(records.iterator(), this.getRecordShuffleChunkSize());
+    /**
+     * column of output file, compiled against header of input file
+     */
+    @RequiredArgsConstructor
+    static class OutputColumn {
 
-            for (UnmodifiableIterator<List<CSVRecord>> chunkIterator = chunks; chunkIterator.hasNext(); ) {
-                List<CSVRecord> chunk = new ArrayList<>(chunkIterator.next());
+        /**
+         * name of column in input file, from which value is taken
+         */
+        final String sourceColumn;
 
-                shuffleImplementation.apply(chunk).forEach(record -> {
+        /**
+         * index of source column within rows of input file; -1 if not present in header
+         */
+        final int sourceIndex;
 
-                    // clean up the record prior to use
-                    newRecord.replaceAll((k, v) -> null);
-                    newRecord.keySet().forEach(h -> {
+        /**
+         * transforms to apply to value, in order
+         */
+        final UnaryOperator<String>[] transforms;
 
-                        Pair<String, List<Function<String, Optional<String>>>> transforms = columnTransforms.getOrDefault(h, null);
-                        if (transforms == null) {
-                            newRecord.put(h, null);
-                        } else {
-                            // apply all transformations in insertion order
-                            // key holds the original column
-                            String v = record.get(transforms.getKey());
-                            if (StringUtils.isNotBlank(v)) {
-                                for (Function<String, Optional<String>> transform : transforms.getValue()) {
-                                    v = transform.apply(v).orElse(null);
-                                }
-                                newRecord.put(h, v);
-                            } else {
-                                newRecord.put(h, null);
-                            }
-                        }
+        String apply(CSVRecord record) {
+            // if column isn't in header, or row is short, look up by name to fail as if accessed by
+            // name
+            String value = sourceIndex >= 0 && sourceIndex < record.size() ?
+                record.get(sourceIndex) : record.get(sourceColumn);
 
-                    });
+            return transform(value);
+        }
 
-                    try {
-                        printer.printRecord(newRecord.values());
-                    } catch (Throwable e) {
-                        throw new RuntimeException("Failed to write row", e);
+        void write(Utf8CsvRecord record, Utf8CsvWriter writer) throws IOException {
+            if (sourceIndex < 0 || sourceIndex >= record.size()) {
+                // fail as CSVRecord does if accessed by name
+                throw new IllegalArgumentException(sourceIndex < 0 ?
+                    String.format("Mapping for %s not found", sourceColumn) :
+                    String.format("Index for header '%s' is %d but CSVRecord only has %d values!", sourceColumn, sourceIndex, record.size()));
+            }
+
+            if (record.isBlank(sourceIndex)) {
+                writer.writeNull();
+            } else if (transforms.length == 0) {
+                // copied as-is, so no need to decode
+                record.writeTo(sourceIndex, writer);
+            } else {
+                writer.write(transform(record.get(sourceIndex)));
+            }
+        }
+
+        String transform(String value) {
+            if (StringUtils.isBlank(value)) {
+                return null;
+            }
+            for (UnaryOperator<String> transform : transforms) {
+                value = transform.apply(value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * compile pipeline into a single function, resolving type of each transform (and pseudonymizer
+     * to use for it) once, rather than for each value
+     *
+     * @return function applying all transforms of pipeline, in order; null once any transform
+     * yields null
+     */
+    UnaryOperator<String> compilePipeline(FieldTransformPipeline pipeline,
+                                          Pseudonymizer pseudonymizer,
+                                          Map<String, Pseudonymizer> pseudonymizers,
+                                          TriFunction<String, String, Pseudonymizer, String> pseudonymizationFunction) {
+        RegexEngine regexEngine = RegexEngine.orDefault(rules.getRegexEngine());
+        List<UnaryOperator<String>> steps = new ArrayList<>();
+        for (FieldTransform transform : pipeline.getTransforms()) {
+            if (transform instanceof FieldTransform.Filter) {
+                RegexEngine.Regex pattern = regexEngine.compile(((FieldTransform.Filter) transform).getFilter());
+                steps.add(value -> {
+                    RegexEngine.Matcher matcher = pattern.matcher(value);
+                    if (matcher.matches()) {
+                        return matcher.groupCount() > 0 ? matcher.group(1) : value;
+                    } else {
+                        return null;
                     }
                 });
-
+            } else if (transform instanceof FieldTransform.FormatString) {
+                String formatString = ((FieldTransform.FormatString) transform).getFormatString();
+                steps.add(value -> String.format(formatString, value));
+            } else if (transform instanceof FieldTransform.PseudonymizeWithScope) {
+                Pseudonymizer scopedPseudonymizer = pseudonymizer;
+                if (pseudonymizer.getOptions().getPseudonymImplementation() == PseudonymImplementation.LEGACY) {
+                    scopedPseudonymizer = pseudonymizers.computeIfAbsent(
+                        ((FieldTransform.PseudonymizeWithScope) transform).getPseudonymizeWithScope(),
+                        scope -> pseudonymizerImplFactory.create(pseudonymizer.getOptions().withDefaultScopeId(scope)));
+                }
+                Pseudonymizer effectivePseudonymizer = scopedPseudonymizer;
+                steps.add(value -> pseudonymizationFunction.apply(value, pipeline.getNewName(), effectivePseudonymizer));
+            } else if (transform instanceof FieldTransform.JavaRegExpReplace) {
+                RegexEngine.Regex pattern = regexEngine.compile(((FieldTransform.JavaRegExpReplace) transform).getRegExp());
+                String replaceString = ((FieldTransform.JavaRegExpReplace) transform).getReplaceString();
+                steps.add(value -> {
+                    RegexEngine.Matcher matcher = pattern.matcher(value);
+                    return matcher.matches() ? matcher.replaceAll(replaceString) : value;
+                });
+            } else if (transform instanceof FieldTransform.Pseudonymize) {
+                if (((FieldTransform.Pseudonymize) transform).isPseudonymize()) {
+                    steps.add(value -> pseudonymizationFunction.apply(value, pipeline.getNewName(), pseudonymizer));
+                }
             }
-            writer.flush();
         }
+
+        return originalValue -> {
+            String value = originalValue;
+            for (int i = 0; i < steps.size() && value != null; i++) {
+                value = steps.get(i).apply(value);
+            }
+            return value;
+        };
     }
 
-    private UnaryOperator<List<CSVRecord>> shuffleImplementation = (List<CSVRecord> l) -> {
-        Collections.shuffle(l);
-        return l;
-    };
+    private Consumer<List<?>> shuffleImplementation = Collections::shuffle;
 
     @VisibleForTesting
     void makeShuffleDeterministic() {
-        this.shuffleImplementation = (List<CSVRecord> l) -> {
-            Collections.reverse(l);
-            return l;
-        };
+        this.shuffleImplementation = Collections::reverse;
     }
 
     List<String> applyReplacements(Collection<String> original, final Map<String, String> replacements) {
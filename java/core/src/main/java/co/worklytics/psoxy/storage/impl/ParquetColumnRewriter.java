@@ -0,0 +1,644 @@
+package co.worklytics.psoxy.storage.impl;
+
+import com.avaulta.gateway.rules.transforms.RecordTransform;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.MapFunction;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.apache.commons.lang3.tuple.Triple;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.CodecFactory;
+import org.apache.parquet.hadoop.ColumnChunkPageWriteStore;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Types;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * rewrites a Parquet file row group by row group, transforming values of some of its columns
+ *
+ * column chunks that are copied as-is (same name and type, no transform) are copied through as
+ * bytes, without being decompressed or decoded; only columns that are transformed (or renamed,
+ * duplicated, etc) are decoded, and re-encoded with the same compression codec as their source.
+ *
+ * supports only 'flat' schemas - every field primitive and not repeated - as is typical of tabular
+ * exports (HRIS, badge data, etc).
+ *
+ * if rows are shuffled, every column must be decoded and re-encoded, as no chunk can be copied as-is.
+ */
+class ParquetColumnRewriter {
+
+    private static final ParquetProperties PROPERTIES = ParquetProperties.builder().build();
+
+    /**
+     * applied to each chunk of rows within each row group, to reorder them (as CSV rows are); if
+     * null, rows keep their order
+     */
+    @Nullable
+    private final Consumer<List<?>> rowShuffle;
+
+    private final int rowShuffleChunkSize;
+
+    ParquetColumnRewriter() {
+        this(null, 0);
+    }
+
+    /**
+     * @param rowShuffle          to apply to each chunk of rows; null to keep order of rows
+     * @param rowShuffleChunkSize max number of rows in each chunk
+     */
+    ParquetColumnRewriter(@Nullable Consumer<List<?>> rowShuffle, int rowShuffleChunkSize) {
+        Preconditions.checkArgument(rowShuffle == null || rowShuffleChunkSize > 0, "Chunk size must be positive");
+        this.rowShuffle = rowShuffle;
+        this.rowShuffleChunkSize = rowShuffleChunkSize;
+    }
+
+    /**
+     * column of output file
+     */
+    @Builder
+    @Value
+    static class OutputColumn {
+
+        /**
+         * name of column in output file
+         */
+        @NonNull
+        String name;
+
+        /**
+         * index of field in schema of input file from which value is taken
+         */
+        int sourceIndex;
+
+        /**
+         * transform to apply to each value; if null, value is copied as-is
+         */
+        @Nullable
+        ValueTransform transform;
+
+        /**
+         * type of column in output file; if null, same as source if copied as-is, otherwise an
+         * optional UTF-8 string
+         */
+        @Nullable
+        PrimitiveType type;
+    }
+
+    @FunctionalInterface
+    interface ValueTransform {
+
+        /**
+         * @param value decoded value, if any; String for UTF-8 strings, Integer/Long/Boolean/Float/
+         *              Double for those types, {@link Binary} otherwise
+         * @return transformed value; or {@link #SKIP_ROW}, if row should be skipped
+         */
+        Object apply(@Nullable Object value);
+    }
+
+    /**
+     * returned by a {@link ValueTransform} to signal that row should be skipped
+     */
+    static final Object SKIP_ROW = new Object();
+
+    /**
+     * rewrite Parquet file per transforms of record rules
+     *
+     * @param input              Parquet file
+     * @param output             to which to write rewritten Parquet file
+     * @param sanitizer          of records, per whose rules transforms were compiled
+     * @param compiledTransforms transforms to apply to each record, in order
+     * @see #compileRecordColumns(MessageType, RecordBulkDataSanitizerImpl, List)
+     */
+    void rewrite(@NonNull InputStream input,
+                 @NonNull OutputStream output,
+                 @NonNull RecordBulkDataSanitizerImpl sanitizer,
+                 @NonNull List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) throws IOException {
+        rewrite(input, output, schema -> compileRecordColumns(schema, sanitizer, compiledTransforms));
+    }
+
+    /**
+     * @param schema             of Parquet file
+     * @param sanitizer          of records, per whose rules transforms were compiled
+     * @param compiledTransforms transforms to apply to each record, in order
+     * @return columns of output file; same as schema, but with transforms applied to values of
+     * those targeted; pseudonymized columns become strings, redacted ones optional
+     * @throws IllegalArgumentException if any transform doesn't target a single column of schema
+     */
+    @VisibleForTesting
+    static List<OutputColumn> compileRecordColumns(@NonNull MessageType schema,
+                                                   @NonNull RecordBulkDataSanitizerImpl sanitizer,
+                                                   @NonNull List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) {
+        List<String> fieldNames = schema.getFields().stream()
+            .map(Type::getName)
+            .collect(Collectors.toList());
+
+        RecordBulkDataSanitizerImpl.CsvColumnPlan columnPlan = sanitizer.compileCsvColumnPlan(fieldNames, compiledTransforms)
+            .orElseThrow(() -> new IllegalArgumentException("For Parquet, each transform must target a top-level column of the file; "
+                + "paths: " + compiledTransforms.stream().map(t -> t.getMiddle().getPath()).collect(Collectors.joining(", "))
+                + "; columns: " + String.join(", ", fieldNames)));
+
+        List<OutputColumn> columns = new ArrayList<>(fieldNames.size());
+        for (int column = 0; column < fieldNames.size(); column++) {
+            List<Triple<JsonPath, RecordTransform, MapFunction>> columnTransforms = new ArrayList<>();
+            for (int i = 0; i < columnPlan.getColumnIndexes().length; i++) {
+                if (columnPlan.getColumnIndexes()[i] == column) {
+                    columnTransforms.add(compiledTransforms.get(i));
+                }
+            }
+
+            OutputColumn.OutputColumnBuilder builder = OutputColumn.builder()
+                .name(fieldNames.get(column))
+                .sourceIndex(column);
+            if (!columnTransforms.isEmpty()) {
+                builder.transform(value -> {
+                    for (Triple<JsonPath, RecordTransform, MapFunction> compiledTransform : columnTransforms) {
+                        if (value == null && compiledTransform.getMiddle() instanceof RecordTransform.Pseudonymize) {
+                            sanitizer.logSkippedRecord(compiledTransform.getMiddle().getPath());
+                            return SKIP_ROW;
+                        }
+                        value = compiledTransform.getRight().map(value, sanitizer.jsonConfiguration);
+                    }
+                    return value;
+                });
+                if (columnTransforms.stream().noneMatch(t -> t.getMiddle() instanceof RecordTransform.Pseudonymize)) {
+                    // only redacted, so keep type
+                    builder.type(asOptional(schema.getType(column).asPrimitiveType()));
+                }
+            }
+            columns.add(builder.build());
+        }
+        return columns;
+    }
+
+    /**
+     * as {@link #rewrite(InputStream, OutputStream, Function)}, but planner is given only names of
+     * fields of input file, in order; so callers needn't reference Parquet types
+     */
+    void rewriteByFieldNames(@NonNull InputStream input,
+                             @NonNull OutputStream output,
+                             @NonNull Function<List<String>, List<OutputColumn>> planner) throws IOException {
+        rewrite(input, output, schema -> planner.apply(schema.getFields().stream()
+            .map(Type::getName)
+            .collect(Collectors.toList())));
+    }
+
+    /**
+     * @param input   Parquet file; spooled to a temp file, as Parquet must be read from its footer
+     * @param output  to which to write rewritten Parquet file
+     * @param planner builds columns of output file, given schema of input file
+     */
+    void rewrite(@NonNull InputStream input,
+                 @NonNull OutputStream output,
+                 @NonNull Function<MessageType, List<OutputColumn>> planner) throws IOException {
+        Path spooled = Files.createTempFile("psoxy-", ".parquet");
+        try {
+            Files.copy(input, spooled, StandardCopyOption.REPLACE_EXISTING);
+            rewrite(new SpooledInputFile(spooled), new StreamOutputFile(output), planner);
+        } finally {
+            Files.deleteIfExists(spooled);
+        }
+    }
+
+    void rewrite(@NonNull InputFile inputFile,
+                 @NonNull OutputFile outputFile,
+                 @NonNull Function<MessageType, List<OutputColumn>> planner) throws IOException {
+        try (ParquetFileReader reader = ParquetFileReader.open(inputFile, ParquetReadOptions.builder().build());
+             SeekableInputStream chunkSource = inputFile.newStream()) {
+            FileMetaData fileMetaData = reader.getFooter().getFileMetaData();
+            MessageType sourceSchema = fileMetaData.getSchema();
+            checkFlat(sourceSchema);
+
+            List<OutputColumn> columns = planner.apply(sourceSchema);
+            MessageType outputSchema = new MessageType(sourceSchema.getName(),
+                columns.stream()
+                    .<Type>map(column -> outputType(sourceSchema, column))
+                    .collect(Collectors.toList()));
+
+            ParquetFileWriter writer = new ParquetFileWriter(outputFile, outputSchema, ParquetFileWriter.Mode.CREATE,
+                ParquetWriter.DEFAULT_BLOCK_SIZE, ParquetWriter.MAX_PADDING_SIZE_DEFAULT);
+            CodecFactory codecFactory = new CodecFactory(new Configuration(false), PROPERTIES.getPageSizeThreshold());
+            try {
+                writer.start();
+                for (int blockIndex = 0; blockIndex < reader.getFooter().getBlocks().size(); blockIndex++) {
+                    rewriteBlock(reader, chunkSource, writer, codecFactory, sourceSchema, outputSchema, columns, blockIndex);
+                }
+
+                // key-value metadata may describe schema (eg, Avro/Arrow/Spark schemas), so only
+                // safe to keep if that's unchanged
+                writer.end(outputSchema.equals(sourceSchema) ? fileMetaData.getKeyValueMetaData() : Collections.emptyMap());
+            } finally {
+                codecFactory.release();
+            }
+        }
+    }
+
+    private void rewriteBlock(ParquetFileReader reader,
+                              SeekableInputStream chunkSource,
+                              ParquetFileWriter writer,
+                              CodecFactory codecFactory,
+                              MessageType sourceSchema,
+                              MessageType outputSchema,
+                              List<OutputColumn> columns,
+                              int blockIndex) throws IOException {
+        BlockMetaData block = reader.getFooter().getBlocks().get(blockIndex);
+        int rowCount = Math.toIntExact(block.getRowCount());
+        if (rowCount == 0) {
+            return;
+        }
+
+        // if rows are shuffled, no chunk can be copied as-is
+        boolean shuffled = rowShuffle != null;
+
+        Set<Integer> toDecode = new TreeSet<>();
+        for (OutputColumn column : columns) {
+            if (shuffled || !isCopiedAsIs(sourceSchema, column)) {
+                toDecode.add(column.getSourceIndex());
+            }
+        }
+        Map<Integer, Object[]> decoded = decode(reader, sourceSchema, blockIndex, rowCount, toDecode);
+
+        // values of output columns to re-encode; null for those whose chunks are copied as-is
+        Object[][] values = new Object[columns.size()][];
+        boolean[] skipped = new boolean[rowCount];
+        int skippedCount = 0;
+        for (int c = 0; c < columns.size(); c++) {
+            OutputColumn column = columns.get(c);
+            if (shuffled || !isCopiedAsIs(sourceSchema, column)) {
+                Object[] source = decoded.get(column.getSourceIndex());
+                if (column.getTransform() == null) {
+                    values[c] = source;
+                } else {
+                    values[c] = new Object[rowCount];
+                    for (int row = 0; row < rowCount; row++) {
+                        Object value = column.getTransform().apply(source[row]);
+                        if (value == SKIP_ROW) {
+                            if (!skipped[row]) {
+                                skipped[row] = true;
+                                skippedCount++;
+                            }
+                        } else {
+                            values[c][row] = value;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (skippedCount == rowCount) {
+            return;
+        } else if (skippedCount > 0) {
+            // rows are dropped, so chunks can't be copied as-is; decode rest, to drop same rows
+            Set<Integer> remaining = new TreeSet<>();
+            for (int c = 0; c < columns.size(); c++) {
+                if (values[c] == null) {
+                    remaining.add(columns.get(c).getSourceIndex());
+                }
+            }
+            decoded.putAll(decode(reader, sourceSchema, blockIndex, rowCount, remaining));
+            for (int c = 0; c < columns.size(); c++) {
+                if (values[c] == null) {
+                    values[c] = decoded.get(columns.get(c).getSourceIndex());
+                }
+            }
+        }
+
+        int[] rows = rowOrder(skipped, skippedCount);
+
+        writer.startBlock(rows.length);
+        for (int c = 0; c < columns.size(); c++) {
+            ColumnChunkMetaData sourceChunk = block.getColumns().get(columns.get(c).getSourceIndex());
+            if (values[c] == null) {
+                writer.appendColumnChunk(outputSchema.getColumns().get(c), chunkSource, sourceChunk,
+                    reader.readBloomFilter(sourceChunk),
+                    reader.readColumnIndex(sourceChunk),
+                    reader.readOffsetIndex(sourceChunk));
+            } else {
+                writeColumn(writer, codecFactory.getCompressor(sourceChunk.getCodec()),
+                    new MessageType(outputSchema.getName(), outputSchema.getType(c)), values[c], rows);
+            }
+        }
+        writer.endBlock();
+    }
+
+    /**
+     * @return indexes of rows to write, in order to write them; shuffled in chunks, if configured
+     */
+    private int[] rowOrder(boolean[] skipped, int skippedCount) {
+        List<Integer> rows = new ArrayList<>(skipped.length - skippedCount);
+        for (int row = 0; row < skipped.length; row++) {
+            if (!skipped[row]) {
+                rows.add(row);
+            }
+        }
+        if (rowShuffle != null) {
+            for (int from = 0; from < rows.size(); from += rowShuffleChunkSize) {
+                rowShuffle.accept(rows.subList(from, Math.min(rows.size(), from + rowShuffleChunkSize)));
+            }
+        }
+        return rows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return values of each of the source columns, by index, within the block
+     */
+    private Map<Integer, Object[]> decode(ParquetFileReader reader,
+                                          MessageType sourceSchema,
+                                          int blockIndex,
+                                          int rowCount,
+                                          Set<Integer> sourceIndexes) throws IOException {
+        Map<Integer, Object[]> decoded = new HashMap<>();
+        if (sourceIndexes.isEmpty()) {
+            return decoded;
+        }
+
+        // read only chunks of columns to decode
+        MessageType projection = new MessageType(sourceSchema.getName(),
+            sourceIndexes.stream().map(sourceSchema::getType).collect(Collectors.toList()));
+        reader.setRequestedSchema(projection);
+        PageReadStore pages = reader.readRowGroup(blockIndex);
+        ColumnReadStoreImpl readStore = new ColumnReadStoreImpl(pages,
+            new GroupRecordConverter(projection).getRootConverter(), projection,
+            reader.getFooter().getFileMetaData().getCreatedBy());
+
+        for (int sourceIndex : sourceIndexes) {
+            PrimitiveType type = sourceSchema.getType(sourceIndex).asPrimitiveType();
+            ColumnReader columnReader = readStore.getColumnReader(projection.getColumnDescription(new String[]{type.getName()}));
+            int maxDefinitionLevel = columnReader.getDescriptor().getMaxDefinitionLevel();
+
+            Object[] columnValues = new Object[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                if (columnReader.getCurrentDefinitionLevel() == maxDefinitionLevel) {
+                    columnValues[row] = read(columnReader, type);
+                }
+                columnReader.consume();
+            }
+            decoded.put(sourceIndex, columnValues);
+        }
+        return decoded;
+    }
+
+    private void writeColumn(ParquetFileWriter writer,
+                             CodecFactory.BytesCompressor compressor,
+                             MessageType columnSchema,
+                             Object[] values,
+                             int[] rows) throws IOException {
+        ColumnDescriptor descriptor = columnSchema.getColumns().get(0);
+        PrimitiveType type = columnSchema.getType(0).asPrimitiveType();
+
+        ColumnChunkPageWriteStore pageStore = new ColumnChunkPageWriteStore(compressor, columnSchema,
+            PROPERTIES.getAllocator(), PROPERTIES.getColumnIndexTruncateLength(), PROPERTIES.getPageWriteChecksumEnabled());
+        ColumnWriteStore writeStore = PROPERTIES.newColumnWriteStore(columnSchema, pageStore);
+        ColumnWriter columnWriter = writeStore.getColumnWriter(descriptor);
+
+        for (int row : rows) {
+            write(columnWriter, type, values[row], descriptor.getMaxDefinitionLevel());
+            writeStore.endRecord();
+        }
+
+        writeStore.flush();
+        pageStore.flushToFileWriter(writer);
+        writeStore.close();
+    }
+
+    private boolean isCopiedAsIs(MessageType sourceSchema, OutputColumn column) {
+        Type sourceType = sourceSchema.getType(column.getSourceIndex());
+        return column.getTransform() == null
+            && column.getName().equals(sourceType.getName())
+            && (column.getType() == null || column.getType().equals(sourceType));
+    }
+
+    private PrimitiveType outputType(MessageType sourceSchema, OutputColumn column) {
+        Preconditions.checkArgument(column.getSourceIndex() >= 0 && column.getSourceIndex() < sourceSchema.getFieldCount(),
+            "No field at index %s of Parquet schema", column.getSourceIndex());
+        if (column.getType() != null) {
+            return column.getType();
+        } else if (column.getTransform() == null) {
+            PrimitiveType sourceType = sourceSchema.getType(column.getSourceIndex()).asPrimitiveType();
+            return rebuild(sourceType, sourceType.getRepetition(), column.getName());
+        } else {
+            return Types.optional(PrimitiveType.PrimitiveTypeName.BINARY)
+                .as(LogicalTypeAnnotation.stringType())
+                .named(column.getName());
+        }
+    }
+
+    private void checkFlat(MessageType schema) {
+        for (Type field : schema.getFields()) {
+            if (!field.isPrimitive() || field.isRepetition(Type.Repetition.REPEATED)) {
+                throw new IllegalArgumentException("Only flat Parquet schemas are supported; field '" + field.getName() + "' is nested or repeated");
+            }
+        }
+    }
+
+    /**
+     * @return type, but optional (eg, can hold nulls)
+     */
+    static PrimitiveType asOptional(PrimitiveType type) {
+        return rebuild(type, Type.Repetition.OPTIONAL, type.getName());
+    }
+
+    /**
+     * @return value, as a string; UTF-8 decoding it, if binary
+     */
+    static String asString(@NonNull Object value) {
+        return value instanceof Binary ? ((Binary) value).toStringUsingUTF8() : value.toString();
+    }
+
+    private static PrimitiveType rebuild(PrimitiveType type, Type.Repetition repetition, String name) {
+        Types.PrimitiveBuilder<PrimitiveType> builder = Types.primitive(type.getPrimitiveTypeName(), repetition)
+            .as(type.getLogicalTypeAnnotation());
+        if (type.getPrimitiveTypeName() == PrimitiveType.PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY) {
+            builder = builder.length(type.getTypeLength());
+        }
+        if (type.getId() != null) {
+            builder = builder.id(type.getId().intValue());
+        }
+        return builder.named(name);
+    }
+
+    private static boolean isString(PrimitiveType type) {
+        LogicalTypeAnnotation annotation = type.getLogicalTypeAnnotation();
+        return annotation instanceof LogicalTypeAnnotation.StringLogicalTypeAnnotation
+            || annotation instanceof LogicalTypeAnnotation.EnumLogicalTypeAnnotation
+            || annotation instanceof LogicalTypeAnnotation.JsonLogicalTypeAnnotation;
+    }
+
+    private static Object read(ColumnReader reader, PrimitiveType type) {
+        switch (type.getPrimitiveTypeName()) {
+            case BOOLEAN:
+                return reader.getBoolean();
+            case INT32:
+                return reader.getInteger();
+            case INT64:
+                return reader.getLong();
+            case FLOAT:
+                return reader.getFloat();
+            case DOUBLE:
+                return reader.getDouble();
+            default:
+                // BINARY, FIXED_LEN_BYTE_ARRAY, INT96; copied, as reader may re-use buffer
+                Binary binary = reader.getBinary();
+                return isString(type) ? binary.toStringUsingUTF8() : binary.copy();
+        }
+    }
+
+    private static void write(ColumnWriter writer, PrimitiveType type, @Nullable Object value, int maxDefinitionLevel) {
+        // flat schema, so repetition level is always 0
+        if (value == null) {
+            Preconditions.checkArgument(maxDefinitionLevel > 0, "Null value for required column '%s'", type.getName());
+            writer.writeNull(0, maxDefinitionLevel - 1);
+            return;
+        }
+
+        switch (type.getPrimitiveTypeName()) {
+            case BOOLEAN:
+                writer.write((Boolean) value, 0, maxDefinitionLevel);
+                break;
+            case INT32:
+                writer.write(((Number) value).intValue(), 0, maxDefinitionLevel);
+                break;
+            case INT64:
+                writer.write(((Number) value).longValue(), 0, maxDefinitionLevel);
+                break;
+            case FLOAT:
+                writer.write(((Number) value).floatValue(), 0, maxDefinitionLevel);
+                break;
+            case DOUBLE:
+                writer.write(((Number) value).doubleValue(), 0, maxDefinitionLevel);
+                break;
+            default:
+                writer.write(value instanceof Binary ? (Binary) value : Binary.fromString(value.toString()), 0, maxDefinitionLevel);
+        }
+    }
+
+    /**
+     * local file to which input was spooled
+     */
+    @RequiredArgsConstructor
+    private static class SpooledInputFile implements InputFile {
+
+        private final Path path;
+
+        @Override
+        public long getLength() throws IOException {
+            return Files.size(path);
+        }
+
+        @Override
+        public SeekableInputStream newStream() throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new DelegatingSeekableInputStream(Channels.newInputStream(channel)) {
+                @Override
+                public long getPos() throws IOException {
+                    return channel.position();
+                }
+
+                @Override
+                public void seek(long newPos) throws IOException {
+                    channel.position(newPos);
+                }
+            };
+        }
+    }
+
+    /**
+     * Parquet is written sequentially, so any stream will do; just need to track position
+     */
+    @RequiredArgsConstructor
+    static class StreamOutputFile implements OutputFile {
+
+        private final OutputStream out;
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) {
+            return new PositionOutputStream() {
+
+                private long position = 0;
+
+                @Override
+                public long getPos() {
+                    return position;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    position++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    position += len;
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+            return create(blockSizeHint);
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package co.worklytics.psoxy.storage.impl;
+
+/**
+ * Parquet support depends on parquet-hadoop and Hadoop's client, which are large; so they're
+ * optional dependencies of core, bundled into a deployment only if built with the `parquet` Maven
+ * profile (eg, `mvn package -Pparquet`)
+ *
+ * NOTE: no Parquet/Hadoop classes referenced here, so this can be loaded without them
+ */
+class ParquetSupport {
+
+    static final String[] REQUIRED_CLASSES = {
+        "org.apache.parquet.hadoop.ParquetFileReader",
+        "org.apache.hadoop.conf.Configuration",
+    };
+
+    /**
+     * @throws IllegalStateException if Parquet support isn't bundled in this deployment
+     */
+    static void checkAvailable() {
+        for (String className : REQUIRED_CLASSES) {
+            try {
+                Class.forName(className, false, ParquetSupport.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Parquet support isn't bundled in this deployment; build with Maven profile 'parquet' (-Pparquet)", e);
+            }
+        }
+    }
+}
@@ -2,20 +2,32 @@ package co.worklytics.psoxy.storage.impl;
 
 import co.worklytics.psoxy.PseudonymizedIdentity;
 import co.worklytics.psoxy.Pseudonymizer;
+import co.worklytics.psoxy.gateway.BulkModeConfigProperty;
+import co.worklytics.psoxy.gateway.ConfigService;
 import co.worklytics.psoxy.storage.BulkDataSanitizer;
 import com.avaulta.gateway.pseudonyms.PseudonymEncoder;
 import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
 import com.avaulta.gateway.pseudonyms.impl.UrlSafeTokenPseudonymEncoder;
+import com.avaulta.gateway.rules.CompiledJsonPath;
+import com.avaulta.gateway.rules.JsonPathCompiler;
 import com.avaulta.gateway.rules.RecordRules;
 import com.avaulta.gateway.rules.transforms.RecordTransform;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.annotations.VisibleForTesting;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.JsonPathException;
 import com.jayway.jsonpath.MapFunction;
+import com.jayway.jsonpath.Option;
 import dagger.assisted.Assisted;
 import dagger.assisted.AssistedInject;
-import lombok.EqualsAndHashCode;
+import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Value;
@@ -30,11 +42,17 @@ import org.apache.commons.lang3.tuple.Triple;
 import javax.inject.Inject;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Log
@@ -48,6 +66,34 @@ public class RecordBulkDataSanitizerImpl implements BulkDataSanitizer {
     @Inject
     UrlSafeTokenPseudonymEncoder encoder;
 
+    @Inject
+    ConfigService config;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    JsonPathCompiler jsonPathCompiler;
+
+    @Inject
+    RecordProcessingExecutor recordProcessingExecutor;
+
+    /**
+     * compiled equivalents of transforms' JsonPaths, if any, by path
+     */
+    Map<String, Optional<CompiledJsonPath>> compiledPaths = new ConcurrentHashMap<>();
+
+    /**
+     * as jsonConfiguration, but JsonPath reports paths that match nothing by result (null, or
+     * nothing changed) rather than by exception, which is costly on sparse records
+     */
+    private volatile Configuration lenientJsonConfiguration;
+    private final Object $writeLock = new Object[0];
+
+    static final int DEFAULT_RECORD_BATCH_SIZE = 1000;
+    static final int DEFAULT_RECORD_BATCH_MAX_CHARS = 1_048_576;
+    static final int DEFAULT_RECORD_PROCESSING_THREADS = 1;
+
     RecordRules rules;
 
     @AssistedInject
@@ -63,23 +109,55 @@ public class RecordBulkDataSanitizerImpl implements BulkDataSanitizer {
                          @NonNull Pseudonymizer pseudonymizer) throws IOException {
 
         List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms =
-            rules.getTransforms().stream()
-                .map(transform -> Triple.of(
-                    JsonPath.compile(transform.getPath()),
-                    transform,
-                    getMapFunction(transform, pseudonymizer, encoder)
-                ))
-                .collect(Collectors.toList());
+            compileTransforms(pseudonymizer);
 
         if (rules.getFormat() == RecordRules.Format.NDJSON) {
             sanitizeNdjson(reader, writer, compiledTransforms);
         } else if (rules.getFormat() == RecordRules.Format.CSV) {
             sanitizeCsv(reader, writer, compiledTransforms);
+        } else if (rules.getFormat() == RecordRules.Format.JSON) {
+            sanitizeJson(objectMapper.getFactory().createParser(reader),
+                objectMapper.getFactory().createGenerator(writer),
+                compiledTransforms);
         } else {
             throw new IllegalArgumentException("Unsupported format: " + rules.getFormat());
         }
     }
 
+    @Override
+    public void sanitize(@NonNull InputStream input,
+                         @NonNull OutputStream output,
+                         @NonNull Pseudonymizer pseudonymizer) throws IOException {
+        if (rules.getFormat() == RecordRules.Format.CSV) {
+            sanitizeCsv(input, output, compileTransforms(pseudonymizer));
+        } else if (rules.getFormat() == RecordRules.Format.PARQUET) {
+            sanitizeParquet(input, output, compileTransforms(pseudonymizer));
+        } else if (rules.getFormat() == RecordRules.Format.JSON) {
+            sanitizeJson(objectMapper.getFactory().createParser(input),
+                objectMapper.getFactory().createGenerator(output, JsonEncoding.UTF8),
+                compileTransforms(pseudonymizer));
+        } else {
+            BulkDataSanitizer.super.sanitize(input, output, pseudonymizer);
+        }
+    }
+
+    @Override
+    public boolean isLineOriented() {
+        // first lines of a JSON document aren't, in general, a valid document
+        return rules.getFormat() != RecordRules.Format.PARQUET
+            && rules.getFormat() != RecordRules.Format.JSON;
+    }
+
+    private List<Triple<JsonPath, RecordTransform, MapFunction>> compileTransforms(Pseudonymizer pseudonymizer) {
+        return rules.getTransforms().stream()
+            .map(transform -> Triple.of(
+                JsonPath.compile(transform.getPath()),
+                transform,
+                getMapFunction(transform, pseudonymizer, encoder)
+            ))
+            .collect(Collectors.toList());
+    }
+
     @VisibleForTesting
     void sanitizeCsv(@NonNull Reader reader,
                      @NonNull Writer writer,
@@ -94,27 +172,214 @@ public class RecordBulkDataSanitizerImpl implements BulkDataSanitizer {
                         .setHeader(records.getHeaderNames().toArray(new String[0]))
                         .setRecordSeparator(records.getFirstEndOfLine()) //match source
                         .build())) {
+            List<String> headerNames = records.getHeaderNames();
+            Optional<CsvColumnPlan> columnPlan = compileCsvColumnPlan(headerNames, compiledTransforms);
+            if (columnPlan.isEmpty()) {
+                log.info("Transforms can't all be resolved to CSV columns; falling back to applying each as JsonPath to each row");
+            }
+
+            //re-used across rows; each is printed before next is read
+            Object[] row = new Object[headerNames.size()];
+
             Iterator<CSVRecord> iter = records.iterator();
 
             while(iter.hasNext()) {
                 CSVRecord record = iter.next();
-                try {
+                if (columnPlan.isPresent() && record.size() == row.length) {
+                    if (columnPlan.get().apply(record, row)) {
+                        printer.printRecord(row);
+                    }
+                } else {
                     LinkedHashMap result = applyTransforms(record.toMap(), compiledTransforms);
+                    if (result != null) {
+                        for (String header : headerNames) {
+                            printer.print(result.get(header));
+                        }
+
+                        printer.println();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * as {@link #sanitizeCsv(Reader, Writer, List)}, but tokenizing UTF-8 bytes directly; values of
+     * columns that no transform targets are never decoded
+     */
+    @VisibleForTesting
+    void sanitizeCsv(@NonNull InputStream input,
+                     @NonNull OutputStream output,
+                     @NonNull List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) throws IOException {
+        try (Utf8CsvReader reader = new Utf8CsvReader(input, ',')) {
+            Utf8CsvRecord header = reader.next();
+            List<String> headerNames = header == null ? Collections.emptyList() : header.toList();
+            Map<String, Integer> headerMap = header == null ? Collections.emptyMap() : Utf8CsvReader.caseInsensitiveHeaderMap(header);
 
-                    records.getHeaderNames()
-                        .forEach(header -> {
-                            try {
-                                printer.print(result.get(header));
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
+            Optional<CsvColumnPlan> columnPlan = compileCsvColumnPlan(headerNames, compiledTransforms);
+            if (columnPlan.isEmpty()) {
+                log.info("Transforms can't all be resolved to CSV columns; falling back to applying each as JsonPath to each row");
+            }
+
+            try (Utf8CsvWriter writer = new Utf8CsvWriter(output, reader.getFirstEndOfLine())) {
+                writer.writeRecord(headerNames);
+
+                //re-used across rows; each is written before next is read
+                Object[] row = new Object[headerNames.size()];
+
+                Utf8CsvRecord record;
+                while ((record = reader.next()) != null) {
+                    if (columnPlan.isPresent() && record.size() == row.length) {
+                        if (!columnPlan.get().apply(record, row)) {
+                            continue;
+                        }
+                        for (int column = 0; column < row.length; column++) {
+                            if (row[column] == UNTOUCHED) {
+                                record.writeTo(column, writer);
+                            } else {
+                                writer.write(Objects.toString(row[column], null));
+                            }
+                        }
+                    } else {
+                        // equivalent of CSVRecord::toMap
+                        LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+                        for (Map.Entry<String, Integer> entry : headerMap.entrySet()) {
+                            if (entry.getValue() < record.size()) {
+                                map.put(entry.getKey(), record.get(entry.getValue()));
                             }
-                        });
+                        }
+                        LinkedHashMap result = applyTransforms(map, compiledTransforms);
+                        if (result == null) {
+                            continue;
+                        }
+
+                        for (String headerName : headerNames) {
+                            writer.write(Objects.toString(result.get(headerName), null));
+                        }
+                    }
+                    writer.endRecord();
+                }
+                writer.flush();
+            }
+        }
+    }
+
+    /**
+     * sanitize Parquet file, row group by row group; only columns targeted by transforms are
+     * decoded, others are copied through as-is
+     *
+     * as with CSV, records for which a pseudonymization transform has no value are skipped, and
+     * records otherwise keep their order
+     */
+    @VisibleForTesting
+    void sanitizeParquet(@NonNull InputStream input,
+                         @NonNull OutputStream output,
+                         @NonNull List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) throws IOException {
+        ParquetSupport.checkAvailable();
+        // NOTE: Parquet types referenced only by ParquetColumnRewriter, so this class loads without them
+        new ParquetColumnRewriter().rewrite(input, output, this, compiledTransforms);
+    }
+
+    /**
+     * pattern of normalized JsonPath (as returned by {@link JsonPath#getPath()}) that refers to a
+     * single property of root object; in CSV case, that is a column
+     */
+    private static final Pattern SINGLE_PROPERTY_PATH = Pattern.compile("^\\$\\['([^'\\\\]*)'\\]$");
+
+    /**
+     * compile transforms into a plan to apply them by column index, if possible
+     *
+     * @param headerNames of CSV file, in order
+     * @param compiledTransforms transforms to apply to each row, in order
+     * @return plan, if every transform targets exactly one column of the CSV; empty otherwise
+     */
+    @VisibleForTesting
+    Optional<CsvColumnPlan> compileCsvColumnPlan(@NonNull List<String> headerNames,
+                                                 @NonNull List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) {
+        if (new HashSet<>(headerNames).size() != headerNames.size()) {
+            // duplicate headers collapse to single key in a row's map; don't try to replicate that
+            return Optional.empty();
+        }
+
+        int[] columnIndexes = new int[compiledTransforms.size()];
+        for (int i = 0; i < compiledTransforms.size(); i++) {
+            Matcher matcher = SINGLE_PROPERTY_PATH.matcher(compiledTransforms.get(i).getLeft().getPath());
+            if (!matcher.matches()) {
+                return Optional.empty();
+            }
+            int columnIndex = headerNames.indexOf(matcher.group(1));
+            if (columnIndex < 0) {
+                return Optional.empty();
+            }
+            columnIndexes[i] = columnIndex;
+        }
 
-                    printer.println();
-                } catch (UnmatchedPseudonymization e) {
-                    log.warning("Skipped record due to UnmatchedPseudonymization: " + e.getPath());
+        return Optional.of(new CsvColumnPlan(columnIndexes, compiledTransforms));
+    }
+
+    /**
+     * placeholder for value of column that no transform targets
+     */
+    private static final Object UNTOUCHED = new Object();
+
+    /**
+     * transforms compiled against the header of a CSV file, so that they can be applied to each
+     * row by column index, rather than by evaluating JsonPaths against a map of the row
+     *
+     * equivalent to {@link #applyTransforms(Object, List)} of the row's map, provided row has a
+     * value for every column
+     */
+    @Value
+    class CsvColumnPlan {
+
+        /**
+         * index of column targeted by each transform, in order
+         */
+        int[] columnIndexes;
+
+        List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms;
+
+        /**
+         * @param record to transform; must have value for every column
+         * @param row    to fill with transformed values of the record
+         * @return whether record was transformed; false if it should be skipped
+         */
+        boolean apply(CSVRecord record, Object[] row) {
+            for (int column = 0; column < row.length; column++) {
+                row[column] = record.get(column);
+            }
+
+            return transform(row);
+        }
+
+        /**
+         * @param record to transform; must have value for every column
+         * @param row    to fill with transformed values of the record; UNTOUCHED for
+         *               columns that no transform targets, which are not decoded
+         * @return whether record was transformed; false if it should be skipped
+         */
+        boolean apply(Utf8CsvRecord record, Object[] row) {
+            Arrays.fill(row, UNTOUCHED);
+            for (int column : columnIndexes) {
+                if (row[column] == UNTOUCHED) {
+                    row[column] = record.get(column);
+                }
+            }
+
+            return transform(row);
+        }
+
+        private boolean transform(Object[] row) {
+            for (int i = 0; i < columnIndexes.length; i++) {
+                Triple<JsonPath, RecordTransform, MapFunction> compiledTransform = compiledTransforms.get(i);
+                int column = columnIndexes[i];
+                if (row[column] == null && compiledTransform.getMiddle() instanceof RecordTransform.Pseudonymize) {
+                    logSkippedRecord(compiledTransform.getMiddle().getPath());
+                    return false;
                 }
+                row[column] = compiledTransform.getRight().map(row[column], jsonConfiguration);
             }
+            return true;
         }
     }
 
@@ -122,47 +387,298 @@ public class RecordBulkDataSanitizerImpl implements BulkDataSanitizer {
     void sanitizeNdjson(@NonNull Reader reader,
                         @NonNull Writer writer,
                         @NonNull List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) throws IOException {
+        NdjsonPipelineOptions options = getNdjsonPipelineOptions();
+
         try (BufferedReader bufferedReader = new BufferedReader(reader)) {
-            String line;
-            while ((line = StringUtils.trimToNull(bufferedReader.readLine())) != null) {
+            if (options.getThreads() > 1) {
+                sanitizeNdjsonInParallel(bufferedReader, writer, compiledTransforms, options);
+            } else {
+                String line;
+                int linesInBatch = 0;
+                int charsInBatch = 0;
+                while ((line = StringUtils.trimToNull(bufferedReader.readLine())) != null) {
+                    String sanitized = sanitizeNdjsonLine(line, compiledTransforms);
+                    if (sanitized != null) {
+                        writer.append(sanitized);
+                        writer.append('\n'); // NDJSON uses newlines between records
+                        charsInBatch += sanitized.length() + 1;
+                    }
+                    if (++linesInBatch >= options.getBatchSize() || charsInBatch >= options.getMaxBatchChars()) {
+                        writer.flush(); //after each batch, rather than each line
+                        linesInBatch = 0;
+                        charsInBatch = 0;
+                    }
+                }
+                writer.flush();
+            }
+        }
+    }
 
-                Object document = jsonConfiguration.jsonProvider().parse(line);
+    /**
+     * sanitize batches of lines on a worker pool, writing results in the order they were read
+     *
+     * at most {@link NdjsonPipelineOptions#getMaxBatchesInFlight()} batches are being sanitized or
+     * waiting to be written at any time; reading blocks on writing the oldest batch beyond that.
+     */
+    private void sanitizeNdjsonInParallel(@NonNull BufferedReader reader,
+                                          @NonNull Writer writer,
+                                          @NonNull List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms,
+                                          @NonNull NdjsonPipelineOptions options) throws IOException {
+        ExecutorService executor = recordProcessingExecutor.get();
 
-                try {
-                    document = applyTransforms(document, compiledTransforms);
-                    writer.append(jsonConfiguration.jsonProvider().toJson(document));
-                    writer.append('\n'); // NDJSON uses newlines between records
-                    writer.flush(); //after each line
-                } catch (UnmatchedPseudonymization e) {
-                    log.warning("Skipped record due to UnmatchedPseudonymization: " + e.getPath());
+        Deque<Future<String>> inFlight = new ArrayDeque<>(options.getMaxBatchesInFlight());
+        try {
+            List<String> batch = new ArrayList<>(options.getBatchSize());
+            int charsInBatch = 0;
+            String line;
+            while ((line = StringUtils.trimToNull(reader.readLine())) != null) {
+                batch.add(line);
+                charsInBatch += line.length();
+                if (batch.size() >= options.getBatchSize() || charsInBatch >= options.getMaxBatchChars()) {
+                    if (inFlight.size() >= options.getMaxBatchesInFlight()) {
+                        writeBatch(writer, inFlight.removeFirst());
+                    }
+                    List<String> toSanitize = batch;
+                    inFlight.addLast(executor.submit(() -> sanitizeNdjsonBatch(toSanitize, compiledTransforms)));
+                    batch = new ArrayList<>(options.getBatchSize());
+                    charsInBatch = 0;
                 }
             }
+            if (!batch.isEmpty()) {
+                List<String> toSanitize = batch;
+                inFlight.addLast(executor.submit(() -> sanitizeNdjsonBatch(toSanitize, compiledTransforms)));
+            }
+            while (!inFlight.isEmpty()) {
+                writeBatch(writer, inFlight.removeFirst());
+            }
+        } finally {
+            // if failed, don't leave (shared) pool sanitizing batches that won't be written
+            inFlight.forEach(batch -> batch.cancel(true));
+        }
+    }
+
+    private void writeBatch(Writer writer, Future<String> batch) throws IOException {
+        try {
+            writer.append(batch.get());
+            writer.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for batch of records to be sanitized", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new IOException("Failed to sanitize batch of records", e.getCause());
+            }
+        }
+    }
+
+    private String sanitizeNdjsonBatch(List<String> lines,
+                                       List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) {
+        StringBuilder out = new StringBuilder();
+        for (String line : lines) {
+            String sanitized = sanitizeNdjsonLine(line, compiledTransforms);
+            if (sanitized != null) {
+                out.append(sanitized).append('\n'); // NDJSON uses newlines between records
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return sanitized line, or null if record should be skipped
+     */
+    private String sanitizeNdjsonLine(String line,
+                                      List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) {
+        Object document = jsonConfiguration.jsonProvider().parse(line);
+        document = applyTransforms(document, compiledTransforms);
+        return document == null ? null : jsonConfiguration.jsonProvider().toJson(document);
+    }
+
+    /**
+     * pattern of normalized JsonPath (as returned by {@link JsonPath#getPath()}) that refers to a
+     * value reached only through object properties; eg, $['data']['records']
+     */
+    private static final Pattern PROPERTIES_PATH = Pattern.compile("^\\$(\\['[^'\\\\]*'\\])*$");
+
+    private static final Pattern PROPERTY_SEGMENT = Pattern.compile("\\['([^'\\\\]*)'\\]");
+
+    /**
+     * @param recordsPath JsonPath to array of records within document; null for document itself
+     * @return names of properties to follow from root to array of records
+     * @throws IllegalArgumentException if path isn't one through object properties only
+     */
+    @VisibleForTesting
+    static List<String> parseRecordsPath(String recordsPath) {
+        if (StringUtils.isBlank(recordsPath)) {
+            return Collections.emptyList();
+        }
+        String normalized = JsonPath.compile(recordsPath).getPath();
+        if (!PROPERTIES_PATH.matcher(normalized).matches()) {
+            throw new IllegalArgumentException("recordsPath must be a path through object properties only; got " + recordsPath);
+        }
+        List<String> properties = new ArrayList<>();
+        Matcher matcher = PROPERTY_SEGMENT.matcher(normalized);
+        while (matcher.find()) {
+            properties.add(matcher.group(1));
         }
+        return properties;
     }
 
+    /**
+     * sanitize a single JSON document, streaming it token by token; each element of the records
+     * array is read, transformed and written one at a time, so memory used is bounded by the size
+     * of the largest record, rather than of the document
+     *
+     * everything outside the records array is copied as-is.
+     *
+     * @param parser positioned before start of document; closed when done
+     * @param generator to which to write sanitized document; closed when done
+     */
+    @VisibleForTesting
+    void sanitizeJson(@NonNull JsonParser parser,
+                      @NonNull JsonGenerator generator,
+                      @NonNull List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) throws IOException {
+        List<String> recordsPath = parseRecordsPath(rules.getRecordsPath());
+
+        // flush per record would defeat generator's buffering
+        ObjectWriter recordWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (parser; generator) {
+            if (parser.nextToken() == null) {
+                return; // empty document
+            }
+            if (!copyToRecords(parser, generator, recordsPath, recordWriter, compiledTransforms)) {
+                log.warning("No records found at " + StringUtils.defaultIfBlank(rules.getRecordsPath(), "$"));
+            }
+        }
+    }
+
+    /**
+     * copy value at parser's current token, sanitizing records if it's, or contains, the records
+     * array
+     *
+     * @param recordsPath properties to follow from current value to array of records
+     * @return whether records array was found
+     */
+    private boolean copyToRecords(JsonParser parser,
+                                  JsonGenerator generator,
+                                  List<String> recordsPath,
+                                  ObjectWriter recordWriter,
+                                  List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) throws IOException {
+        if (recordsPath.isEmpty()) {
+            sanitizeJsonRecords(parser, generator, recordWriter, compiledTransforms);
+            return true;
+        } else if (parser.currentToken() != JsonToken.START_OBJECT) {
+            generator.copyCurrentStructure(parser);
+            return false;
+        }
+
+        boolean found = false;
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            generator.writeFieldName(name);
+            parser.nextToken();
+            if (!found && name.equals(recordsPath.get(0))) {
+                found = copyToRecords(parser, generator, recordsPath.subList(1, recordsPath.size()), recordWriter, compiledTransforms);
+            } else {
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        generator.writeEndObject();
+        return found;
+    }
+
+    private void sanitizeJsonRecords(JsonParser parser,
+                                     JsonGenerator generator,
+                                     ObjectWriter recordWriter,
+                                     List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            generator.writeNull();
+            return;
+        } else if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("Expected array of records at " + StringUtils.defaultIfBlank(rules.getRecordsPath(), "$")
+                + "; found " + parser.currentToken());
+        }
+
+        generator.writeStartArray();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            // objects read as LinkedHashMap, as by JacksonJsonProvider
+            Object record = objectMapper.readValue(parser, Object.class);
+            if (!(record instanceof Map)) {
+                throw new IllegalArgumentException("Expected records to be JSON objects; found " + (record == null ? "null" : record.getClass().getSimpleName()));
+            }
+            LinkedHashMap transformed = applyTransforms(record, compiledTransforms);
+            if (transformed != null) {
+                recordWriter.writeValue(generator, transformed);
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    @VisibleForTesting
+    NdjsonPipelineOptions getNdjsonPipelineOptions() {
+        int threads = recordProcessingExecutor.getThreads();
+
+        return NdjsonPipelineOptions.builder()
+            .batchSize(config.getConfigPropertyAsOptional(BulkModeConfigProperty.RECORD_BATCH_SIZE)
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_RECORD_BATCH_SIZE))
+            .maxBatchChars(config.getConfigPropertyAsOptional(BulkModeConfigProperty.RECORD_BATCH_MAX_CHARS)
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_RECORD_BATCH_MAX_CHARS))
+            .threads(threads)
+            .maxBatchesInFlight(config.getConfigPropertyAsOptional(BulkModeConfigProperty.MAX_RECORD_BATCHES_IN_FLIGHT)
+                .map(Integer::parseInt)
+                .orElse(2 * threads))
+            .build();
+    }
+
+    @Builder
+    @Value
+    static class NdjsonPipelineOptions {
+
+        int batchSize;
+
+        int maxBatchChars;
+
+        int threads;
+
+        int maxBatchesInFlight;
+    }
 
     /**
      * Apply the compiled transforms to the document
      *
      * @param document JSON "document object"
      * @param compiledTransforms ordered list of compiled transforms
-     * @return the transformed document
-     * @throws UnmatchedPseudonymization if a pseudonymization transform should be applied, but nothing matches the path
+     * @return the transformed document; null if record should be skipped, as a pseudonymization
+     * transform should be applied, but value at the path is null
+     * @throws com.jayway.jsonpath.PathNotFoundException if a pseudonymization transform should be
+     * applied, but its (definite) path is absent from document
      */
-    LinkedHashMap applyTransforms(Object document, List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms)
-            throws UnmatchedPseudonymization {
+    LinkedHashMap applyTransforms(Object document, List<Triple<JsonPath, RecordTransform, MapFunction>> compiledTransforms) {
         for (Triple<JsonPath, RecordTransform, MapFunction> compiledTransform : compiledTransforms) {
-            if (compiledTransform.getMiddle() instanceof RecordTransform.Pseudonymize) {
-                Object matches = compiledTransform.getLeft().read(document);
-                if (matches == null) {
-                    throw new UnmatchedPseudonymization(compiledTransform.getMiddle().getPath());
-                }
+            Optional<CompiledJsonPath> compiled = compiledPaths.computeIfAbsent(compiledTransform.getMiddle().getPath(),
+                jsonPathCompiler::compile);
+
+            if (compiledTransform.getMiddle() instanceof RecordTransform.Pseudonymize
+                && !isMatched(document, compiledTransform.getLeft(), compiled)) {
+                logSkippedRecord(compiledTransform.getMiddle().getPath());
+                return null;
+            }
+
+            if (compiled.isPresent()
+                && compiled.get().map(document, value -> compiledTransform.getRight().map(value, jsonConfiguration))) {
+                continue;
             }
 
+            // fall back to JsonPath
             try {
-                compiledTransform.getLeft().map(document, compiledTransform.getRight(), jsonConfiguration);
+                compiledTransform.getLeft().map(document, compiledTransform.getRight(), lenientJsonConfiguration());
             } catch (JsonPathException e) {
-                //rule for transform doesn't match anything in document; suppress this
+                //rule for transform can't be applied to document (eg, filter on a scalar); suppress this
             }
         }
 
@@ -170,6 +686,41 @@ public class RecordBulkDataSanitizerImpl implements BulkDataSanitizer {
         return (LinkedHashMap) document;
     }
 
+    /**
+     * @return whether path matches a non-null value in document, as JsonPath would read it; paths
+     * that can match many values are matched even if they match none
+     * @throws com.jayway.jsonpath.PathNotFoundException if definite path is absent from document
+     */
+    private boolean isMatched(Object document, JsonPath path, Optional<CompiledJsonPath> compiled) {
+        if (compiled.isPresent()) {
+            if (!compiled.get().isDefinite()) {
+                // JsonPath reads a list, albeit possibly empty
+                return true;
+            }
+            List<Object> values = compiled.get().read(document);
+            if (values != null && !values.isEmpty()) {
+                return values.get(0) != null;
+            }
+            // fall back to JsonPath; absent path fails record, rather than skipping it
+        }
+        return path.read(document) != null;
+    }
+
+    private Configuration lenientJsonConfiguration() {
+        if (this.lenientJsonConfiguration == null) {
+            synchronized ($writeLock) {
+                if (this.lenientJsonConfiguration == null) {
+                    this.lenientJsonConfiguration = jsonConfiguration.addOptions(Option.SUPPRESS_EXCEPTIONS);
+                }
+            }
+        }
+        return this.lenientJsonConfiguration;
+    }
+
+    void logSkippedRecord(String unmatchedPath) {
+        log.warning("Skipped record due to unmatched pseudonymization: " + unmatchedPath);
+    }
+
     private MapFunction getMapFunction(RecordTransform transform,
                                        Pseudonymizer pseudonymizer,
                                        PseudonymEncoder encoder) {
@@ -195,10 +746,4 @@ public class RecordBulkDataSanitizerImpl implements BulkDataSanitizer {
             throw new IllegalArgumentException("Unknown transform type: " + transform.getClass().getName());
         }
     }
-
-    @Value
-    @EqualsAndHashCode(callSuper = true)
-    static class UnmatchedPseudonymization extends Throwable {
-        String path;
-    }
 }
@@ -0,0 +1,53 @@
+package co.worklytics.psoxy.storage.impl;
+
+import co.worklytics.psoxy.gateway.BulkModeConfigProperty;
+import co.worklytics.psoxy.gateway.ConfigService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NoArgsConstructor;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * worker pool over which batches of records are sanitized, if
+ * {@link BulkModeConfigProperty#RECORD_PROCESSING_THREADS} > 1
+ *
+ * shared by all sanitizers, and created on first use; so files processed by same instance (eg, a
+ * batch of them) don't each pay to start (and tear down) their own pool
+ */
+@Singleton
+@NoArgsConstructor(onConstructor_ = @Inject)
+public class RecordProcessingExecutor {
+
+    @Inject
+    ConfigService config;
+
+    private volatile ExecutorService executor;
+    private final Object $writeLock = new Object[0];
+
+    /**
+     * @return number of threads over which to sanitize records
+     */
+    int getThreads() {
+        return config.getConfigPropertyAsOptional(BulkModeConfigProperty.RECORD_PROCESSING_THREADS)
+            .map(Integer::parseInt)
+            .orElse(RecordBulkDataSanitizerImpl.DEFAULT_RECORD_PROCESSING_THREADS);
+    }
+
+    ExecutorService get() {
+        if (this.executor == null) {
+            synchronized ($writeLock) {
+                if (this.executor == null) {
+                    this.executor = Executors.newFixedThreadPool(getThreads(),
+                        new ThreadFactoryBuilder()
+                            .setNameFormat("record-sanitizer-%d")
+                            .setDaemon(true) // don't block function runtime from shutting down
+                            .build());
+                }
+            }
+        }
+        return this.executor;
+    }
+}
@@ -0,0 +1,339 @@
+package co.worklytics.psoxy.storage.impl;
+
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * reads RFC 4180 CSV directly from UTF-8 bytes, for bulk sanitization of large files
+ *
+ * parses exactly as commons-csv's {@link org.apache.commons.csv.CSVParser} does with
+ * {@code CSVFormat.DEFAULT.withDelimiter(delimiter).withTrim()}:
+ *   - empty lines are skipped
+ *   - quoted values may contain delimiters and line breaks; "" within them is a literal quote
+ *   - whitespace between closing quote and delimiter is ignored
+ *   - values are trimmed
+ *   - a byte-order mark is NOT stripped; it's kept as part of the first value
+ *
+ * but without decoding bytes to chars, nor allocating a String per value; values are decoded only
+ * if/when accessed as Strings - see {@link Utf8CsvRecord}.
+ *
+ * this is possible because delimiters, quotes and line breaks are all ASCII, and no byte of a
+ * multibyte UTF-8 sequence is in ASCII range.
+ *
+ * NOTE: equivalent to commons-csv only for valid UTF-8; whereas commons-csv sees malformed
+ * sequences as U+FFFD (as decoded by {@link java.io.InputStreamReader}), this passes them through.
+ * Similarly, non-ASCII whitespace between a closing quote and a delimiter is an error here.
+ */
+class Utf8CsvReader implements Closeable {
+
+    static final int DEFAULT_BUFFER_SIZE = 65_536;
+
+    private static final int END_OF_STREAM = -1;
+
+    // no byte read yet; as in commons-csv, start of stream is treated as start of line
+    private static final int UNDEFINED = -2;
+
+    private static final int CR = '\r';
+    private static final int LF = '\n';
+    private static final int QUOTE = '"';
+
+    enum Token {
+        /**
+         * value, followed by delimiter
+         */
+        VALUE,
+        /**
+         * value that ends record (followed by line break or end of stream)
+         */
+        LAST_VALUE,
+        /**
+         * end of stream, without any value
+         */
+        NONE,
+    }
+
+    private final InputStream input;
+
+    private final int delimiter;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private int limit;
+
+    private int lastByte = UNDEFINED;
+
+    /**
+     * first line break encountered, outside of quoted values; null if none yet
+     */
+    @Getter
+    private String firstEndOfLine;
+
+    // values of record being parsed, and index at which each of them ends
+    private byte[] values = new byte[1024];
+    private int valuesLength;
+    private int[] ends = new int[32];
+    private int valueCount;
+
+    Utf8CsvReader(@NonNull InputStream input, char delimiter) {
+        this(input, delimiter, DEFAULT_BUFFER_SIZE);
+    }
+
+    Utf8CsvReader(@NonNull InputStream input, char delimiter, int bufferSize) {
+        Preconditions.checkArgument(supportsDelimiter(delimiter), "Unsupported delimiter: %s", delimiter);
+        this.input = input;
+        this.delimiter = delimiter;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return whether delimiter can be parsed at byte level
+     */
+    static boolean supportsDelimiter(char delimiter) {
+        return delimiter < 0x80 && delimiter != CR && delimiter != LF && delimiter != QUOTE;
+    }
+
+    /**
+     * @return map of header name --> index, as commons-csv builds it when first record is header,
+     * header case is ignored and duplicate header names are allowed (last one wins)
+     * @throws IllegalArgumentException if any header name is blank
+     */
+    static Map<String, Integer> caseInsensitiveHeaderMap(@NonNull Utf8CsvRecord header) {
+        Map<String, Integer> headerMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < header.size(); i++) {
+            String name = header.get(i);
+            if (name.isEmpty()) { // values are trimmed, so blank iff empty
+                throw new IllegalArgumentException("A header name is missing in " + header.toList());
+            }
+            headerMap.put(name, i);
+        }
+        return headerMap;
+    }
+
+    /**
+     * @return next record of the stream; null if no more records
+     * @throws IOException if stream can't be read, or isn't valid CSV
+     */
+    Utf8CsvRecord next() throws IOException {
+        valuesLength = 0;
+        valueCount = 0;
+
+        Token token;
+        do {
+            int start = valuesLength;
+            token = nextToken();
+            if (token != Token.NONE) {
+                endValue(start);
+            }
+        } while (token == Token.VALUE);
+
+        if (valueCount == 0) {
+            return null;
+        }
+        return new Utf8CsvRecord(Arrays.copyOf(values, valuesLength), Arrays.copyOf(ends, valueCount));
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    // mirrors org.apache.commons.csv.Lexer::nextToken
+    private Token nextToken() throws IOException {
+        int last = lastByte;
+        int c = read();
+        boolean endOfLine = readEndOfLine(c);
+
+        // skip empty lines
+        while (endOfLine && isStartOfLine(last)) {
+            last = c;
+            c = read();
+            endOfLine = readEndOfLine(c);
+            if (c == END_OF_STREAM) {
+                return Token.NONE;
+            }
+        }
+
+        if (last == END_OF_STREAM || (last != delimiter && c == END_OF_STREAM)) {
+            return Token.NONE;
+        }
+
+        if (c == delimiter) {
+            return Token.VALUE;
+        } else if (endOfLine || c == END_OF_STREAM) {
+            return Token.LAST_VALUE;
+        } else if (c == QUOTE) {
+            return parseQuotedValue();
+        } else {
+            return parseSimpleValue(c);
+        }
+    }
+
+    private Token parseSimpleValue(int c) throws IOException {
+        while (true) {
+            if (readEndOfLine(c) || c == END_OF_STREAM) {
+                return Token.LAST_VALUE;
+            } else if (c == delimiter) {
+                return Token.VALUE;
+            }
+            append(c);
+
+            // copy run of bytes that can't end value in bulk, rather than byte-by-byte
+            int runStart = position;
+            while (position < limit) {
+                int b = buffer[position];
+                if (b == delimiter || b == CR || b == LF) {
+                    break;
+                }
+                position++;
+            }
+            if (position > runStart) {
+                append(buffer, runStart, position - runStart);
+                lastByte = buffer[position - 1] & 0xFF;
+            }
+
+            c = read();
+        }
+    }
+
+    private Token parseQuotedValue() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == QUOTE) {
+                if (peek() == QUOTE) {
+                    append(read());
+                } else {
+                    // closing quote; only whitespace allowed before delimiter or end of record
+                    while (true) {
+                        c = read();
+                        if (c == delimiter) {
+                            return Token.VALUE;
+                        } else if (c == END_OF_STREAM || readEndOfLine(c)) {
+                            return Token.LAST_VALUE;
+                        } else if (!isWhitespace(c)) {
+                            throw new IOException("invalid char between encapsulated token and delimiter");
+                        }
+                    }
+                }
+            } else if (c == END_OF_STREAM) {
+                throw new IOException("EOF reached before encapsulated token finished");
+            } else {
+                append(c);
+
+                int runStart = position;
+                while (position < limit && buffer[position] != QUOTE) {
+                    position++;
+                }
+                if (position > runStart) {
+                    append(buffer, runStart, position - runStart);
+                    lastByte = buffer[position - 1] & 0xFF;
+                }
+            }
+        }
+    }
+
+    // mirrors org.apache.commons.csv.Lexer::readEndOfLine
+    private boolean readEndOfLine(int c) throws IOException {
+        if (c == CR && peek() == LF) {
+            c = read();
+            if (firstEndOfLine == null) {
+                firstEndOfLine = "\r\n";
+            }
+        }
+        if (firstEndOfLine == null) {
+            if (c == LF) {
+                firstEndOfLine = "\n";
+            } else if (c == CR) {
+                firstEndOfLine = "\r";
+            }
+        }
+        return c == LF || c == CR;
+    }
+
+    private boolean isStartOfLine(int c) {
+        return c == LF || c == CR || c == UNDEFINED;
+    }
+
+    // ASCII subset of Character::isWhitespace
+    private boolean isWhitespace(int c) {
+        return c != delimiter && ((c >= 0x09 && c <= 0x0D) || (c >= 0x1C && c <= 0x20));
+    }
+
+    /**
+     * trim value that started at {@code start}, as commons-csv does with String::trim, and record
+     * its end
+     */
+    private void endValue(int start) {
+        int from = start;
+        int to = valuesLength;
+        while (from < to && (values[from] & 0xFF) <= ' ') {
+            from++;
+        }
+        while (to > from && (values[to - 1] & 0xFF) <= ' ') {
+            to--;
+        }
+        if (from > start) {
+            System.arraycopy(values, from, values, start, to - from);
+        }
+        valuesLength = start + (to - from);
+
+        if (valueCount == ends.length) {
+            ends = Arrays.copyOf(ends, ends.length * 2);
+        }
+        ends[valueCount++] = valuesLength;
+    }
+
+    private void append(int b) {
+        if (valuesLength == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[valuesLength++] = (byte) b;
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        if (valuesLength + length > values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, valuesLength + length));
+        }
+        System.arraycopy(bytes, offset, values, valuesLength, length);
+        valuesLength += length;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            lastByte = END_OF_STREAM;
+            return END_OF_STREAM;
+        }
+        lastByte = buffer[position++] & 0xFF;
+        return lastByte;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return END_OF_STREAM;
+        }
+        return buffer[position] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = input.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        if (read < 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,81 @@
+package co.worklytics.psoxy.storage.impl;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * record read by {@link Utf8CsvReader}
+ *
+ * values are kept as (trimmed) UTF-8 bytes; they're decoded only when accessed as Strings, so
+ * values that are just passed through to output (see {@link #writeTo(int, Utf8CsvWriter)}) are
+ * never decoded.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+class Utf8CsvRecord {
+
+    /**
+     * all values of the record, concatenated
+     */
+    private final byte[] values;
+
+    /**
+     * index in values at which each value ends
+     */
+    private final int[] ends;
+
+    int size() {
+        return ends.length;
+    }
+
+    /**
+     * @param i index of value
+     * @return value, decoded
+     * @throws ArrayIndexOutOfBoundsException if no such value, as {@link org.apache.commons.csv.CSVRecord#get(int)}
+     */
+    String get(int i) {
+        int start = start(i);
+        return new String(values, start, ends[i] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return whether value is blank, per {@link StringUtils#isBlank(CharSequence)}; decodes value
+     * only if it starts with non-ASCII char
+     */
+    boolean isBlank(int i) {
+        int start = start(i);
+        if (start == ends[i]) {
+            return true;
+        } else if (values[start] >= 0) {
+            // trimmed, so ASCII first char isn't whitespace
+            return false;
+        } else {
+            return StringUtils.isBlank(get(i));
+        }
+    }
+
+    /**
+     * write value, as-is, to writer
+     */
+    void writeTo(int i, Utf8CsvWriter writer) throws IOException {
+        int start = start(i);
+        writer.write(values, start, ends[i] - start);
+    }
+
+    List<String> toList() {
+        List<String> list = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            list.add(get(i));
+        }
+        return list;
+    }
+
+    private int start(int i) {
+        return i == 0 ? 0 : ends[i - 1];
+    }
+}
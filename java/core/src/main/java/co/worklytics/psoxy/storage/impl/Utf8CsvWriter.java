@@ -0,0 +1,172 @@
+package co.worklytics.psoxy.storage.impl;
+
+import lombok.NonNull;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * writes CSV as UTF-8 bytes, quoting values exactly as commons-csv's
+ * {@link org.apache.commons.csv.CSVPrinter} does with {@link org.apache.commons.csv.CSVFormat#DEFAULT}
+ * (eg, {@link org.apache.commons.csv.QuoteMode#MINIMAL}), other than record separator.
+ *
+ * values may be given as bytes, so ones read by {@link Utf8CsvReader} can be passed through without
+ * being decoded and re-encoded.
+ */
+class Utf8CsvWriter implements Flushable, Closeable {
+
+    static final int DEFAULT_BUFFER_SIZE = 65_536;
+
+    private static final byte DELIMITER = ',';
+    private static final byte QUOTE = '"';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final OutputStream output;
+
+    private final byte[] recordSeparator;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private boolean newRecord = true;
+
+    /**
+     * @param output          to write to
+     * @param recordSeparator to write after each record; if null, nothing is written (as with
+     *                        commons-csv)
+     */
+    Utf8CsvWriter(@NonNull OutputStream output, @Nullable String recordSeparator) {
+        this(output, recordSeparator, DEFAULT_BUFFER_SIZE);
+    }
+
+    Utf8CsvWriter(@NonNull OutputStream output, @Nullable String recordSeparator, int bufferSize) {
+        this.output = output;
+        this.recordSeparator = recordSeparator == null ? null : recordSeparator.getBytes(StandardCharsets.UTF_8);
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * write null value (nothing, not even quotes, between delimiters)
+     */
+    void writeNull() throws IOException {
+        if (!newRecord) {
+            put(DELIMITER);
+        }
+        newRecord = false;
+    }
+
+    void write(@Nullable String value) throws IOException {
+        if (value == null) {
+            writeNull();
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * write value, given as UTF-8 bytes; quoted if necessary
+     */
+    void write(byte[] bytes, int offset, int length) throws IOException {
+        if (!newRecord) {
+            put(DELIMITER);
+        }
+
+        if (needsQuotes(bytes, offset, length, newRecord)) {
+            put(QUOTE);
+            int start = offset;
+            for (int i = offset; i < offset + length; i++) {
+                if (bytes[i] == QUOTE) {
+                    // write through this quote, then start next chunk at it, so it's doubled
+                    put(bytes, start, i + 1 - start);
+                    start = i;
+                }
+            }
+            put(bytes, start, offset + length - start);
+            put(QUOTE);
+        } else {
+            put(bytes, offset, length);
+        }
+        newRecord = false;
+    }
+
+    void writeRecord(@NonNull Iterable<String> values) throws IOException {
+        for (String value : values) {
+            write(value);
+        }
+        endRecord();
+    }
+
+    void endRecord() throws IOException {
+        if (recordSeparator != null) {
+            put(recordSeparator, 0, recordSeparator.length);
+        }
+        newRecord = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        output.close();
+    }
+
+    // mirrors QuoteMode.MINIMAL case of org.apache.commons.csv.CSVFormat::printWithQuotes; as all
+    // the chars it checks for are ASCII, checking bytes of UTF-8 encoding is equivalent
+    private boolean needsQuotes(byte[] bytes, int offset, int length, boolean newRecord) {
+        if (length == 0) {
+            // empty first value is quoted, as may be only thing on line
+            return newRecord;
+        }
+
+        if ((bytes[offset] & 0xFF) <= '#') {
+            return true;
+        }
+
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            if (b == LF || b == CR || b == QUOTE || b == DELIMITER) {
+                return true;
+            }
+        }
+
+        return (bytes[offset + length - 1] & 0xFF) <= ' ';
+    }
+
+    private void put(byte b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = b;
+    }
+
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length > buffer.length) {
+                output.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package co.worklytics.psoxy.utils;
+
+import lombok.Value;
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressCriteria;
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressParser;
+import org.hazlewood.connor.bottema.emailaddress.EmailAddressValidator;
+
+import javax.mail.internet.InternetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * parses email addresses as EmailAddressValidator / EmailAddressParser do, but without their full
+ * RFC 2822 parse (several regexes, each evaluated per call) in the common cases: simple addresses
+ * (eg, `alice.smith+foo@acme.co.uk`) and values that plainly aren't addresses (eg, numeric ids,
+ * GUIDs). These are classified in a single pass over the value, without regexes; anything else
+ * (display names, quoting, comments, domain literals, unusual characters, etc) is parsed by
+ * EmailAddressParser as before.
+ */
+public class EmailAddresses {
+
+    /**
+     * RFC 5321 limits; the fast path is limited to addresses within them, leaving longer ones to
+     * EmailAddressParser
+     */
+    static final int MAX_LOCAL_PART_LENGTH = 64;
+    static final int MAX_ADDRESS_LENGTH = 254;
+    static final int MAX_LABEL_LENGTH = 63;
+    static final int MIN_TLD_LENGTH = 2;
+
+    /**
+     * results of {@link #scan(String, int, int)} other than position of '@'
+     */
+    static final int NOT_ADDRESS = -1;
+    static final int NOT_SIMPLE = -2;
+
+    @Value
+    public static class Address {
+
+        /**
+         * portion before '@', as EmailAddressParser#getLocalPart would return it
+         */
+        String localPart;
+
+        /**
+         * portion after '@', as EmailAddressParser#getDomain would return it
+         */
+        String domain;
+    }
+
+    /**
+     * @param value to parse
+     * @return local part and domain of value, if value is a valid email address per
+     * {@link EmailAddressValidator#isValid(String)}; null otherwise
+     */
+    public static Address parse(String value) {
+        int at = scan(value, 0, value.length());
+        if (at >= 0) {
+            return new Address(value.substring(0, at), value.substring(at + 1));
+        } else if (at == NOT_ADDRESS) {
+            return null;
+        } else {
+            return parseFully(value);
+        }
+    }
+
+    /**
+     * @param value email header value to parse, eg `alice@acme.com, bob@acme.com`
+     * @return addresses (without any display names) in value, if a valid address list per
+     * {@link EmailAddressParser#isValidAddressList(String, java.util.EnumSet)}; null otherwise
+     */
+    public static List<String> parseAddressList(String value) {
+        List<String> addresses = new ArrayList<>();
+        int start = 0;
+        while (start <= value.length()) {
+            int end = value.indexOf(',', start);
+            if (end < 0) {
+                end = value.length();
+            }
+            int from = start;
+            int to = end;
+            while (from < to && value.charAt(from) == ' ') {
+                from++;
+            }
+            while (to > from && value.charAt(to - 1) == ' ') {
+                to--;
+            }
+            if (scan(value, from, to) < 0) {
+                // group syntax, display names, empty elements, etc
+                return parseAddressListFully(value);
+            }
+            addresses.add(value.substring(from, to));
+            start = end + 1;
+        }
+        return addresses;
+    }
+
+    static Address parseFully(String value) {
+        if (!EmailAddressValidator.isValid(value)) {
+            return null;
+        }
+        return new Address(EmailAddressParser.getLocalPart(value, EmailAddressCriteria.RECOMMENDED, true),
+            EmailAddressParser.getDomain(value, EmailAddressCriteria.RECOMMENDED, true));
+    }
+
+    static List<String> parseAddressListFully(String value) {
+        //NOTE: this does NOT seem to work for lists containing empty values (eg ",,"), which
+        // per RFC should be allowed ....
+        if (!EmailAddressParser.isValidAddressList(value, EmailAddressCriteria.RECOMMENDED)) {
+            return null;
+        }
+        InternetAddress[] parsed =
+            EmailAddressParser.extractHeaderAddresses(value, EmailAddressCriteria.RECOMMENDED, true);
+        List<String> addresses = new ArrayList<>(parsed.length);
+        for (InternetAddress address : parsed) {
+            addresses.add(address.getAddress());
+        }
+        return addresses;
+    }
+
+    /**
+     * scan value[from, to) for a simple address: a local part of letters, digits and `_+-'`,
+     * separated by single dots; then `@`; then a domain of at least two labels of letters, digits
+     * and inner hyphens (each at most 63 chars), the last (TLD) of at least two letters only.
+     *
+     * anything else is left to full parse; so this must accept only addresses that full parse also
+     * accepts (eg, it rejects single-char TLDs)
+     *
+     * @return position of '@', if simple address; NOT_ADDRESS if certainly not an address (no '@');
+     * NOT_SIMPLE otherwise
+     */
+    static int scan(String value, int from, int to) {
+        int at = -1;
+        int dotsInDomain = 0;
+        int labelStart = -1;
+        boolean onlyLettersInLabel = true;
+        char previous = '.'; // as if at start of a dot-separated segment
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c == '@') {
+                if (at >= 0 || previous == '.') {
+                    return NOT_SIMPLE;
+                }
+                at = i;
+                labelStart = i + 1;
+                previous = '.';
+                continue;
+            }
+            if (at < 0) {
+                if (c == '.' ? previous == '.' : !isLocalPartChar(c)) {
+                    // (within an address list, only whether result is negative matters)
+                    return value.indexOf('@', i) < 0 ? NOT_ADDRESS : NOT_SIMPLE;
+                }
+            } else if (c == '.') {
+                if (previous == '.' || previous == '-') {
+                    return NOT_SIMPLE;
+                }
+                dotsInDomain++;
+                labelStart = i + 1;
+                onlyLettersInLabel = true;
+            } else if (i - labelStart >= MAX_LABEL_LENGTH) {
+                return NOT_SIMPLE;
+            } else if (c == '-') {
+                if (previous == '.') {
+                    return NOT_SIMPLE;
+                }
+                onlyLettersInLabel = false;
+            } else if (isDigit(c)) {
+                onlyLettersInLabel = false;
+            } else if (!isLetter(c)) {
+                return NOT_SIMPLE;
+            }
+            previous = c;
+        }
+        if (at < 0) {
+            return NOT_ADDRESS;
+        }
+        if (previous == '.' || dotsInDomain == 0 || !onlyLettersInLabel || to - labelStart < MIN_TLD_LENGTH
+            || at - from > MAX_LOCAL_PART_LENGTH || to - from > MAX_ADDRESS_LENGTH) {
+            return NOT_SIMPLE;
+        }
+        return at;
+    }
+
+    static boolean isLocalPartChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '_' || c == '+' || c == '-' || c == '\'';
+    }
+
+    static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,254 @@
+package co.worklytics.psoxy.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.NonNull;
+
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.function.Supplier;
+
+/**
+ * timing of stages of proxy's request and bulk pipelines
+ *
+ * each stage is recorded as a JDK Flight Recorder event ('co.worklytics.psoxy.Stage'), which costs
+ * next to nothing unless a recording that enables it is running (eg, started with
+ * `-XX:StartFlightRecording` or `jcmd {pid} JFR.start`).
+ *
+ * additionally, while a {@link StageTimings} is collecting on the thread (as in development mode),
+ * durations are summed per stage, to return to client as a 'Server-Timing' header.
+ *
+ * usage:
+ * <pre>
+ *     try (StageTimings.Span span = StageTimings.start(Stage.UPSTREAM)) {
+ *         ...
+ *     }
+ * </pre>
+ *
+ * @see <a href="https://www.w3.org/TR/server-timing/">Server Timing</a>
+ */
+public class StageTimings implements AutoCloseable {
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    public enum Stage {
+
+        /**
+         * loading config/secrets/rules needed to handle request
+         */
+        CONFIG,
+
+        /**
+         * authenticating with source, including any token refresh
+         */
+        AUTH,
+
+        /**
+         * call to source API, including reading its response
+         */
+        UPSTREAM,
+
+        /**
+         * filtering response by schema
+         */
+        FILTER,
+
+        /**
+         * applying a rule's transform (other than pseudonymization); count is of values transformed
+         */
+        TRANSFORM,
+
+        /**
+         * applying a rule's pseudonymization transform; count is of values pseudonymized
+         */
+        PSEUDONYMIZE,
+
+        /**
+         * compressing response
+         */
+        COMPRESSION,
+        ;
+
+        /**
+         * @return name of metric in 'Server-Timing' header
+         */
+        public String getMetricName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    @Name("co.worklytics.psoxy.Stage")
+    @Label("Psoxy Stage")
+    @Description("Stage of handling a request, or sanitizing bulk data")
+    @Category("Psoxy")
+    @StackTrace(false)
+    static class StageEvent extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Detail")
+        String detail;
+
+        @Label("Count")
+        long count;
+    }
+
+    private static final ThreadLocal<StageTimings> CURRENT = new ThreadLocal<>();
+
+    private static final Span NOOP = new Span(null, null, null, null) {
+        @Override
+        public Span count(long count) {
+            return this;
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+    };
+
+    private final long[] nanos = new long[Stage.values().length];
+
+    private final long[] counts = new long[Stage.values().length];
+
+    private StageTimings() {
+    }
+
+    /**
+     * begin collecting durations of stages on current thread, until closed
+     */
+    public static StageTimings collect() {
+        StageTimings timings = new StageTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    public static Span start(@NonNull Stage stage) {
+        return start(stage, (String) null);
+    }
+
+    /**
+     * @param stage  to time
+     * @param detail of what's being done in stage, if any (eg, JSON paths of a transform);
+     *               included only in JFR events
+     * @return span to close when stage is done
+     */
+    public static Span start(@NonNull Stage stage, String detail) {
+        return start(stage, () -> detail);
+    }
+
+    /**
+     * @param stage  to time
+     * @param detail supplies detail of what's being done in stage; called only if JFR event
+     *               will be recorded, so may be costly to build
+     * @return span to close when stage is done
+     */
+    public static Span start(@NonNull Stage stage, @NonNull Supplier<String> detail) {
+        StageTimings timings = CURRENT.get();
+        StageEvent event = new StageEvent();
+        if (event.isEnabled()) {
+            event.begin();
+        } else {
+            event = null;
+        }
+        if (event == null && timings == null) {
+            return NOOP;
+        }
+        return new Span(stage, detail, event, timings);
+    }
+
+    /**
+     * @return duration, in nanoseconds, of stage so far
+     */
+    public long getNanos(@NonNull Stage stage) {
+        return nanos[stage.ordinal()];
+    }
+
+    public long getCount(@NonNull Stage stage) {
+        return counts[stage.ordinal()];
+    }
+
+    /**
+     * @return value for 'Server-Timing' header, with metric per stage that occurred (eg,
+     * 'config;dur=0.12, upstream;dur=84.20, pseudonymize;dur=3.05;desc="120 values"')
+     */
+    public String toServerTimingHeader() {
+        StringJoiner header = new StringJoiner(", ");
+        for (Stage stage : Stage.values()) {
+            long stageNanos = nanos[stage.ordinal()];
+            long stageCount = counts[stage.ordinal()];
+            if (stageNanos > 0 || stageCount > 0) {
+                String metric = String.format(Locale.ROOT, "%s;dur=%.2f", stage.getMetricName(), stageNanos / 1e6);
+                if (stageCount > 0) {
+                    metric += ";desc=\"" + stageCount + " values\"";
+                }
+                header.add(metric);
+            }
+        }
+        return header.toString();
+    }
+
+    void add(Stage stage, long elapsedNanos, long count) {
+        nanos[stage.ordinal()] += elapsedNanos;
+        counts[stage.ordinal()] += count;
+    }
+
+    @Override
+    public void close() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    public static class Span implements AutoCloseable {
+
+        private final Stage stage;
+
+        private final Supplier<String> detail;
+
+        private final StageEvent event;
+
+        private final StageTimings timings;
+
+        private final long start;
+
+        private long count;
+
+        Span(Stage stage, Supplier<String> detail, StageEvent event, StageTimings timings) {
+            this.stage = stage;
+            this.detail = detail;
+            this.event = event;
+            this.timings = timings;
+            this.start = timings == null ? 0 : System.nanoTime();
+        }
+
+        /**
+         * @param count of values processed in stage (eg, pseudonymized), to add
+         */
+        public Span count(long count) {
+            this.count += count;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.stage = stage.name();
+                    event.detail = detail.get();
+                    event.count = count;
+                    event.commit();
+                }
+            }
+            if (timings != null) {
+                timings.add(stage, System.nanoTime() - start, count);
+            }
+        }
+    }
+}
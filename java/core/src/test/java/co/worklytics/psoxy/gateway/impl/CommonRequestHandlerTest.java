@@ -26,7 +26,9 @@ import org.junit.jupiter.params.provider.MethodSource;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -34,9 +36,16 @@ import java.util.Set;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class CommonRequestHandlerTest {
@@ -48,6 +57,7 @@ class CommonRequestHandlerTest {
         MockModules.ForSecretStore.class,
         MockModules.ForRules.class,
         MockModules.ForSourceAuthStrategySet.class,
+        MockModules.ForHttpTransportFactory.class,
     })
     public interface Container {
         void inject(CommonRequestHandlerTest test);
@@ -162,6 +172,53 @@ class CommonRequestHandlerTest {
             handler.getSanitizerForRequest(mock(HttpEventRequest.class)).getPseudonymizer().getOptions().getPseudonymImplementation());
     }
 
+    @Test
+    void getRulesSha_computedOnce() {
+        handler.rulesUtils = spy(handler.rulesUtils);
+        doReturn("sha").when(handler.rulesUtils).sha(handler.rules);
+
+        assertEquals("sha", handler.getRulesSha());
+        assertEquals("sha", handler.getRulesSha());
+
+        verify(handler.rulesUtils, times(1)).sha(handler.rules);
+    }
+
+    @Test
+    void isCoalescable() {
+        HttpEventRequest get = MockModules.provideMock(HttpEventRequest.class);
+        when(get.getHttpMethod()).thenReturn(HttpMethods.GET);
+        assertTrue(handler.isCoalescable(get));
+
+        HttpEventRequest head = MockModules.provideMock(HttpEventRequest.class);
+        when(head.getHttpMethod()).thenReturn(HttpMethods.HEAD);
+        assertFalse(handler.isCoalescable(head));
+
+        HttpEventRequest withBody = MockModules.provideMock(HttpEventRequest.class);
+        when(withBody.getHttpMethod()).thenReturn(HttpMethods.GET);
+        when(withBody.getBody()).thenReturn("{}".getBytes());
+        assertFalse(handler.isCoalescable(withBody));
+
+        HttpEventRequest healthCheck = MockModules.provideMock(HttpEventRequest.class);
+        when(healthCheck.getHttpMethod()).thenReturn(HttpMethods.GET);
+        when(healthCheck.getHeader(ControlHeader.HEALTH_CHECK.getHttpHeader())).thenReturn(Optional.of("true"));
+        assertFalse(handler.isCoalescable(healthCheck));
+    }
+
+    @SneakyThrows
+    @Test
+    void coalesceOrHandleRequest_keyFails_notCoalesced() {
+        CommonRequestHandler spy = spy(handler);
+        spy.requestCoalescer = Optional.of(new RequestCoalescer<>(Duration.ofSeconds(30)));
+
+        HttpEventRequest request = MockModules.provideMock(HttpEventRequest.class);
+        when(request.getHttpMethod()).thenReturn(HttpMethods.GET);
+        HttpEventResponse response = HttpEventResponse.builder().statusCode(200).build();
+        doThrow(new MalformedURLException("no protocol")).when(spy).coalescingKey(request);
+        doReturn(response).when(spy).handleRequest(request);
+
+        assertSame(response, spy.coalesceOrHandleRequest(request));
+    }
+
     @Test
     void testHeadersPassThrough() throws IOException {
         HttpEventResponse.HttpEventResponseBuilder responseBuilder = HttpEventResponse.builder();
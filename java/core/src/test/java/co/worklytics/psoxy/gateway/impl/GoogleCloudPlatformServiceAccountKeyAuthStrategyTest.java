@@ -2,21 +2,33 @@ package co.worklytics.psoxy.gateway.impl;
 
 import co.worklytics.psoxy.PsoxyModule;
 import co.worklytics.test.MockModules;
+import co.worklytics.test.TestModules;
 import com.google.auth.Credentials;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
 import com.google.auth.oauth2.ServiceAccountCredentials;
 import dagger.Component;
 import lombok.SneakyThrows;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.ByteArrayInputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.Base64;
+import java.util.Date;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -27,6 +39,7 @@ class GoogleCloudPlatformServiceAccountKeyAuthStrategyTest {
     @Singleton
     @Component(modules = {
         PsoxyModule.class,
+        TestModules.ForFixedClock.class,
         MockModules.ForConfigService.class,
         MockModules.ForHttpTransportFactory.class,
         MockModules.ForSecretStore.class,
@@ -97,6 +110,79 @@ class GoogleCloudPlatformServiceAccountKeyAuthStrategyTest {
             credentials.getRequestMetadata().toString());
     }
 
+    @SneakyThrows
+    @Test
+    void prefetchImpersonatedTokens() {
+        MockModules.ForHttpTransportFactory.mockResponse(authStrategy.httpTransportFactory, FAKE_TOKEN_RESPONSE);
+
+        when(authStrategy.config.getConfigPropertyOrError(GoogleCloudPlatformServiceAccountKeyAuthStrategy.ConfigProperty.OAUTH_SCOPES))
+            .thenReturn("https://www.googleapis.com/auth/drive.metadata.readonly");
+        when(authStrategy.secretStore.getConfigPropertyAsOptional(GoogleCloudPlatformServiceAccountKeyAuthStrategy.ConfigProperty.SERVICE_ACCOUNT_KEY))
+            .thenReturn(Optional.of(new String(Base64.getEncoder().encode(KEY.getBytes()))));
+        when(authStrategy.config.getConfigPropertyAsOptional(GoogleCloudPlatformServiceAccountKeyAuthStrategy.ConfigProperty.IMPERSONATION_SUBJECTS_TO_PREFETCH))
+            .thenReturn(Optional.of(" alice@acme.com, "));
+
+        authStrategy.prefetchImpersonatedTokens().get(10, TimeUnit.SECONDS);
+
+        GoogleCredentials prefetched = authStrategy.getCredentialsCache().getIfPresent("alice@acme.com");
+        assertNotNull(prefetched);
+        assertEquals("1/fFAGRNJru1FTz70BzhT3Zg", prefetched.getAccessToken().getTokenValue());
+
+        // served from cache, w/o another token request
+        assertSame(prefetched, authStrategy.getCredentials(Optional.of("alice@acme.com")));
+    }
+
+    @SneakyThrows
+    @Test
+    void prefetchImpersonatedTokensIfDue_refreshedBeforeExpiry() {
+        when(authStrategy.config.getConfigPropertyAsOptional(GoogleCloudPlatformServiceAccountKeyAuthStrategy.ConfigProperty.IMPERSONATION_SUBJECTS_TO_PREFETCH))
+            .thenReturn(Optional.of("alice@acme.com"));
+
+        // tokens minted expire this long after injected clock's now
+        AtomicReference<Duration> tokenLifetime = new AtomicReference<>(Duration.ofHours(1));
+        AtomicInteger tokensMinted = new AtomicInteger();
+        GoogleCredentials prefetched = new GoogleCredentials() {
+            @Override
+            public AccessToken refreshAccessToken() {
+                return new AccessToken("token" + tokensMinted.incrementAndGet(),
+                    Date.from(authStrategy.clock.instant().plus(tokenLifetime.get())));
+            }
+        };
+        authStrategy.getCredentialsCache().put("alice@acme.com", prefetched);
+
+        Instant start = authStrategy.clock.instant();
+        authStrategy.prefetchImpersonatedTokensIfDue().get(10, TimeUnit.SECONDS);
+        assertEquals("token1", prefetched.getAccessToken().getTokenValue());
+
+        // due to check, but token not expiring
+        authStrategy.clock = Clock.fixed(start.plus(GoogleCloudPlatformServiceAccountKeyAuthStrategy.PREFETCH_CHECK_INTERVAL), ZoneOffset.UTC);
+        authStrategy.prefetchImpersonatedTokensIfDue().get(10, TimeUnit.SECONDS);
+        assertEquals("token1", prefetched.getAccessToken().getTokenValue());
+
+        // due to check, and token expiring; refreshed with one that's expiring already
+        tokenLifetime.set(Duration.ZERO);
+        Instant expiring = start.plus(Duration.ofHours(1)).minus(GoogleCloudPlatformServiceAccountKeyAuthStrategy.PROACTIVE_REFRESH_MARGIN).plusSeconds(1);
+        authStrategy.clock = Clock.fixed(expiring, ZoneOffset.UTC);
+        authStrategy.prefetchImpersonatedTokensIfDue().get(10, TimeUnit.SECONDS);
+        assertEquals("token2", prefetched.getAccessToken().getTokenValue());
+
+        // token expiring, but not yet due to check again
+        authStrategy.clock = Clock.fixed(expiring.plusSeconds(30), ZoneOffset.UTC);
+        authStrategy.prefetchImpersonatedTokensIfDue().get(10, TimeUnit.SECONDS);
+        assertEquals("token2", prefetched.getAccessToken().getTokenValue());
+
+        authStrategy.clock = Clock.fixed(expiring.plus(GoogleCloudPlatformServiceAccountKeyAuthStrategy.PREFETCH_CHECK_INTERVAL), ZoneOffset.UTC);
+        authStrategy.prefetchImpersonatedTokensIfDue().get(10, TimeUnit.SECONDS);
+        assertEquals("token3", prefetched.getAccessToken().getTokenValue());
+        assertSame(prefetched, authStrategy.getCredentialsCache().getIfPresent("alice@acme.com"));
+    }
+
+    @Test
+    void prefetchImpersonatedTokens_noneConfigured() {
+        assertDoesNotThrow(() -> authStrategy.prefetchImpersonatedTokens().get(10, TimeUnit.SECONDS));
+        assertEquals(0, authStrategy.getCredentialsCache().size());
+    }
+
     @ValueSource(strings = {
         //various cases of extra whitepsace added around base64-encoded value
         // seen in cases where customers copy-paste encoded keys into console
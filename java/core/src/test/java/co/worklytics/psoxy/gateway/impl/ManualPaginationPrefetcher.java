@@ -0,0 +1,78 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * pagination prefetcher for tests, whose prefetches run only when test runs them, and whose clock
+ * advances only when test advances it; so tests of handlers using it are deterministic
+ *
+ */
+public class ManualPaginationPrefetcher {
+
+    @Getter
+    final PaginationPrefetcher prefetcher;
+
+    final Queue<Runnable> pending = new ArrayDeque<>();
+
+    final AtomicLong nanos = new AtomicLong();
+
+    ManualPaginationPrefetcher(@NonNull Duration ttl, @NonNull Duration maxWait) {
+        this.prefetcher = new PaginationPrefetcher(ttl, maxWait, PaginationPrefetcher.DEFAULT_MAX_BYTES,
+            PaginationPrefetcher.DEFAULT_MAX_IN_FLIGHT, this::enqueue, nanos::get);
+    }
+
+    /**
+     * @param handler to prefetch pages for
+     * @param ttl     of prefetched pages
+     * @param maxWait for prefetches in flight
+     * @return prefetcher, now used by handler
+     */
+    public static ManualPaginationPrefetcher install(@NonNull CommonRequestHandler handler,
+                                                     @NonNull Duration ttl,
+                                                     @NonNull Duration maxWait) {
+        ManualPaginationPrefetcher manual = new ManualPaginationPrefetcher(ttl, maxWait);
+        handler.paginationPrefetcher = Optional.of(manual.prefetcher);
+        return manual;
+    }
+
+    /**
+     * run prefetches started so far, on calling thread, including any they start in turn
+     *
+     * @return prefetches run
+     */
+    public int runPending() {
+        int run = 0;
+        Runnable next;
+        while ((next = poll()) != null) {
+            next.run();
+            run++;
+        }
+        return run;
+    }
+
+    /**
+     * @return prefetches started, but not yet run
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public void advance(@NonNull Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+
+    private synchronized void enqueue(Runnable prefetch) {
+        pending.add(prefetch);
+    }
+
+    private synchronized Runnable poll() {
+        return pending.poll();
+    }
+}
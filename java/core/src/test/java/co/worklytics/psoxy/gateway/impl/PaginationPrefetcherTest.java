@@ -0,0 +1,248 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import co.worklytics.psoxy.gateway.HttpEventRequest;
+import co.worklytics.psoxy.gateway.HttpEventResponse;
+import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaginationPrefetcherTest {
+
+    static final ObjectMapper objectMapper = new ObjectMapper();
+
+    static final String URL = "https://graph.microsoft.com/v1.0/users?$top=100";
+
+    final AtomicLong nanos = new AtomicLong();
+
+    /**
+     * prefetches synchronously, unless deferred
+     */
+    PaginationPrefetcher prefetcher(long maxBytes) {
+        return new PaginationPrefetcher(Duration.ofSeconds(10), Duration.ofSeconds(1), maxBytes, 2, Runnable::run, nanos::get);
+    }
+
+    static PaginationPrefetcher.NextPage nextPage(String url) {
+        return new PaginationPrefetcher.NextPage(SanitizedResponseCache.Key.builder()
+            .targetUrl(PaginationPrefetcher.normalize(url))
+            .pseudonymImplementation(PseudonymImplementation.DEFAULT)
+            .rulesSha("sha")
+            .build(), url);
+    }
+
+    static PaginationPrefetcher.Page page(int statusCode, String body) {
+        return new PaginationPrefetcher.Page(HttpEventResponse.builder().statusCode(statusCode).body(body).build(), null);
+    }
+
+    @Test
+    void nextPageUrl_linkHeader() {
+        assertEquals(Optional.of("https://api.github.com/orgs/acme/repos?page=2"),
+            PaginationPrefetcher.nextPageUrl(objectMapper, "https://api.github.com/orgs/acme/repos",
+                "<https://api.github.com/orgs/acme/repos?page=2>; rel=\"next\", <https://api.github.com/orgs/acme/repos?page=5>; rel=\"last\"",
+                "[]"));
+        assertEquals(Optional.of("https://api.github.com/orgs/acme/repos?page=3"),
+            PaginationPrefetcher.nextPageUrl(objectMapper, "https://api.github.com/orgs/acme/repos?page=2",
+                "<https://api.github.com/orgs/acme/repos?page=1>; rel=\"prev first\",<https://api.github.com/orgs/acme/repos?page=3>;rel=next",
+                "[]"));
+        assertEquals(Optional.empty(),
+            PaginationPrefetcher.nextPageUrl(objectMapper, "https://api.github.com/orgs/acme/repos?page=5",
+                "<https://api.github.com/orgs/acme/repos?page=4>; rel=\"prev\"", "[]"));
+    }
+
+    @Test
+    void nextPageUrl_odataNextLink() {
+        assertEquals(Optional.of("https://graph.microsoft.com/v1.0/users?$top=100&$skiptoken=X'4453'"),
+            PaginationPrefetcher.nextPageUrl(objectMapper, URL, null,
+                "{\"@odata.nextLink\":\"https://graph.microsoft.com/v1.0/users?$top=100&$skiptoken=X'4453'\",\"value\":[]}"));
+        assertEquals(Optional.empty(),
+            PaginationPrefetcher.nextPageUrl(objectMapper, URL, null, "{\"value\":[]}"));
+    }
+
+    @Test
+    void nextPageUrl_pageToken() {
+        assertEquals(Optional.of("https://admin.googleapis.com/admin/directory/v1/users?customer=my_customer&pageToken=abc%3D%3D"),
+            PaginationPrefetcher.nextPageUrl(objectMapper, "https://admin.googleapis.com/admin/directory/v1/users?customer=my_customer&pageToken=xyz",
+                null, "{\"users\":[],\"nextPageToken\":\"abc==\"}"));
+        // last page
+        assertEquals(Optional.empty(),
+            PaginationPrefetcher.nextPageUrl(objectMapper, "https://admin.googleapis.com/admin/directory/v1/users", null, "{\"users\":[],\"nextPageToken\":\"\"}"));
+    }
+
+    @Test
+    void nextPageUrl_slackCursor() {
+        assertEquals(Optional.of("https://slack.com/api/conversations.list?limit=200&cursor=dXNlcjpVMDYxTkZUVDI%3D"),
+            PaginationPrefetcher.nextPageUrl(objectMapper, "https://slack.com/api/conversations.list?limit=200", null,
+                "{\"ok\":true,\"channels\":[],\"response_metadata\":{\"next_cursor\":\"dXNlcjpVMDYxTkZUVDI=\"}}"));
+        assertEquals(Optional.empty(),
+            PaginationPrefetcher.nextPageUrl(objectMapper, "https://slack.com/api/conversations.list", null,
+                "{\"ok\":true,\"channels\":[],\"response_metadata\":{\"next_cursor\":\"\"}}"));
+    }
+
+    @Test
+    void nextPageUrl_notJson() {
+        assertEquals(Optional.empty(), PaginationPrefetcher.nextPageUrl(objectMapper, URL, null, "nextPageToken: not json"));
+        assertEquals(Optional.empty(), PaginationPrefetcher.nextPageUrl(objectMapper, URL, "", ""));
+    }
+
+    @Test
+    void normalize() {
+        assertEquals(PaginationPrefetcher.normalize("https://slack.com/api/conversations.list?limit=200&cursor=dXNlcjpVMDYxTkZUVDI%3D"),
+            PaginationPrefetcher.normalize("https://slack.com/api/conversations.list?cursor=dXNlcjpVMDYxTkZUVDI=&limit=200"));
+        assertNotEquals(PaginationPrefetcher.normalize("https://slack.com/api/conversations.list?limit=200&cursor=a"),
+            PaginationPrefetcher.normalize("https://slack.com/api/conversations.list?limit=200&cursor=b"));
+        assertEquals("https://slack.com/api/conversations.list",
+            PaginationPrefetcher.normalize("https://slack.com/api/conversations.list"));
+    }
+
+    @Test
+    void nextPageRequest() {
+        HttpEventRequest original = new HttpEventRequest() {
+            public String getPath() { return "/v1.0/users"; }
+            public Optional<String> getQuery() { return Optional.empty(); }
+            public Optional<String> getHeader(String headerName) { return Optional.of("value of " + headerName); }
+            public Optional<List<String>> getMultiValueHeader(String headerName) { return Optional.empty(); }
+            public String getHttpMethod() { return "GET"; }
+            public byte[] getBody() { return null; }
+        };
+
+        HttpEventRequest next = PaginationPrefetcher.nextPageRequest(original, "graph.microsoft.com",
+            "https://graph.microsoft.com/v1.0/users?$top=100&$skiptoken=X%274453%27").orElseThrow();
+        assertEquals("/v1.0/users", next.getPath());
+        assertEquals(Optional.of("$top=100&$skiptoken=X%274453%27"), next.getQuery());
+        assertEquals(Optional.of("value of X-Psoxy-User-To-Impersonate"), next.getHeader("X-Psoxy-User-To-Impersonate"));
+
+        // can't be requested via proxy
+        assertTrue(PaginationPrefetcher.nextPageRequest(original, "graph.microsoft.com", "https://evil.example.com/v1.0/users").isEmpty());
+        assertTrue(PaginationPrefetcher.nextPageRequest(original, "graph.microsoft.com", "http://graph.microsoft.com/v1.0/users").isEmpty());
+    }
+
+    @Test
+    void prefetch_thenTake() {
+        PaginationPrefetcher prefetcher = prefetcher(1_000_000);
+        PaginationPrefetcher.NextPage next = nextPage(URL + "&$skiptoken=2");
+        AtomicInteger fetches = new AtomicInteger();
+
+        assertTrue(prefetcher.prefetch(next, () -> {
+            fetches.incrementAndGet();
+            return page(200, "page 2");
+        }));
+        // already prefetched
+        assertFalse(prefetcher.prefetch(next, () -> page(200, "again")));
+
+        assertEquals("page 2", prefetcher.take(next.getKey()).orElseThrow().getResponse().getBody());
+        assertEquals(1, prefetcher.getHits().get());
+
+        // served at most once
+        assertTrue(prefetcher.take(next.getKey()).isEmpty());
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void failures_notServed() {
+        PaginationPrefetcher prefetcher = prefetcher(1_000_000);
+        PaginationPrefetcher.NextPage errored = nextPage(URL + "&$skiptoken=2");
+        PaginationPrefetcher.NextPage threw = nextPage(URL + "&$skiptoken=3");
+
+        prefetcher.prefetch(errored, () -> page(429, "too many requests"));
+        prefetcher.prefetch(threw, () -> {
+            throw new IllegalStateException("failed");
+        });
+
+        assertEquals(0, prefetcher.size());
+        assertTrue(prefetcher.take(errored.getKey()).isEmpty());
+        assertTrue(prefetcher.take(threw.getKey()).isEmpty());
+    }
+
+    @Test
+    void expired_dropped() {
+        PaginationPrefetcher prefetcher = prefetcher(1_000_000);
+        PaginationPrefetcher.NextPage next = nextPage(URL + "&$skiptoken=2");
+        prefetcher.prefetch(next, () -> page(200, "page 2"));
+
+        nanos.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        assertTrue(prefetcher.take(next.getKey()).isEmpty());
+        assertEquals(1, prefetcher.getDropped().get());
+    }
+
+    @Test
+    void maxBytes_oldestEvicted() {
+        String body = StringUtils.repeat('x', 1_000);
+        long pageBytes = page(200, body).sizeInBytes();
+        PaginationPrefetcher prefetcher = prefetcher(2 * pageBytes);
+
+        PaginationPrefetcher.NextPage first = nextPage(URL + "&$skiptoken=1");
+        PaginationPrefetcher.NextPage second = nextPage(URL + "&$skiptoken=2");
+        PaginationPrefetcher.NextPage third = nextPage(URL + "&$skiptoken=3");
+        prefetcher.prefetch(first, () -> page(200, body));
+        prefetcher.prefetch(second, () -> page(200, body));
+        prefetcher.prefetch(third, () -> page(200, body));
+
+        assertEquals(2, prefetcher.size());
+        assertTrue(prefetcher.take(first.getKey()).isEmpty());
+        assertTrue(prefetcher.take(second.getKey()).isPresent());
+        assertTrue(prefetcher.take(third.getKey()).isPresent());
+
+        // too large to hold at all
+        PaginationPrefetcher.NextPage large = nextPage(URL + "&$skiptoken=4");
+        prefetcher.prefetch(large, () -> page(200, body + body + body));
+        assertTrue(prefetcher.take(large.getKey()).isEmpty());
+    }
+
+    @Test
+    void maxInFlight() {
+        // executor that never runs prefetches, so they stay in flight
+        PaginationPrefetcher prefetcher = new PaginationPrefetcher(Duration.ofSeconds(10), Duration.ofSeconds(1), 1_000_000, 2, r -> { }, nanos::get);
+
+        assertTrue(prefetcher.prefetch(nextPage(URL + "&$skiptoken=1"), () -> page(200, "1")));
+        assertTrue(prefetcher.prefetch(nextPage(URL + "&$skiptoken=2"), () -> page(200, "2")));
+        assertFalse(prefetcher.prefetch(nextPage(URL + "&$skiptoken=3"), () -> page(200, "3")));
+    }
+
+    @Test
+    void inFlight_abandonedAfterMaxWait() {
+        Queue<Runnable> pending = new ArrayDeque<>();
+        PaginationPrefetcher prefetcher = new PaginationPrefetcher(Duration.ofSeconds(10), Duration.ZERO, 1_000_000, 2, pending::add, nanos::get);
+
+        PaginationPrefetcher.NextPage next = nextPage(URL + "&$skiptoken=1");
+        assertTrue(prefetcher.prefetch(next, () -> page(200, "1")));
+
+        // not done within max wait; so caller fetches page itself
+        assertTrue(prefetcher.take(next.getKey()).isEmpty());
+
+        // once done, not held, as abandoned
+        pending.forEach(Runnable::run);
+        assertEquals(0, prefetcher.size());
+        assertTrue(prefetcher.take(next.getKey()).isEmpty());
+        assertEquals(0, prefetcher.getHits().get());
+    }
+
+    @Test
+    void fromConfig() {
+        Map<String, String> config = new HashMap<>();
+        assertTrue(PaginationPrefetcher.fromConfig(new MemoryConfigService(config)).isEmpty());
+
+        config.put(PaginationPrefetcher.ConfigProperty.PAGINATION_PREFETCH_TTL_MS.name(), "30000");
+        PaginationPrefetcher prefetcher = PaginationPrefetcher.fromConfig(new MemoryConfigService(config)).orElseThrow();
+        assertEquals(Duration.ofSeconds(30), prefetcher.getTtl());
+        assertEquals(PaginationPrefetcher.DEFAULT_MAX_BYTES, prefetcher.getMaxBytes());
+        assertEquals(PaginationPrefetcher.DEFAULT_MAX_IN_FLIGHT, prefetcher.getMaxInFlight());
+        assertEquals(PaginationPrefetcher.DEFAULT_MAX_WAIT, prefetcher.getMaxWait());
+
+        config.put(PaginationPrefetcher.ConfigProperty.PAGINATION_PREFETCH_MAX_WAIT_MS.name(), "250");
+        assertEquals(Duration.ofMillis(250),
+            PaginationPrefetcher.fromConfig(new MemoryConfigService(config)).orElseThrow().getMaxWait());
+    }
+}
@@ -0,0 +1,157 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+
+    /**
+     * request that blocks until released, counting calls
+     */
+    static class BlockingRequest implements Supplier<String> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final String result;
+
+        BlockingRequest(String result) {
+            this.result = result;
+        }
+
+        @SneakyThrows
+        @Override
+        public String get() {
+            calls.incrementAndGet();
+            started.countDown();
+            release.await();
+            if (result == null) {
+                throw new IllegalStateException("failed");
+            }
+            return result;
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void coalesces() {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(Duration.ofSeconds(10));
+        BlockingRequest request = new BlockingRequest("result");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> leader = executor.submit(() -> coalescer.execute("key", request));
+            request.started.await();
+
+            List<Future<String>> waiters = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                waiters.add(executor.submit(() -> coalescer.execute("key", request)));
+            }
+            // let waiters reach future, then complete
+            Thread.sleep(200);
+            request.release.countDown();
+
+            assertEquals("result", leader.get());
+            for (Future<String> waiter : waiters) {
+                assertEquals("result", waiter.get());
+            }
+            assertEquals(1, request.calls.get());
+            assertEquals(3, coalescer.getCoalesced().get());
+            assertEquals(0, coalescer.inFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void differentKeys_notCoalesced() {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(Duration.ofSeconds(10));
+        BlockingRequest a = new BlockingRequest("a");
+        BlockingRequest b = new BlockingRequest("b");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> resultA = executor.submit(() -> coalescer.execute("a", a));
+            Future<String> resultB = executor.submit(() -> coalescer.execute("b", b));
+            a.started.await();
+            b.started.await();
+            assertEquals(2, coalescer.inFlight());
+
+            a.release.countDown();
+            b.release.countDown();
+
+            assertEquals("a", resultA.get());
+            assertEquals("b", resultB.get());
+            assertEquals(0, coalescer.getCoalesced().get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void timeout_makesOwnRequest() {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(Duration.ofMillis(50));
+        BlockingRequest slow = new BlockingRequest("slow");
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            Future<String> leader = executor.submit(() -> coalescer.execute("key", slow));
+            slow.started.await();
+
+            assertEquals("own", coalescer.execute("key", () -> "own"));
+            assertEquals(1, coalescer.getTimedOut().get());
+
+            slow.release.countDown();
+            assertEquals("slow", leader.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void failure_sharedWithWaiters() {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(Duration.ofSeconds(10));
+        BlockingRequest failing = new BlockingRequest(null);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> coalescer.execute("key", failing));
+            failing.started.await();
+            Future<String> waiter = executor.submit(() -> coalescer.execute("key", failing));
+            Thread.sleep(200);
+            failing.release.countDown();
+
+            assertTrue(assertThrows(Exception.class, leader::get).getCause() instanceof IllegalStateException);
+            assertTrue(assertThrows(Exception.class, waiter::get).getCause() instanceof IllegalStateException);
+            assertEquals(1, failing.calls.get());
+
+            // not retained; so next request made afresh
+            assertEquals("ok", coalescer.execute("key", () -> "ok"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void fromConfig() {
+        Map<String, String> config = new HashMap<>();
+        assertTrue(RequestCoalescer.fromConfig(new MemoryConfigService(config)).isEmpty());
+
+        config.put(RequestCoalescer.ConfigProperty.REQUEST_COALESCING_TIMEOUT_MS.name(), "5000");
+        assertEquals(Duration.ofSeconds(5),
+            RequestCoalescer.fromConfig(new MemoryConfigService(config)).orElseThrow().getTimeout());
+    }
+}
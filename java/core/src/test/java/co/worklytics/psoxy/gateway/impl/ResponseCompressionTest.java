@@ -0,0 +1,143 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import co.worklytics.psoxy.gateway.ConfigService;
+import com.github.luben.zstd.ZstdInputStream;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCompressionTest {
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "gzip|GZIP",
+        "GZIP|GZIP",
+        "x-gzip|GZIP",
+        "gzip, deflate|GZIP",
+        "deflate|DEFLATE",
+        "zstd|ZSTD",
+        "gzip, deflate, br, zstd|GZIP", // ties broken by server preference
+        "zstd, deflate|DEFLATE",
+        "gzip;q=0.5, zstd|ZSTD",
+        "gzip;q=1.0, zstd;q=0.5|GZIP",
+        "gzip; q=0.8, deflate;q=0.9|DEFLATE",
+        "zstd;q=0, gzip|GZIP",
+        "br|",
+        "identity|",
+        "gzip;q=0|",
+        "*|GZIP",
+        "*;q=0.5, gzip|GZIP",
+        "*, zstd;q=0|GZIP",
+        "*;q=0.5, zstd|ZSTD",
+        "gzip;q=foo|",
+        "|",
+    }, delimiter = '|')
+    void negotiate(String acceptEncoding, ResponseCompression.Encoding expected) {
+        assertEquals(Optional.ofNullable(expected), ResponseCompression.negotiate(acceptEncoding));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        ",2047,false",
+        ",2048,true",
+        "application/json,1023,false",
+        "application/json,1024,true",
+        "'application/json; charset=UTF-8',1024,true",
+        "text/csv,1024,false",
+        "text/csv,4096,true",
+        "image/png,1000000,false",
+        "application/xml,2048,true",
+    })
+    void shouldCompress(String contentType, long length, boolean expected) {
+        ResponseCompression compression = ResponseCompression.fromConfig(config(Map.of(
+            ResponseCompression.ConfigProperty.RESPONSE_COMPRESSION_MIN_BYTES, "application/json=1024, text/*=4096, image/*=-1")));
+
+        assertEquals(expected, compression.shouldCompress(contentType, length));
+    }
+
+    @Test
+    void fromConfig_defaults() {
+        ResponseCompression compression = ResponseCompression.fromConfig(config(Map.of()));
+
+        assertEquals(ResponseCompression.DEFAULT_MIN_BYTES, compression.getDefaultMinBytes());
+        assertTrue(compression.getLevels().isEmpty());
+        assertTrue(compression.getMinBytesByContentType().isEmpty());
+    }
+
+    @Test
+    void fromConfig_levels() {
+        ResponseCompression compression = ResponseCompression.fromConfig(config(Map.of(
+            ResponseCompression.ConfigProperty.RESPONSE_COMPRESSION_LEVEL, "5, zstd=9",
+            ResponseCompression.ConfigProperty.RESPONSE_COMPRESSION_MIN_BYTES, "512")));
+
+        assertEquals(5, compression.getLevels().get(ResponseCompression.Encoding.GZIP));
+        assertEquals(5, compression.getLevels().get(ResponseCompression.Encoding.DEFLATE));
+        assertEquals(9, compression.getLevels().get(ResponseCompression.Encoding.ZSTD));
+        assertEquals(512, compression.getDefaultMinBytes());
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "RESPONSE_COMPRESSION_LEVEL|10", // too high for gzip
+        "RESPONSE_COMPRESSION_LEVEL|zstd=23",
+        "RESPONSE_COMPRESSION_LEVEL|br=5",
+        "RESPONSE_COMPRESSION_LEVEL|fast",
+        "RESPONSE_COMPRESSION_MIN_BYTES|application/json=lots",
+    }, delimiter = '|')
+    void fromConfig_invalid(ResponseCompression.ConfigProperty property, String value) {
+        assertThrows(IllegalArgumentException.class,
+            () -> ResponseCompression.fromConfig(config(Map.of(property, value))));
+    }
+
+    @SneakyThrows
+    @ParameterizedTest
+    @EnumSource(ResponseCompression.Encoding.class)
+    void compress_roundTrip(ResponseCompression.Encoding encoding) {
+        String content = "{\"items\":[" + "{\"id\":\"abc\",\"email\":\"alice@acme.com\"},".repeat(1_000) + "{}]}";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream compressed = ResponseCompression.builder().build().compress(encoding, out)) {
+            compressed.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertTrue(out.size() < content.length() / 10);
+        try (InputStream in = decompress(encoding, out.toByteArray())) {
+            assertEquals(content, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @SneakyThrows
+    static InputStream decompress(ResponseCompression.Encoding encoding, byte[] compressed) {
+        switch (encoding) {
+            case ZSTD:
+                return new ZstdInputStream(new ByteArrayInputStream(compressed));
+            case GZIP:
+                return new GZIPInputStream(new ByteArrayInputStream(compressed));
+            case DEFLATE:
+                return new InflaterInputStream(new ByteArrayInputStream(compressed));
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    ConfigService config(Map<ResponseCompression.ConfigProperty, String> values) {
+        Map<String, String> map = new HashMap<>();
+        values.forEach((property, value) -> map.put(property.name(), value));
+        return new MemoryConfigService(map);
+    }
+}
@@ -0,0 +1,134 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SanitizedResponseCacheTest {
+
+    static SanitizedResponseCache.Key key(String url) {
+        return SanitizedResponseCache.Key.builder()
+            .targetUrl(url)
+            .pseudonymImplementation(PseudonymImplementation.DEFAULT)
+            .rulesSha("sha")
+            .build();
+    }
+
+    static SanitizedResponseCache.Entry entry(String etag, String body) {
+        return SanitizedResponseCache.Entry.builder()
+            .etag(etag)
+            .headers(Map.of("etag", StringUtils.defaultString(etag)))
+            .body(body)
+            .build();
+    }
+
+    @Test
+    void putAndGet() {
+        SanitizedResponseCache cache = new SanitizedResponseCache(10_000, 10_000);
+
+        assertTrue(cache.put(key("https://api.example.com/users"), entry("\"1\"", "{\"users\":[]}")));
+
+        assertEquals("{\"users\":[]}", cache.get(key("https://api.example.com/users")).orElseThrow().getBody());
+        assertTrue(cache.get(key("https://api.example.com/groups")).isEmpty());
+        assertEquals(1, cache.getHits().get());
+        assertEquals(1, cache.getMisses().get());
+    }
+
+    @Test
+    void keyedByPseudonymImplementationAndRules() {
+        SanitizedResponseCache cache = new SanitizedResponseCache(10_000, 10_000);
+        cache.put(key("https://api.example.com/users"), entry("\"1\"", "{}"));
+
+        assertTrue(cache.get(key("https://api.example.com/users")).isPresent());
+        assertTrue(cache.get(SanitizedResponseCache.Key.builder()
+            .targetUrl("https://api.example.com/users")
+            .pseudonymImplementation(PseudonymImplementation.LEGACY)
+            .rulesSha("sha")
+            .build()).isEmpty());
+        assertTrue(cache.get(SanitizedResponseCache.Key.builder()
+            .targetUrl("https://api.example.com/users")
+            .pseudonymImplementation(PseudonymImplementation.DEFAULT)
+            .rulesSha("other-sha")
+            .build()).isEmpty());
+        assertTrue(cache.get(SanitizedResponseCache.Key.builder()
+            .targetUrl("https://api.example.com/users")
+            .impersonatedAccount("alice@acme.com")
+            .pseudonymImplementation(PseudonymImplementation.DEFAULT)
+            .rulesSha("sha")
+            .build()).isEmpty());
+    }
+
+    @Test
+    void withoutValidator_notCached() {
+        SanitizedResponseCache cache = new SanitizedResponseCache(10_000, 10_000);
+        cache.put(key("https://api.example.com/users"), entry("\"1\"", "{}"));
+
+        // source stopped sending validator; so stale entry dropped
+        assertFalse(cache.put(key("https://api.example.com/users"), entry(null, "{}")));
+
+        assertTrue(cache.get(key("https://api.example.com/users")).isEmpty());
+        assertEquals(0, cache.sizeInBytes());
+    }
+
+    @Test
+    void maxEntryBytes() {
+        SanitizedResponseCache cache = new SanitizedResponseCache(100_000, 1_000);
+
+        assertFalse(cache.put(key("https://api.example.com/users"), entry("\"1\"", StringUtils.repeat('a', 1_000))));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void maxBytes_evictsLeastRecentlyUsed() {
+        SanitizedResponseCache.Entry entry = entry("\"1\"", StringUtils.repeat('a', 1_000));
+        SanitizedResponseCache cache = new SanitizedResponseCache(3 * entry.sizeInBytes(), entry.sizeInBytes());
+
+        cache.put(key("https://api.example.com/1"), entry);
+        cache.put(key("https://api.example.com/2"), entry);
+        cache.put(key("https://api.example.com/3"), entry);
+        // use 1, so 2 is least recently used
+        cache.get(key("https://api.example.com/1"));
+        cache.put(key("https://api.example.com/4"), entry);
+
+        assertEquals(3, cache.size());
+        assertEquals(3 * entry.sizeInBytes(), cache.sizeInBytes());
+        assertTrue(cache.get(key("https://api.example.com/1")).isPresent());
+        assertTrue(cache.get(key("https://api.example.com/2")).isEmpty());
+        assertTrue(cache.get(key("https://api.example.com/3")).isPresent());
+        assertTrue(cache.get(key("https://api.example.com/4")).isPresent());
+    }
+
+    @Test
+    void replace() {
+        SanitizedResponseCache cache = new SanitizedResponseCache(10_000, 10_000);
+        cache.put(key("https://api.example.com/users"), entry("\"1\"", StringUtils.repeat('a', 100)));
+        cache.put(key("https://api.example.com/users"), entry("\"2\"", "{}"));
+
+        assertEquals(1, cache.size());
+        assertEquals(entry("\"2\"", "{}").sizeInBytes(), cache.sizeInBytes());
+        assertEquals("\"2\"", cache.get(key("https://api.example.com/users")).orElseThrow().getEtag());
+    }
+
+    @Test
+    void fromConfig() {
+        Map<String, String> config = new HashMap<>();
+        assertTrue(SanitizedResponseCache.fromConfig(new MemoryConfigService(config)).isEmpty());
+
+        config.put(SanitizedResponseCache.ConfigProperty.RESPONSE_CACHE_MAX_BYTES.name(), "0");
+        assertTrue(SanitizedResponseCache.fromConfig(new MemoryConfigService(config)).isEmpty());
+
+        config.put(SanitizedResponseCache.ConfigProperty.RESPONSE_CACHE_MAX_BYTES.name(), "8000000");
+        SanitizedResponseCache cache = SanitizedResponseCache.fromConfig(new MemoryConfigService(config)).orElseThrow();
+        assertEquals(8_000_000, cache.getMaxBytes());
+        assertEquals(1_000_000, cache.getMaxEntryBytes());
+
+        config.put(SanitizedResponseCache.ConfigProperty.RESPONSE_CACHE_MAX_ENTRY_BYTES.name(), "2000000");
+        assertEquals(2_000_000,
+            SanitizedResponseCache.fromConfig(new MemoryConfigService(config)).orElseThrow().getMaxEntryBytes());
+    }
+}
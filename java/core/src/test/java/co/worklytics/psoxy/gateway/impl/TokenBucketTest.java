@@ -0,0 +1,96 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    final AtomicLong nanos = new AtomicLong();
+
+    void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void burstThenRate() {
+        TokenBucket bucket = new TokenBucket(2, 3, nanos::get);
+
+        // burst of capacity available immediately
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.reserve(0));
+        }
+        assertEquals(-1, bucket.reserve(0));
+
+        // then refills at rate
+        advance(Duration.ofMillis(500));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(-1, bucket.reserve(0));
+    }
+
+    @Test
+    void refill_cappedAtCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 2, nanos::get);
+        bucket.reserve(0);
+        bucket.reserve(0);
+
+        advance(Duration.ofMinutes(1));
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(-1, bucket.reserve(0));
+    }
+
+    @Test
+    void waiters_queueInOrder() {
+        TokenBucket bucket = new TokenBucket(1, 1, nanos::get);
+        long maxWait = TimeUnit.SECONDS.toNanos(10);
+
+        assertEquals(0, bucket.reserve(maxWait));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.reserve(maxWait));
+        // waits behind previous reservation
+        assertEquals(TimeUnit.SECONDS.toNanos(2), bucket.reserve(maxWait));
+
+        // too long to wait; so nothing reserved, and next waiter's wait unaffected
+        assertEquals(-1, bucket.reserve(TimeUnit.SECONDS.toNanos(2)));
+        assertEquals(TimeUnit.SECONDS.toNanos(3), bucket.reserve(maxWait));
+    }
+
+    @Test
+    void tryAcquireSpare() {
+        TokenBucket bucket = new TokenBucket(1, 4, nanos::get);
+
+        // leaves reserved tokens for others
+        assertTrue(bucket.tryAcquireSpare(2));
+        assertTrue(bucket.tryAcquireSpare(2));
+        assertFalse(bucket.tryAcquireSpare(2));
+        assertEquals(0, bucket.reserve(0));
+
+        // nor waits, or borrows, for spare tokens
+        assertEquals(0, bucket.reserve(0));
+        assertFalse(bucket.tryAcquireSpare(0));
+        assertTrue(bucket.reserve(TimeUnit.SECONDS.toNanos(1)) > 0);
+
+        advance(Duration.ofSeconds(4));
+        assertTrue(bucket.tryAcquireSpare(2));
+    }
+
+    @SneakyThrows
+    @Test
+    void tryAcquire() {
+        TokenBucket bucket = new TokenBucket(20, 1);
+
+        assertTrue(bucket.tryAcquire(Duration.ZERO));
+        assertFalse(bucket.tryAcquire(Duration.ZERO));
+
+        long start = System.nanoTime();
+        assertTrue(bucket.tryAcquire(Duration.ofSeconds(1)));
+        // waited for refill, of 1/20 s
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+}
@@ -0,0 +1,219 @@
+package co.worklytics.psoxy.gateway.impl;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamRetryPolicyTest {
+
+    static final Instant NOW = Instant.parse("2024-03-01T12:00:00Z");
+
+    static final GenericUrl URL = new GenericUrl("https://api.example.com/v1/users");
+
+    /**
+     * delays slept, in millis
+     */
+    List<Long> sleeps = new ArrayList<>();
+
+    /**
+     * responses source will send, in order
+     */
+    Queue<MockLowLevelHttpResponse> responses = new LinkedList<>();
+
+    int calls = 0;
+
+    MockHttpTransport transport = new MockHttpTransport() {
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+                @Override
+                public LowLevelHttpResponse execute() {
+                    calls++;
+                    return responses.remove();
+                }
+            };
+        }
+    };
+
+    UpstreamRetryPolicy policy(int maxRetries) {
+        return UpstreamRetryPolicy.builder()
+            .maxRetries(maxRetries)
+            .baseDelay(Duration.ofMillis(100))
+            .maxDelay(Duration.ofSeconds(1))
+            .timeBudget(Duration.ofSeconds(60))
+            .clock(Clock.fixed(NOW, ZoneOffset.UTC))
+            .sleeper(sleeps::add)
+            .build();
+    }
+
+    static MockLowLevelHttpResponse response(int statusCode, String retryAfter) {
+        MockLowLevelHttpResponse response = new MockLowLevelHttpResponse().setStatusCode(statusCode);
+        if (retryAfter != null) {
+            response.addHeader("Retry-After", retryAfter);
+        }
+        return response;
+    }
+
+    @SneakyThrows
+    HttpResponse execute(UpstreamRetryPolicy policy, HttpRequest request, Instant deadline) {
+        request.setThrowExceptionOnExecuteError(false);
+        policy.apply(request, deadline, null);
+        return request.execute();
+    }
+
+    @Test
+    void parseRetryAfter() {
+        assertEquals(Optional.of(Duration.ofSeconds(120)), UpstreamRetryPolicy.parseRetryAfter("120", NOW));
+        assertEquals(Optional.of(Duration.ofSeconds(0)), UpstreamRetryPolicy.parseRetryAfter(" 0 ", NOW));
+
+        String inThirtySeconds = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(NOW.plusSeconds(30), ZoneOffset.UTC));
+        assertEquals(Optional.of(Duration.ofSeconds(30)), UpstreamRetryPolicy.parseRetryAfter(inThirtySeconds, NOW));
+
+        // past date; so retry immediately
+        assertEquals(Optional.of(Duration.ZERO), UpstreamRetryPolicy.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT", NOW));
+
+        assertEquals(Optional.empty(), UpstreamRetryPolicy.parseRetryAfter(null, NOW));
+        assertEquals(Optional.empty(), UpstreamRetryPolicy.parseRetryAfter("", NOW));
+        assertEquals(Optional.empty(), UpstreamRetryPolicy.parseRetryAfter("-5", NOW));
+        assertEquals(Optional.empty(), UpstreamRetryPolicy.parseRetryAfter("soon", NOW));
+    }
+
+    @Test
+    void decorrelatedJitter_withinBounds() {
+        UpstreamRetryPolicy policy = policy(3);
+        Duration previous = policy.getBaseDelay();
+        for (int i = 0; i < 1_000; i++) {
+            Duration next = policy.decorrelatedJitter(previous);
+            assertTrue(next.compareTo(policy.getBaseDelay()) >= 0, "at least base delay");
+            assertTrue(next.compareTo(policy.getMaxDelay()) <= 0, "at most max delay");
+            assertTrue(next.toMillis() <= Math.max(policy.getBaseDelay().toMillis(), previous.toMillis() * 3));
+            previous = next;
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void retriesTransientFailures() {
+        responses.add(response(503, null));
+        responses.add(response(429, null));
+        responses.add(response(200, null));
+
+        HttpResponse response = execute(policy(3), transport.createRequestFactory().buildGetRequest(URL), NOW.plusSeconds(60));
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(3, calls);
+        assertEquals(2, sleeps.size());
+        sleeps.forEach(sleep -> assertTrue(sleep >= 100 && sleep <= 1_000));
+    }
+
+    @SneakyThrows
+    @Test
+    void honorsRetryAfter() {
+        // longer than max delay, but still honored
+        responses.add(response(429, "5"));
+        responses.add(response(200, null));
+
+        HttpResponse response = execute(policy(3), transport.createRequestFactory().buildGetRequest(URL), NOW.plusSeconds(60));
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(List.of(5_000L), sleeps);
+    }
+
+    @SneakyThrows
+    @Test
+    void retryAfterBeyondBudget_notRetried() {
+        responses.add(response(429, "120"));
+
+        HttpResponse response = execute(policy(3), transport.createRequestFactory().buildGetRequest(URL), NOW.plusSeconds(60));
+
+        assertEquals(429, response.getStatusCode());
+        assertEquals("120", response.getHeaders().getFirstHeaderStringValue("Retry-After"));
+        assertEquals(1, calls);
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @SneakyThrows
+    @Test
+    void maxRetries_thenFailureReturned() {
+        responses.add(response(503, null));
+        responses.add(response(503, null));
+        responses.add(response(503, null));
+
+        HttpResponse response = execute(policy(2), transport.createRequestFactory().buildGetRequest(URL), NOW.plusSeconds(60));
+
+        assertEquals(503, response.getStatusCode());
+        assertEquals(3, calls);
+    }
+
+    @SneakyThrows
+    @Test
+    void nonTransientFailure_notRetried() {
+        responses.add(response(404, null));
+
+        HttpResponse response = execute(policy(3), transport.createRequestFactory().buildGetRequest(URL), NOW.plusSeconds(60));
+
+        assertEquals(404, response.getStatusCode());
+        assertEquals(1, calls);
+    }
+
+    @SneakyThrows
+    @Test
+    void nonIdempotent_notRetried() {
+        responses.add(response(503, null));
+
+        HttpRequest post = transport.createRequestFactory()
+            .buildPostRequest(URL, ByteArrayContent.fromString("application/json", "{}"));
+        HttpResponse response = execute(policy(3), post, NOW.plusSeconds(60));
+
+        assertNull(post.getUnsuccessfulResponseHandler());
+        assertEquals(503, response.getStatusCode());
+        assertEquals(1, calls);
+    }
+
+    @Test
+    void fromConfig() {
+        Map<String, String> config = new HashMap<>();
+        UpstreamRetryPolicy defaults = UpstreamRetryPolicy.fromConfig(new MemoryConfigService(config));
+        assertEquals(0, defaults.getMaxRetries());
+        assertEquals(Duration.ofSeconds(20), defaults.getTimeBudget());
+        assertTrue(UpstreamRetryPolicy.rateLimiterFromConfig(new MemoryConfigService(config)).isEmpty());
+
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RETRY_MAX_ATTEMPTS.name(), "4");
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RETRY_BASE_DELAY_MS.name(), "250");
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RETRY_TIME_BUDGET_MS.name(), "15000");
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RATE_LIMIT_PER_SECOND.name(), "5");
+        UpstreamRetryPolicy policy = UpstreamRetryPolicy.fromConfig(new MemoryConfigService(config));
+        assertEquals(4, policy.getMaxRetries());
+        assertEquals(Duration.ofMillis(250), policy.getBaseDelay());
+        assertEquals(Duration.ofSeconds(20), policy.getMaxDelay());
+        assertEquals(Duration.ofSeconds(15), policy.getTimeBudget());
+
+        TokenBucket rateLimiter = UpstreamRetryPolicy.rateLimiterFromConfig(new MemoryConfigService(config)).orElseThrow();
+        assertEquals(5, rateLimiter.getPermitsPerSecond());
+        assertEquals(5, rateLimiter.getCapacity());
+    }
+}
@@ -23,6 +23,7 @@ import javax.inject.Singleton;
 
 import java.io.ByteArrayOutputStream;
 import java.time.Clock;
+import java.time.Duration;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -118,6 +119,55 @@ class ClientCredentialsGrantTokenRequestBuilderTest {
         assertEquals(EXPECTED_ASSERTION, out.toString());
     }
 
+    @SneakyThrows
+    @Test
+    public void tokenRequestPayload_with_jwt_reusesAssertion() {
+        when(secretStore.getConfigPropertyWithMetadata(eq(ClientCredentialsGrantTokenRequestBuilder.ConfigProperty.PRIVATE_KEY)))
+            .thenReturn(Optional.of(ConfigService.ConfigValueWithMetadata.builder().value(EXAMPLE_PRIVATE_KEY).build()));
+        when(secretStore.getConfigPropertyOrError(ClientCredentialsGrantTokenRequestBuilder.ConfigProperty.PRIVATE_KEY_ID))
+            .thenReturn("F4194D924E8471C804F65E77BCF90418CEEB0DA2");
+
+        String first = asString(payloadBuilder.buildPayload());
+
+        // still well before expiration; so re-used
+        payloadBuilder.clock = Clock.offset(payloadBuilder.clock, Duration.ofMinutes(2));
+        assertEquals(first, asString(payloadBuilder.buildPayload()));
+
+        CredentialMaterialCache.Stats stats = payloadBuilder.credentialMaterialCache.getStats();
+        assertEquals(1, stats.getKeysParsed());
+        assertEquals(1, stats.getAssertionsSigned());
+        assertEquals(1, stats.getAssertionCacheHits());
+
+        // within margin of expiration; so re-signed (key not re-parsed though)
+        payloadBuilder.clock = Clock.offset(payloadBuilder.clock, Duration.ofMinutes(2).plusSeconds(1));
+        assertNotEquals(first, asString(payloadBuilder.buildPayload()));
+
+        stats = payloadBuilder.credentialMaterialCache.getStats();
+        assertEquals(1, stats.getKeysParsed());
+        assertEquals(2, stats.getAssertionsSigned());
+    }
+
+    @SneakyThrows
+    @Test
+    public void tokenRequestPayload_with_jwt_reparsesRotatedKey() {
+        when(secretStore.getConfigPropertyWithMetadata(eq(ClientCredentialsGrantTokenRequestBuilder.ConfigProperty.PRIVATE_KEY)))
+            .thenReturn(Optional.of(ConfigService.ConfigValueWithMetadata.builder().value(EXAMPLE_PRIVATE_KEY).build()));
+        when(secretStore.getConfigPropertyOrError(ClientCredentialsGrantTokenRequestBuilder.ConfigProperty.PRIVATE_KEY_ID))
+            .thenReturn("F4194D924E8471C804F65E77BCF90418CEEB0DA2");
+
+        payloadBuilder.buildPayload();
+
+        // same key, but value in secret store differs (eg, new version with trailing newline)
+        when(secretStore.getConfigPropertyWithMetadata(eq(ClientCredentialsGrantTokenRequestBuilder.ConfigProperty.PRIVATE_KEY)))
+            .thenReturn(Optional.of(ConfigService.ConfigValueWithMetadata.builder().value(EXAMPLE_PRIVATE_KEY + "\n").build()));
+        payloadBuilder.buildPayload();
+
+        CredentialMaterialCache.Stats stats = payloadBuilder.credentialMaterialCache.getStats();
+        assertEquals(2, stats.getKeysParsed());
+        assertEquals(2, stats.getAssertionsSigned());
+        assertEquals(0, stats.getAssertionCacheHits());
+    }
+
     @SneakyThrows
     @Test
     public void tokenRequestPayload_with_client_secret() {
@@ -208,6 +258,13 @@ class ClientCredentialsGrantTokenRequestBuilderTest {
         assertNotNull(tokenResponse.getExpiresIn());
     }
 
+    @SneakyThrows
+    String asString(HttpContent content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.writeTo(out);
+        return out.toString();
+    }
+
     @ValueSource(strings = {
         "6FCC8E28F6A63B4E994ED62F52BDF3C3B0B7E88B",
         "  6FCC8E28F6A63B4E994ED62F52BDF3C3B0B7E88B  ",
@@ -0,0 +1,125 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.loadtest.LoadTestScenario;
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.psoxy.rules.RESTRules;
+import com.avaulta.gateway.rules.CompiledJsonPath;
+import com.avaulta.gateway.rules.Endpoint;
+import com.avaulta.gateway.rules.JsonPathCompiler;
+import com.avaulta.gateway.rules.transforms.Transform;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import com.jayway.jsonpath.PathNotFoundException;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+import lombok.extern.java.Log;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * compiled JsonPaths must read, map and delete exactly as JsonPath itself does, for every JsonPath
+ * of the prebuilt rules of load test scenarios' sources, against those scenarios' example responses
+ */
+@Log
+class CompiledJsonPathCompatibilityTest {
+
+    Configuration configuration = Configuration.defaultConfiguration()
+        .jsonProvider(new JacksonJsonProvider(new ObjectMapper()));
+
+    Configuration readConfiguration = configuration
+        .addOptions(Option.ALWAYS_RETURN_LIST, Option.SUPPRESS_EXCEPTIONS);
+
+    JsonPathCompiler compiler = new JsonPathCompiler();
+
+    @Test
+    void sameAsJsonPath() {
+        int compiled = 0, uncompiled = 0, compared = 0, fellBack = 0;
+        for (LoadTestScenario scenario : LoadTestScenario.DEFAULTS) {
+            RESTRules rules = PrebuiltSanitizerRules.DEFAULTS.get(scenario.getSource());
+            for (String jsonPath : jsonPaths(rules)) {
+                Optional<CompiledJsonPath> compiledPath = compiler.compile(jsonPath);
+                if (compiledPath.isEmpty()) {
+                    uncompiled++;
+                    continue;
+                }
+                compiled++;
+                JsonPath interpreted = JsonPath.compile(jsonPath);
+                for (RuleCostProfiler.Sample sample : RuleCostProfiler.samples(scenario)) {
+                    String context = scenario.getSource() + "/" + sample.getName() + ": " + jsonPath;
+                    List<Object> read = compiledPath.get().read(parse(sample));
+                    if (read == null) {
+                        // would fall back to JsonPath
+                        fellBack++;
+                        continue;
+                    }
+                    assertEquals(toJson(interpreted.read(parse(sample), readConfiguration)),
+                        toJson(read), context + " read differently");
+
+                    assertEquals(
+                        interpreted(sample, document -> interpreted.map(document, (value, c) -> "mapped:" + toJson(value), configuration)),
+                        compiled(sample, document -> compiledPath.get().map(document, value -> "mapped:" + toJson(value))),
+                        context + " mapped differently");
+
+                    Object deleted = parse(sample);
+                    if (compiledPath.get().delete(deleted)) {
+                        assertEquals(
+                            interpreted(sample, document -> interpreted.delete(document, configuration)),
+                            toJson(deleted),
+                            context + " deleted differently");
+                    } else {
+                        assertEquals(toJson(parse(sample)), toJson(deleted), context + " changed, but not deleted");
+                    }
+                    compared++;
+                }
+            }
+        }
+        log.info(String.format("paths compiled: %d, not compiled: %d; evaluations compared: %d, fell back: %d",
+            compiled, uncompiled, compared, fellBack));
+        assertTrue(compiled > uncompiled, "most paths should compile");
+        assertTrue(compared > 0, "no evaluations compared");
+    }
+
+    Set<String> jsonPaths(RESTRules rules) {
+        Set<String> jsonPaths = new LinkedHashSet<>();
+        for (Endpoint endpoint : rules.getEndpoints()) {
+            for (Transform transform : Optional.ofNullable(endpoint.getTransforms()).orElse(List.of())) {
+                jsonPaths.addAll(transform.getJsonPaths());
+                Optional.ofNullable(transform.getApplyOnlyWhen()).ifPresent(jsonPaths::add);
+            }
+        }
+        return jsonPaths;
+    }
+
+    String interpreted(RuleCostProfiler.Sample sample, Consumer<Object> change) {
+        Object document = parse(sample);
+        try {
+            change.accept(document);
+        } catch (PathNotFoundException e) {
+            //expected if rule doesn't apply
+        }
+        return toJson(document);
+    }
+
+    String compiled(RuleCostProfiler.Sample sample, Predicate<Object> change) {
+        Object document = parse(sample);
+        assertTrue(change.test(document), "supported for read, so should be for map");
+        return toJson(document);
+    }
+
+    Object parse(RuleCostProfiler.Sample sample) {
+        return configuration.jsonProvider().parse(sample.getContent());
+    }
+
+    String toJson(Object value) {
+        return configuration.jsonProvider().toJson(value);
+    }
+}
@@ -0,0 +1,152 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.Pseudonymizer;
+import co.worklytics.psoxy.loadtest.LoadTestScenario;
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.psoxy.rules.RESTRules;
+import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+import lombok.SneakyThrows;
+import lombok.Value;
+import lombok.extern.java.Log;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * compares deep scans specialized to concrete paths per response schema with the deep scans
+ * themselves, counting nodes JsonPath visits in applying each endpoint's transforms
+ */
+@Log
+class DeepScanSpecializationTest {
+
+    /**
+     * counts nodes JsonPath reads from document, whether by property, index or iteration
+     */
+    static class CountingJsonProvider extends JacksonJsonProvider {
+
+        long visits = 0;
+
+        CountingJsonProvider(ObjectMapper objectMapper) {
+            super(objectMapper);
+        }
+
+        @Override
+        public Object getMapValue(Object obj, String key) {
+            visits++;
+            return super.getMapValue(obj, key);
+        }
+
+        @Override
+        public Object getArrayIndex(Object obj, int idx) {
+            visits++;
+            return super.getArrayIndex(obj, idx);
+        }
+
+        @Override
+        public Iterable<?> toIterable(Object obj) {
+            List<Object> elements = new ArrayList<>();
+            super.toIterable(obj).forEach(elements::add);
+            visits += elements.size();
+            return elements;
+        }
+    }
+
+    @Value
+    static class Result {
+
+        String sanitized;
+
+        long visits;
+
+        double nanosPerIteration;
+    }
+
+    @Test
+    void fewerVisits() {
+        LoadTestScenario scenario = RuleCostProfilerTest.scenario("jira-cloud");
+        RESTRules rules = PrebuiltSanitizerRules.DEFAULTS.get(scenario.getSource());
+
+        // jira's search endpoint has a response schema, and deep scans within it (eg, '$.issues[*]..accountId')
+        RuleCostProfiler.Sample sample = RuleCostProfiler.samples(scenario).stream()
+            .filter(s -> s.getName().equals("issues_by_jql.json"))
+            .findFirst().get();
+
+        Result deepScans = sanitize(rules, sample, false, 1);
+        Result specialized = sanitize(rules, sample, true, 1);
+
+        assertEquals(deepScans.getSanitized(), specialized.getSanitized());
+        assertTrue(specialized.getVisits() < deepScans.getVisits(),
+            "specialized visits " + specialized.getVisits() + " not fewer than " + deepScans.getVisits());
+    }
+
+    /**
+     * for each load test scenario's example responses, reports nodes visited and time taken to
+     * sanitize with deep scans vs specialized paths
+     */
+    @Disabled // benchmark; not for usual CI
+    @Test
+    void benchmark() {
+        int iterations = Integer.getInteger("deepScans.iterations", 200);
+        long totalDeepScans = 0, totalSpecialized = 0;
+        for (LoadTestScenario scenario : LoadTestScenario.DEFAULTS) {
+            RESTRules rules = PrebuiltSanitizerRules.DEFAULTS.get(scenario.getSource());
+            for (RuleCostProfiler.Sample sample : RuleCostProfiler.samples(scenario)) {
+                Result deepScans = sanitize(rules, sample, false, iterations);
+                Result specialized = sanitize(rules, sample, true, iterations);
+
+                assertEquals(deepScans.getSanitized(), specialized.getSanitized(),
+                    scenario.getSource() + "/" + sample.getName() + " sanitized differently");
+
+                totalDeepScans += deepScans.getVisits();
+                totalSpecialized += specialized.getVisits();
+                log.info(String.format("%s/%s: visits %d -> %d; %.0f -> %.0f ns",
+                    scenario.getSource(), sample.getName(),
+                    deepScans.getVisits(), specialized.getVisits(),
+                    deepScans.getNanosPerIteration(), specialized.getNanosPerIteration()));
+            }
+        }
+        log.info(String.format("total visits %d -> %d (%.1f%% fewer)", totalDeepScans, totalSpecialized,
+            100.0 * (totalDeepScans - totalSpecialized) / totalDeepScans));
+    }
+
+    /**
+     * @param iterations times to sanitize sample, after as many to warm up; visits are per iteration
+     */
+    @SneakyThrows
+    Result sanitize(RESTRules rules, RuleCostProfiler.Sample sample, boolean specializeDeepScans, int iterations) {
+        RuleCostProfiler.Container container = DaggerRuleCostProfiler_Container.create();
+        RESTApiSanitizerImpl sanitizer = container.sanitizerFactory().create(rules,
+            container.pseudonymizerImplFactory().create(Pseudonymizer.ConfigurationOptions.builder()
+                .pseudonymizationSalt("salt")
+                .defaultScopeId("scope")
+                .pseudonymImplementation(PseudonymImplementation.DEFAULT)
+                .build()));
+        sanitizer.setSpecializeDeepScans(specializeDeepScans);
+        // so JsonPath, through provider, visits nodes
+        sanitizer.setCompileJsonPaths(false);
+
+        CountingJsonProvider provider = new CountingJsonProvider(container.objectMapper());
+        sanitizer.jsonConfiguration = sanitizer.jsonConfiguration.jsonProvider(provider);
+
+        URL url = new URL("https://" + RuleCostProfiler.TARGET_HOST + sample.getPath());
+        for (int i = 0; i < iterations; i++) {
+            sanitizer.sanitize("GET", url, sample.getContent());
+        }
+
+        provider.visits = 0;
+        String sanitized = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sanitized = sanitizer.sanitize("GET", url, sample.getContent());
+        }
+        long nanos = System.nanoTime() - start;
+        return new Result(sanitized, provider.visits / iterations, (double) nanos / iterations);
+    }
+}
@@ -9,7 +9,9 @@ import com.avaulta.gateway.pseudonyms.PseudonymEncoder;
 import com.avaulta.gateway.rules.Endpoint;
 import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
 import co.worklytics.psoxy.rules.Rules2;
+import co.worklytics.psoxy.utils.StageTimings;
 import com.avaulta.gateway.rules.JsonSchemaFilter;
+import com.avaulta.gateway.rules.RegexEngine;
 import com.avaulta.gateway.rules.transforms.EncryptIp;
 import com.avaulta.gateway.rules.transforms.HashIp;
 import com.avaulta.gateway.rules.transforms.Transform;
@@ -36,6 +38,7 @@ import org.junit.jupiter.params.provider.ValueSource;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.net.URL;
+import java.time.Duration;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -139,7 +142,46 @@ class RESTApiSanitizerImplTest {
         assertFalse(sanitized.contains("null"));
     }
 
+    @SneakyThrows
+    @Test
+    void sanitize_stageTimings() {
+        String jsonString = new String(TestUtils.getData("sources/google-workspace/gmail/example-api-responses/original/message.json"));
+
+        try (StageTimings timings = StageTimings.collect()) {
+            sanitizer.sanitize("GET", new URL("https", "gmail.googleapis.com", "/gmail/v1/users/me/messages/17c3b1911726ef3f\\?format=metadata"), jsonString);
+
+            assertTrue(timings.getNanos(StageTimings.Stage.PSEUDONYMIZE) > 0);
+            // at least 'From' and 'To' headers
+            assertTrue(timings.getCount(StageTimings.Stage.PSEUDONYMIZE) >= 2);
+            assertTrue(timings.getNanos(StageTimings.Stage.TRANSFORM) > 0);
+            assertTrue(timings.toServerTimingHeader().contains("pseudonymize;dur="));
+        }
+    }
+
+
+
+
+    /**
+     * many transforms' paths match nothing in many responses; that shouldn't construct exceptions
+     */
+    @SneakyThrows
+    @Test
+    void sanitize_absentPaths_noExceptions() {
+        URL message = new URL("https", "gmail.googleapis.com", "/gmail/v1/users/me/messages/17c3b1911726ef3f");
+        URL messages = new URL("https", "gmail.googleapis.com", "/gmail/v1/users/me/messages");
+        String messageJson = "{\"id\":\"17c3b1911726ef3f\",\"threadId\":\"17c3b1911726ef3f\",\"labelIds\":[\"INBOX\"]}";
+        String messagesJson = "{\"messages\":[{\"id\":\"17c3b1911726ef3f\",\"threadId\":\"17c3b1911726ef3f\"}],\"resultSizeEstimate\":1}";
+
+        Runnable sanitize = () -> {
+            assertEquals(messageJson, sanitizer.sanitize("GET", message, messageJson));
+            assertEquals(messagesJson, sanitizer.sanitize("GET", messages, messagesJson));
+        };
 
+        // warm-up
+        sanitize.run();
+
+        assertEquals(List.of(), TestUtils.throwablesConstructed(sanitize));
+    }
 
 
     @SneakyThrows
@@ -185,6 +227,42 @@ class RESTApiSanitizerImplTest {
     }
 
 
+    /**
+     * rules' regexes evaluated in linear time, if rules select RE2J; with java.util.regex, these
+     * would backtrack catastrophically
+     */
+    @Test
+    void regexEngine_re2j() {
+        RESTApiSanitizerImpl re2jSanitizer = sanitizerFactory.create(Rules2.builder()
+                .regexEngine(RegexEngine.RE2J)
+                .endpoint(Endpoint.builder()
+                    .pathTemplate("/calendar/v3/calendars/{calendarId}/events")
+                    .build())
+                .build(),
+            sanitizer.pseudonymizer);
+
+        String title = StringUtils.repeat("focus ", 20_000) + "!";
+
+        Transform.RedactExceptSubstringsMatchingRegexes redactExcept = Transform.RedactExceptSubstringsMatchingRegexes.builder()
+            .exception("(?i)(focus\\s*)+time").build();
+        Transform.RedactRegexMatches redact = Transform.RedactRegexMatches.builder()
+            .redaction("(\\w+\\s?)+$").build();
+        Transform.FilterTokenByRegex filter = Transform.FilterTokenByRegex.builder()
+            .delimiter(",").filter("(f|fo?)+cus\\s*(\\w+\\s?)+$").build();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertEquals("", re2jSanitizer.getRedactExceptSubstringsMatchingRegexes(redactExcept).map(title, re2jSanitizer.jsonConfiguration));
+            assertEquals(title, re2jSanitizer.getRedactRegexMatches(redact).map(title, re2jSanitizer.jsonConfiguration));
+            assertNull(re2jSanitizer.getFilterTokenByRegex(filter).map(title, re2jSanitizer.jsonConfiguration));
+        });
+
+        // same results as java.util.regex, for benign input
+        assertEquals("Focus Time",
+            re2jSanitizer.getRedactExceptSubstringsMatchingRegexes(redactExcept).map("Focus Time", re2jSanitizer.jsonConfiguration));
+        assertEquals("Focus Time",
+            sanitizer.getRedactExceptSubstringsMatchingRegexes(redactExcept).map("Focus Time", sanitizer.jsonConfiguration));
+    }
+
     @SneakyThrows
     @ValueSource(strings = {
         "https://acme.zoom.us/12312345?pwd=1234asAf asdfasdf",
@@ -0,0 +1,320 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.Pseudonymizer;
+import co.worklytics.psoxy.PseudonymizerImplFactory;
+import co.worklytics.psoxy.PsoxyModule;
+import co.worklytics.psoxy.RESTApiSanitizerFactory;
+import co.worklytics.psoxy.gateway.ConfigService;
+import co.worklytics.psoxy.gateway.ProxyConfigProperty;
+import co.worklytics.psoxy.gateway.impl.MemoryConfigService;
+import co.worklytics.psoxy.loadtest.LoadTestScenario;
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.psoxy.rules.RESTRules;
+import co.worklytics.psoxy.rules.Rules2;
+import co.worklytics.test.MockModules;
+import co.worklytics.test.TestUtils;
+import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
+import com.avaulta.gateway.rules.Endpoint;
+import com.avaulta.gateway.rules.transforms.Transform;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.MapFunction;
+import com.jayway.jsonpath.Option;
+import com.jayway.jsonpath.PathNotFoundException;
+import dagger.Component;
+import dagger.Module;
+import dagger.Provides;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.Value;
+import lombok.extern.java.Log;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * profiles cost of REST rules: for each sample response, runs the matching endpoint's response
+ * schema filter and each JsonPath of each of its transforms in isolation, many times, measuring
+ * time and allocations of each
+ *
+ * each JsonPath is applied to a fresh copy of the *filtered* sample, as it would be in
+ * {@link RESTApiSanitizerImpl}, but without the transforms that precede it; so cost of a path
+ * doesn't depend on others, but it may match values that an earlier transform would have
+ * redacted.
+ *
+ * deep scans ('$..') on endpoints with a response schema are flagged as narrowable: the schema
+ * bounds where values can be, so the scan could be replaced with concrete paths.
+ */
+@Log
+@Builder
+public class RuleCostProfiler {
+
+    static final String TARGET_HOST = "source.example.com";
+
+    /**
+     * times each filter/JsonPath measured, per sample
+     */
+    @Builder.Default
+    int iterations = 500;
+
+    /**
+     * times each filter/JsonPath run, per sample, before measuring; so JIT warmed up
+     */
+    @Builder.Default
+    int warmUpIterations = 100;
+
+    /**
+     * response to a call to source API, to profile rules against
+     */
+    @Builder
+    @Value
+    public static class Sample {
+
+        /**
+         * to identify sample in report (eg, example file name)
+         */
+        @NonNull
+        String name;
+
+        /**
+         * path, with query if any, of call to source API that sample is response to
+         */
+        @NonNull
+        String path;
+
+        @NonNull
+        String content;
+    }
+
+    /**
+     * samples for a load test scenario, its calls' example responses
+     */
+    public static List<Sample> samples(@NonNull LoadTestScenario scenario) {
+        List<Sample> samples = new ArrayList<>();
+        for (LoadTestScenario.Call call : scenario.getCalls()) {
+            samples.add(Sample.builder()
+                .name(call.getExampleFile())
+                .path(call.getPath())
+                .content(new String(TestUtils.getData(scenario.getExamplesDirectory() + call.getExampleFile()), StandardCharsets.UTF_8))
+                .build());
+        }
+        return samples;
+    }
+
+    @SneakyThrows
+    public static RESTRules readRules(@NonNull Path yamlFile) {
+        ObjectMapper yamlMapper = DaggerRuleCostProfiler_Container.create().yamlMapper();
+        return yamlMapper.readerFor(Rules2.class).readValue(yamlFile.toFile());
+    }
+
+    /**
+     * profile source's prebuilt rules against the example responses of its load test scenario
+     */
+    public RuleCostReport profile(@NonNull LoadTestScenario scenario) {
+        RESTRules rules = PrebuiltSanitizerRules.DEFAULTS.get(scenario.getSource());
+        Preconditions.checkArgument(rules != null, "No prebuilt rules for source %s", scenario.getSource());
+        return profile(scenario.getSource(), rules, samples(scenario));
+    }
+
+    /**
+     * @param rulesName to identify rules in report
+     * @param rules     to profile
+     * @param samples   to profile rules against; those that match no endpoint are skipped
+     * @return costs of filter, and each JsonPath of each transform, of endpoint matched by each sample
+     */
+    @SneakyThrows
+    public RuleCostReport profile(@NonNull String rulesName, @NonNull RESTRules rules, @NonNull List<Sample> samples) {
+        Container container = DaggerRuleCostProfiler_Container.create();
+        Pseudonymizer pseudonymizer = container.pseudonymizerImplFactory().create(Pseudonymizer.ConfigurationOptions.builder()
+            .pseudonymizationSalt("salt")
+            .defaultScopeId("scope")
+            .pseudonymImplementation(PseudonymImplementation.DEFAULT)
+            .build());
+        RESTApiSanitizerImpl sanitizer = container.sanitizerFactory().create(rules, pseudonymizer);
+        Configuration jsonConfiguration = sanitizer.getJsonConfiguration();
+        Configuration pathListConfiguration = jsonConfiguration.addOptions(Option.AS_PATH_LIST, Option.SUPPRESS_EXCEPTIONS);
+
+        RuleCostReport.RuleCostReportBuilder report = RuleCostReport.builder()
+            .rules(rulesName)
+            .iterations(iterations);
+
+        for (Sample sample : samples) {
+            Optional<Pair<Pattern, Endpoint>> match =
+                sanitizer.getEndpoint("GET", new URL("https://" + TARGET_HOST + sample.getPath()));
+            if (match.isEmpty()) {
+                log.warning("No endpoint matches sample " + sample.getName() + " (" + sample.getPath() + "); skipped");
+                continue;
+            }
+            Endpoint endpoint = match.get().getValue();
+            String endpointName = Optional.ofNullable(endpoint.getPathTemplate()).orElse(endpoint.getPathRegex());
+
+            String filtered = sample.getContent();
+            if (endpoint.getResponseSchemaOptional().isPresent()) {
+                Measurement measurement = measure(sample::getContent,
+                    content -> sanitizer.jsonSchemaFilterUtils.filterJsonBySchema((String) content,
+                        endpoint.getResponseSchemaOptional().get(), sanitizer.getRootDefinitions()));
+                report.cost(RuleCostReport.Cost.builder()
+                    .endpoint(endpointName)
+                    .sample(sample.getName())
+                    .step("filter")
+                    .transformIndex(-1)
+                    .nanosPerIteration(measurement.nanosPerIteration)
+                    .allocatedBytesPerIteration(measurement.allocatedBytesPerIteration)
+                    .build());
+                filtered = sanitizer.jsonSchemaFilterUtils.filterJsonBySchema(sample.getContent(),
+                    endpoint.getResponseSchemaOptional().get(), sanitizer.getRootDefinitions());
+            }
+
+            final String document = filtered;
+            Supplier<Object> freshDocument = () -> jsonConfiguration.jsonProvider().parse(document);
+
+            List<Transform> transforms = Optional.ofNullable(endpoint.getTransforms()).orElse(List.of());
+            for (int i = 0; i < transforms.size(); i++) {
+                Transform transform = transforms.get(i);
+                if (!RESTApiSanitizerImpl.transformApplies(transform, freshDocument.get())) {
+                    continue;
+                }
+                MapFunction f = transform instanceof Transform.Redact ? null : sanitizer.getTransformImpl(transform);
+
+                for (String jsonPath : transform.getJsonPaths()) {
+                    JsonPath path = JsonPath.compile(jsonPath);
+
+                    List<String> matchedPaths = matchedPaths(path, freshDocument.get(), pathListConfiguration);
+                    boolean deepScan = jsonPath.contains("..");
+
+                    Measurement measurement = measure(freshDocument, d -> {
+                        try {
+                            if (f == null) {
+                                path.delete(d, jsonConfiguration);
+                            } else {
+                                path.map(d, f, jsonConfiguration);
+                            }
+                        } catch (PathNotFoundException e) {
+                            //expected if rule doesn't apply
+                        }
+                    });
+
+                    report.cost(RuleCostReport.Cost.builder()
+                        .endpoint(endpointName)
+                        .sample(sample.getName())
+                        .step(transform.getClass().getSimpleName())
+                        .transformIndex(i)
+                        .jsonPath(jsonPath)
+                        .matches(matchedPaths.size())
+                        .deepScan(deepScan)
+                        .narrowable(deepScan && endpoint.getResponseSchemaOptional().isPresent())
+                        .matchedPaths(new ArrayList<>(new TreeSet<>(generalize(matchedPaths))))
+                        .nanosPerIteration(measurement.nanosPerIteration)
+                        .allocatedBytesPerIteration(measurement.allocatedBytesPerIteration)
+                        .build());
+                }
+            }
+        }
+        RuleCostReport built = report.build();
+        built.mostExpensive(5).forEach(cost -> log.info(rulesName + ": " + cost));
+        return built;
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<String> matchedPaths(JsonPath path, Object document, Configuration pathListConfiguration) {
+        Object result = path.read(document, pathListConfiguration);
+        return result instanceof List ? (List<String>) result : List.of();
+    }
+
+    static final Pattern ARRAY_INDEX = Pattern.compile("\\[\\d+]");
+
+    static final Pattern SIMPLE_PROPERTY = Pattern.compile("\\['([A-Za-z_$][A-Za-z0-9_$]*)']");
+
+    /**
+     * @param matchedPaths as Jayway returns them (eg, "$['items'][0]['email']")
+     * @return paths in dot-notation, with array indexes as wildcards (eg, "$.items[*].email")
+     */
+    static List<String> generalize(List<String> matchedPaths) {
+        List<String> generalized = new ArrayList<>(matchedPaths.size());
+        for (String matchedPath : matchedPaths) {
+            String path = ARRAY_INDEX.matcher(matchedPath).replaceAll("[*]");
+            generalized.add(SIMPLE_PROPERTY.matcher(path).replaceAll(".$1"));
+        }
+        return generalized;
+    }
+
+    @Value
+    static class Measurement {
+
+        double nanosPerIteration;
+
+        long allocatedBytesPerIteration;
+    }
+
+    /**
+     * @param input     to pass to operation; built outside of measurement, per iteration
+     * @param operation to measure
+     */
+    Measurement measure(Supplier<Object> input, Consumer<Object> operation) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < warmUpIterations; i++) {
+            operation.accept(input.get());
+        }
+
+        long nanos = 0;
+        long allocatedBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            Object in = input.get();
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            operation.accept(in);
+            nanos += System.nanoTime() - start;
+            allocatedBytes += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+        return new Measurement((double) nanos / iterations, allocatedBytes / iterations);
+    }
+
+    @Module
+    interface ForConfigService {
+
+        @Provides
+        @Singleton
+        static ConfigService configService() {
+            return new MemoryConfigService(Map.of(
+                ProxyConfigProperty.SOURCE.name(), "profiled",
+                ProxyConfigProperty.TARGET_HOST.name(), TARGET_HOST));
+        }
+    }
+
+    @Singleton
+    @Component(modules = {
+        PsoxyModule.class,
+        ForConfigService.class,
+        MockModules.ForSecretStore.class,
+    })
+    interface Container {
+
+        RESTApiSanitizerFactory sanitizerFactory();
+
+        PseudonymizerImplFactory pseudonymizerImplFactory();
+
+        ObjectMapper objectMapper();
+
+        @Named("ForYAML")
+        ObjectMapper yamlMapper();
+    }
+}
@@ -0,0 +1,118 @@
+package co.worklytics.psoxy.impl;
+
+import co.worklytics.psoxy.loadtest.LoadTestScenario;
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleCostProfilerTest {
+
+    @Test
+    void generalize() {
+        assertEquals(List.of("$.items[*].email", "$.value[*]['@odata.type']", "$.fields.summary"),
+            RuleCostProfiler.generalize(List.of(
+                "$['items'][0]['email']",
+                "$['value'][12]['@odata.type']",
+                "$['fields']['summary']")));
+    }
+
+    @Test
+    void profile() {
+        RuleCostProfiler profiler = RuleCostProfiler.builder()
+            .warmUpIterations(1)
+            .iterations(3)
+            .build();
+
+        RuleCostReport report = profiler.profile(scenario("jira-cloud"));
+
+        assertEquals("jira-cloud", report.getRules());
+        assertEquals(3, report.getIterations());
+
+        // jira's search endpoint has a response schema, and deep scans within it
+        RuleCostReport.Cost filter = report.getCosts().stream()
+            .filter(cost -> cost.getStep().equals("filter"))
+            .findFirst().get();
+        assertEquals("issues_by_jql.json", filter.getSample());
+        assertTrue(filter.getNanosPerIteration() > 0);
+
+        RuleCostReport.Cost accountIds = report.getCosts().stream()
+            .filter(cost -> "$.issues[*]..accountId".equals(cost.getJsonPath()))
+            .findFirst().get();
+        assertEquals("Pseudonymize", accountIds.getStep());
+        assertTrue(accountIds.isDeepScan());
+        assertTrue(accountIds.isNarrowable());
+        assertTrue(accountIds.getMatches() > 0);
+        assertFalse(accountIds.getMatchedPaths().isEmpty());
+        assertTrue(accountIds.getMatchedPaths().stream().noneMatch(path -> path.contains("..")));
+        assertTrue(accountIds.getMatchedPaths().stream().allMatch(path -> path.startsWith("$.issues[*].") && path.endsWith(".accountId")));
+        assertTrue(accountIds.getNanosPerIteration() > 0);
+    }
+
+    @Test
+    void profile_unmatchedSampleSkipped() {
+        RuleCostProfiler profiler = RuleCostProfiler.builder()
+            .warmUpIterations(0)
+            .iterations(1)
+            .build();
+
+        RuleCostReport report = profiler.profile("gcal", PrebuiltSanitizerRules.DEFAULTS.get("gcal"), List.of(
+            RuleCostProfiler.Sample.builder()
+                .name("not-an-endpoint.json")
+                .path("/not/an/endpoint")
+                .content("{}")
+                .build()));
+
+        assertTrue(report.getCosts().isEmpty());
+    }
+
+    /**
+     * profile rules, writing report to 'target/rule-cost/'; by default, prebuilt rules for each
+     * load test scenario, against its example responses
+     *
+     * to profile custom rules, pass path to YAML as 'ruleCost.rules' and source of the load test
+     * scenario whose example responses to use as 'ruleCost.source', eg
+     * `mvn test -Dtest=RuleCostProfilerTest#profileRules -DruleCost.rules=../my-rules.yaml -DruleCost.source=outlook-cal`
+     */
+    @Disabled // benchmark; not for usual CI
+    @Test
+    void profileRules() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        RuleCostProfiler profiler = RuleCostProfiler.builder()
+            .iterations(Integer.getInteger("ruleCost.iterations", 500))
+            .build();
+
+        String rulesPath = System.getProperty("ruleCost.rules");
+        List<RuleCostReport> reports;
+        if (rulesPath == null) {
+            reports = LoadTestScenario.DEFAULTS.stream()
+                .map(profiler::profile)
+                .collect(Collectors.toList());
+        } else {
+            LoadTestScenario scenario = scenario(System.getProperty("ruleCost.source"));
+            reports = List.of(profiler.profile(rulesPath,
+                RuleCostProfiler.readRules(Paths.get(rulesPath)), RuleCostProfiler.samples(scenario)));
+        }
+
+        Path dir = Paths.get("target", "rule-cost");
+        for (RuleCostReport report : reports) {
+            String name = Paths.get(report.getRules()).getFileName().toString();
+            report.writeJson(objectMapper, dir.resolve("rule-cost-" + name + ".json"));
+            report.writeCsv(dir.resolve("rule-cost-" + name + ".csv"));
+        }
+    }
+
+    static LoadTestScenario scenario(String source) {
+        return LoadTestScenario.DEFAULTS.stream()
+            .filter(scenario -> scenario.getSource().equals(source))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("No load test scenario for source " + source));
+    }
+}
@@ -0,0 +1,138 @@
+package co.worklytics.psoxy.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.SneakyThrows;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * cost of each endpoint's filter and transforms, per sample response, as measured by
+ * {@link RuleCostProfiler}
+ */
+@AllArgsConstructor //for builder
+@NoArgsConstructor //for Jackson
+@Builder
+@Data
+public class RuleCostReport {
+
+    /**
+     * rules profiled (eg, source id of prebuilt rules, or path to YAML file)
+     */
+    String rules;
+
+    /**
+     * times each filter/JsonPath was measured, per sample
+     */
+    int iterations;
+
+    @Singular
+    List<Cost> costs;
+
+    @AllArgsConstructor //for builder
+    @NoArgsConstructor //for Jackson
+    @Builder
+    @Data
+    public static class Cost {
+
+        /**
+         * endpoint, as its pathTemplate or pathRegex
+         */
+        String endpoint;
+
+        /**
+         * sample response measured against
+         */
+        String sample;
+
+        /**
+         * 'filter' for endpoint's response schema; otherwise the transform's type (eg, 'Pseudonymize')
+         */
+        String step;
+
+        /**
+         * index of transform within endpoint's transforms; -1 for filter
+         */
+        int transformIndex;
+
+        /**
+         * null for filter
+         */
+        String jsonPath;
+
+        /**
+         * values in (filtered) sample that JsonPath matched
+         */
+        long matches;
+
+        /**
+         * whether JsonPath uses recursive descent ('..'), so walks whole of document
+         */
+        boolean deepScan;
+
+        /**
+         * whether JsonPath is a deep scan on an endpoint with a response schema, so could be
+         * replaced with concrete paths
+         */
+        boolean narrowable;
+
+        /**
+         * concrete paths JsonPath matched in sample, with array indexes generalized; if narrowable,
+         * a starting point for narrower replacement (check against schema, as a sample may not
+         * include every case)
+         */
+        List<String> matchedPaths;
+
+        double nanosPerIteration;
+
+        long allocatedBytesPerIteration;
+    }
+
+    /**
+     * @param limit max costs to return
+     * @return costs, most expensive first
+     */
+    public List<Cost> mostExpensive(int limit) {
+        return costs.stream()
+            .sorted(Comparator.comparingDouble(Cost::getNanosPerIteration).reversed())
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    @SneakyThrows
+    public void writeJson(@NonNull ObjectMapper objectMapper, @NonNull Path path) {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(path.toFile(), this);
+    }
+
+    @SneakyThrows
+    public void writeCsv(@NonNull Path path) {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+            printer.printRecord("rules", "endpoint", "sample", "step", "transformIndex", "jsonPath",
+                "matches", "deepScan", "narrowable", "matchedPaths", "nanosPerIteration",
+                "allocatedBytesPerIteration");
+            for (Cost cost : costs) {
+                printer.printRecord(rules, cost.getEndpoint(), cost.getSample(), cost.getStep(),
+                    cost.getTransformIndex(), cost.getJsonPath(), cost.getMatches(),
+                    cost.isDeepScan(), cost.isNarrowable(),
+                    cost.getMatchedPaths() == null ? null : String.join(" ", cost.getMatchedPaths()),
+                    cost.getNanosPerIteration(), cost.getAllocatedBytesPerIteration());
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package co.worklytics.psoxy.impl;
+
+import com.avaulta.gateway.rules.JsonPathCompiler;
+import com.avaulta.gateway.rules.transforms.Transform;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.MapFunction;
+import com.jayway.jsonpath.PathNotFoundException;
+import com.jayway.jsonpath.spi.json.JacksonJsonProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransformPlanTest {
+
+    static final JsonPathCompiler COMPILER = new JsonPathCompiler();
+
+    Configuration configuration = Configuration.defaultConfiguration()
+        .jsonProvider(new JacksonJsonProvider(new ObjectMapper()));
+
+    static final String DOCUMENT = "{\"kind\":\"list\",\"value\":[" +
+        "{\"id\":\"1\",\"organizer\":{\"email\":\"alice@acme.com\",\"name\":\"Alice\"}," +
+        "\"attendees\":[{\"email\":\"bob@acme.com\",\"name\":\"Bob\"},{\"email\":\"carol@acme.com\",\"name\":null}]}," +
+        "{\"id\":\"2\",\"organizer\":\"not an object\",\"attendees\":[]}," +
+        "{\"id\":\"3\"}" +
+        "],\"meta\":{\"a\":{\"email\":\"dan@acme.com\"},\"b\":{\"email\":\"erin@acme.com\"}}}";
+
+    @Test
+    void segments() {
+        assertEquals(Optional.of(Arrays.asList("value", null, "attendees", null, "email")),
+            TransformPlan.segments("$.value[*].attendees[*].email"));
+        assertEquals(Optional.of(Arrays.asList("value", null, "@odata.type")),
+            TransformPlan.segments("$['value'].*['@odata.type']"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "$",
+        "$..email",
+        "$.value[*]..email",
+        "$.value[0].email",
+        "$.value[?(@.email)]",
+        "$['a','b']",
+        "value.email",
+    })
+    void segments_unsupported(String jsonPath) {
+        assertEquals(Optional.empty(), TransformPlan.segments(jsonPath));
+    }
+
+    @Test
+    void plan() {
+        List<Transform> transforms = List.of(
+            Transform.Pseudonymize.ofPaths("$.value[*].organizer.email", "$.value[*].attendees[*].email"),
+            Transform.Redact.ofPaths("$.value[*].attendees[*].name"),
+            Transform.Pseudonymize.ofPaths("$..email"),
+            Transform.Redact.builder().jsonPath("$.value[*].id").applyOnlyWhen("$.kind").build(),
+            Transform.Redact.ofPaths("$.value[*].organizer.name"),
+            // named child of 'value' alongside wildcard one, so can't join traversal
+            Transform.Redact.ofPaths("$.value.length"),
+            Transform.Redact.ofPaths("$.kind"));
+
+        TransformPlan plan = TransformPlan.plan(transforms, jsonPaths(transforms), COMPILER::compile);
+
+        assertEquals(5, plan.getSteps().size());
+        assertEquals(List.of(0, 1), ((TransformPlan.Traversal) plan.getSteps().get(0)).getTransformIndexes());
+        assertEquals(2, ((TransformPlan.PerPath) plan.getSteps().get(1)).getTransformIndex());
+        assertNotNull(((TransformPlan.PerPath) plan.getSteps().get(1)).getPaths().get(0).getCompiled());
+        assertEquals(3, ((TransformPlan.PerPath) plan.getSteps().get(2)).getTransformIndex());
+        assertEquals(List.of(4), ((TransformPlan.Traversal) plan.getSteps().get(3)).getTransformIndexes());
+        assertEquals(List.of(5, 6), ((TransformPlan.Traversal) plan.getSteps().get(4)).getTransformIndexes());
+    }
+
+    @Test
+    void plan_redactArrayItems() {
+        List<Transform> transforms = List.of(Transform.Redact.ofPaths("$.value[*]"));
+
+        TransformPlan plan = TransformPlan.plan(transforms, jsonPaths(transforms), COMPILER::compile);
+
+        assertTrue(plan.getSteps().get(0) instanceof TransformPlan.PerPath);
+    }
+
+    @Test
+    void apply() {
+        assertSameAsPerPath(
+            Transform.Pseudonymize.ofPaths("$.value[*].organizer.email", "$.value[*].attendees[*].email"),
+            Transform.Redact.ofPaths("$.value[*].attendees[*].name", "$.value[*].missing"),
+            Transform.Pseudonymize.ofPaths("$.meta.*.email", "$.kind"));
+    }
+
+    @Test
+    void apply_sameValueTwice() {
+        assertSameAsPerPath(
+            Transform.Pseudonymize.ofPaths("$.value[*].attendees[*].email"),
+            Transform.Pseudonymize.ofPaths("$.value[*].attendees[*].email", "$['value'][*]['attendees'][*]['email']"));
+    }
+
+    @Test
+    void apply_ancestorRedactedFirst() {
+        assertSameAsPerPath(
+            Transform.Redact.ofPaths("$.value[*].organizer"),
+            Transform.Pseudonymize.ofPaths("$.value[*].organizer.email"));
+    }
+
+    @Test
+    void apply_ancestorRedactedAfter() {
+        assertSameAsPerPath(
+            Transform.Pseudonymize.ofPaths("$.value[*].organizer.email", "$.value[*].organizer.name"),
+            Transform.Redact.ofPaths("$.value[*].organizer"),
+            Transform.Pseudonymize.ofPaths("$.value[*].organizer.name"));
+    }
+
+    @Test
+    void apply_ancestorMappedFirst() {
+        // object replaced by string, so nothing within it for later transform
+        assertSameAsPerPath(
+            Transform.Pseudonymize.ofPaths("$.value[*].attendees[*]"),
+            Transform.Pseudonymize.ofPaths("$.value[*].attendees[*].email"));
+    }
+
+    @Test
+    void apply_wildcardOverObject() {
+        assertSameAsPerPath(
+            Transform.Pseudonymize.ofPaths("$.meta.*.email"),
+            Transform.Redact.ofPaths("$.meta[*].email"),
+            Transform.Pseudonymize.ofPaths("$.value[*].organizer.*"));
+    }
+
+    /**
+     * asserts transforms, applied per plan, change document as applying them path by path does
+     */
+    void assertSameAsPerPath(Transform... transforms) {
+        List<Transform> list = Arrays.asList(transforms);
+        TransformPlan plan = TransformPlan.plan(list, jsonPaths(list), COMPILER::compile);
+        assertTrue(plan.getSteps().stream().allMatch(step -> step instanceof TransformPlan.Traversal));
+
+        MapFunction[] functions = new MapFunction[transforms.length];
+        for (int i = 0; i < transforms.length; i++) {
+            if (!(transforms[i] instanceof Transform.Redact)) {
+                String suffix = "#" + i;
+                functions[i] = (value, configuration) -> configuration.jsonProvider().toJson(value) + suffix;
+            }
+        }
+
+        Object planned = configuration.jsonProvider().parse(DOCUMENT);
+        for (TransformPlan.Step step : plan.getSteps()) {
+            ((TransformPlan.Traversal) step).apply(planned, functions, configuration);
+        }
+
+        Object perPath = configuration.jsonProvider().parse(DOCUMENT);
+        for (int i = 0; i < transforms.length; i++) {
+            for (String jsonPath : transforms[i].getJsonPaths()) {
+                try {
+                    if (functions[i] == null) {
+                        JsonPath.compile(jsonPath).delete(perPath, configuration);
+                    } else {
+                        JsonPath.compile(jsonPath).map(perPath, functions[i], configuration);
+                    }
+                } catch (PathNotFoundException e) {
+                    //expected if rule doesn't apply
+                }
+            }
+        }
+
+        assertEquals(configuration.jsonProvider().toJson(perPath), configuration.jsonProvider().toJson(planned));
+    }
+
+    static List<List<String>> jsonPaths(List<Transform> transforms) {
+        return transforms.stream().map(Transform::getJsonPaths).collect(Collectors.toList());
+    }
+}
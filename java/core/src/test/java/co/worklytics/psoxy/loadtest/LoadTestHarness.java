@@ -0,0 +1,424 @@
+package co.worklytics.psoxy.loadtest;
+
+import co.worklytics.psoxy.PsoxyModule;
+import co.worklytics.psoxy.gateway.ConfigService;
+import co.worklytics.psoxy.gateway.HttpEventRequest;
+import co.worklytics.psoxy.gateway.HttpEventResponse;
+import co.worklytics.psoxy.gateway.ProxyConfigProperty;
+import co.worklytics.psoxy.gateway.SecretStore;
+import co.worklytics.psoxy.gateway.SourceAuthStrategy;
+import co.worklytics.psoxy.gateway.impl.CommonRequestHandler;
+import co.worklytics.psoxy.gateway.impl.MemoryConfigService;
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.psoxy.rules.RESTRules;
+import co.worklytics.test.TestUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.auth.Credentials;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.OAuth2Credentials;
+import com.google.auth.http.HttpTransportFactory;
+import com.google.common.base.Preconditions;
+import dagger.Component;
+import dagger.Module;
+import dagger.Provides;
+import dagger.multibindings.IntoSet;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.SneakyThrows;
+import lombok.Value;
+import lombok.extern.java.Log;
+
+import javax.inject.Singleton;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * drives {@link CommonRequestHandler}, configured with a source's prebuilt rules, at controlled
+ * concurrency against a {@link StubUpstream} replaying that source's example API responses
+ *
+ * measures whole of proxy's request handling, in-process: rules evaluation, the HTTP call to
+ * source (over loopback), and sanitization of response. Host platform adapters (Lambda/Cloud
+ * Function request/response translation, compression) aren't included.
+ *
+ * allocations are measured per-thread, so only those on request-handling thread are counted
+ * (none of stub's, but also none of any work handler offloads to other threads)
+ */
+@Log
+@Builder
+public class LoadTestHarness {
+
+    static final String AUTH_STRATEGY_IDENTIFIER = "load-test";
+
+    /**
+     * requests in flight at once
+     */
+    @Builder.Default
+    int concurrency = 8;
+
+    /**
+     * requests measured, per source; these are spread round-robin across scenario's calls
+     */
+    @Builder.Default
+    int requestsPerSource = 2_000;
+
+    /**
+     * requests made, per source, before measuring; so JIT, connection pools, etc warmed up
+     */
+    @Builder.Default
+    int warmUpRequestsPerSource = 200;
+
+    @Builder.Default
+    Duration upstreamLatency = Duration.ZERO;
+
+    @Builder.Default
+    Duration upstreamLatencyJitter = Duration.ZERO;
+
+    /**
+     * times to repeat items in example responses
+     *
+     * @see StubUpstream#scale(ObjectMapper, byte[], int)
+     */
+    @Builder.Default
+    int responseSizeMultiplier = 1;
+
+    /**
+     * whether stub upstream sends `ETag`s and answers conditional requests, as some sources do
+     *
+     * @see StubUpstream#validators
+     */
+    @Builder.Default
+    boolean upstreamValidators = false;
+
+    /**
+     * additional config of proxy under test (eg, to enable features such as response cache),
+     * by property name
+     */
+    @Singular("proxyConfig")
+    Map<String, String> proxyConfig;
+
+    /**
+     * version of proxy under test, to record in report
+     */
+    @Builder.Default
+    String version = System.getProperty("psoxy.version", "unknown");
+
+    @Builder.Default
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    public LoadTestReport run(@NonNull List<LoadTestScenario> scenarios) {
+        LoadTestReport.LoadTestReportBuilder report = LoadTestReport.builder()
+            .version(version)
+            .startedAt(Instant.now().toString())
+            .concurrency(concurrency)
+            .requestsPerSource(requestsPerSource)
+            .upstreamLatencyMillis(upstreamLatency.toMillis())
+            .responseSizeMultiplier(responseSizeMultiplier);
+
+        scenarios.forEach(scenario -> report.result(run(scenario)));
+        return report.build();
+    }
+
+    @SneakyThrows
+    public LoadTestReport.SourceResult run(@NonNull LoadTestScenario scenario) {
+        RESTRules rules = PrebuiltSanitizerRules.DEFAULTS.get(scenario.getSource());
+        Preconditions.checkArgument(rules != null, "No prebuilt rules for source %s", scenario.getSource());
+        Preconditions.checkArgument(!scenario.getCalls().isEmpty(), "No calls for source %s", scenario.getSource());
+
+        StubUpstream.StubUpstreamBuilder stubBuilder = StubUpstream.builder()
+            .latency(upstreamLatency)
+            .latencyJitter(upstreamLatencyJitter)
+            .validators(upstreamValidators);
+        for (LoadTestScenario.Call call : scenario.getCalls()) {
+            byte[] example = TestUtils.getData(scenario.getExamplesDirectory() + call.getExampleFile());
+            stubBuilder.response(pathOnly(call.getPath()), StubUpstream.scale(objectMapper, example, responseSizeMultiplier));
+        }
+
+        try (StubUpstream upstream = stubBuilder.build()) {
+            CommonRequestHandler handler = DaggerLoadTestHarness_Container.builder()
+                .forSource(new ForSource(scenario.getSource(), rules, upstream::transport, proxyConfig))
+                .build()
+                .requestHandler();
+
+            List<Request> requests = new ArrayList<>();
+            for (LoadTestScenario.Call call : scenario.getCalls()) {
+                requests.add(Request.of(call.getPath()));
+            }
+
+            drive(handler, requests, warmUpRequestsPerSource, null);
+
+            Measurements measurements = new Measurements(requestsPerSource);
+            long start = System.nanoTime();
+            drive(handler, requests, requestsPerSource, measurements);
+            long durationNanos = System.nanoTime() - start;
+
+            long[] latencies = Arrays.copyOf(measurements.latencyNanos, requestsPerSource);
+            Arrays.sort(latencies);
+
+            LoadTestReport.SourceResult result = LoadTestReport.SourceResult.builder()
+                .source(scenario.getSource())
+                .requests(requestsPerSource)
+                .errors(measurements.errors.get())
+                .durationMillis(TimeUnit.NANOSECONDS.toMillis(durationNanos))
+                .throughputPerSecond(requestsPerSource / (durationNanos / 1e9))
+                .latencyP50Millis(percentileMillis(latencies, 50))
+                .latencyP95Millis(percentileMillis(latencies, 95))
+                .latencyP99Millis(percentileMillis(latencies, 99))
+                .latencyMaxMillis(percentileMillis(latencies, 100))
+                .allocatedBytesPerRequest(measurements.allocatedBytes.get() / requestsPerSource)
+                .responseBytesPerRequest(measurements.responseBytes.get() / requestsPerSource)
+                .build();
+            log.info(result.toString());
+            return result;
+        }
+    }
+
+    /**
+     * @param latencies  sorted, in nanoseconds
+     * @param percentile 0-100
+     * @return latency at percentile (nearest-rank), in milliseconds
+     */
+    static double percentileMillis(long[] latencies, double percentile) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * latencies.length);
+        return latencies[Math.max(0, Math.min(latencies.length, rank) - 1)] / 1e6;
+    }
+
+    @SneakyThrows
+    private void drive(CommonRequestHandler handler, List<Request> requests, int count, Measurements measurements) {
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    com.sun.management.ThreadMXBean threads =
+                        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                    long threadId = Thread.currentThread().getId();
+                    for (int n = next.getAndIncrement(); n < count; n = next.getAndIncrement()) {
+                        Request request = requests.get(n % requests.size());
+                        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+                        long start = System.nanoTime();
+                        boolean ok;
+                        int responseBytes = 0;
+                        try {
+                            HttpEventResponse response = handler.handle(request);
+                            ok = response.getStatusCode() == 200;
+                            responseBytes = response.getBody() == null ? 0 : response.getBody().length();
+                        } catch (Throwable e) {
+                            log.warning("Request failed: " + e.getMessage());
+                            ok = false;
+                        }
+                        if (measurements != null) {
+                            measurements.latencyNanos[n] = System.nanoTime() - start;
+                            measurements.allocatedBytes.addAndGet(threads.getThreadAllocatedBytes(threadId) - allocatedBefore);
+                            measurements.responseBytes.addAndGet(responseBytes);
+                            if (!ok) {
+                                measurements.errors.incrementAndGet();
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String pathOnly(String pathWithQuery) {
+        int queryStart = pathWithQuery.indexOf('?');
+        return queryStart < 0 ? pathWithQuery : pathWithQuery.substring(0, queryStart);
+    }
+
+    static class Measurements {
+
+        final long[] latencyNanos;
+
+        final AtomicInteger errors = new AtomicInteger();
+
+        final AtomicLong allocatedBytes = new AtomicLong();
+
+        final AtomicLong responseBytes = new AtomicLong();
+
+        Measurements(int requests) {
+            latencyNanos = new long[requests];
+        }
+    }
+
+    /**
+     * request to proxy, as a client (eg, Worklytics) would make it
+     */
+    @Value
+    static class Request implements HttpEventRequest {
+
+        String pathWithQuery;
+
+        Map<String, String> headers;
+
+        static Request of(String pathWithQuery) {
+            return of(pathWithQuery, Map.of());
+        }
+
+        static Request of(String pathWithQuery, Map<String, String> headers) {
+            return new Request(pathWithQuery, headers);
+        }
+
+        @Override
+        public String getPath() {
+            return pathOnly(pathWithQuery);
+        }
+
+        @Override
+        public Optional<String> getQuery() {
+            int queryStart = pathWithQuery.indexOf('?');
+            return queryStart < 0 ? Optional.empty() : Optional.of(pathWithQuery.substring(queryStart + 1));
+        }
+
+        @Override
+        public Optional<String> getHeader(String headerName) {
+            return Optional.ofNullable(headers.get(headerName));
+        }
+
+        @Override
+        public Optional<List<String>> getMultiValueHeader(String headerName) {
+            return getHeader(headerName).map(List::of);
+        }
+
+        @Override
+        public String getHttpMethod() {
+            return "GET";
+        }
+
+        @Override
+        public byte[] getBody() {
+            return null;
+        }
+    }
+
+    /**
+     * secrets, as proxy would have them in its host platform's secret store
+     */
+    static class MemorySecretStore extends MemoryConfigService implements SecretStore {
+
+        MemorySecretStore(Map<String, String> map) {
+            super(map);
+        }
+    }
+
+    /**
+     * config of proxy instance for source, with source's prebuilt rules and a stub source
+     * authentication
+     */
+    @Module
+    static class ForSource {
+
+        final String source;
+
+        final RESTRules rules;
+
+        final HttpTransportFactory httpTransportFactory;
+
+        final Map<String, String> proxyConfig;
+
+        // explicit, not Lombok-generated, so Dagger sees module has no no-arg constructor and
+        // requires instance be passed to component builder
+        ForSource(String source, RESTRules rules, HttpTransportFactory httpTransportFactory, Map<String, String> proxyConfig) {
+            this.source = source;
+            this.rules = rules;
+            this.httpTransportFactory = httpTransportFactory;
+            this.proxyConfig = proxyConfig;
+        }
+
+        @Provides
+        @Singleton
+        ConfigService configService() {
+            Map<String, String> config = new HashMap<>();
+            config.put(ProxyConfigProperty.SOURCE.name(), source);
+            // host irrelevant, as transport sends all requests to stub
+            config.put(ProxyConfigProperty.TARGET_HOST.name(), "source.example.com");
+            config.put(ProxyConfigProperty.SOURCE_AUTH_STRATEGY_IDENTIFIER.name(), AUTH_STRATEGY_IDENTIFIER);
+            config.putAll(proxyConfig);
+            return new MemoryConfigService(config) {
+                @Override
+                public boolean isDevelopment() {
+                    // as in production; dev mode adds logging that would distort measurements
+                    return false;
+                }
+            };
+        }
+
+        @Provides
+        @Singleton
+        SecretStore secretStore() {
+            Map<String, String> secrets = new HashMap<>();
+            secrets.put(ProxyConfigProperty.PSOXY_SALT.name(), "salt");
+            secrets.put(ProxyConfigProperty.PSOXY_ENCRYPTION_KEY.name(), "secret");
+            return new MemorySecretStore(secrets);
+        }
+
+        @Provides
+        RESTRules rules() {
+            return rules;
+        }
+
+        @Provides
+        HttpTransportFactory httpTransportFactory() {
+            return httpTransportFactory;
+        }
+
+        @Provides
+        @IntoSet
+        SourceAuthStrategy sourceAuthStrategy() {
+            Credentials credentials = OAuth2Credentials.create(new AccessToken("load-test-token", null));
+            return new SourceAuthStrategy() {
+                @Override
+                public String getConfigIdentifier() {
+                    return AUTH_STRATEGY_IDENTIFIER;
+                }
+
+                @Override
+                public Credentials getCredentials(Optional<String> userToImpersonate) {
+                    return credentials;
+                }
+
+                @Override
+                public Set<ConfigService.ConfigProperty> getRequiredConfigProperties() {
+                    return Set.of();
+                }
+
+                @Override
+                public Set<ConfigService.ConfigProperty> getAllConfigProperties() {
+                    return Set.of();
+                }
+            };
+        }
+    }
+
+    @Singleton
+    @Component(modules = {
+        PsoxyModule.class,
+        ForSource.class,
+    })
+    interface Container {
+        CommonRequestHandler requestHandler();
+    }
+}
@@ -0,0 +1,181 @@
+package co.worklytics.psoxy.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpResponse;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadTestHarnessTest {
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @ParameterizedTest
+    @CsvSource({
+        "50,5",
+        "95,10",
+        "99,10",
+        "100,10",
+        "0,1",
+    })
+    void percentileMillis(double percentile, double expectedMillis) {
+        long[] latencies = new long[10];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = (i + 1) * 1_000_000L;
+        }
+        assertEquals(expectedMillis, LoadTestHarness.percentileMillis(latencies, percentile));
+    }
+
+    @SneakyThrows
+    @Test
+    void scale() {
+        byte[] content = "{\"kind\":\"list\",\"tags\":[\"a\"],\"items\":[{\"id\":1},{\"id\":2}]}".getBytes(StandardCharsets.UTF_8);
+
+        JsonNode scaled = objectMapper.readTree(StubUpstream.scale(objectMapper, content, 3));
+
+        assertEquals(6, scaled.get("items").size());
+        assertEquals(1, scaled.get("tags").size());
+        assertEquals("list", scaled.get("kind").asText());
+        assertSame(content, StubUpstream.scale(objectMapper, content, 1));
+    }
+
+    @SneakyThrows
+    @Test
+    void stubUpstream() {
+        try (StubUpstream upstream = StubUpstream.builder()
+            .response("/v1/items", "{\"items\":[]}".getBytes(StandardCharsets.UTF_8))
+            .latency(Duration.ofMillis(20))
+            .build()) {
+
+            long start = System.nanoTime();
+            HttpResponse response = upstream.transport().createRequestFactory()
+                .buildGetRequest(new GenericUrl("https://api.example.com/v1/items?page=2"))
+                .execute();
+            assertEquals(200, response.getStatusCode());
+            assertEquals("{\"items\":[]}", response.parseAsString());
+            assertTrue(System.nanoTime() - start >= Duration.ofMillis(20).toNanos());
+
+            HttpResponse notFound = upstream.transport().createRequestFactory()
+                .buildGetRequest(new GenericUrl("https://api.example.com/v1/other"))
+                .setThrowExceptionOnExecuteError(false)
+                .execute();
+            assertEquals(404, notFound.getStatusCode());
+
+            assertEquals(1, upstream.getRequestsServed().get());
+            assertEquals(1, upstream.getRequestsUnmatched().get());
+        }
+    }
+
+    @Test
+    void run() {
+        LoadTestHarness harness = LoadTestHarness.builder()
+            .concurrency(2)
+            .warmUpRequestsPerSource(4)
+            .requestsPerSource(20)
+            .build();
+
+        LoadTestReport.SourceResult result = harness.run(LoadTestScenario.DEFAULTS.stream()
+            .filter(scenario -> scenario.getSource().equals("gcal"))
+            .findFirst().get());
+
+        assertEquals("gcal", result.getSource());
+        assertEquals(20, result.getRequests());
+        assertEquals(0, result.getErrors());
+        assertTrue(result.getThroughputPerSecond() > 0);
+        assertTrue(result.getLatencyP50Millis() <= result.getLatencyP95Millis());
+        assertTrue(result.getLatencyP95Millis() <= result.getLatencyMaxMillis());
+        assertTrue(result.getAllocatedBytesPerRequest() > 0);
+        assertTrue(result.getResponseBytesPerRequest() > 0);
+    }
+
+    @Test
+    void regressionsFrom() {
+        LoadTestReport baseline = LoadTestReport.builder()
+            .result(LoadTestReport.SourceResult.builder()
+                .source("gcal").throughputPerSecond(100).latencyP95Millis(10).allocatedBytesPerRequest(1000).build())
+            .result(LoadTestReport.SourceResult.builder()
+                .source("zoom").throughputPerSecond(100).latencyP95Millis(10).allocatedBytesPerRequest(1000).build())
+            .build();
+
+        LoadTestReport current = LoadTestReport.builder()
+            .result(LoadTestReport.SourceResult.builder()
+                .source("gcal").throughputPerSecond(95).latencyP95Millis(10.5).allocatedBytesPerRequest(1050).build())
+            .result(LoadTestReport.SourceResult.builder()
+                .source("zoom").throughputPerSecond(50).latencyP95Millis(20).allocatedBytesPerRequest(2000).errors(1).build())
+            .result(LoadTestReport.SourceResult.builder()
+                .source("slack").throughputPerSecond(1).latencyP95Millis(1000).build())
+            .build();
+
+        List<String> regressions = current.regressionsFrom(baseline, 0.1);
+
+        assertEquals(4, regressions.size());
+        assertTrue(regressions.stream().allMatch(r -> r.startsWith("zoom: ")));
+    }
+
+    @SneakyThrows
+    @Test
+    void report_roundTrip(@TempDir Path dir) {
+        LoadTestReport report = LoadTestReport.builder()
+            .version("0.4.52")
+            .concurrency(8)
+            .result(LoadTestReport.SourceResult.builder()
+                .source("gcal").requests(100).throughputPerSecond(100).latencyP95Millis(10).build())
+            .build();
+
+        report.writeJson(objectMapper, dir.resolve("report.json"));
+        report.writeCsv(dir.resolve("report.csv"));
+
+        assertEquals(report, LoadTestReport.readJson(objectMapper, dir.resolve("report.json")));
+        List<String> csv = Files.readAllLines(dir.resolve("report.csv"));
+        assertEquals(2, csv.size());
+        assertTrue(csv.get(1).startsWith("0.4.52,gcal,8,100,"));
+    }
+
+    /**
+     * full load test, across all default scenarios; writes report to 'target/load-test/', and
+     * compares to baseline report if path to one given via 'loadTest.baseline' system property
+     *
+     * eg, `mvn test -Dtest=LoadTestHarnessTest#loadTest -DloadTest.baseline=../load-test-v0.4.51.json`
+     */
+    @Disabled // load test; not for usual CI
+    @Test
+    void loadTest() {
+        LoadTestHarness harness = LoadTestHarness.builder()
+            .concurrency(Integer.getInteger("loadTest.concurrency", 8))
+            .requestsPerSource(Integer.getInteger("loadTest.requests", 2_000))
+            .upstreamLatency(Duration.ofMillis(Integer.getInteger("loadTest.upstreamLatencyMillis", 50)))
+            .upstreamLatencyJitter(Duration.ofMillis(Integer.getInteger("loadTest.upstreamLatencyJitterMillis", 50)))
+            .responseSizeMultiplier(Integer.getInteger("loadTest.responseSizeMultiplier", 10))
+            .objectMapper(objectMapper)
+            .build();
+
+        LoadTestReport report = harness.run(LoadTestScenario.DEFAULTS);
+
+        Path dir = Paths.get("target", "load-test");
+        report.writeJson(objectMapper, dir.resolve("load-test-" + report.getVersion() + ".json"));
+        report.writeCsv(dir.resolve("load-test-" + report.getVersion() + ".csv"));
+
+        report.getResults().forEach(result -> assertEquals(0, result.getErrors(), result.getSource() + " had errors"));
+
+        String baselinePath = System.getProperty("loadTest.baseline");
+        if (baselinePath != null) {
+            List<String> regressions =
+                report.regressionsFrom(LoadTestReport.readJson(objectMapper, Paths.get(baselinePath)), 0.1);
+            assertTrue(regressions.isEmpty(), "Regressions vs baseline:\n" + String.join("\n", regressions));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package co.worklytics.psoxy.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.SneakyThrows;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * results of a load test run; written as JSON (and CSV, for spreadsheets) so runs against
+ * different versions of proxy can be compared
+ */
+@AllArgsConstructor //for builder
+@NoArgsConstructor //for Jackson
+@Builder
+@Data
+public class LoadTestReport {
+
+    /**
+     * version of proxy under test
+     */
+    String version;
+
+    /**
+     * when run started, ISO-8601
+     */
+    String startedAt;
+
+    int concurrency;
+
+    int requestsPerSource;
+
+    long upstreamLatencyMillis;
+
+    int responseSizeMultiplier;
+
+    @Singular
+    List<SourceResult> results;
+
+    @AllArgsConstructor //for builder
+    @NoArgsConstructor //for Jackson
+    @Builder
+    @Data
+    public static class SourceResult {
+
+        String source;
+
+        /**
+         * requests measured (excludes warm-up)
+         */
+        int requests;
+
+        /**
+         * requests that threw, or for which proxy responded with other than 200
+         */
+        int errors;
+
+        long durationMillis;
+
+        double throughputPerSecond;
+
+        double latencyP50Millis;
+
+        double latencyP95Millis;
+
+        double latencyP99Millis;
+
+        double latencyMaxMillis;
+
+        /**
+         * bytes allocated by thread handling request, mean over requests
+         */
+        long allocatedBytesPerRequest;
+
+        /**
+         * size of sanitized response body, mean over requests
+         */
+        long responseBytesPerRequest;
+    }
+
+    @SneakyThrows
+    public void writeJson(@NonNull ObjectMapper objectMapper, @NonNull Path path) {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(path.toFile(), this);
+    }
+
+    @SneakyThrows
+    public static LoadTestReport readJson(@NonNull ObjectMapper objectMapper, @NonNull Path path) {
+        return objectMapper.readValue(path.toFile(), LoadTestReport.class);
+    }
+
+    @SneakyThrows
+    public void writeCsv(@NonNull Path path) {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+            printer.printRecord("version", "source", "concurrency", "requests", "errors",
+                "throughputPerSecond", "latencyP50Millis", "latencyP95Millis", "latencyP99Millis",
+                "latencyMaxMillis", "allocatedBytesPerRequest", "responseBytesPerRequest");
+            for (SourceResult result : results) {
+                printer.printRecord(version, result.getSource(), concurrency, result.getRequests(),
+                    result.getErrors(), result.getThroughputPerSecond(), result.getLatencyP50Millis(),
+                    result.getLatencyP95Millis(), result.getLatencyP99Millis(),
+                    result.getLatencyMaxMillis(), result.getAllocatedBytesPerRequest(),
+                    result.getResponseBytesPerRequest());
+            }
+        }
+    }
+
+    /**
+     * compare to a baseline run (eg, of prior version), for sources in both
+     *
+     * @param baseline  to compare to
+     * @param tolerance fraction by which a metric may be worse than baseline before it's a
+     *                  regression (eg, 0.1 for 10%); runs are noisy, so don't expect this to be
+     *                  meaningful much below that
+     * @return descriptions of any regressions; empty if none
+     */
+    public List<String> regressionsFrom(@NonNull LoadTestReport baseline, double tolerance) {
+        Map<String, SourceResult> baselineBySource = baseline.getResults().stream()
+            .collect(Collectors.toMap(SourceResult::getSource, Function.identity()));
+
+        List<String> regressions = new ArrayList<>();
+        for (SourceResult result : results) {
+            SourceResult before = baselineBySource.get(result.getSource());
+            if (before == null) {
+                continue;
+            }
+            if (result.getErrors() > before.getErrors()) {
+                regressions.add(String.format("%s: errors %d -> %d", result.getSource(), before.getErrors(), result.getErrors()));
+            }
+            if (result.getLatencyP95Millis() > before.getLatencyP95Millis() * (1 + tolerance)) {
+                regressions.add(String.format("%s: p95 latency %.2fms -> %.2fms", result.getSource(), before.getLatencyP95Millis(), result.getLatencyP95Millis()));
+            }
+            if (result.getThroughputPerSecond() < before.getThroughputPerSecond() * (1 - tolerance)) {
+                regressions.add(String.format("%s: throughput %.1f/s -> %.1f/s", result.getSource(), before.getThroughputPerSecond(), result.getThroughputPerSecond()));
+            }
+            if (result.getAllocatedBytesPerRequest() > before.getAllocatedBytesPerRequest() * (1 + tolerance)) {
+                regressions.add(String.format("%s: allocations %d -> %d bytes/request", result.getSource(), before.getAllocatedBytesPerRequest(), result.getAllocatedBytesPerRequest()));
+            }
+        }
+        return regressions;
+    }
+}
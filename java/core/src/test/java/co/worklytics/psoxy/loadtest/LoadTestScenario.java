@@ -0,0 +1,120 @@
+package co.worklytics.psoxy.loadtest;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * calls to make to proxy for a source, each answered by stub upstream with a recorded example
+ * response
+ */
+@Builder
+@Value
+public class LoadTestScenario {
+
+    /**
+     * source, as key of prebuilt rules (eg, 'gcal')
+     *
+     * @see co.worklytics.psoxy.rules.PrebuiltSanitizerRules#DEFAULTS
+     */
+    @NonNull
+    String source;
+
+    /**
+     * path within test resources to directory containing example API responses for source,
+     * including trailing '/'
+     */
+    @NonNull
+    String examplesDirectory;
+
+    @Singular
+    List<Call> calls;
+
+    @Builder
+    @Value
+    public static class Call {
+
+        /**
+         * path, with query if any, as requested of proxy (eg, '/calendar/v3/calendars/primary/events')
+         */
+        @NonNull
+        String path;
+
+        /**
+         * file within {@link #examplesDirectory} with which stub upstream responds
+         */
+        @NonNull
+        String exampleFile;
+
+        public static Call of(String path, String exampleFile) {
+            return Call.builder().path(path).exampleFile(exampleFile).build();
+        }
+    }
+
+    /**
+     * scenarios for sources with larger/more commonly used endpoints; calls mirror examples in
+     * sources' rules tests
+     */
+    public static final List<LoadTestScenario> DEFAULTS = List.of(
+        LoadTestScenario.builder()
+            .source("gcal")
+            .examplesDirectory("sources/google-workspace/calendar/example-api-responses/original/")
+            .call(Call.of("/calendar/v3/calendars/primary/events", "events.json"))
+            .call(Call.of("/calendar/v3/users/me/calendarList", "calendarList.json"))
+            .build(),
+        LoadTestScenario.builder()
+            .source("gdrive")
+            .examplesDirectory("sources/google-workspace/gdrive/example-api-responses/v3-original/")
+            .call(Call.of("/drive/v3/files", "files.json"))
+            .call(Call.of("/drive/v3/files/some-file-id/permissions", "permissions.json"))
+            .build(),
+        LoadTestScenario.builder()
+            .source("gdirectory")
+            .examplesDirectory("sources/google-workspace/directory/example-api-responses/original/")
+            .call(Call.of("/admin/directory/v1/users?customer=my_customer&maxResults=100&viewType=admin_view", "users.json"))
+            .call(Call.of("/admin/directory/v1/groups/any-group-id/members", "group-members.json"))
+            .build(),
+        LoadTestScenario.builder()
+            .source("outlook-cal")
+            .examplesDirectory("sources/microsoft-365/outlook-cal/example-api-responses/original/")
+            .call(Call.of("/v1.0/users/48d31887-5fad-4d73-a9f5-3c356e68a038/calendars/AAMkAGVmMDEzMTM4LTZmYWUtNDdkNC1hMDZiLTU1OGY5OTZhYmY4OABGAAAAAAAiQ8W967B7TKBjgx9rVEURBwAiIsqMbYjsT5e-T7KzowPTAAAAAAEGAAAiIsqMbYjsT5e-T7KzowPTAAABuC35AAA=/events", "CalendarEvents_v1.0.json"))
+            .build(),
+        LoadTestScenario.builder()
+            .source("azure-ad")
+            .examplesDirectory("sources/microsoft-365/directory/example-api-responses/original/")
+            .call(Call.of("/v1.0/users", "users.json"))
+            .build(),
+        LoadTestScenario.builder()
+            .source("slack")
+            .examplesDirectory("sources/slack/example-api-responses/original/")
+            .call(Call.of("/api/discovery.conversations.history", "discovery-conversations-history.json"))
+            .call(Call.of("/api/discovery.users.list", "discovery-users-list.json"))
+            .build(),
+        LoadTestScenario.builder()
+            .source("zoom")
+            .examplesDirectory("sources/zoom/example-api-responses/original/")
+            .call(Call.of("/v2/users/USER_ID/meetings", "list-user-meetings.json"))
+            .call(Call.of("/v2/users", "list-users.json"))
+            .build(),
+        LoadTestScenario.builder()
+            .source("github")
+            .examplesDirectory("sources/github/example-api-responses/original/")
+            .call(Call.of("/repos/FAKE/REPO/commits", "repo_commits.json"))
+            .call(Call.of("/repos/FAKE/REPO/pulls", "pulls.json"))
+            .build(),
+        LoadTestScenario.builder()
+            .source("jira-cloud")
+            .examplesDirectory("sources/atlassian/jira/example-api-responses/original/")
+            .call(Call.of("/ex/jira/f6eef702-e05d-43ba-bd5c-75fce47d560e/rest/api/3/search?jql=something&startAt=50", "issues_by_jql.json"))
+            .build(),
+        LoadTestScenario.builder()
+            .source("asana")
+            .examplesDirectory("sources/asana/example-api-responses/original/")
+            .call(Call.of("/api/1.0/tasks?project=123123", "tasks.json"))
+            .call(Call.of("/api/1.0/users", "users.json"))
+            .build()
+    );
+}
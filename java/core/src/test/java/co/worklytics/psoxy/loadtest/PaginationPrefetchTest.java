@@ -0,0 +1,203 @@
+package co.worklytics.psoxy.loadtest;
+
+import co.worklytics.psoxy.ControlHeader;
+import co.worklytics.psoxy.gateway.HttpEventResponse;
+import co.worklytics.psoxy.gateway.impl.CommonRequestHandler;
+import co.worklytics.psoxy.gateway.impl.ManualPaginationPrefetcher;
+import co.worklytics.psoxy.gateway.impl.PaginationPrefetcher;
+import co.worklytics.psoxy.gateway.impl.UpstreamRetryPolicy;
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.test.TestUtils;
+import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link CommonRequestHandler} with {@link PaginationPrefetcher} enabled, against a
+ * {@link StubUpstream} serving a paginated response; walked page-by-page, as a client would
+ *
+ * prefetches run only when test runs them, per {@link ManualPaginationPrefetcher}, so whether a
+ * page is served from prefetch is asserted by calls to source, not by timing
+ */
+class PaginationPrefetchTest {
+
+    static final String SOURCE = "gdirectory";
+    static final String PATH = "/admin/directory/v1/users";
+    static final String EXAMPLES = "sources/google-workspace/directory/example-api-responses/original/";
+
+    static final int PAGES = 3;
+
+    static final Duration TTL = Duration.ofSeconds(30);
+
+    StubUpstream upstream;
+
+    @SneakyThrows
+    @BeforeEach
+    void setup() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        StubUpstream.StubUpstreamBuilder builder = StubUpstream.builder();
+        for (int i = 1; i <= PAGES; i++) {
+            ObjectNode page = (ObjectNode) objectMapper.readTree(TestUtils.getData(EXAMPLES + "users.json"));
+            if (i < PAGES) {
+                page.put("nextPageToken", "page" + (i + 1));
+            }
+            builder.response(PATH + query(i), objectMapper.writeValueAsBytes(page));
+        }
+        upstream = builder.build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        upstream.close();
+    }
+
+    static String query(int page) {
+        return page == 1 ? "?customer=my_customer" : "?customer=my_customer&pageToken=page" + page;
+    }
+
+    CommonRequestHandler handler(Map<String, String> config) {
+        return DaggerLoadTestHarness_Container.builder()
+            .forSource(new LoadTestHarness.ForSource(SOURCE, PrebuiltSanitizerRules.DEFAULTS.get(SOURCE), upstream::transport, config))
+            .build()
+            .requestHandler();
+    }
+
+    long served() {
+        return upstream.getRequestsServed().get();
+    }
+
+    @Test
+    void nextPages_prefetched() {
+        CommonRequestHandler handler = handler(Map.of());
+        ManualPaginationPrefetcher prefetcher = ManualPaginationPrefetcher.install(handler, TTL, Duration.ofSeconds(1));
+
+        HttpEventResponse first = handler.handle(LoadTestHarness.Request.of(PATH + query(1)));
+        assertEquals(200, first.getStatusCode());
+        assertEquals(1, served());
+
+        for (int i = 2; i <= PAGES; i++) {
+            // client 'processing' previous page; meanwhile, next page prefetched
+            assertEquals(1, prefetcher.runPending());
+            assertEquals(i, served());
+
+            HttpEventResponse page = handler.handle(LoadTestHarness.Request.of(PATH + query(i)));
+            assertEquals(200, page.getStatusCode());
+            assertEquals(i, served(), "page " + i + " served from prefetch, not source");
+        }
+
+        // nothing after last page
+        assertEquals(0, prefetcher.runPending());
+        assertEquals(PAGES, served());
+        assertEquals(PAGES - 1, prefetcher.getPrefetcher().getHits().get());
+    }
+
+    @Test
+    void prefetchedPage_sameAsFetched() {
+        CommonRequestHandler prefetching = handler(Map.of());
+        ManualPaginationPrefetcher prefetcher = ManualPaginationPrefetcher.install(prefetching, TTL, Duration.ofSeconds(1));
+        CommonRequestHandler notPrefetching = handler(Map.of());
+
+        prefetching.handle(LoadTestHarness.Request.of(PATH + query(1)));
+        prefetcher.runPending();
+        HttpEventResponse prefetched = prefetching.handle(LoadTestHarness.Request.of(PATH + query(2)));
+        assertEquals(1, prefetcher.getPrefetcher().getHits().get());
+
+        HttpEventResponse fetched = notPrefetching.handle(LoadTestHarness.Request.of(PATH + query(2)));
+
+        assertEquals(fetched.getStatusCode(), prefetched.getStatusCode());
+        assertEquals(fetched.getBody(), prefetched.getBody());
+        assertEquals(fetched.getHeaders(), prefetched.getHeaders());
+    }
+
+    @Test
+    void differentPseudonymization_notServedPrefetch() {
+        CommonRequestHandler handler = handler(Map.of());
+        ManualPaginationPrefetcher prefetcher = ManualPaginationPrefetcher.install(handler, TTL, Duration.ofSeconds(1));
+
+        handler.handle(LoadTestHarness.Request.of(PATH + query(1)));
+        prefetcher.runPending();
+        assertEquals(2, served());
+
+        HttpEventResponse legacy = handler.handle(LoadTestHarness.Request.of(PATH + query(2),
+            Map.of(ControlHeader.PSEUDONYM_IMPLEMENTATION.getHttpHeader(), PseudonymImplementation.LEGACY.getHttpHeaderValue())));
+
+        assertEquals(200, legacy.getStatusCode());
+        assertEquals(3, served(), "page 2 fetched again, as sanitized differently");
+    }
+
+    @Test
+    void expired_fetchedAgain() {
+        CommonRequestHandler handler = handler(Map.of());
+        ManualPaginationPrefetcher prefetcher = ManualPaginationPrefetcher.install(handler, TTL, Duration.ofSeconds(1));
+
+        handler.handle(LoadTestHarness.Request.of(PATH + query(1)));
+        prefetcher.runPending();
+        prefetcher.advance(TTL.plusMillis(1));
+        handler.handle(LoadTestHarness.Request.of(PATH + query(2)));
+
+        // page 2 prefetched, but expired before requested; so fetched again
+        assertEquals(3, served());
+        assertEquals(0, prefetcher.getPrefetcher().getHits().get());
+    }
+
+    @Test
+    void inFlight_notWaitedOnBeyondMaxWait() {
+        CommonRequestHandler handler = handler(Map.of());
+        ManualPaginationPrefetcher prefetcher = ManualPaginationPrefetcher.install(handler, TTL, Duration.ZERO);
+
+        handler.handle(LoadTestHarness.Request.of(PATH + query(1)));
+        assertEquals(1, prefetcher.getPendingCount());
+
+        // prefetch of page 2 still in flight; so client's request goes to source, rather than waiting
+        HttpEventResponse page = handler.handle(LoadTestHarness.Request.of(PATH + query(2)));
+        assertEquals(200, page.getStatusCode());
+        assertEquals(2, served());
+
+        // abandoned prefetch of page 2, and that of page 3, complete; only latter held
+        assertEquals(2, prefetcher.runPending());
+        assertEquals(1, prefetcher.getPrefetcher().size());
+        assertEquals(0, prefetcher.getPrefetcher().getHits().get());
+    }
+
+    @Test
+    void notEnabled_notPrefetched() {
+        CommonRequestHandler handler = handler(Map.of());
+
+        handler.handle(LoadTestHarness.Request.of(PATH + query(1)));
+        assertEquals(1, served());
+    }
+
+    @Test
+    void rateLimited_prefetchesOnlyWithSpareCapacity() {
+        // burst of 1, so client's own request leaves no spare capacity for prefetches
+        CommonRequestHandler handler = handler(
+            Map.of(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RATE_LIMIT_PER_SECOND.name(), "1"));
+        ManualPaginationPrefetcher prefetcher = ManualPaginationPrefetcher.install(handler, TTL, Duration.ofSeconds(1));
+
+        HttpEventResponse page = handler.handle(LoadTestHarness.Request.of(PATH + query(1)));
+        assertEquals(200, page.getStatusCode());
+
+        // prefetch gives up without calling source, so nothing held
+        assertEquals(1, prefetcher.runPending());
+        assertEquals(1, served());
+        assertEquals(0, prefetcher.getPrefetcher().size());
+
+        // ample capacity, so prefetched
+        upstream.getRequestsServed().set(0);
+        handler = handler(
+            Map.of(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RATE_LIMIT_PER_SECOND.name(), "100"));
+        prefetcher = ManualPaginationPrefetcher.install(handler, TTL, Duration.ofSeconds(1));
+        handler.handle(LoadTestHarness.Request.of(PATH + query(1)));
+        assertEquals(1, prefetcher.runPending());
+        assertEquals(2, served());
+    }
+}
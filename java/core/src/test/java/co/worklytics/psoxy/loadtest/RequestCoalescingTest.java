@@ -0,0 +1,146 @@
+package co.worklytics.psoxy.loadtest;
+
+import co.worklytics.psoxy.ControlHeader;
+import co.worklytics.psoxy.gateway.HttpEventResponse;
+import co.worklytics.psoxy.gateway.impl.CommonRequestHandler;
+import co.worklytics.psoxy.gateway.impl.RequestCoalescer;
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.test.TestUtils;
+import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link CommonRequestHandler} with request coalescing enabled, against a slow {@link StubUpstream};
+ * so that concurrent requests overlap
+ */
+class RequestCoalescingTest {
+
+    static final String SOURCE = "gdirectory";
+    static final String PATH = "/admin/directory/v1/users";
+    static final String EXAMPLES = "sources/google-workspace/directory/example-api-responses/original/";
+
+    static final Duration UPSTREAM_LATENCY = Duration.ofMillis(1_000);
+
+    StubUpstream upstream;
+
+    ExecutorService executor;
+
+    @BeforeEach
+    void setup() {
+        upstream = StubUpstream.builder()
+            .response(PATH, TestUtils.getData(EXAMPLES + "users.json"))
+            .latency(UPSTREAM_LATENCY)
+            .build();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        upstream.close();
+    }
+
+    CommonRequestHandler handler(Duration timeout) {
+        Map<String, String> config = timeout == null ? Map.of()
+            : Map.of(RequestCoalescer.ConfigProperty.REQUEST_COALESCING_TIMEOUT_MS.name(), Long.toString(timeout.toMillis()));
+        return DaggerLoadTestHarness_Container.builder()
+            .forSource(new LoadTestHarness.ForSource(SOURCE, PrebuiltSanitizerRules.DEFAULTS.get(SOURCE), upstream::transport, config))
+            .build()
+            .requestHandler();
+    }
+
+    /**
+     * @return responses to requests, made concurrently (released together)
+     */
+    @SneakyThrows
+    List<HttpEventResponse> concurrently(CommonRequestHandler handler, List<LoadTestHarness.Request> requests) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<HttpEventResponse>> futures = new ArrayList<>();
+        for (LoadTestHarness.Request request : requests) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return handler.handle(request);
+            }));
+        }
+        start.countDown();
+
+        List<HttpEventResponse> responses = new ArrayList<>();
+        for (Future<HttpEventResponse> future : futures) {
+            responses.add(future.get());
+        }
+        return responses;
+    }
+
+    @Test
+    void identicalRequests_coalesced() {
+        CommonRequestHandler handler = handler(Duration.ofSeconds(30));
+        LoadTestHarness.Request request = LoadTestHarness.Request.of(PATH + "?customer=my_customer");
+
+        List<HttpEventResponse> responses = concurrently(handler, List.of(request, request, request, request, request));
+
+        assertEquals(1, upstream.getRequestsServed().get());
+        HttpEventResponse expected = handler(null).handle(request);
+        responses.forEach(response -> {
+            assertEquals(200, response.getStatusCode());
+            assertEquals(expected.getBody(), response.getBody());
+        });
+    }
+
+    @Test
+    void differingRequests_notCoalesced() {
+        CommonRequestHandler handler = handler(Duration.ofSeconds(30));
+        LoadTestHarness.Request page1 = LoadTestHarness.Request.of(PATH + "?customer=my_customer");
+        LoadTestHarness.Request page2 = LoadTestHarness.Request.of(PATH + "?customer=my_customer&pageToken=2");
+        LoadTestHarness.Request legacy = LoadTestHarness.Request.of(PATH + "?customer=my_customer",
+            Map.of(ControlHeader.PSEUDONYM_IMPLEMENTATION.getHttpHeader(), PseudonymImplementation.LEGACY.getHttpHeaderValue()));
+
+        List<HttpEventResponse> responses = concurrently(handler, List.of(page1, page2, legacy, page1, legacy));
+
+        assertEquals(3, upstream.getRequestsServed().get());
+
+        // each got response to its own request
+        CommonRequestHandler uncoalesced = handler(null);
+        assertEquals(uncoalesced.handle(page1).getBody(), responses.get(0).getBody());
+        assertEquals(uncoalesced.handle(page2).getBody(), responses.get(1).getBody());
+        assertEquals(uncoalesced.handle(legacy).getBody(), responses.get(2).getBody());
+        assertEquals(responses.get(0).getBody(), responses.get(3).getBody());
+        assertEquals(responses.get(2).getBody(), responses.get(4).getBody());
+        assertNotEquals(responses.get(0).getBody(), responses.get(2).getBody());
+    }
+
+    @Test
+    void notEnabled_notCoalesced() {
+        CommonRequestHandler handler = handler(null);
+        LoadTestHarness.Request request = LoadTestHarness.Request.of(PATH);
+
+        concurrently(handler, List.of(request, request, request));
+
+        assertEquals(3, upstream.getRequestsServed().get());
+    }
+
+    @Test
+    void waitTimeout_makesOwnRequest() {
+        CommonRequestHandler handler = handler(Duration.ofMillis(50));
+        LoadTestHarness.Request request = LoadTestHarness.Request.of(PATH);
+
+        List<HttpEventResponse> responses = concurrently(handler, List.of(request, request, request));
+
+        // waiters gave up well before upstream responded
+        assertEquals(3, upstream.getRequestsServed().get());
+        responses.forEach(response -> assertEquals(200, response.getStatusCode()));
+    }
+}
@@ -0,0 +1,166 @@
+package co.worklytics.psoxy.loadtest;
+
+import co.worklytics.psoxy.ControlHeader;
+import co.worklytics.psoxy.ResponseHeader;
+import co.worklytics.psoxy.gateway.HttpEventResponse;
+import co.worklytics.psoxy.gateway.impl.CommonRequestHandler;
+import co.worklytics.psoxy.gateway.impl.SanitizedResponseCache;
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.test.TestUtils;
+import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link CommonRequestHandler} with {@link SanitizedResponseCache} enabled, against a
+ * {@link StubUpstream} that supports conditional requests; compared to a handler without cache
+ */
+class ResponseCacheTest {
+
+    static final String SOURCE = "gdirectory";
+    static final String PATH = "/admin/directory/v1/users";
+    static final String EXAMPLES = "sources/google-workspace/directory/example-api-responses/original/";
+
+    StubUpstream upstream;
+
+    @BeforeEach
+    void setup() {
+        upstream = StubUpstream.builder()
+            .response(PATH, TestUtils.getData(EXAMPLES + "users.json"))
+            .validators(true)
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        upstream.close();
+    }
+
+    CommonRequestHandler handler(Map<String, String> proxyConfig) {
+        return DaggerLoadTestHarness_Container.builder()
+            .forSource(new LoadTestHarness.ForSource(SOURCE, PrebuiltSanitizerRules.DEFAULTS.get(SOURCE), upstream::transport, proxyConfig))
+            .build()
+            .requestHandler();
+    }
+
+    CommonRequestHandler cachingHandler(long maxBytes) {
+        return handler(Map.of(SanitizedResponseCache.ConfigProperty.RESPONSE_CACHE_MAX_BYTES.name(), Long.toString(maxBytes)));
+    }
+
+    @Test
+    void notModified_returnsCachedResponse() {
+        CommonRequestHandler handler = cachingHandler(10_000_000);
+        LoadTestHarness.Request request = LoadTestHarness.Request.of(PATH + "?customer=my_customer");
+
+        HttpEventResponse first = handler.handle(request);
+        HttpEventResponse second = handler.handle(request);
+        HttpEventResponse uncached = handler(Map.of()).handle(request);
+
+        assertEquals(200, second.getStatusCode());
+        assertEquals(1, upstream.getRequestsNotModified().get());
+        assertEquals(2, upstream.getRequestsServed().get());
+
+        // byte-for-byte same as if response fetched and sanitized in full
+        assertArrayEquals(uncached.getBody().getBytes(StandardCharsets.UTF_8), second.getBody().getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(first.getBody().getBytes(StandardCharsets.UTF_8), second.getBody().getBytes(StandardCharsets.UTF_8));
+        assertEquals(first.getHeaders(), second.getHeaders());
+        assertEquals(uncached.getHeaders().get(ResponseHeader.RULES_SHA.getHttpHeader()),
+            second.getHeaders().get(ResponseHeader.RULES_SHA.getHttpHeader()));
+    }
+
+    @Test
+    void notModified_keepsStatusOfCachedResponse() {
+        upstream.close();
+        upstream = StubUpstream.builder()
+            .response(PATH, TestUtils.getData(EXAMPLES + "users.json"))
+            .validators(true)
+            .statusCode(203)
+            .build();
+        CommonRequestHandler handler = cachingHandler(10_000_000);
+        LoadTestHarness.Request request = LoadTestHarness.Request.of(PATH);
+
+        HttpEventResponse first = handler.handle(request);
+        HttpEventResponse second = handler.handle(request);
+
+        assertEquals(1, upstream.getRequestsNotModified().get());
+        assertEquals(203, first.getStatusCode());
+        assertEquals(203, second.getStatusCode());
+        assertEquals(first.getBody(), second.getBody());
+    }
+
+    @Test
+    void modified_returnsFreshResponse() {
+        CommonRequestHandler handler = cachingHandler(10_000_000);
+        LoadTestHarness.Request request = LoadTestHarness.Request.of(PATH);
+
+        HttpEventResponse first = handler.handle(request);
+
+        upstream.setResponse(PATH,
+            "{\"kind\":\"admin#directory#users\",\"users\":[{\"primaryEmail\":\"bob@acme.com\"}]}".getBytes(StandardCharsets.UTF_8));
+
+        HttpEventResponse second = handler.handle(request);
+        HttpEventResponse uncached = handler(Map.of()).handle(request);
+
+        assertEquals(0, upstream.getRequestsNotModified().get());
+        assertNotEquals(first.getBody(), second.getBody());
+        assertEquals(uncached.getBody(), second.getBody());
+
+        // and then cached, as changed
+        assertEquals(second.getBody(), handler.handle(request).getBody());
+        assertEquals(1, upstream.getRequestsNotModified().get());
+    }
+
+    @Test
+    void pseudonymImplementation_notServedFromOtherImplementation() {
+        CommonRequestHandler handler = cachingHandler(10_000_000);
+        LoadTestHarness.Request defaultRequest = LoadTestHarness.Request.of(PATH);
+        LoadTestHarness.Request legacyRequest = LoadTestHarness.Request.of(PATH,
+            Map.of(ControlHeader.PSEUDONYM_IMPLEMENTATION.getHttpHeader(), PseudonymImplementation.LEGACY.getHttpHeaderValue()));
+
+        HttpEventResponse defaultResponse = handler.handle(defaultRequest);
+        HttpEventResponse legacyResponse = handler.handle(legacyRequest);
+
+        // legacy request not conditional, as nothing cached for it
+        assertEquals(0, upstream.getRequestsNotModified().get());
+        assertNotEquals(defaultResponse.getBody(), legacyResponse.getBody());
+        assertEquals(handler(Map.of()).handle(legacyRequest).getBody(), legacyResponse.getBody());
+
+        assertEquals(legacyResponse.getBody(), handler.handle(legacyRequest).getBody());
+        assertEquals(defaultResponse.getBody(), handler.handle(defaultRequest).getBody());
+        assertEquals(2, upstream.getRequestsNotModified().get());
+    }
+
+    @Test
+    void responseLargerThanLimit_notCached() {
+        CommonRequestHandler handler = cachingHandler(1_000);
+        LoadTestHarness.Request request = LoadTestHarness.Request.of(PATH);
+
+        HttpEventResponse first = handler.handle(request);
+        HttpEventResponse second = handler.handle(request);
+
+        assertEquals(0, upstream.getRequestsNotModified().get());
+        assertEquals(first.getBody(), second.getBody());
+    }
+
+    @Test
+    void withoutValidators_notCached() {
+        upstream.close();
+        upstream = StubUpstream.builder()
+            .response(PATH, TestUtils.getData(EXAMPLES + "users.json"))
+            .build();
+        CommonRequestHandler handler = cachingHandler(10_000_000);
+        LoadTestHarness.Request request = LoadTestHarness.Request.of(PATH);
+
+        handler.handle(request);
+        handler.handle(request);
+
+        assertEquals(2, upstream.getRequestsServed().get());
+        assertEquals(0, upstream.getRequestsNotModified().get());
+    }
+}
@@ -0,0 +1,300 @@
+package co.worklytics.psoxy.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.SneakyThrows;
+import lombok.Value;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * local HTTP server standing in for a source API, replaying recorded example responses
+ *
+ * requests are matched on path and query, if a response is given for both (eg, for pages of a
+ * paginated response); otherwise on path only (query ignored). Unmatched paths get a 404. Runs on an
+ * ephemeral port on loopback; use {@link #transport()} for a transport that sends requests for any
+ * host to it.
+ *
+ * if {@link #validators} enabled, responses carry an `ETag` derived from their content, and
+ * requests with a matching `If-None-Match` get a 304.
+ *
+ * {@link #failures}, if any, are served in order before any other response (to any path), to
+ * script sequences of transient errors (eg, 429, 503 with `Retry-After`).
+ */
+public class StubUpstream implements AutoCloseable {
+
+    /**
+     * response body to serve, by request path (eg, '/calendar/v3/calendars/primary/events'), or
+     * path and query (eg, '/admin/directory/v1/users?customer=my_customer&pageToken=2')
+     */
+    final Map<String, byte[]> responses;
+
+    /**
+     * latency added before each response is sent
+     */
+    final Duration latency;
+
+    /**
+     * max random latency added on top of {@link #latency}
+     */
+    final Duration latencyJitter;
+
+    /**
+     * whether to gzip responses, if request accepts it (as most source APIs do)
+     */
+    final boolean gzip;
+
+    /**
+     * whether to send `ETag` with responses, and answer conditional requests for unchanged
+     * responses with 304, as many source APIs do
+     */
+    final boolean validators;
+
+    /**
+     * status of successful responses; 200 unless a source sends another 2xx
+     */
+    final int statusCode;
+
+    /**
+     * failure response, as a source API might send when rate limiting or overloaded
+     */
+    @Value(staticConstructor = "of")
+    public static class Failure {
+
+        int statusCode;
+
+        /**
+         * value of `Retry-After` header, if any
+         */
+        String retryAfter;
+
+        public static Failure of(int statusCode) {
+            return of(statusCode, null);
+        }
+    }
+
+    /**
+     * failures yet to be served, in order
+     */
+    final Queue<Failure> failures;
+
+    @Getter
+    final AtomicLong requestsServed = new AtomicLong();
+
+    @Getter
+    final AtomicLong requestsFailed = new AtomicLong();
+
+    /**
+     * when each request was received, in order (per {@link System#nanoTime()})
+     */
+    @Getter
+    final List<Long> requestNanos = new CopyOnWriteArrayList<>();
+
+    @Getter
+    final AtomicLong requestsNotModified = new AtomicLong();
+
+    @Getter
+    final AtomicLong requestsUnmatched = new AtomicLong();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    @SneakyThrows
+    @Builder
+    StubUpstream(@Singular Map<String, byte[]> responses,
+                 @Singular List<Failure> failures,
+                 Duration latency,
+                 Duration latencyJitter,
+                 Boolean gzip,
+                 Boolean validators,
+                 Integer statusCode) {
+        this.responses = new ConcurrentHashMap<>(responses);
+        this.failures = new ConcurrentLinkedQueue<>(failures);
+        this.latency = latency == null ? Duration.ZERO : latency;
+        this.latencyJitter = latencyJitter == null ? Duration.ZERO : latencyJitter;
+        this.gzip = gzip == null || gzip;
+        this.validators = validators != null && validators;
+        this.statusCode = statusCode == null ? 200 : statusCode;
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // unbounded, so latency of one response doesn't hold up others
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "stub-upstream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @param path    to respond to
+     * @param content to respond with, replacing any previous response for path
+     */
+    public void setResponse(@NonNull String path, byte[] content) {
+        responses.put(path, content);
+    }
+
+    /**
+     * @param failures to serve, in order, before any other response; after any already queued
+     */
+    public void failNext(Failure... failures) {
+        this.failures.addAll(Arrays.asList(failures));
+    }
+
+    /**
+     * @return transport that sends requests to this stub, rather than the host in the request URL
+     */
+    public HttpTransport transport() {
+        return new NetHttpTransport.Builder()
+            .setConnectionFactory(url ->
+                (HttpURLConnection) new URL("http", "localhost", getPort(), url.getFile()).openConnection())
+            .build();
+    }
+
+    /**
+     * @param content     of example response, JSON
+     * @param multiplier  times to repeat items of largest array in content, to simulate larger
+     *                    responses (eg, bigger pages of results); 1 to leave as-is
+     * @return content with largest array's items repeated
+     */
+    @SneakyThrows
+    public static byte[] scale(@NonNull ObjectMapper objectMapper, byte[] content, int multiplier) {
+        if (multiplier <= 1) {
+            return content;
+        }
+        JsonNode root = objectMapper.readTree(content);
+        ArrayNode largest = largestArray(root, null);
+        if (largest != null) {
+            ArrayNode original = largest.deepCopy();
+            for (int i = 1; i < multiplier; i++) {
+                largest.addAll(original);
+            }
+        }
+        return objectMapper.writeValueAsBytes(root);
+    }
+
+    private static ArrayNode largestArray(JsonNode node, ArrayNode largest) {
+        if (node.isArray() && (largest == null || node.size() > largest.size())) {
+            largest = (ArrayNode) node;
+        }
+        for (JsonNode child : node) {
+            largest = largestArray(child, largest);
+        }
+        return largest;
+    }
+
+    void handle(HttpExchange exchange) throws IOException {
+        try {
+            requestNanos.add(System.nanoTime());
+
+            Failure failure = failures.poll();
+            if (failure != null) {
+                if (failure.getRetryAfter() != null) {
+                    exchange.getResponseHeaders().set("Retry-After", failure.getRetryAfter());
+                }
+                // counted before sent, so counts are current once client has response
+                requestsFailed.incrementAndGet();
+                exchange.sendResponseHeaders(failure.getStatusCode(), -1);
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            byte[] content = query == null ? null : responses.get(path + "?" + query);
+            if (content == null) {
+                content = responses.get(path);
+            }
+            if (content == null) {
+                requestsUnmatched.incrementAndGet();
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            sleep();
+
+            if (validators) {
+                String etag = "\"" + DigestUtils.sha1Hex(content) + "\"";
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    requestsNotModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+
+            requestsServed.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            boolean compress = gzip
+                && StringUtils.contains(exchange.getRequestHeaders().getFirst("Accept-Encoding"), "gzip");
+            if (compress) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(statusCode, 0);
+                try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                    out.write(content);
+                }
+            } else {
+                exchange.sendResponseHeaders(statusCode, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void sleep() {
+        long millis = latency.toMillis();
+        if (!latencyJitter.isZero()) {
+            millis += ThreadLocalRandom.current().nextLong(latencyJitter.toMillis() + 1);
+        }
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
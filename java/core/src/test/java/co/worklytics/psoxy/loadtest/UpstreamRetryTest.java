@@ -0,0 +1,155 @@
+package co.worklytics.psoxy.loadtest;
+
+import co.worklytics.psoxy.ErrorCauses;
+import co.worklytics.psoxy.ResponseHeader;
+import co.worklytics.psoxy.gateway.HttpEventResponse;
+import co.worklytics.psoxy.gateway.impl.CommonRequestHandler;
+import co.worklytics.psoxy.gateway.impl.UpstreamRetryPolicy;
+import co.worklytics.psoxy.rules.PrebuiltSanitizerRules;
+import co.worklytics.test.TestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link CommonRequestHandler} with {@link UpstreamRetryPolicy}, against a {@link StubUpstream}
+ * scripted to fail transiently
+ */
+class UpstreamRetryTest {
+
+    static final String SOURCE = "gdirectory";
+    static final String PATH = "/admin/directory/v1/users";
+    static final String EXAMPLES = "sources/google-workspace/directory/example-api-responses/original/";
+
+    StubUpstream upstream;
+
+    @BeforeEach
+    void setup() {
+        upstream = StubUpstream.builder()
+            .response(PATH, TestUtils.getData(EXAMPLES + "users.json"))
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        upstream.close();
+    }
+
+    CommonRequestHandler handler(Map<String, String> proxyConfig) {
+        return DaggerLoadTestHarness_Container.builder()
+            .forSource(new LoadTestHarness.ForSource(SOURCE, PrebuiltSanitizerRules.DEFAULTS.get(SOURCE), upstream::transport, proxyConfig))
+            .build()
+            .requestHandler();
+    }
+
+    Map<String, String> retryConfig(int maxRetries, Duration timeBudget) {
+        Map<String, String> config = new HashMap<>();
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RETRY_MAX_ATTEMPTS.name(), Integer.toString(maxRetries));
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RETRY_BASE_DELAY_MS.name(), "10");
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RETRY_MAX_DELAY_MS.name(), "50");
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RETRY_TIME_BUDGET_MS.name(), Long.toString(timeBudget.toMillis()));
+        return config;
+    }
+
+    static long millisBetween(List<Long> nanos, int i, int j) {
+        return Duration.ofNanos(nanos.get(j) - nanos.get(i)).toMillis();
+    }
+
+    @Test
+    void transientFailures_retried() {
+        upstream.failNext(StubUpstream.Failure.of(503), StubUpstream.Failure.of(429), StubUpstream.Failure.of(502));
+        LoadTestHarness.Request request = LoadTestHarness.Request.of(PATH);
+
+        HttpEventResponse response = handler(retryConfig(3, Duration.ofSeconds(10))).handle(request);
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(3, upstream.getRequestsFailed().get());
+        assertEquals(1, upstream.getRequestsServed().get());
+        assertEquals(handler(Map.of()).handle(request).getBody(), response.getBody());
+    }
+
+    @Test
+    void retryAfter_honored() {
+        upstream.failNext(StubUpstream.Failure.of(429, "1"));
+
+        HttpEventResponse response = handler(retryConfig(3, Duration.ofSeconds(10))).handle(LoadTestHarness.Request.of(PATH));
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(2, upstream.getRequestNanos().size());
+        assertTrue(millisBetween(upstream.getRequestNanos(), 0, 1) >= 1_000);
+    }
+
+    @Test
+    void retryAfterBeyondBudget_failureReturned() {
+        upstream.failNext(StubUpstream.Failure.of(429, "30"));
+
+        HttpEventResponse response = handler(retryConfig(3, Duration.ofSeconds(10))).handle(LoadTestHarness.Request.of(PATH));
+
+        // passed back to client, which may retry later
+        assertEquals(429, response.getStatusCode());
+        assertEquals("30", response.getHeaders().get("retry-after"));
+        assertEquals(ErrorCauses.API_ERROR.name(), response.getHeaders().get(ResponseHeader.ERROR.getHttpHeader()));
+        assertEquals(1, upstream.getRequestNanos().size());
+    }
+
+    @Test
+    void retriesExhausted_failureReturned() {
+        upstream.failNext(StubUpstream.Failure.of(503), StubUpstream.Failure.of(503), StubUpstream.Failure.of(503));
+
+        HttpEventResponse response = handler(retryConfig(2, Duration.ofSeconds(10))).handle(LoadTestHarness.Request.of(PATH));
+
+        assertEquals(503, response.getStatusCode());
+        assertEquals(3, upstream.getRequestsFailed().get());
+        assertEquals(0, upstream.getRequestsServed().get());
+    }
+
+    @Test
+    void notEnabled_notRetried() {
+        upstream.failNext(StubUpstream.Failure.of(503));
+
+        HttpEventResponse response = handler(Map.of()).handle(LoadTestHarness.Request.of(PATH));
+
+        assertEquals(503, response.getStatusCode());
+        assertEquals(1, upstream.getRequestNanos().size());
+    }
+
+    @Test
+    void rateLimit_spacesRequests() {
+        Map<String, String> config = retryConfig(0, Duration.ofSeconds(10));
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RATE_LIMIT_PER_SECOND.name(), "5");
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RATE_LIMIT_BURST.name(), "1");
+        CommonRequestHandler handler = handler(config);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(200, handler.handle(LoadTestHarness.Request.of(PATH)).getStatusCode());
+        }
+
+        // after first, at most 5/s; so >= 200ms apart (less some tolerance for clock granularity)
+        List<Long> nanos = upstream.getRequestNanos();
+        for (int i = 1; i < nanos.size(); i++) {
+            assertTrue(millisBetween(nanos, i - 1, i) >= 190);
+        }
+    }
+
+    @Test
+    void rateLimitBeyondBudget_notSent() {
+        Map<String, String> config = retryConfig(0, Duration.ofMillis(100));
+        config.put(UpstreamRetryPolicy.ConfigProperty.UPSTREAM_RATE_LIMIT_PER_SECOND.name(), "0.5");
+        CommonRequestHandler handler = handler(config);
+
+        assertEquals(200, handler.handle(LoadTestHarness.Request.of(PATH)).getStatusCode());
+        HttpEventResponse limited = handler.handle(LoadTestHarness.Request.of(PATH));
+
+        assertEquals(429, limited.getStatusCode());
+        assertEquals(ErrorCauses.RATE_LIMITED.name(), limited.getHeaders().get(ResponseHeader.ERROR.getHttpHeader()));
+        assertEquals("2", limited.getHeaders().get("retry-after"));
+        assertEquals(1, upstream.getRequestNanos().size());
+    }
+}
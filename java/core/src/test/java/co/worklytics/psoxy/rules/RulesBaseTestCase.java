@@ -7,6 +7,7 @@ import co.worklytics.test.TestUtils;
 import com.avaulta.gateway.pseudonyms.PseudonymEncoder;
 import com.avaulta.gateway.pseudonyms.PseudonymImplementation;
 import com.avaulta.gateway.pseudonyms.impl.UrlSafeTokenPseudonymEncoder;
+import com.avaulta.gateway.rules.RegexEngine;
 import com.avaulta.gateway.rules.transforms.Transform;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jayway.jsonpath.MapFunction;
@@ -21,6 +22,7 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 import java.net.URL;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -179,6 +181,14 @@ abstract public class RulesBaseTestCase {
         validator.validate(getRulesUnderTest());
     }
 
+    /**
+     * prebuilt rules should be usable with linear-time regex engine, if customers opt into it
+     */
+    @Test
+    void regexesCompatibleWithRe2j() {
+        assertEquals(Collections.emptyMap(), validator.incompatibleRegexes(getRulesUnderTest(), RegexEngine.RE2J));
+    }
+
     @SneakyThrows
     @Test
     void validateYaml() {
@@ -229,7 +239,58 @@ abstract public class RulesBaseTestCase {
             });
     }
 
+    /**
+     * deep scans specialized to concrete paths, per endpoint's response schema, must sanitize
+     * examples exactly as the deep scans themselves do
+     */
+    @Test
+    void testExamples_deepScansSpecialized() {
+        assertExamplesSanitizedSameAs(baseline -> baseline.setSpecializeDeepScans(false),
+            "with deep scans specialized");
+    }
+
+    /**
+     * transforms applied in merged traversals must sanitize examples exactly as when applied path
+     * by path
+     */
+    @Test
+    void testExamples_traversalsMerged() {
+        assertExamplesSanitizedSameAs(baseline -> baseline.setMergeTraversals(false),
+            "with traversals merged");
+    }
+
+    /**
+     * transforms applied by compiled JsonPaths must sanitize examples exactly as when applied by
+     * JsonPath itself
+     */
+    @Test
+    void testExamples_jsonPathsCompiled() {
+        assertExamplesSanitizedSameAs(baseline -> baseline.setCompileJsonPaths(false),
+            "with JsonPaths compiled");
+    }
+
+    /**
+     * @param configureBaseline to turn off optimization under test, for a sanitizer of same rules
+     * @param difference        description of optimization, for failure message
+     */
+    void assertExamplesSanitizedSameAs(Consumer<RESTApiSanitizerImpl> configureBaseline, String difference) {
+        RESTApiSanitizerImpl baseline = sanitizerFactory.create(getRulesUnderTest(),
+            pseudonymizerFactory.create(Pseudonymizer.ConfigurationOptions.builder()
+                .defaultScopeId(getRulesTestSpec().getDefaultScopeId())
+                .pseudonymImplementation(PseudonymImplementation.DEFAULT)
+                .build()));
+        configureBaseline.accept(baseline);
+
+        getExamples()
+            .forEach(example -> {
+                String original =
+                    new String(TestUtils.getData(getRulesTestSpec().getExampleApiResponsesDirectoryPathFull() + example.getPlainExampleFile()));
 
+                assertEquals(sanitize(baseline, example.getRequestUrl(), original),
+                    sanitize(example.getRequestUrl(), original),
+                    example.getPlainExampleFile() + " sanitized differently " + difference);
+            });
+    }
 
     @SneakyThrows
     com.avaulta.gateway.rules.RuleSet yamlRoundtrip(com.avaulta.gateway.rules.RuleSet rules) {
@@ -258,9 +319,13 @@ abstract public class RulesBaseTestCase {
         return new String(TestUtils.getData(directoryPath + filePathWithinExampleDirectory));
     }
 
-    @SneakyThrows
     protected String sanitize(String endpoint, String jsonResponse) {
-        return this.sanitizer.sanitize("GET", new URL(endpoint), jsonResponse);
+        return sanitize(this.sanitizer, endpoint, jsonResponse);
+    }
+
+    @SneakyThrows
+    String sanitize(RESTApiSanitizerImpl sanitizer, String endpoint, String jsonResponse) {
+        return sanitizer.sanitize("GET", new URL(endpoint), jsonResponse);
     }
 
     protected void assertSha(String expectedSha) {
@@ -0,0 +1,220 @@
+package co.worklytics.psoxy.storage;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionCodecTest {
+
+    @ParameterizedTest
+    @CsvSource({
+        "NONE,0,1,",
+        "NONE,100000,1,",
+        "GZIP,0,1,",
+        "GZIP,1,1,",
+        "GZIP,100000,1,1",
+        "GZIP,100000,1,9",
+        "GZIP,100000,4,",
+        "ZSTD,0,1,",
+        "ZSTD,1,1,",
+        "ZSTD,100000,1,1",
+        "ZSTD,100000,1,19",
+        "ZSTD,100000,4,",
+    })
+    @SneakyThrows
+    void roundTrip(CompressionCodec codec, int length, int threads, Integer level) {
+        byte[] content = content(length);
+
+        byte[] compressed = compress(codec, content, CompressionCodec.Options.builder()
+            .level(level)
+            .threads(threads)
+            .blockSize(1024)
+            .build());
+
+        // as in StorageHandler, decompress per detected codec; empty content may compress to nothing
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(compressed));
+        CompressionCodec detected = CompressionCodec.detect(in);
+        if (compressed.length > 0) {
+            assertEquals(codec, detected);
+        }
+        try (InputStream decompressed = detected.decompress(in, 1024)) {
+            assertArrayEquals(content, decompressed.readAllBytes());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(CompressionCodec.class)
+    @SneakyThrows
+    void detect_leavesStreamAtStart(CompressionCodec codec) {
+        byte[] compressed = compress(codec, content(100), CompressionCodec.Options.builder().build());
+
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(compressed));
+        assertEquals(codec, CompressionCodec.detect(in));
+        assertArrayEquals(compressed, in.readAllBytes());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "'',NONE",
+        "a,NONE",
+        "'foo,bar',NONE",
+        "'\u001F\u008B',NONE", // chars, not bytes, of gzip magic
+        "(,NONE",
+    })
+    @SneakyThrows
+    void detect_text(String content, CompressionCodec expected) {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(expected, CompressionCodec.detect(in));
+    }
+
+    @Test
+    void detect_requiresMarkSupported() {
+        assertThrows(IllegalArgumentException.class,
+            () -> CompressionCodec.detect(InputStream.nullInputStream()));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "gzip,GZIP",
+        "GZIP,GZIP",
+        "zstd,ZSTD",
+        "deflate,",
+        "identity,",
+        ",",
+    })
+    void fromContentEncoding(String contentEncoding, CompressionCodec expected) {
+        assertEquals(Optional.ofNullable(expected), CompressionCodec.fromContentEncoding(contentEncoding));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "directory/file.csv.gz,GZIP",
+        "directory/file.csv.zst,ZSTD",
+        "directory/file.csv,",
+        "directory/file.gz.csv,",
+    })
+    void fromPath(String path, CompressionCodec expected) {
+        assertEquals(Optional.ofNullable(expected), CompressionCodec.fromPath(path));
+    }
+
+    @Test
+    void parse() {
+        assertEquals(CompressionCodec.GZIP, CompressionCodec.parse("gzip"));
+        assertEquals(CompressionCodec.ZSTD, CompressionCodec.parse(" ZSTD "));
+        assertEquals(CompressionCodec.NONE, CompressionCodec.parse("none"));
+        assertThrows(IllegalArgumentException.class, () -> CompressionCodec.parse("brotli"));
+    }
+
+    /**
+     * level is honored, whether compressing single-threaded or in parallel: CSV-like content is
+     * compressed smaller at higher level
+     */
+    @ParameterizedTest
+    @CsvSource({
+        "GZIP,1,9,1",
+        "GZIP,1,9,4",
+        "ZSTD,1,19,1",
+        "ZSTD,1,19,4",
+    })
+    void level(CompressionCodec codec, int lowLevel, int highLevel, int threads) {
+        byte[] content = csv(1_000_000);
+
+        byte[] low = compress(codec, content, CompressionCodec.Options.builder()
+            .level(lowLevel)
+            .threads(threads)
+            .build());
+        byte[] high = compress(codec, content, CompressionCodec.Options.builder()
+            .level(highLevel)
+            .threads(threads)
+            .build());
+
+        assertTrue(low.length < content.length / 2);
+        assertTrue(high.length < low.length);
+    }
+
+    /**
+     * compares compression ratio and throughput of each codec, over CSV-like content
+     *
+     * scale content via 'codec.bytes', eg `-Dcodec.bytes=500000000`
+     */
+    @Disabled // benchmark; not for usual CI
+    @ParameterizedTest
+    @CsvSource({
+        "GZIP,1,1",
+        "GZIP,6,1",
+        "GZIP,6,4",
+        "ZSTD,1,1",
+        "ZSTD,3,1",
+        "ZSTD,3,4",
+        "ZSTD,9,1",
+    })
+    @SneakyThrows
+    void benchmark(CompressionCodec codec, int level, int threads) {
+        byte[] content = csv(Integer.getInteger("codec.bytes", 50_000_000));
+        CompressionCodec.Options options = CompressionCodec.Options.builder()
+            .level(level)
+            .threads(threads)
+            .build();
+
+        //warm-up
+        compress(codec, content, options);
+
+        long start = System.nanoTime();
+        byte[] compressed = compress(codec, content, options);
+        long compressNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed), 65_536)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        long decompressNanos = System.nanoTime() - start;
+        System.out.printf("%s level %d, %d threads: ratio %.2f; compress %.0f MB/s; decompress %.0f MB/s%n",
+            codec, level, threads,
+            (double) content.length / compressed.length,
+            content.length / 1e6 / (compressNanos / 1e9),
+            content.length / 1e6 / (decompressNanos / 1e9));
+    }
+
+    @SneakyThrows
+    byte[] compress(CompressionCodec codec, byte[] content, CompressionCodec.Options options) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream compressed = codec.compress(out, 1024, options)) {
+            compressed.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * compressible, but not trivially so
+     */
+    byte[] content(int length) {
+        Random random = new Random(length);
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return content;
+    }
+
+    byte[] csv(int approximateLength) {
+        Random random = new Random(0);
+        StringBuilder csv = new StringBuilder("employee_id,email,department,timestamp\r\n");
+        while (csv.length() < approximateLength) {
+            int id = random.nextInt(100_000);
+            csv.append(id).append(',')
+                .append("user").append(id).append("@acme.com").append(',')
+                .append("dept-").append(random.nextInt(50)).append(',')
+                .append(1_700_000_000L + random.nextInt(10_000_000)).append("\r\n");
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
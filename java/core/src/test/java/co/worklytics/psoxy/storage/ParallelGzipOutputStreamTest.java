@@ -0,0 +1,200 @@
+package co.worklytics.psoxy.storage;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelGzipOutputStreamTest {
+
+    static final int BLOCK_SIZE = 1024;
+
+    @ParameterizedTest
+    @CsvSource({
+        "0,1,-1",
+        "1,1,-1",
+        "1023,2,-1",
+        "1024,2,-1",
+        "1025,2,-1",
+        "100000,1,-1",
+        "100000,4,-1",
+        "100000,4,0",
+        "100000,4,1",
+        "100000,4,9",
+        "100000,16,6",
+    })
+    @SneakyThrows
+    void roundTrip(int length, int threads, int level) {
+        byte[] content = content(length);
+
+        byte[] compressed = compress(content, threads, level, new Random(length));
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    /**
+     * each block should be a complete gzip member, decodable on its own, with correct CRC/ISIZE
+     */
+    @ParameterizedTest
+    @CsvSource({
+        "0,1",
+        "1,1",
+        "2048,2",
+        "10000,10",
+    })
+    @SneakyThrows
+    void multiMember(int length, int expectedMembers) {
+        byte[] content = content(length);
+        byte[] compressed = compress(content, 4, Deflater.DEFAULT_COMPRESSION, new Random(length));
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        int members = 0;
+        int offset = 0;
+        while (offset < compressed.length) {
+            // header
+            assertEquals(0x1f, compressed[offset] & 0xFF);
+            assertEquals(0x8b, compressed[offset + 1] & 0xFF);
+            assertEquals(Deflater.DEFLATED, compressed[offset + 2]);
+            assertEquals(0, compressed[offset + 3]); // no optional fields
+            offset += 10;
+
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(compressed, offset, compressed.length - offset);
+            byte[] buffer = new byte[BLOCK_SIZE];
+            ByteArrayOutputStream member = new ByteArrayOutputStream();
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                member.write(buffer, 0, inflated);
+            }
+            offset = compressed.length - inflater.getRemaining();
+            inflater.end();
+
+            ByteBuffer trailer = ByteBuffer.wrap(compressed, offset, 8).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            crc.update(member.toByteArray());
+            assertEquals((int) crc.getValue(), trailer.getInt());
+            assertEquals(member.size(), trailer.getInt());
+            offset += 8;
+
+            assertTrue(member.size() <= BLOCK_SIZE);
+            member.writeTo(decompressed);
+            members++;
+        }
+
+        assertEquals(expectedMembers, members);
+        assertArrayEquals(content, decompressed.toByteArray());
+    }
+
+    @SneakyThrows
+    @Test
+    void flush_doesNotSplitBlocks() {
+        byte[] content = content(BLOCK_SIZE);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, BLOCK_SIZE, 2, Deflater.DEFAULT_COMPRESSION)) {
+            for (byte b : content) {
+                gzip.write(b);
+                gzip.flush();
+            }
+        }
+
+        // single member, as if written w/o flushing
+        assertArrayEquals(ParallelGzipOutputStream.compress(content, content.length, Deflater.DEFAULT_COMPRESSION),
+            out.toByteArray());
+    }
+
+    @SneakyThrows
+    @Test
+    void close() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, BLOCK_SIZE, 2, Deflater.DEFAULT_COMPRESSION);
+        gzip.write(content(10));
+        gzip.close();
+        int size = out.size();
+
+        gzip.close(); // idempotent
+        assertEquals(size, out.size());
+
+        assertThrows(IOException.class, () -> gzip.write(1));
+    }
+
+    @Test
+    void close_closesUnderlyingStreamEvenIfWriteFails() {
+        boolean[] closed = {false};
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(failing, BLOCK_SIZE, 2, Deflater.DEFAULT_COMPRESSION);
+        assertThrows(IOException.class, gzip::close);
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    void invalidArguments() {
+        OutputStream out = new ByteArrayOutputStream();
+        assertThrows(IllegalArgumentException.class, () -> new ParallelGzipOutputStream(out, 0, 1, 6));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelGzipOutputStream(out, BLOCK_SIZE, 0, 6));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelGzipOutputStream(out, BLOCK_SIZE, 1, 10));
+    }
+
+    /**
+     * compressible, but not trivially so
+     */
+    byte[] content(int length) {
+        Random random = new Random(length);
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return content;
+    }
+
+    /**
+     * compress content, writing it in randomly-sized chunks, with occasional flushes
+     */
+    @SneakyThrows
+    byte[] compress(byte[] content, int threads, int level, Random random) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, BLOCK_SIZE, threads, level)) {
+            int offset = 0;
+            while (offset < content.length) {
+                if (random.nextInt(10) == 0) {
+                    gzip.write(content[offset++]);
+                } else {
+                    int length = Math.min(content.length - offset, random.nextInt(3 * BLOCK_SIZE));
+                    gzip.write(content, offset, length);
+                    offset += length;
+                }
+                if (random.nextInt(10) == 0) {
+                    gzip.flush();
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -315,7 +315,9 @@ class StorageHandlerTest {
         "directory/file.csv.gz,gzip,true",      // honor content-encoding/extension
         "directory/file.json.gz,deflate,true",  // honor extension
         "directory/file.json.gz,,true",         // honor extension - null encoding
-        "directory/file.json,deflate,false"     // deflate is not supported
+        "directory/file.json,deflate,false",    // deflate is not supported
+        "directory/file.csv,zstd,true",
+        "directory/file.csv.zst,,true",
     })
     public void handlesCompressedContent(String filename, String contentEncoding, boolean expected) {
         StorageEventRequest request = handler.buildRequest("bucket", filename, handler.buildDefaultTransform(), contentEncoding);
@@ -323,6 +325,122 @@ class StorageHandlerTest {
         assertEquals(expected, request.getCompressOutput());
     }
 
+    @ParameterizedTest
+    @CsvSource({
+        "directory/file.csv,gzip,,true,GZIP,directory/file.csv", // follows input
+        "directory/file.csv.gz,gzip,zstd,true,ZSTD,directory/file.csv.zst",
+        "directory/file.csv.gz,gzip,none,false,NONE,directory/file.csv",
+        "directory/file.csv.zst,,GZIP,true,GZIP,directory/file.csv.gz",
+        "directory/file.csv,,zstd,true,ZSTD,directory/file.csv",
+        "directory/file.csv,gzip,zstd,true,ZSTD,directory/file.csv",
+    })
+    public void buildRequest_outputCompression(String filename, String contentEncoding, String outputCompression,
+                                               boolean expectedCompressOutput, CompressionCodec expectedCodec,
+                                               String expectedDestination) {
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.OUTPUT_COMPRESSION)))
+            .thenReturn(Optional.ofNullable(outputCompression));
+
+        StorageEventRequest request = handler.buildRequest("bucket", filename, handler.buildDefaultTransform(), contentEncoding);
+
+        assertEquals(expectedCompressOutput, request.getCompressOutput());
+        assertEquals(expectedCodec, request.getOutputCodec());
+        assertEquals(expectedDestination, request.getDestinationObjectPath());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "gzip,,gzip",
+        "gzip,zstd,zstd",
+        "gzip,none,",
+        ",zstd,zstd",
+        "br,none,br", // not compression we undo, so passes through
+    })
+    public void getOutputContentEncoding(String sourceContentEncoding, String outputCompression, String expected) {
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.OUTPUT_COMPRESSION)))
+            .thenReturn(Optional.ofNullable(outputCompression));
+
+        StorageEventRequest request = handler.buildRequest("bucket", "directory/file.csv", handler.buildDefaultTransform(), sourceContentEncoding);
+
+        assertEquals(Optional.ofNullable(expected), handler.getOutputContentEncoding(request, sourceContentEncoding));
+    }
+
+    /**
+     * input is decompressed per its content, regardless of whether metadata indicated it's compressed
+     */
+    @ParameterizedTest
+    @CsvSource({
+        "GZIP,true",
+        "GZIP,false",
+        "ZSTD,true",
+        "ZSTD,false",
+        "NONE,true",
+        "NONE,false",
+    })
+    @SneakyThrows
+    public void process_detectsInputCompression(CompressionCodec codec, boolean declared) {
+        String data = "foo,bar\r\n1,2\r\n";
+        String expected = "foo,bar\r\n" +
+            "\"{\"\"scope\"\":\"\"hris\"\",\"\"hash\"\":\"\"0zPKqEd-CtbCLB1ZSwX6Zo7uAWUvkpfHGzv9-cuYwZc\"\"}\",2\r\n";
+
+        InputStream is = new ByteArrayInputStream(compress(codec, data.getBytes(StandardCharsets.UTF_8)));
+
+        StorageEventRequest request = StorageEventRequest.builder()
+            .sourceBucketName("bucket")
+            .sourceObjectPath("directory/file.csv")
+            .destinationBucketName("bucket")
+            .destinationObjectPath("directory/file.csv")
+            .decompressInput(declared)
+            .build();
+
+        handler.process(request, handler.buildDefaultTransform(), () -> is, () -> outputStream);
+
+        assertEquals(expected, outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "ZSTD,",
+        "ZSTD,19",
+        "GZIP,1",
+        "GZIP,9",
+    })
+    @SneakyThrows
+    public void process_outputCodec(CompressionCodec codec, String level) {
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.OUTPUT_COMPRESSION_LEVEL)))
+            .thenReturn(Optional.ofNullable(level));
+
+        String data = "foo,bar\r\n1,2\r\n";
+        String expected = "foo,bar\r\n" +
+            "\"{\"\"scope\"\":\"\"hris\"\",\"\"hash\"\":\"\"0zPKqEd-CtbCLB1ZSwX6Zo7uAWUvkpfHGzv9-cuYwZc\"\"}\",2\r\n";
+
+        StorageEventRequest request = StorageEventRequest.builder()
+            .sourceBucketName("bucket")
+            .sourceObjectPath("directory/file.csv")
+            .destinationBucketName("bucket")
+            .destinationObjectPath("directory/file.csv")
+            .compressOutput(true)
+            .outputCodec(codec)
+            .build();
+
+        handler.process(request, handler.buildDefaultTransform(),
+            () -> new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), () -> outputStream);
+
+        InputStream compressed = new BufferedInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        assertEquals(codec, CompressionCodec.detect(compressed));
+        try (InputStream decompressed = codec.decompress(compressed, 1024)) {
+            assertEquals(expected, new String(decompressed.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @SneakyThrows
+    byte[] compress(CompressionCodec codec, byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream compressed = codec.compress(out, 1024, CompressionCodec.Options.builder().build())) {
+            compressed.write(content);
+        }
+        return out.toByteArray();
+    }
+
     @SneakyThrows
     byte[] compress(byte[] content) {
         if (content == null || content.length == 0) {
@@ -31,20 +31,31 @@ import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Types;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -181,6 +192,55 @@ public class BulkDataSanitizerImplTest {
         }
     }
 
+    @Test
+    @SneakyThrows
+    void handle_redaction_parquet() {
+        MessageType schema = Types.buildMessage()
+            .required(PrimitiveType.PrimitiveTypeName.INT64).named("EMPLOYEE_ID")
+            .optional(PrimitiveType.PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("EMPLOYEE_EMAIL")
+            .optional(PrimitiveType.PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("DEPARTMENT")
+            .optional(PrimitiveType.PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.dateType()).named("JOIN_DATE")
+            .named("hris");
+        SimpleGroupFactory groups = new SimpleGroupFactory(schema);
+        byte[] input = ParquetColumnRewriterTest.write(schema, List.of(
+            groups.newGroup().append("EMPLOYEE_ID", 1L).append("EMPLOYEE_EMAIL", "alice@worklytics.co").append("DEPARTMENT", "Engineering").append("JOIN_DATE", 18211),
+            groups.newGroup().append("EMPLOYEE_ID", 2L).append("EMPLOYEE_EMAIL", "bob@workltyics.co").append("DEPARTMENT", "Sales").append("JOIN_DATE", 18262),
+            groups.newGroup().append("EMPLOYEE_ID", 4L).append("DEPARTMENT", "Engineering").append("JOIN_DATE", 17685)), Map.of());
+
+        ColumnarRules rules = ColumnarRules.builder()
+            .format(ColumnarRules.Format.PARQUET)
+            .columnToPseudonymize("EMPLOYEE_EMAIL")
+            .columnToRedact("DEPARTMENT")
+            .build();
+        columnarFileSanitizerImpl.setRules(rules);
+        columnarFileSanitizerImpl.setRecordShuffleChunkSize(3);
+        columnarFileSanitizerImpl.makeShuffleDeterministic();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        columnarFileSanitizerImpl.sanitize(new ByteArrayInputStream(input), out, pseudonymizer);
+
+        MessageType outputSchema = ParquetColumnRewriterTest.schema(out.toByteArray());
+        assertEquals(List.of("EMPLOYEE_ID", "EMPLOYEE_EMAIL", "JOIN_DATE"),
+            outputSchema.getFields().stream().map(Type::getName).collect(Collectors.toList()));
+        assertEquals(schema.getType("JOIN_DATE"), outputSchema.getType("JOIN_DATE"));
+
+        // rows shuffled, as for CSV (here, reversed)
+        List<Group> rows = ParquetColumnRewriterTest.read(out.toByteArray());
+        assertEquals(3, rows.size());
+        assertEquals(4L, rows.get(0).getLong("EMPLOYEE_ID", 0));
+        assertEquals(0, rows.get(0).getFieldRepetitionCount("EMPLOYEE_EMAIL"));
+        assertEquals(17685, rows.get(0).getInteger("JOIN_DATE", 0));
+        assertEquals("{\"scope\":\"email\",\"domain\":\"workltyics.co\",\"hash\":\"al4JK5KlOIsneC2DM__P_HRYe28LWYTBSf3yWKGm5yQ\",\"h_4\":\"al4JK5KlOIsneC2DM__P_HRYe28LWYTBSf3yWKGm5yQ\"}",
+            rows.get(1).getString("EMPLOYEE_EMAIL", 0));
+        assertEquals(1L, rows.get(2).getLong("EMPLOYEE_ID", 0));
+        assertEquals("{\"scope\":\"email\",\"domain\":\"worklytics.co\",\"hash\":\"Qf4dLJ4jfqZLn9ef4VirvYjvOnRaVI5tf5oLnM65YOA\",\"h_4\":\"Qf4dLJ4jfqZLn9ef4VirvYjvOnRaVI5tf5oLnM65YOA\"}",
+            rows.get(2).getString("EMPLOYEE_EMAIL", 0));
+
+        // CSV-only path refuses Parquet
+        assertThrows(IllegalArgumentException.class,
+            () -> columnarFileSanitizerImpl.sanitize(new StringReader(""), new StringWriter(), pseudonymizer));
+    }
+
     @Test
     @SneakyThrows
     void handle_cased() {
@@ -794,6 +854,204 @@ public class BulkDataSanitizerImplTest {
     }
 
 
+    /**
+     * wide (HRIS-like) file, with hundreds of columns; output columns must be bound to the right
+     * source columns regardless of where these are in the file
+     */
+    @Test
+    @SneakyThrows
+    void handle_wide() {
+        final int COLUMNS = 300;
+        final int ROWS = 50;
+
+        ColumnarRules rules = ColumnarRules.builder()
+            .columnToPseudonymize("EMPLOYEE_ID")
+            .columnToPseudonymize("EMPLOYEE_EMAIL")
+            .columnToRedact("ATTRIBUTE_7")
+            .columnsToRename(Map.of("ATTRIBUTE_8", "RENAMED"))
+            .columnsToDuplicate(Map.of("EMPLOYEE_ID", "EMPLOYEE_ID_ORIG"))
+            .build();
+        columnarFileSanitizerImpl.setRules(rules);
+
+        List<String> columns = Lists.newArrayList("EMPLOYEE_ID", "EMPLOYEE_EMAIL");
+        for (int c = 0; c < COLUMNS; c++) {
+            columns.add("ATTRIBUTE_" + c);
+        }
+
+        List<CSVRecord> output = parse(sanitizeWide(columns, ROWS));
+        assertEquals(ROWS, output.size());
+
+        Map<String, Integer> header = output.get(0).getParser().getHeaderMap();
+        assertEquals(COLUMNS + 2, header.size());
+        assertFalse(header.containsKey("ATTRIBUTE_7"));
+        assertFalse(header.containsKey("ATTRIBUTE_8"));
+
+        for (int r = 0; r < ROWS; r++) {
+            CSVRecord row = output.get(r);
+            assertEquals(Integer.toString(r), row.get("EMPLOYEE_ID_ORIG"));
+            assertNotEquals(Integer.toString(r), row.get("EMPLOYEE_ID"));
+            assertFalse(row.get("EMPLOYEE_EMAIL").contains("user" + r + "@"));
+            assertEquals("attribute_8_" + r, row.get("RENAMED"));
+            for (int c = 0; c < COLUMNS; c++) {
+                if (c != 7 && c != 8) {
+                    assertEquals("attribute_" + c + "_" + r, row.get("ATTRIBUTE_" + c));
+                }
+            }
+        }
+        assertEquals(ROWS, output.stream().map(row -> row.get("EMPLOYEE_ID")).distinct().count());
+
+        // same content, with columns in reverse order, is sanitized to same values
+        List<String> reversed = Lists.reverse(columns);
+        List<CSVRecord> reversedOutput = parse(sanitizeWide(reversed, ROWS));
+        for (int r = 0; r < ROWS; r++) {
+            assertEquals(output.get(r).toMap(), reversedOutput.get(r).toMap());
+        }
+    }
+
+    /**
+     * rough benchmark of wide (HRIS-like) file, with hundreds of columns; reports throughput via
+     * char and byte paths
+     *
+     * scale input via 'wide.rows', eg `-Dwide.rows=1000000`
+     */
+    @Disabled // benchmark; not for usual CI
+    @Test
+    @SneakyThrows
+    void benchmark_wide() {
+        final int COLUMNS = 300;
+        final int ROWS = Integer.getInteger("wide.rows", 100_000); // ~250MB
+
+        columnarFileSanitizerImpl.setRules(ColumnarRules.builder()
+            .pseudonymFormat(PseudonymEncoder.Implementations.URL_SAFE_TOKEN)
+            .columnToPseudonymize("EMPLOYEE_ID")
+            .columnToRedact("ATTRIBUTE_7")
+            .columnsToRename(Map.of("ATTRIBUTE_8", "RENAMED"))
+            .build());
+        // as default, rather than 1 set to make other tests deterministic
+        columnarFileSanitizerImpl.setRecordShuffleChunkSize(500);
+
+        StringBuilder source = new StringBuilder("EMPLOYEE_ID,EMPLOYEE_EMAIL");
+        for (int c = 0; c < COLUMNS; c++) {
+            source.append(",ATTRIBUTE_").append(c);
+        }
+        source.append("\n");
+        for (int r = 0; r < ROWS; r++) {
+            source.append(r).append(",user").append(r).append("@acme.com");
+            for (int c = 0; c < COLUMNS; c++) {
+                source.append(",value").append(c);
+            }
+            source.append("\n");
+        }
+        String sourceChars = source.toString();
+        byte[] sourceBytes = sourceChars.getBytes(StandardCharsets.UTF_8);
+
+        // first run only warms up JIT
+        for (int run = 0; run < 2; run++) {
+            long start = System.nanoTime();
+            try (StringReader in = new StringReader(sourceChars);
+                 Writer out = Writer.nullWriter()) {
+                columnarFileSanitizerImpl.sanitize(in, out, pseudonymizer);
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("chars: %d rows x %d columns in %d ms (%.0f rows/s)%n",
+                ROWS, COLUMNS + 2, elapsedMillis, ROWS / (elapsedMillis / 1000.0));
+
+            start = System.nanoTime();
+            try (InputStream in = new ByteArrayInputStream(sourceBytes);
+                 OutputStream out = OutputStream.nullOutputStream()) {
+                columnarFileSanitizerImpl.sanitize(in, out, pseudonymizer);
+            }
+            elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("bytes: %d rows x %d columns in %d ms (%.0f rows/s)%n",
+                ROWS, COLUMNS + 2, elapsedMillis, ROWS / (elapsedMillis / 1000.0));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void handle_shortRow() {
+        ColumnarRules rules = ColumnarRules.builder()
+            .columnToPseudonymize("EMPLOYEE_EMAIL")
+            .build();
+        columnarFileSanitizerImpl.setRules(rules);
+
+        final String SOURCE = "EMPLOYEE_ID,DEPARTMENT,EMPLOYEE_EMAIL\n" +
+            "1,Engineering\n";
+
+        try (StringReader in = new StringReader(SOURCE);
+             StringWriter out = new StringWriter()) {
+            assertThrows(IllegalArgumentException.class,
+                () -> columnarFileSanitizerImpl.sanitize(in, out, pseudonymizer));
+        }
+    }
+
+    /**
+     * sanitize generated file with given columns, via both char and byte paths
+     *
+     * @return sanitized content, asserted same via either path
+     */
+    @SneakyThrows
+    String sanitizeWide(List<String> columns, int rows) {
+        StringBuilder source = new StringBuilder(String.join(",", columns)).append("\n");
+        for (int r = 0; r < rows; r++) {
+            int row = r;
+            source.append(columns.stream()
+                .map(column -> column.equals("EMPLOYEE_ID") ? Integer.toString(row)
+                    : column.equals("EMPLOYEE_EMAIL") ? "user" + row + "@acme.com"
+                    : column.toLowerCase() + "_" + row)
+                .collect(Collectors.joining(",")))
+                .append("\n");
+        }
+
+        StringWriter chars = new StringWriter();
+        columnarFileSanitizerImpl.sanitize(new StringReader(source.toString()), chars, pseudonymizer);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        columnarFileSanitizerImpl.sanitize(new ByteArrayInputStream(source.toString().getBytes(StandardCharsets.UTF_8)), bytes, pseudonymizer);
+
+        assertEquals(chars.toString(), bytes.toString(StandardCharsets.UTF_8));
+        return chars.toString();
+    }
+
+    @SneakyThrows
+    List<CSVRecord> parse(String csv) {
+        try (CSVParser parser = CSVParser.parse(csv, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+            return parser.getRecords();
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "csv/hris-example.csv|EMPLOYEE_EMAIL|MANAGER_ID|DEPARTMENT",
+        "csv/hris-example-quotes.csv|EMAIL|EMPLOYEE_ID|DEPARTMENT",
+        "csv/hris-example-headers-w-spaces.csv|AN EMAIL|EMPLOYEE_ID|SOME DEPARTMENT",
+        "csv/hris-default-rules.csv|employee_email|manager_id|ROLE",
+        "csv/example_acme_20220901.csv|Participant Email|IPAddress|Rating",
+    })
+    @SneakyThrows
+    void sanitize_bytesSameAsChars(String file, String columnToPseudonymize, String columnToRedact, String columnToRename) {
+        ColumnarRules rules = ColumnarRules.builder()
+            .columnToPseudonymize(columnToPseudonymize)
+            .columnToRedact(columnToRedact)
+            .columnsToRename(Map.of(columnToRename, "RENAMED"))
+            .build();
+        columnarFileSanitizerImpl.setRules(rules);
+
+        byte[] source = TestUtils.getData(file);
+
+        StringWriter expected = new StringWriter();
+        columnarFileSanitizerImpl.sanitize(new InputStreamReader(new ByteArrayInputStream(source), StandardCharsets.UTF_8),
+            expected, pseudonymizer);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        columnarFileSanitizerImpl.sanitize(new ByteArrayInputStream(source), actual, pseudonymizer);
+
+        // rules match columns of file
+        assertTrue(expected.toString().startsWith("RENAMED") || expected.toString().contains(",RENAMED"));
+        assertEquals(expected.toString(), actual.toString(StandardCharsets.UTF_8));
+    }
+
+
     class StubPseudonymizer implements Pseudonymizer {
 
         @Override
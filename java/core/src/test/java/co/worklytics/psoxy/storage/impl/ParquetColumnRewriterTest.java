@@ -0,0 +1,346 @@
+package co.worklytics.psoxy.storage.impl;
+
+import lombok.SneakyThrows;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Types;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParquetColumnRewriterTest {
+
+    static final MessageType SCHEMA = Types.buildMessage()
+        .required(PrimitiveType.PrimitiveTypeName.INT64).named("employee_id")
+        .optional(PrimitiveType.PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("email")
+        .optional(PrimitiveType.PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("department")
+        .optional(PrimitiveType.PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.dateType()).named("join_date")
+        .named("hris");
+
+    static final int ROWS = 1_000;
+
+    ParquetColumnRewriter rewriter = new ParquetColumnRewriter();
+
+    @SneakyThrows
+    @Test
+    void rewrite_copiesUntouchedChunksAsIs() {
+        byte[] input = write(SCHEMA, rows(ROWS), Map.of());
+
+        byte[] output = rewrite(input, schema -> Arrays.asList(
+            copy(0, "employee_id"),
+            ParquetColumnRewriter.OutputColumn.builder()
+                .name("email")
+                .sourceIndex(1)
+                .transform(value -> value == null ? null : ((String) value).toUpperCase())
+                .build(),
+            copy(2, "department"),
+            copy(3, "join_date")));
+
+        List<Group> rows = read(output);
+        assertEquals(ROWS, rows.size());
+        for (int i = 0; i < ROWS; i++) {
+            Group row = rows.get(i);
+            assertEquals(i, row.getLong("employee_id", 0));
+            if (i % 10 == 0) {
+                assertEquals(0, row.getFieldRepetitionCount("email"));
+            } else {
+                assertEquals("USER" + i + "@ACME.COM", row.getString("email", 0));
+            }
+            assertEquals("dept-" + (i % 7), row.getString("department", 0));
+            assertEquals(18_000 + i, row.getInteger("join_date", 0));
+        }
+
+        // schema preserved, as transformed column was already a string
+        assertEquals(SCHEMA, schema(output));
+
+        // chunks of untouched columns are byte-for-byte same as source
+        List<BlockMetaData> sourceBlocks = blocks(input);
+        List<BlockMetaData> outputBlocks = blocks(output);
+        assertTrue(sourceBlocks.size() > 1, "fixture should span several row groups");
+        assertEquals(sourceBlocks.size(), outputBlocks.size());
+        for (int b = 0; b < sourceBlocks.size(); b++) {
+            for (int c : new int[]{0, 2, 3}) {
+                assertArrayEquals(
+                    chunk(input, sourceBlocks.get(b).getColumns().get(c)),
+                    chunk(output, outputBlocks.get(b).getColumns().get(c)));
+            }
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void rewrite_skipsRows() {
+        byte[] input = write(SCHEMA, rows(ROWS), Map.of());
+
+        byte[] output = rewrite(input, schema -> Arrays.asList(
+            copy(0, "employee_id"),
+            ParquetColumnRewriter.OutputColumn.builder()
+                .name("email")
+                .sourceIndex(1)
+                .transform(value -> {
+                    if (value == null) {
+                        return ParquetColumnRewriter.SKIP_ROW;
+                    }
+                    return value;
+                })
+                .build(),
+            copy(3, "join_date")));
+
+        List<Group> rows = read(output);
+        assertEquals(ROWS - ROWS / 10, rows.size());
+        for (Group row : rows) {
+            long id = row.getLong("employee_id", 0);
+            assertNotEquals(0, id % 10);
+            assertEquals("user" + id + "@acme.com", row.getString("email", 0));
+            assertEquals(18_000 + id, row.getInteger("join_date", 0));
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void rewrite_shufflesRowsInChunks() {
+        byte[] input = write(SCHEMA, rows(ROWS), Map.of());
+
+        rewriter = new ParquetColumnRewriter(Collections::reverse, 100);
+        byte[] output = rewrite(input, schema -> Arrays.asList(
+            copy(0, "employee_id"),
+            copy(1, "email"),
+            copy(3, "join_date")));
+
+        // rows of each row group reversed in chunks of 100, with all columns kept aligned
+        List<Group> rows = read(output);
+        assertEquals(ROWS, rows.size());
+        assertNotEquals(0L, rows.get(0).getLong("employee_id", 0));
+        Set<Long> ids = new HashSet<>();
+        for (Group row : rows) {
+            long id = row.getLong("employee_id", 0);
+            ids.add(id);
+            if (id % 10 != 0) {
+                assertEquals("user" + id + "@acme.com", row.getString("email", 0));
+            }
+            assertEquals(18_000 + id, row.getInteger("join_date", 0));
+        }
+        assertEquals(ROWS, ids.size());
+        assertEquals(SCHEMA.getType("employee_id"), schema(output).getType("employee_id"));
+    }
+
+    @SneakyThrows
+    @Test
+    void rewrite_renamesAndDuplicates() {
+        byte[] input = write(SCHEMA, rows(20), Map.of());
+
+        byte[] output = rewrite(input, schema -> Arrays.asList(
+            copy(0, "id"),
+            copy(0, "employee_id"),
+            ParquetColumnRewriter.OutputColumn.builder()
+                .name("employee_id_as_string")
+                .sourceIndex(0)
+                .transform(value -> "e" + value)
+                .build()));
+
+        MessageType outputSchema = schema(output);
+        assertEquals(PrimitiveType.PrimitiveTypeName.INT64, outputSchema.getType("id").asPrimitiveType().getPrimitiveTypeName());
+        assertEquals(SCHEMA.getType("employee_id"), outputSchema.getType("employee_id"));
+        assertEquals(LogicalTypeAnnotation.stringType(), outputSchema.getType("employee_id_as_string").getLogicalTypeAnnotation());
+
+        List<Group> rows = read(output);
+        assertEquals(20, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(i, rows.get(i).getLong("id", 0));
+            assertEquals(i, rows.get(i).getLong("employee_id", 0));
+            assertEquals("e" + i, rows.get(i).getString("employee_id_as_string", 0));
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void rewrite_keyValueMetadataKeptOnlyIfSchemaUnchanged() {
+        byte[] input = write(SCHEMA, rows(20), Map.of("foo", "bar"));
+
+        byte[] unchanged = rewrite(input, schema -> Arrays.asList(
+            copy(0, "employee_id"),
+            copy(1, "email"),
+            copy(2, "department"),
+            copy(3, "join_date")));
+        assertEquals("bar", keyValueMetadata(unchanged).get("foo"));
+
+        byte[] changed = rewrite(input, schema -> Arrays.asList(copy(0, "employee_id")));
+        assertFalse(keyValueMetadata(changed).containsKey("foo"));
+    }
+
+    @Test
+    void rewrite_nestedSchemaUnsupported() {
+        MessageType nested = Types.buildMessage()
+            .required(PrimitiveType.PrimitiveTypeName.INT64).named("employee_id")
+            .repeated(PrimitiveType.PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("emails")
+            .named("hris");
+        SimpleGroupFactory groups = new SimpleGroupFactory(nested);
+        byte[] input = write(nested, List.of(groups.newGroup().append("employee_id", 1L).append("emails", "alice@acme.com")), Map.of());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> rewrite(input, schema -> Arrays.asList(copy(0, "employee_id"))));
+    }
+
+    ParquetColumnRewriter.OutputColumn copy(int sourceIndex, String name) {
+        return ParquetColumnRewriter.OutputColumn.builder()
+            .name(name)
+            .sourceIndex(sourceIndex)
+            .build();
+    }
+
+    @SneakyThrows
+    byte[] rewrite(byte[] input, Function<MessageType, List<ParquetColumnRewriter.OutputColumn>> planner) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rewriter.rewrite(new ByteArrayInputStream(input), out, planner);
+        return out.toByteArray();
+    }
+
+    /**
+     * every 10th row has no email
+     */
+    static List<Group> rows(int count) {
+        SimpleGroupFactory groups = new SimpleGroupFactory(SCHEMA);
+        List<Group> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Group row = groups.newGroup()
+                .append("employee_id", (long) i);
+            if (i % 10 != 0) {
+                row.append("email", "user" + i + "@acme.com");
+            }
+            row.append("department", "dept-" + (i % 7))
+                .append("join_date", 18_000 + i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * @return Parquet file holding rows, in row groups small enough that fixture spans several
+     */
+    @SneakyThrows
+    static byte[] write(MessageType schema, List<Group> rows, Map<String, String> keyValueMetadata) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParquetWriter<Group> writer = ExampleParquetWriter.builder(new ParquetColumnRewriter.StreamOutputFile(out))
+            .withType(schema)
+            .withExtraMetaData(keyValueMetadata)
+            .withCompressionCodec(CompressionCodecName.GZIP)
+            .withRowGroupSize(4096)
+            .withPageSize(1024)
+            .build()) {
+            for (Group row : rows) {
+                writer.write(row);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @SneakyThrows
+    static List<Group> read(byte[] parquet) {
+        List<Group> rows = new ArrayList<>();
+        try (ParquetFileReader reader = ParquetFileReader.open(inputFile(parquet))) {
+            MessageType schema = reader.getFooter().getFileMetaData().getSchema();
+            PageReadStore pages;
+            while ((pages = reader.readNextRowGroup()) != null) {
+                RecordReader<Group> records = new ColumnIOFactory().getColumnIO(schema)
+                    .getRecordReader(pages, new GroupRecordConverter(schema));
+                for (long i = 0; i < pages.getRowCount(); i++) {
+                    rows.add(records.read());
+                }
+            }
+        }
+        return rows;
+    }
+
+    @SneakyThrows
+    static MessageType schema(byte[] parquet) {
+        try (ParquetFileReader reader = ParquetFileReader.open(inputFile(parquet))) {
+            return reader.getFooter().getFileMetaData().getSchema();
+        }
+    }
+
+    @SneakyThrows
+    static List<BlockMetaData> blocks(byte[] parquet) {
+        try (ParquetFileReader reader = ParquetFileReader.open(inputFile(parquet))) {
+            return reader.getFooter().getBlocks();
+        }
+    }
+
+    @SneakyThrows
+    static Map<String, String> keyValueMetadata(byte[] parquet) {
+        try (ParquetFileReader reader = ParquetFileReader.open(inputFile(parquet))) {
+            return reader.getFooter().getFileMetaData().getKeyValueMetaData();
+        }
+    }
+
+    static byte[] chunk(byte[] parquet, ColumnChunkMetaData chunk) {
+        int start = Math.toIntExact(chunk.getStartingPos());
+        return Arrays.copyOfRange(parquet, start, start + Math.toIntExact(chunk.getTotalSize()));
+    }
+
+    static InputFile inputFile(byte[] parquet) {
+        return new InputFile() {
+            @Override
+            public long getLength() {
+                return parquet.length;
+            }
+
+            @Override
+            public SeekableInputStream newStream() {
+                SeekableByteArrayInputStream in = new SeekableByteArrayInputStream(parquet);
+                return new DelegatingSeekableInputStream(in) {
+                    @Override
+                    public long getPos() {
+                        return in.getPos();
+                    }
+
+                    @Override
+                    public void seek(long newPos) {
+                        in.seek(newPos);
+                    }
+                };
+            }
+        };
+    }
+
+    static class SeekableByteArrayInputStream extends ByteArrayInputStream {
+
+        SeekableByteArrayInputStream(byte[] buf) {
+            super(buf);
+        }
+
+        long getPos() {
+            return pos;
+        }
+
+        void seek(long newPos) {
+            pos = Math.toIntExact(newPos);
+        }
+    }
+}
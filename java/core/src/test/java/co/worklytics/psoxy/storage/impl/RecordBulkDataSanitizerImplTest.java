@@ -2,33 +2,60 @@ package co.worklytics.psoxy.storage.impl;
 
 import co.worklytics.psoxy.ConfigRulesModule;
 import co.worklytics.psoxy.PsoxyModule;
+import co.worklytics.psoxy.gateway.BulkModeConfigProperty;
 import co.worklytics.psoxy.gateway.ConfigService;
 import co.worklytics.psoxy.gateway.ProxyConfigProperty;
+import co.worklytics.psoxy.storage.BulkDataSanitizerFactory;
 import co.worklytics.psoxy.storage.BulkDataTestUtils;
 import co.worklytics.psoxy.storage.StorageHandler;
 import co.worklytics.test.MockModules;
 import co.worklytics.test.TestUtils;
 import com.avaulta.gateway.pseudonyms.Pseudonym;
 import com.avaulta.gateway.pseudonyms.impl.UrlSafeTokenPseudonymEncoder;
+import com.avaulta.gateway.rules.RecordRules;
 import com.avaulta.gateway.rules.RuleSet;
+import com.avaulta.gateway.rules.transforms.RecordTransform;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.MapFunction;
 import dagger.Component;
 import dagger.Module;
 import dagger.Provides;
 import lombok.SneakyThrows;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.tuple.Triple;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Types;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
@@ -46,6 +73,12 @@ class RecordBulkDataSanitizerImplTest {
     @Inject
     UrlSafeTokenPseudonymEncoder encoder;
 
+    @Inject
+    ConfigService config;
+
+    @Inject
+    BulkDataSanitizerFactory bulkDataSanitizerFactory;
+
     java.util.function.Supplier<OutputStream> outputStreamSupplier;
 
     ByteArrayOutputStream outputStream;
@@ -171,6 +204,427 @@ class RecordBulkDataSanitizerImplTest {
         assertEquals(EXPECTED, output);
     }
 
+    // as above, but with paths that can't be compiled to columns; so exercises per-row JsonPath
+    // evaluation, which should give identical output
+    @Test
+    void csv_notCompiledToColumns() {
+        this.setUpWithRules("---\n" +
+            "format: \"CSV\"\n" +
+            "transforms:\n" +
+            "- redact: \"$..foo\"\n" +
+            "- pseudonymize: \"$['bar']\"\n");
+
+        final String objectPath = "export-20231128/file.ndjson";
+        final String pathToOriginal = "bulk/example.csv";
+        storageHandler.handle(BulkDataTestUtils.request(objectPath),
+            BulkDataTestUtils.transform(rules),
+            BulkDataTestUtils.inputStreamSupplier(pathToOriginal),
+            outputStreamSupplier);
+
+        String output = new String(outputStream.toByteArray());
+
+        final String EXPECTED = "foo,bar\n" +
+            ",t~-hN_i1M1DeMAicDVp6LhFgW9lH7r3_LbOpTlXYWpXVI\n" +
+            ",t~0E6I_002nK2IJjv_KCUeFzIUo5rfuISgx7_g-EhfCxE@company.com\n";
+        assertEquals(EXPECTED, output);
+    }
+
+    @Test
+    void compileCsvColumnPlan() {
+        this.setUpWithRules("---\n" +
+            "format: \"CSV\"\n" +
+            "transforms:\n");
+
+        RecordBulkDataSanitizerImpl sanitizer = (RecordBulkDataSanitizerImpl) bulkDataSanitizerFactory.get((RecordRules) rules);
+
+        List<String> headers = List.of("foo", "bar", "EMAIL");
+
+        Optional<RecordBulkDataSanitizerImpl.CsvColumnPlan> plan =
+            sanitizer.compileCsvColumnPlan(headers, compile("foo", "$.EMAIL", "$['bar']"));
+        assertTrue(plan.isPresent());
+        assertArrayEquals(new int[]{0, 2, 1}, plan.get().getColumnIndexes());
+
+        //not a column
+        assertTrue(sanitizer.compileCsvColumnPlan(headers, compile("email")).isEmpty());
+        //not a single property
+        assertTrue(sanitizer.compileCsvColumnPlan(headers, compile("$..foo")).isEmpty());
+        assertTrue(sanitizer.compileCsvColumnPlan(headers, compile("$.foo.bar")).isEmpty());
+        //duplicate headers
+        assertTrue(sanitizer.compileCsvColumnPlan(List.of("foo", "foo"), compile("foo")).isEmpty());
+    }
+
+    @Test
+    void parquet() {
+        this.setUpWithRules("---\n" +
+            "format: \"PARQUET\"\n" +
+            "transforms:\n" +
+            "- redact: \"foo\"\n" +
+            "- pseudonymize: \"bar\"\n");
+
+        MessageType schema = Types.buildMessage()
+            .required(PrimitiveType.PrimitiveTypeName.INT64).named("foo")
+            .optional(PrimitiveType.PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("bar")
+            .optional(PrimitiveType.PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("other")
+            .named("example");
+        SimpleGroupFactory groups = new SimpleGroupFactory(schema);
+        byte[] input = ParquetColumnRewriterTest.write(schema, List.of(
+            groups.newGroup().append("foo", 1L).append("bar", "2").append("other", "three"),
+            groups.newGroup().append("foo", 4L).append("other", "no bar, so skipped"),
+            groups.newGroup().append("foo", 4L).append("bar", "5").append("other", "six")), Map.of());
+
+        storageHandler.handle(BulkDataTestUtils.request("export-20231128/file.parquet"),
+            BulkDataTestUtils.transform(rules),
+            () -> new ByteArrayInputStream(input),
+            outputStreamSupplier);
+
+        byte[] output = outputStream.toByteArray();
+
+        // redacted column kept, but made optional; pseudonymized one is string, as before
+        MessageType outputSchema = ParquetColumnRewriterTest.schema(output);
+        assertEquals(Type.Repetition.OPTIONAL, outputSchema.getType("foo").getRepetition());
+        assertEquals(PrimitiveType.PrimitiveTypeName.INT64, outputSchema.getType("foo").asPrimitiveType().getPrimitiveTypeName());
+        assertEquals(schema.getType("other"), outputSchema.getType("other"));
+
+        List<Group> rows = ParquetColumnRewriterTest.read(output);
+        assertEquals(2, rows.size());
+        assertEquals(0, rows.get(0).getFieldRepetitionCount("foo"));
+        assertEquals("t~-hN_i1M1DeMAicDVp6LhFgW9lH7r3_LbOpTlXYWpXVI", rows.get(0).getString("bar", 0));
+        assertEquals("three", rows.get(0).getString("other", 0));
+        assertEquals("t~cMWVVout6L1o-OKqU9a0Z1Sfqqg_i5J_zzU0M2EfDJg", rows.get(1).getString("bar", 0));
+        assertEquals("six", rows.get(1).getString("other", 0));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "|[%s]|[%s]",
+        "$.records|{\"page\":1,\"records\":[%s],\"next\":null}|{\"page\":1,\"records\":[%s],\"next\":null}",
+        "records|{\"records\":[%s]}|{\"records\":[%s]}",
+        "$.data.records|{\"meta\":{\"records\":[{\"bar\":\"untouched\"}]},\"data\":{\"records\":[%s]}}|{\"meta\":{\"records\":[{\"bar\":\"untouched\"}]},\"data\":{\"records\":[%s]}}",
+    }, delimiter = '|')
+    void json(String recordsPath, String inputTemplate, String expectedTemplate) {
+        this.setUpWithRules("---\n" +
+            "format: \"JSON\"\n" +
+            (recordsPath == null ? "" : "recordsPath: \"" + recordsPath + "\"\n") +
+            "transforms:\n" +
+            "- redact: \"foo\"\n" +
+            "- pseudonymize: \"bar\"\n");
+
+        String input = String.format(inputTemplate,
+            "{\"foo\":1,\"bar\":2,\"other\":\"three\"},\n" +
+            "{\"foo\":3,\"bar\":null,\"other\":\"null bar, so skipped\"},\n" +
+            "{\"foo\":4,\"bar\":5,\"other\":\"six\"}");
+
+        storageHandler.handle(BulkDataTestUtils.request("export-20231128/file.json"),
+            BulkDataTestUtils.transform(rules),
+            () -> new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+            outputStreamSupplier);
+
+        String expected = String.format(expectedTemplate,
+            "{\"foo\":null,\"bar\":\"t~-hN_i1M1DeMAicDVp6LhFgW9lH7r3_LbOpTlXYWpXVI\",\"other\":\"three\"}," +
+            "{\"foo\":null,\"bar\":\"t~cMWVVout6L1o-OKqU9a0Z1Sfqqg_i5J_zzU0M2EfDJg\",\"other\":\"six\"}");
+        assertEquals(expected, outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * sparse records - missing fields to redact, missing or null fields to pseudonymize - are common
+     * in bulk data; handling them shouldn't construct exceptions
+     */
+    @Test
+    void ndjson_sparseRecords_noExceptions() {
+        this.setUpWithRules("---\n" +
+            "format: \"NDJSON\"\n" +
+            "transforms:\n" +
+            "- redact: \"$.foo\"\n" +
+            "- pseudonymize: \"$.bar\"\n");
+
+        String input = "{\"foo\":1,\"bar\":2,\"other\":\"three\"}\n" +
+            "{\"bar\":5,\"other\":\"no foo\"}\n" +
+            "{\"foo\":3,\"bar\":null,\"other\":\"null bar, so skipped\"}\n";
+
+        Runnable sanitize = () -> {
+            outputStream.reset();
+            storageHandler.handle(BulkDataTestUtils.request("export-20231128/file.ndjson"),
+                BulkDataTestUtils.transform(rules),
+                () -> new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                outputStreamSupplier);
+        };
+
+        // warm-up
+        sanitize.run();
+
+        List<String> throwables = TestUtils.throwablesConstructed(sanitize);
+        assertEquals(List.of(), throwables);
+
+        assertEquals("{\"foo\":null,\"bar\":\"t~-hN_i1M1DeMAicDVp6LhFgW9lH7r3_LbOpTlXYWpXVI\",\"other\":\"three\"}\n" +
+                "{\"bar\":\"t~cMWVVout6L1o-OKqU9a0Z1Sfqqg_i5J_zzU0M2EfDJg\",\"other\":\"no foo\"}\n",
+            outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ndjson_absentFieldToPseudonymize_fails() {
+        this.setUpWithRules("---\n" +
+            "format: \"NDJSON\"\n" +
+            "transforms:\n" +
+            "- pseudonymize: \"bar\"\n");
+
+        String input = "{\"bar\":2}\n" +
+            "{\"other\":\"no bar\"}\n";
+
+        assertThrows(Exception.class, () ->
+            storageHandler.handle(BulkDataTestUtils.request("export-20231128/file.ndjson"),
+                BulkDataTestUtils.transform(rules),
+                () -> new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                outputStreamSupplier));
+    }
+
+    @Test
+    void json_noRecordsAtPath() {
+        this.setUpWithRules("---\n" +
+            "format: \"JSON\"\n" +
+            "recordsPath: \"$.records\"\n" +
+            "transforms:\n" +
+            "- pseudonymize: \"bar\"\n");
+
+        String input = "{\"items\":[{\"bar\":2}],\"records\":{\"bar\":2}}";
+
+        assertThrows(IllegalArgumentException.class,
+            () -> storageHandler.handle(BulkDataTestUtils.request("export-20231128/file.json"),
+                BulkDataTestUtils.transform(rules),
+                () -> new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                outputStreamSupplier));
+    }
+
+    @Test
+    void parseRecordsPath() {
+        assertEquals(List.of(), RecordBulkDataSanitizerImpl.parseRecordsPath(null));
+        assertEquals(List.of(), RecordBulkDataSanitizerImpl.parseRecordsPath("$"));
+        assertEquals(List.of("records"), RecordBulkDataSanitizerImpl.parseRecordsPath("records"));
+        assertEquals(List.of("data", "records"), RecordBulkDataSanitizerImpl.parseRecordsPath("$.data.records"));
+        assertEquals(List.of("data", "some records"), RecordBulkDataSanitizerImpl.parseRecordsPath("$.data['some records']"));
+
+        assertThrows(IllegalArgumentException.class, () -> RecordBulkDataSanitizerImpl.parseRecordsPath("$.data[*]"));
+        assertThrows(IllegalArgumentException.class, () -> RecordBulkDataSanitizerImpl.parseRecordsPath("$.data[0]"));
+        assertThrows(IllegalArgumentException.class, () -> RecordBulkDataSanitizerImpl.parseRecordsPath("$..records"));
+    }
+
+    /**
+     * streams a generated JSON array through sanitizer; output must be written while input is
+     * still being read, rather than only once whole document has been read into memory
+     */
+    @SneakyThrows
+    @Test
+    void json_streamed() {
+        final int RECORDS = 100_000; // ~10MB
+        this.setUpWithRules("---\n" +
+            "format: \"JSON\"\n" +
+            "recordsPath: \"$.records\"\n" +
+            "transforms:\n" +
+            "- redact: \"foo\"\n" +
+            "- pseudonymize: \"bar\"\n");
+
+        long[] writtenAtHalfway = {-1};
+        InputStream input = jsonRecords(RECORDS, () -> writtenAtHalfway[0] = outputStream.size());
+
+        storageHandler.handle(BulkDataTestUtils.request("export-20231128/file.json"),
+            BulkDataTestUtils.transform(rules),
+            () -> input,
+            outputStreamSupplier);
+
+        assertTrue(writtenAtHalfway[0] > 0, "output written while input still being read");
+
+        JsonNode records = new ObjectMapper().readTree(outputStream.toByteArray()).get("records");
+        assertEquals(RECORDS, records.size());
+        for (int r = 0; r < RECORDS; r++) {
+            JsonNode record = records.get(r);
+            assertTrue(record.get("foo").isNull());
+            assertNotEquals("user" + r + "@acme.com", record.get("bar").asText());
+            assertEquals("some other value", record.get("other").asText());
+        }
+    }
+
+    /**
+     * streams a generated JSON array of several GB through sanitizer, w/o ever holding it in
+     * memory; run with constrained heap (eg, -Xmx64m) to verify memory use doesn't scale with size
+     *
+     * scale input via 'json.records', eg `-Djson.records=100000000` for ~8GB
+     */
+    @Disabled // benchmark; not for usual CI
+    @SneakyThrows
+    @Test
+    void json_benchmark() {
+        final long RECORDS = Long.getLong("json.records", 30_000_000); // ~2.5GB
+        this.setUpWithRules("---\n" +
+            "format: \"JSON\"\n" +
+            "recordsPath: \"$.records\"\n" +
+            "transforms:\n" +
+            "- redact: \"foo\"\n" +
+            "- pseudonymize: \"bar\"\n");
+
+        long[] written = {0};
+        OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written[0] += len;
+            }
+        };
+
+        long start = System.nanoTime();
+        storageHandler.handle(BulkDataTestUtils.request("export-20231128/file.json"),
+            BulkDataTestUtils.transform(rules),
+            () -> jsonRecords(RECORDS, () -> { }),
+            () -> output);
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%d records in %d ms; %d MB written; heap max %d MB, used %d MB%n",
+            RECORDS,
+            elapsedMillis,
+            written[0] / 1_000_000,
+            runtime.maxMemory() / 1_000_000,
+            (runtime.totalMemory() - runtime.freeMemory()) / 1_000_000);
+    }
+
+    /**
+     * @param records   to generate, in array at '$.records'
+     * @param atHalfway called once half of records have been read
+     * @return generated JSON document, never held in memory as a whole
+     */
+    InputStream jsonRecords(long records, Runnable atHalfway) {
+        return new InputStream() {
+            long record = 0;
+            byte[] chunk = "{\"records\":[".getBytes(StandardCharsets.UTF_8);
+            int position = 0;
+
+            @Override
+            public int read() {
+                if (position == chunk.length) {
+                    if (record > records) {
+                        return -1;
+                    } else if (record == records) {
+                        chunk = "]}".getBytes(StandardCharsets.UTF_8);
+                    } else {
+                        if (record == records / 2) {
+                            atHalfway.run();
+                        }
+                        chunk = ((record > 0 ? "," : "") + "{\"foo\":" + record + ",\"bar\":\"user" + record + "@acme.com\",\"other\":\"some other value\"}")
+                            .getBytes(StandardCharsets.UTF_8);
+                    }
+                    record++;
+                    position = 0;
+                }
+                return chunk[position++] & 0xFF;
+            }
+        };
+    }
+
+    @Test
+    void compileRecordColumns_notColumns() {
+        this.setUpWithRules("---\n" +
+            "format: \"PARQUET\"\n" +
+            "transforms:\n");
+
+        RecordBulkDataSanitizerImpl sanitizer = (RecordBulkDataSanitizerImpl) bulkDataSanitizerFactory.get((RecordRules) rules);
+
+        MessageType schema = Types.buildMessage()
+            .required(PrimitiveType.PrimitiveTypeName.INT64).named("foo")
+            .named("example");
+
+        assertEquals(1, ParquetColumnRewriter.compileRecordColumns(schema, sanitizer, compile("foo")).size());
+        assertThrows(IllegalArgumentException.class,
+            () -> ParquetColumnRewriter.compileRecordColumns(schema, sanitizer, compile("$..foo")));
+        assertThrows(IllegalArgumentException.class,
+            () -> ParquetColumnRewriter.compileRecordColumns(schema, sanitizer, compile("bar")));
+    }
+
+    List<Triple<JsonPath, RecordTransform, MapFunction>> compile(String... paths) {
+        return Arrays.stream(paths)
+            .map(path -> Triple.of(JsonPath.compile(path),
+                (RecordTransform) RecordTransform.Redact.builder().redact(path).build(),
+                (MapFunction) (currentValue, configuration) -> null))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * hris-example.csv, with its rows repeated; each row must be sanitized exactly as when file
+     * holds only it, so no values carry over between rows
+     */
+    @SneakyThrows
+    @Test
+    void csv_repeatedRows() {
+        final int COPIES = 1_000;
+        this.setUpWithRules("---\n" +
+            "format: \"CSV\"\n" +
+            "transforms:\n" +
+            "- redact: \"DEPARTMENT\"\n" +
+            "- redact: \"LEAVE_DATE\"\n" +
+            "- pseudonymize: \"EMPLOYEE_ID\"\n");
+
+        String original = new String(TestUtils.getData("csv/hris-example.csv"), StandardCharsets.UTF_8);
+        storageHandler.handle(BulkDataTestUtils.request("hris.csv"),
+            BulkDataTestUtils.transform(rules),
+            () -> new ByteArrayInputStream(original.getBytes(StandardCharsets.UTF_8)),
+            outputStreamSupplier);
+        String sanitized = outputStream.toString(StandardCharsets.UTF_8);
+
+        int headerEnd = original.indexOf('\n') + 1;
+        String input = original.substring(0, headerEnd) + original.substring(headerEnd).repeat(COPIES);
+
+        outputStream = new ByteArrayOutputStream();
+        storageHandler.handle(BulkDataTestUtils.request("hris.csv"),
+            BulkDataTestUtils.transform(rules),
+            () -> new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+            outputStreamSupplier);
+
+        int sanitizedHeaderEnd = sanitized.indexOf('\n') + 1;
+        assertEquals(sanitized.substring(0, sanitizedHeaderEnd) + sanitized.substring(sanitizedHeaderEnd).repeat(COPIES),
+            outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * rough benchmark of CSV pipeline on rows of hris-example.csv, repeated to reach larger size;
+     * reports throughput
+     *
+     * scale input via 'csv.rows', eg `-Dcsv.rows=10000000`
+     */
+    @Disabled // benchmark; not for usual CI
+    @SneakyThrows
+    @Test
+    void csv_benchmark() {
+        final int ROWS = Integer.getInteger("csv.rows", 1_000_000); // ~60MB
+        this.setUpWithRules("---\n" +
+            "format: \"CSV\"\n" +
+            "transforms:\n" +
+            "- redact: \"DEPARTMENT\"\n" +
+            "- redact: \"LEAVE_DATE\"\n" +
+            "- pseudonymize: \"EMPLOYEE_ID\"\n");
+
+        String[] lines = new String(TestUtils.getData("csv/hris-example.csv"), StandardCharsets.UTF_8).split("\n");
+        StringBuilder scaled = new StringBuilder(lines[0]).append("\n");
+        for (int i = 0; i < ROWS; i++) {
+            scaled.append(lines[1 + (i % (lines.length - 1))]).append("\n");
+        }
+        byte[] input = scaled.toString().getBytes(StandardCharsets.UTF_8);
+
+        // first run only warms up JIT
+        for (int run = 0; run < 2; run++) {
+            outputStream = new ByteArrayOutputStream();
+            long start = System.nanoTime();
+            storageHandler.handle(BulkDataTestUtils.request("hris.csv"),
+                BulkDataTestUtils.transform(rules),
+                () -> new ByteArrayInputStream(input),
+                outputStreamSupplier);
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            System.out.printf("%d rows (%d MB) in %d ms (%.0f rows/s)%n",
+                ROWS, input.length / 1_000_000, elapsedMillis, ROWS / (elapsedMillis / 1000.0));
+        }
+    }
+
     //as above, but preserving CRLF
     @Test
     void csv_crlf() {
@@ -226,4 +680,238 @@ class RecordBulkDataSanitizerImplTest {
         assertEquals(SANITIZED_FILE, output);
     }
 
+
+    @ValueSource(ints = {2, 4})
+    @ParameterizedTest
+    void gzippedContent_parallelCompression(int threads) throws IOException {
+        this.setUpWithRules("---\n" +
+            "format: \"NDJSON\"\n" +
+            "transforms:\n" +
+            "- redact: \"team_id\"\n" +
+            "- pseudonymize: \"$.profile.email\"\n");
+
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.OUTPUT_COMPRESSION_THREADS)))
+            .thenReturn(Optional.of(Integer.toString(threads)));
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.OUTPUT_COMPRESSION_BLOCK_SIZE)))
+            .thenReturn(Optional.of("512")); // so output spans several gzip members
+
+        final String pathToOriginal = "bulk/users.ndjson.gz";
+        storageHandler.handle(BulkDataTestUtils.request(pathToOriginal).withDecompressInput(true).withCompressOutput(true),
+            BulkDataTestUtils.transform(rules),
+            () -> TestUtils.class.getClassLoader().getResourceAsStream(pathToOriginal),
+            outputStreamSupplier);
+
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            assertEquals(new String(TestUtils.getData("bulk/users-sanitized.ndjson")),
+                new String(gzipInputStream.readAllBytes()));
+        }
+    }
+
+    @ValueSource(ints = {1, 2, 3, 100})
+    @ParameterizedTest
+    void ndjson_parallel(int batchSize) {
+        this.setUpWithRules("---\n" +
+            "format: \"NDJSON\"\n" +
+            "transforms:\n" +
+            "- redact: \"team_id\"\n" +
+            "- pseudonymize: \"$.profile.email\"\n");
+
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.RECORD_PROCESSING_THREADS)))
+            .thenReturn(Optional.of("3"));
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.RECORD_BATCH_SIZE)))
+            .thenReturn(Optional.of(Integer.toString(batchSize)));
+
+        final String pathToOriginal = "bulk/users.ndjson";
+        storageHandler.handle(BulkDataTestUtils.request(pathToOriginal),
+            BulkDataTestUtils.transform(rules),
+            BulkDataTestUtils.inputStreamSupplier(pathToOriginal),
+            outputStreamSupplier);
+
+        // order + content same as sequential
+        assertEquals(new String(TestUtils.getData("bulk/users-sanitized.ndjson")),
+            new String(outputStream.toByteArray()));
+    }
+
+    /**
+     * gzipped input spanning many batches, sanitized sequentially vs in parallel; output must be
+     * same, in same order
+     */
+    @ValueSource(ints = {1, 4})
+    @ParameterizedTest
+    @SneakyThrows
+    void ndjson_parallel_gzippedInput(int threads) {
+        final int COPIES = 500;
+        this.setUpWithRules("---\n" +
+            "format: \"NDJSON\"\n" +
+            "transforms:\n" +
+            "- redact: \"team_id\"\n" +
+            "- pseudonymize: \"$.profile.email\"\n");
+
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.RECORD_PROCESSING_THREADS)))
+            .thenReturn(Optional.of(Integer.toString(threads)));
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.RECORD_BATCH_SIZE)))
+            .thenReturn(Optional.of("7"));
+
+        byte[] original = TestUtils.getData("bulk/users.ndjson");
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(input)) {
+            for (int i = 0; i < COPIES; i++) {
+                out.write(original);
+            }
+        }
+
+        storageHandler.handle(BulkDataTestUtils.request("bulk/users.ndjson.gz").withDecompressInput(true),
+            BulkDataTestUtils.transform(rules),
+            () -> new ByteArrayInputStream(input.toByteArray()),
+            outputStreamSupplier);
+
+        assertEquals(new String(TestUtils.getData("bulk/users-sanitized.ndjson")).repeat(COPIES),
+            outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * rough benchmark of NDJSON pipeline on users.ndjson, gzipped and repeated to reach larger size
+     * (as bulk files usually arrive); compares sequential + parallel modes, reporting throughput
+     *
+     * scale input via 'ndjson.copies', eg `-Dndjson.copies=400000` for ~200MB
+     */
+    @Disabled // benchmark; not for usual CI
+    @SneakyThrows
+    @Test
+    void ndjson_benchmark() {
+        final int COPIES = Integer.getInteger("ndjson.copies", 40_000); // ~20MB
+        byte[] original = TestUtils.getData("bulk/users.ndjson");
+        ByteArrayOutputStream scaled = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(scaled)) {
+            for (int i = 0; i < COPIES; i++) {
+                out.write(original);
+            }
+        }
+        byte[] input = scaled.toByteArray();
+        double megabytes = (double) original.length * COPIES / 1_000_000;
+
+        // first run only warms up JIT
+        for (String threads : List.of("1", "1", "2", "4", "8")) {
+            // new container per run, as pool is shared by sanitizers, so sized on first use
+            this.setUpWithRules("---\n" +
+                "format: \"NDJSON\"\n" +
+                "transforms:\n" +
+                "- redact: \"team_id\"\n" +
+                "- pseudonymize: \"$.profile.email\"\n");
+            when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.RECORD_PROCESSING_THREADS)))
+                .thenReturn(Optional.of(threads));
+
+            long start = System.nanoTime();
+            storageHandler.handle(BulkDataTestUtils.request("bulk/users.ndjson.gz").withDecompressInput(true),
+                BulkDataTestUtils.transform(rules),
+                () -> new ByteArrayInputStream(input),
+                outputStreamSupplier);
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            System.out.printf("threads=%s: %.0f MB in %d ms (%.1f MB/s)%n",
+                threads, megabytes, elapsedMillis, megabytes / (elapsedMillis / 1000.0));
+        }
+    }
+
+    @Test
+    void recordProcessingExecutor_sharedAcrossFiles() {
+        this.setUpWithRules("---\n" +
+            "format: \"NDJSON\"\n" +
+            "transforms:\n" +
+            "- redact: \"team_id\"\n");
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.RECORD_PROCESSING_THREADS)))
+            .thenReturn(Optional.of("4"));
+
+        RecordBulkDataSanitizerImpl first = (RecordBulkDataSanitizerImpl) bulkDataSanitizerFactory.get((RecordRules) rules);
+        RecordBulkDataSanitizerImpl second = (RecordBulkDataSanitizerImpl) bulkDataSanitizerFactory.get((RecordRules) rules);
+
+        assertNotSame(first, second);
+        assertSame(first.recordProcessingExecutor.get(), second.recordProcessingExecutor.get());
+    }
+
+    /**
+     * output spanning several blocks of default size, compressed single-threaded vs in parallel;
+     * must decompress to same content
+     */
+    @ValueSource(ints = {1, 4})
+    @ParameterizedTest
+    @SneakyThrows
+    void gzippedContent_parallelCompression_defaultBlockSize(int threads) {
+        final int COPIES = 5_000; // ~2.5 MB of output, so several 1 MB blocks
+        this.setUpWithRules("---\n" +
+            "format: \"NDJSON\"\n" +
+            "transforms:\n" +
+            "- redact: \"team_id\"\n" +
+            "- pseudonymize: \"$.profile.email\"\n");
+
+        when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.OUTPUT_COMPRESSION_THREADS)))
+            .thenReturn(Optional.of(Integer.toString(threads)));
+
+        byte[] original;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(TestUtils.getData("bulk/users.ndjson.gz")))) {
+            original = in.readAllBytes();
+        }
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(input)) {
+            for (int i = 0; i < COPIES; i++) {
+                out.write(original);
+            }
+        }
+
+        storageHandler.handle(BulkDataTestUtils.request("bulk/users.ndjson.gz").withDecompressInput(true).withCompressOutput(true),
+            BulkDataTestUtils.transform(rules),
+            () -> new ByteArrayInputStream(input.toByteArray()),
+            outputStreamSupplier);
+
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            assertEquals(new String(TestUtils.getData("bulk/users-sanitized.ndjson")).repeat(COPIES),
+                new String(gzipInputStream.readAllBytes()));
+        }
+    }
+
+    /**
+     * rough benchmark of gzip compression of output, single-threaded vs parallel, on users.ndjson
+     * repeated to reach larger size; reports throughput and size of gzipped output
+     *
+     * scale input via 'gzip.copies', eg `-Dgzip.copies=400000` for ~200MB
+     */
+    @Disabled // benchmark; not for usual CI
+    @SneakyThrows
+    @Test
+    void gzip_benchmark() {
+        final int COPIES = Integer.getInteger("gzip.copies", 40_000); // ~20MB
+        byte[] original;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(TestUtils.getData("bulk/users.ndjson.gz")))) {
+            original = in.readAllBytes();
+        }
+        ByteArrayOutputStream scaled = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(scaled)) {
+            for (int i = 0; i < COPIES; i++) {
+                out.write(original);
+            }
+        }
+        byte[] input = scaled.toByteArray();
+        double megabytes = (double) original.length * COPIES / 1_000_000;
+
+        // first run only warms up JIT
+        for (String threads : List.of("1", "1", "2", "4", "8")) {
+            this.setUpWithRules("---\n" +
+                "format: \"NDJSON\"\n" +
+                "transforms:\n" +
+                "- redact: \"team_id\"\n" +
+                "- pseudonymize: \"$.profile.email\"\n");
+            when(config.getConfigPropertyAsOptional(eq(BulkModeConfigProperty.OUTPUT_COMPRESSION_THREADS)))
+                .thenReturn(Optional.of(threads));
+
+            long start = System.nanoTime();
+            storageHandler.handle(BulkDataTestUtils.request("bulk/users.ndjson.gz").withDecompressInput(true).withCompressOutput(true),
+                BulkDataTestUtils.transform(rules),
+                () -> new ByteArrayInputStream(input),
+                outputStreamSupplier);
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            System.out.printf("compression threads=%s: %.0f MB in %d ms (%.1f MB/s); gzipped output %d bytes%n",
+                threads, megabytes, elapsedMillis, megabytes / (elapsedMillis / 1000.0), outputStream.size());
+        }
+    }
 }
@@ -0,0 +1,250 @@
+package co.worklytics.psoxy.storage.impl;
+
+import lombok.SneakyThrows;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * differential tests of {@link Utf8CsvReader}/{@link Utf8CsvWriter} against commons-csv, over
+ * fuzzed inputs
+ */
+class Utf8CsvReaderTest {
+
+    static final int ITERATIONS = 2_000;
+
+    // fragments from which to build fuzzed CSV; includes multibyte chars, and ones significant
+    // to CSV syntax. NOTE: excludes non-ASCII whitespace, as not supported after closing quote
+    static final String[] FRAGMENTS = {
+        "a", "bc", "Z9", "é", "€", "日本", "😀", "#", "'", "\\",
+        " ", "  ", "\t", "\u000B", "\u001F",
+        ",", ";", "\"", "\"\"",
+        "\n", "\r", "\r\n", "\n\n",
+    };
+
+    static final char[] DELIMITERS = {',', ';', '\t', '|'};
+
+    static final String INVALID = "<invalid>";
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 64, Utf8CsvReader.DEFAULT_BUFFER_SIZE})
+    void parse_sameAsCommonsCsv(int bufferSize) {
+        Random random = new Random(bufferSize);
+        for (int i = 0; i < ITERATIONS; i++) {
+            char delimiter = DELIMITERS[random.nextInt(DELIMITERS.length)];
+            String csv = random.nextBoolean() ? randomFragments(random) : randomRecords(random, delimiter);
+            if (random.nextInt(10) == 0) {
+                csv = "\uFEFF" + csv;
+            }
+
+            assertEquals(parseWithCommonsCsv(csv, delimiter), parse(csv, delimiter, bufferSize),
+                "delimiter '" + delimiter + "': " + csv);
+        }
+    }
+
+    @Test
+    void headerMap_sameAsCommonsCsv() {
+        Random random = new Random(0);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String csv = randomRecords(random, ',');
+
+            Object expected;
+            try {
+                expected = CSVFormat.DEFAULT
+                    .withFirstRecordAsHeader()
+                    .withIgnoreHeaderCase()
+                    .withTrim()
+                    .parse(new StringReader(csv))
+                    .getHeaderMap();
+            } catch (IOException | RuntimeException e) {
+                expected = INVALID;
+            }
+
+            Object actual;
+            try {
+                Utf8CsvRecord header = reader(csv, ',', 16).next();
+                // no header (empty input); commons-csv, and callers of reader, take that as empty map
+                actual = header == null ? Collections.emptyMap() : Utf8CsvReader.caseInsensitiveHeaderMap(header);
+            } catch (IOException | RuntimeException e) {
+                actual = INVALID;
+            }
+
+            assertEquals(expected, actual, csv);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"\n", "\r\n", "\r"})
+    @SneakyThrows
+    void write_sameAsCommonsCsv(String recordSeparator) {
+        Random random = new Random(recordSeparator.length());
+
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+
+        CSVPrinter printer = new CSVPrinter(expected, CSVFormat.DEFAULT.builder()
+            .setRecordSeparator(recordSeparator)
+            .build());
+        try (Utf8CsvWriter writer = new Utf8CsvWriter(actual, recordSeparator, 32)) {
+            for (int i = 0; i < ITERATIONS; i++) {
+                String[] values = new String[1 + random.nextInt(5)];
+                for (int v = 0; v < values.length; v++) {
+                    values[v] = random.nextInt(8) == 0 ? null : randomValue(random);
+                }
+
+                printer.printRecord((Object[]) values);
+                for (String value : values) {
+                    if (value == null || random.nextBoolean()) {
+                        writer.write(value);
+                    } else {
+                        byte[] bytes = ("xx" + value + "yy").getBytes(StandardCharsets.UTF_8);
+                        writer.write(bytes, 2, bytes.length - 4);
+                    }
+                }
+                writer.endRecord();
+            }
+        }
+
+        assertEquals(expected.toString(), actual.toString(StandardCharsets.UTF_8));
+    }
+
+    @SneakyThrows
+    @Test
+    void roundTrip_passThroughAsBytes() {
+        String csv = "\uFEFFid, name ,note\r\n" +
+            "1,\"Żółć, \"\"quoted\"\"\",\"multi\r\nline\"\r\n" +
+            "\r\n" +
+            "2,  😀  ,#comment-like\r\n";
+
+        Utf8CsvReader reader = reader(csv, ',', 8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Utf8CsvWriter writer = new Utf8CsvWriter(out, "\r\n")) {
+            Utf8CsvRecord record;
+            while ((record = reader.next()) != null) {
+                for (int i = 0; i < record.size(); i++) {
+                    record.writeTo(i, writer);
+                }
+                writer.endRecord();
+            }
+        }
+        assertEquals("\r\n", reader.getFirstEndOfLine());
+        assertEquals("\uFEFFid,name,note\r\n" +
+            "1,\"Żółć, \"\"quoted\"\"\",\"multi\r\nline\"\r\n" +
+            "2,😀,\"#comment-like\"\r\n",
+            out.toString(StandardCharsets.UTF_8));
+    }
+
+    @SneakyThrows
+    @Test
+    void isBlank() {
+        Utf8CsvRecord record = reader("a,, , b ", ',', 16).next();
+
+        assertFalse(record.isBlank(0));
+        assertTrue(record.isBlank(1));
+        assertTrue(record.isBlank(2));
+        assertFalse(record.isBlank(3));
+    }
+
+    /**
+     * @return records parsed by commons-csv, followed by first end of line; or INVALID if fails
+     */
+    List<Object> parseWithCommonsCsv(String csv, char delimiter) {
+        List<Object> parsed = new ArrayList<>();
+        try {
+            CSVParser parser = CSVFormat.DEFAULT
+                .withDelimiter(delimiter)
+                .withTrim()
+                .parse(new InputStreamReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+            for (CSVRecord record : parser) {
+                parsed.add(Arrays.asList(record.values()));
+            }
+            parsed.add(parser.getFirstEndOfLine());
+        } catch (IOException | RuntimeException e) {
+            return List.of(INVALID);
+        }
+        return parsed;
+    }
+
+    List<Object> parse(String csv, char delimiter, int bufferSize) {
+        List<Object> parsed = new ArrayList<>();
+        try {
+            Utf8CsvReader reader = reader(csv, delimiter, bufferSize);
+            Utf8CsvRecord record;
+            while ((record = reader.next()) != null) {
+                parsed.add(record.toList());
+            }
+            parsed.add(reader.getFirstEndOfLine());
+        } catch (IOException e) {
+            return List.of(INVALID);
+        }
+        return parsed;
+    }
+
+    Utf8CsvReader reader(String csv, char delimiter, int bufferSize) {
+        return new Utf8CsvReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), delimiter, bufferSize);
+    }
+
+    String randomFragments(Random random) {
+        StringBuilder csv = new StringBuilder();
+        int length = random.nextInt(30);
+        for (int i = 0; i < length; i++) {
+            csv.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+        return csv.toString();
+    }
+
+    /**
+     * @return CSV that's mostly well-formed: values are quoted when they need to be, but may
+     * have whitespace around them
+     */
+    String randomRecords(Random random, char delimiter) {
+        StringBuilder csv = new StringBuilder();
+        int records = random.nextInt(6);
+        int columns = 1 + random.nextInt(4);
+        for (int r = 0; r < records; r++) {
+            for (int c = 0; c < columns; c++) {
+                if (c > 0) {
+                    csv.append(delimiter);
+                }
+                String value = randomValue(random);
+                if (random.nextBoolean() || value.indexOf(delimiter) >= 0 || value.contains("\"")
+                    || value.contains("\n") || value.contains("\r")) {
+                    csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+                    if (random.nextInt(5) == 0) {
+                        csv.append(' ');
+                    }
+                } else {
+                    csv.append(value);
+                }
+            }
+            csv.append(random.nextBoolean() ? "\n" : "\r\n");
+            if (random.nextInt(5) == 0) {
+                csv.append("\n");
+            }
+        }
+        return csv.toString();
+    }
+
+    String randomValue(Random random) {
+        StringBuilder value = new StringBuilder();
+        int length = random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            value.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+        return value.toString();
+    }
+}
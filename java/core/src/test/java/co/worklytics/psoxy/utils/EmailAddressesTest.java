@@ -0,0 +1,173 @@
+package co.worklytics.psoxy.utils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmailAddressesTest {
+
+    // fixed seed, so any failure reproducible
+    static final long SEED = 20231019L;
+
+    static final int SAMPLES = 20_000;
+
+    @ValueSource(strings = {
+        "alice@acme.com",
+        "Alice.Smith@Acme.COM",
+        "alice+foo@acme.co.uk",
+        "o'brien@acme.com",
+        "first_last-2@sub-domain.acme.io",
+        "1234@acme.com",
+    })
+    @ParameterizedTest
+    void parse_simple(String value) {
+        assertTrue(EmailAddresses.scan(value, 0, value.length()) >= 0, "should be parsed without fallback");
+        assertEquals(EmailAddresses.parseFully(value), EmailAddresses.parse(value));
+    }
+
+    @ValueSource(strings = {
+        "12345",
+        "d4c1f5b2-0b4e-4a56-9d8e-9d1b1d0c3e5f",
+        "alice",
+        "acme.com",
+        "",
+    })
+    @ParameterizedTest
+    void parse_notAddress(String value) {
+        assertEquals(EmailAddresses.NOT_ADDRESS, EmailAddresses.scan(value, 0, value.length()));
+        assertNull(EmailAddresses.parse(value));
+    }
+
+    @ValueSource(strings = {
+        "Alice Smith <alice@acme.com>",
+        "\"alice smith\"@acme.com",
+        "alice@[192.168.0.1]",
+        "alice..smith@acme.com",
+        ".alice@acme.com",
+        "alice.@acme.com",
+        "alice@acme",
+        "alice@-acme.com",
+        "alice@acme-.com",
+        "alice@acme.123",
+        "alice@@acme.com",
+        "alice@acme.com@acme.com",
+        "alice(comment)@acme.com",
+        "alice%bob@acme.com",
+    })
+    @ParameterizedTest
+    void parse_edgeCases(String value) {
+        assertEquals(EmailAddresses.NOT_SIMPLE, EmailAddresses.scan(value, 0, value.length()));
+        assertEquals(EmailAddresses.parseFully(value), EmailAddresses.parse(value));
+    }
+
+    @Test
+    void parse_longLabel() {
+        String value = "alice@" + StringUtils.repeat('a', 64) + ".com";
+        assertEquals(EmailAddresses.NOT_SIMPLE, EmailAddresses.scan(value, 0, value.length()));
+        assertEquals(EmailAddresses.parseFully(value), EmailAddresses.parse(value));
+    }
+
+    @ValueSource(strings = {
+        "alice@acme.com",
+        "alice@acme.com, bob@acme.com",
+        "alice@acme.com,bob@acme.com",
+        "Alice <alice@acme.com>, bob@acme.com",
+        "\"Smith, Alice\" <alice@acme.com>",
+        "alice@acme.com,",
+        "alice@acme.com,,bob@acme.com",
+        "alice",
+        "undisclosed-recipients:;",
+    })
+    @ParameterizedTest
+    void parseAddressList(String value) {
+        assertEquals(EmailAddresses.parseAddressListFully(value), EmailAddresses.parseAddressList(value));
+    }
+
+    /**
+     * property: for any value, parse() is equivalent to full parse by EmailAddressParser
+     */
+    @Test
+    void parse_equivalentToFullParse() {
+        Random random = new Random(SEED);
+        for (Supplier<String> generator : generators(random)) {
+            for (int i = 0; i < SAMPLES; i++) {
+                String value = generator.get();
+                assertEquals(EmailAddresses.parseFully(value), EmailAddresses.parse(value), value);
+            }
+        }
+    }
+
+    /**
+     * property: for any list of values, parseAddressList() is equivalent to full parse by
+     * EmailAddressParser
+     */
+    @Test
+    void parseAddressList_equivalentToFullParse() {
+        Random random = new Random(SEED);
+        List<Supplier<String>> generators = generators(random);
+        for (int i = 0; i < SAMPLES; i++) {
+            StringBuilder value = new StringBuilder();
+            int count = 1 + random.nextInt(4);
+            for (int j = 0; j < count; j++) {
+                if (j > 0) {
+                    value.append(random.nextBoolean() ? ", " : ",");
+                }
+                value.append(generators.get(random.nextInt(generators.size())).get());
+            }
+            assertEquals(EmailAddresses.parseAddressListFully(value.toString()),
+                EmailAddresses.parseAddressList(value.toString()), value.toString());
+        }
+    }
+
+    static final String LOCAL_PART_CHARS = "abcXYZ019_+-'.";
+    static final String DOMAIN_CHARS = "abcxyzAB019-.";
+    static final String OTHER_CHARS = " <>\"()[]@,;:\\\t%!#$&*/=?^`{|}~é";
+
+    List<Supplier<String>> generators(Random random) {
+        return List.of(
+            // likely simple addresses
+            () -> random(random, LOCAL_PART_CHARS, 1 + random.nextInt(12))
+                + "@" + random(random, DOMAIN_CHARS, 1 + random.nextInt(12))
+                + "." + random(random, "comORGio", 1 + random.nextInt(3)),
+            // near-simple addresses, with a char outside fast path
+            () -> mutate(random, random(random, LOCAL_PART_CHARS, 1 + random.nextInt(10))
+                + "@" + random(random, DOMAIN_CHARS, 1 + random.nextInt(10)) + ".com"),
+            // display names, quoting, domain literals
+            () -> random(random, "Alice Smith\"", random.nextInt(12))
+                + " <" + random(random, LOCAL_PART_CHARS, 1 + random.nextInt(8)) + "@acme.com>",
+            () -> "\"" + random(random, LOCAL_PART_CHARS + " @,", 1 + random.nextInt(8)) + "\"@acme.com",
+            () -> random(random, LOCAL_PART_CHARS, 1 + random.nextInt(8)) + "@[" + random(random, "0123456789.", 1 + random.nextInt(15)) + "]",
+            // long parts, around limits
+            () -> random(random, "abc.", 50 + random.nextInt(30)) + "@" + random(random, "abc", 50 + random.nextInt(30)) + ".com",
+            // arbitrary punctuation-heavy strings
+            () -> random(random, LOCAL_PART_CHARS + DOMAIN_CHARS + OTHER_CHARS, random.nextInt(30)),
+            // common non-addresses
+            () -> UUID.randomUUID().toString(),
+            () -> Long.toString(random.nextLong()),
+            () -> "https://acme.com/" + random(random, LOCAL_PART_CHARS, random.nextInt(10))
+        );
+    }
+
+    static String random(Random random, String alphabet, int length) {
+        StringBuilder s = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return s.toString();
+    }
+
+    static String mutate(Random random, String value) {
+        int position = random.nextInt(value.length() + 1);
+        return value.substring(0, position)
+            + OTHER_CHARS.charAt(random.nextInt(OTHER_CHARS.length()))
+            + value.substring(position);
+    }
+}
@@ -0,0 +1,89 @@
+package co.worklytics.psoxy.utils;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageTimingsTest {
+
+    static final String EVENT_NAME = "co.worklytics.psoxy.Stage";
+
+    @SneakyThrows
+    @Test
+    void jfrEvents(@TempDir Path dir) {
+        Path dump = dir.resolve("stages.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(EVENT_NAME).withThreshold(Duration.ZERO);
+            recording.start();
+
+            try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.CONFIG)) {
+                // nothing
+            }
+            try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.PSEUDONYMIZE, "$..email")) {
+                span.count(2).count(1);
+            }
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+            .filter(event -> event.getEventType().getName().equals(EVENT_NAME))
+            .collect(Collectors.toList());
+
+        assertEquals(2, events.size());
+        assertEquals("CONFIG", events.get(0).getString("stage"));
+        assertNull(events.get(0).getString("detail"));
+        assertEquals("PSEUDONYMIZE", events.get(1).getString("stage"));
+        assertEquals("$..email", events.get(1).getString("detail"));
+        assertEquals(3, events.get(1).getLong("count"));
+    }
+
+    @Test
+    void collect() {
+        try (StageTimings timings = StageTimings.collect()) {
+            try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.UPSTREAM)) {
+                // nothing
+            }
+            try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.PSEUDONYMIZE)) {
+                span.count(120);
+            }
+            try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.PSEUDONYMIZE)) {
+                span.count(3);
+            }
+
+            assertTrue(timings.getNanos(StageTimings.Stage.UPSTREAM) > 0);
+            assertEquals(0, timings.getNanos(StageTimings.Stage.AUTH));
+            assertEquals(123, timings.getCount(StageTimings.Stage.PSEUDONYMIZE));
+
+            String header = timings.toServerTimingHeader();
+            assertTrue(header.matches("upstream;dur=\\d+\\.\\d{2}, pseudonymize;dur=\\d+\\.\\d{2};desc=\"123 values\""), header);
+        }
+    }
+
+    @Test
+    void notCollecting() {
+        StageTimings timings = StageTimings.collect();
+        timings.close();
+
+        // no longer collecting on thread, so not added to closed timings
+        try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.FILTER)) {
+            span.count(1);
+        }
+
+        assertEquals(0, timings.getNanos(StageTimings.Stage.FILTER));
+        assertEquals(0, timings.getCount(StageTimings.Stage.FILTER));
+        assertEquals("", timings.toServerTimingHeader());
+    }
+}
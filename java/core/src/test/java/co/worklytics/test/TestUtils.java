@@ -3,6 +3,9 @@ package co.worklytics.test;
 import com.fasterxml.jackson.core.util.DefaultIndenter;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import lombok.SneakyThrows;
 
 import java.io.ByteArrayOutputStream;
@@ -11,9 +14,13 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Base64;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -117,4 +124,59 @@ public class TestUtils {
 
         assertEquals(expected, actual);
     }
+
+    static final Set<String> THROW_EVENTS = Set.of("jdk.JavaExceptionThrow", "jdk.JavaErrorThrow");
+
+    /**
+     * run something, recording (via JFR) any throwables constructed on current thread while doing so
+     * <p>
+     * run it once beforehand, unrecorded, if lazy initialization (class loading, etc) might
+     * construct exceptions that aren't of interest
+     *
+     * @return stack traces of throwables constructed, top frame first; empty if none
+     */
+    @SneakyThrows
+    public static List<String> throwablesConstructed(Runnable runnable) {
+        Path dump = Files.createTempFile("throwables", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                THROW_EVENTS.forEach(event -> recording.enable(event).withStackTrace());
+                recording.start();
+
+                runnable.run();
+
+                recording.stop();
+                recording.dump(dump);
+            }
+
+            long threadId = Thread.currentThread().getId();
+            return RecordingFile.readAllEvents(dump).stream()
+                // recording also includes app's own events (eg, Stage), which are enabled by default
+                .filter(event -> THROW_EVENTS.contains(event.getEventType().getName()))
+                .filter(event -> event.getThread() != null && event.getThread().getJavaThreadId() == threadId)
+                .map(TestUtils::describe)
+                .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    static String describe(RecordedEvent event) {
+        String thrown;
+        // field not present on all JDKs' throw events; if not, top frame is throwable's constructor
+        if (event.hasField("thrownClass") && event.getClass("thrownClass") != null) {
+            thrown = event.getClass("thrownClass").getName();
+        } else if (event.getStackTrace() != null && !event.getStackTrace().getFrames().isEmpty()) {
+            thrown = event.getStackTrace().getFrames().get(0).getMethod().getType().getName();
+        } else {
+            thrown = "?";
+        }
+        if (event.getStackTrace() == null) {
+            return thrown;
+        }
+        return thrown + event.getStackTrace().getFrames().stream()
+            .limit(12)
+            .map(frame -> "\n\tat " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName())
+            .collect(Collectors.joining());
+    }
 }
@@ -34,6 +34,29 @@ public class ColumnarRules implements BulkDataRules {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * format of bulk file
+     */
+    public enum Format {
+        CSV,
+        /**
+         * **alpha**; flat schemas only (every field primitive and not repeated). Columns copied
+         * as-is are passed through without being decoded; pseudonymized/transformed columns are
+         * written as strings. Unlike CSV, rows are NOT shuffled, as that would require decoding
+         * every column.
+         */
+        PARQUET,
+        ;
+    }
+
+    /**
+     * format of bulk file; if null, CSV
+     *
+     * NOTE: null default, rather than CSV, so omitted when serializing rules that don't set it
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected Format format;
+
     /**
      * delimiter of fields within serialized record
      *
@@ -129,4 +152,12 @@ public class ColumnarRules implements BulkDataRules {
     @NonNull
     protected Map<String, FieldTransformPipeline> fieldsToTransform = new HashMap<>();
 
+    /**
+     * engine with which to evaluate regexes of fieldsToTransform; if null, JAVA
+     *
+     * @see RegexEngine
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected RegexEngine regexEngine;
+
 }
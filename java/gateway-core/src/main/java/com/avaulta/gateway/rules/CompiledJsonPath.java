@@ -0,0 +1,415 @@
+package com.avaulta.gateway.rules;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+/**
+ * JsonPath compiled by {@link JsonPathCompiler} into a chain of segments, each of which visits the
+ * values of a document that it matches directly, rather than interpreting path on each evaluation
+ * <p>
+ * operates on documents as Jackson parses them as plain Java objects ('untyped'): objects as
+ * {@link Map}s, arrays as {@link List}s, and values as {@link String}, {@link Number},
+ * {@link Boolean} or null.
+ * <p>
+ * matches same values, in same order, as Jayway JsonPath's default configuration would; where
+ * content is such that not certain to do so (eg, array index applied to an object; filter
+ * comparing a number), says so by result - before changing anything - so that caller may fall
+ * back to Jayway for that evaluation. (By result, rather than exception, as may be common for some
+ * paths against some content.)
+ */
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class CompiledJsonPath {
+
+    @Getter
+    final String jsonPath;
+
+    final List<Segment> segments;
+
+    /**
+     * whether path can match at most one value (no wildcards, deep scans, slices or filters)
+     */
+    @Getter
+    final boolean definite;
+
+    /**
+     * location of a value matched in document
+     */
+    @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+    public static class Match {
+
+        /**
+         * Map or List containing value
+         */
+        final Object container;
+
+        /**
+         * String, if container is Map; Integer, if List
+         */
+        final Object key;
+
+        @SuppressWarnings("unchecked")
+        public Object get() {
+            if (container instanceof Map) {
+                return ((Map<String, Object>) container).get(key);
+            } else {
+                return ((List<Object>) container).get((Integer) key);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public void set(Object value) {
+            if (container instanceof Map) {
+                ((Map<String, Object>) container).put((String) key, value);
+            } else {
+                ((List<Object>) container).set((Integer) key, value);
+            }
+        }
+    }
+
+    /**
+     * @return values of document matched by path, in order Jayway would read them; null if can't
+     * be certain of matching as Jayway would
+     */
+    public List<Object> read(Object document) {
+        List<Match> matches = matches(document);
+        if (matches == null) {
+            return null;
+        }
+        List<Object> values = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            values.add(match.get());
+        }
+        return values;
+    }
+
+    /**
+     * replace each value of document matched by path with result of f applied to it
+     *
+     * @return whether applied; false if can't be certain of matching as Jayway would, in which case
+     * document is unchanged
+     */
+    public boolean map(Object document, UnaryOperator<Object> f) {
+        List<Match> matches = matches(document);
+        if (matches == null) {
+            return false;
+        }
+        for (Match match : updateOrder(matches)) {
+            match.set(f.apply(match.get()));
+        }
+        return true;
+    }
+
+    /**
+     * remove each property of document matched by path
+     *
+     * @return whether applied; false if can't be certain of matching as Jayway would, or path
+     * matches array items, in which case document is unchanged
+     */
+    @SuppressWarnings("unchecked")
+    public boolean delete(Object document) {
+        List<Match> matches = matches(document);
+        if (matches == null
+            // Jayway removes array items in an order that depends on their indexes as strings
+            || matches.stream().anyMatch(match -> !(match.container instanceof Map))) {
+            return false;
+        }
+        for (Match match : updateOrder(matches)) {
+            ((Map<String, Object>) match.container).remove(match.key);
+        }
+        return true;
+    }
+
+    /**
+     * @return matches in document, in order Jayway would read them; null if can't be certain of
+     * matching as Jayway would
+     */
+    public List<Match> matches(Object document) {
+        if (!(document instanceof Map || document instanceof List)) {
+            // eg, parsed by some other JsonProvider than Jackson's
+            return null;
+        }
+        List<Match> matches = new ArrayList<>();
+        return evaluate(0, null, null, document, matches) ? matches : null;
+    }
+
+    /**
+     * Jayway applies updates sorted by key, as string, descending; stable, so matches with same key
+     * (eg, nested matches of a deep scan) are updated in order read
+     */
+    static List<Match> updateOrder(List<Match> matches) {
+        List<Match> sorted = new ArrayList<>(matches);
+        sorted.sort(Comparator.comparing((Match match) -> match.key.toString()).reversed());
+        return sorted;
+    }
+
+    /**
+     * @return whether supported; if not, evaluation should be abandoned
+     */
+    boolean evaluate(int index, Object container, Object key, Object value, List<Match> matches) {
+        if (index == segments.size()) {
+            if (container == null) {
+                // root itself; can't be replaced in place
+                return false;
+            }
+            matches.add(new Match(container, key));
+            return true;
+        } else {
+            return segments.get(index).evaluate(this, index, container, key, value, matches);
+        }
+    }
+
+    interface Segment {
+
+        /**
+         * evaluate segment against value, at key of container (null for root), continuing with
+         * next segment for each child it matches
+         *
+         * @return whether supported; if not, evaluation should be abandoned
+         */
+        boolean evaluate(CompiledJsonPath path, int index, Object container, Object key, Object value, List<Match> matches);
+    }
+
+    @RequiredArgsConstructor
+    static class Property implements Segment {
+
+        final String name;
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean evaluate(CompiledJsonPath path, int index, Object container, Object key, Object value, List<Match> matches) {
+            if (value instanceof Map) {
+                Map<String, Object> map = (Map<String, Object>) value;
+                if (map.containsKey(name)) {
+                    return path.evaluate(index + 1, map, name, map.get(name), matches);
+                }
+            }
+            return true;
+        }
+    }
+
+    static class Wildcard implements Segment {
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean evaluate(CompiledJsonPath path, int index, Object container, Object key, Object value, List<Match> matches) {
+            if (value instanceof Map) {
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                    if (!path.evaluate(index + 1, value, entry.getKey(), entry.getValue(), matches)) {
+                        return false;
+                    }
+                }
+            } else if (value instanceof List) {
+                List<Object> list = (List<Object>) value;
+                for (int i = 0; i < list.size(); i++) {
+                    if (!path.evaluate(index + 1, list, i, list.get(i), matches)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class ArrayIndex implements Segment {
+
+        /**
+         * negative to count from end
+         */
+        final int index;
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean evaluate(CompiledJsonPath path, int index, Object container, Object key, Object value, List<Match> matches) {
+            if (!(value instanceof List)) {
+                // Jayway may throw, or not, depending on rest of path
+                return false;
+            }
+            List<Object> list = (List<Object>) value;
+            int effective = this.index < 0 ? list.size() + this.index : this.index;
+            if (effective >= 0 && effective < list.size()) {
+                return path.evaluate(index + 1, list, effective, list.get(effective), matches);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * array items in [from, to)
+     */
+    @RequiredArgsConstructor
+    static class ArraySlice implements Segment {
+
+        final int from;
+
+        /**
+         * null for all items from 'from'
+         */
+        final Integer to;
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean evaluate(CompiledJsonPath path, int index, Object container, Object key, Object value, List<Match> matches) {
+            if (!(value instanceof List)) {
+                return false;
+            }
+            List<Object> list = (List<Object>) value;
+            int end = to == null ? list.size() : Math.min(to, list.size());
+            for (int i = from; i < end; i++) {
+                if (!path.evaluate(index + 1, list, i, list.get(i), matches)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * recursive descent to a named property
+     */
+    @RequiredArgsConstructor
+    static class DeepScan implements Segment {
+
+        final String name;
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean evaluate(CompiledJsonPath path, int index, Object container, Object key, Object value, List<Match> matches) {
+            if (value instanceof Map) {
+                Map<String, Object> map = (Map<String, Object>) value;
+                if (map.containsKey(name) && !path.evaluate(index + 1, map, name, map.get(name), matches)) {
+                    return false;
+                }
+                for (Object child : map.values()) {
+                    if (!evaluate(path, index, map, null, child, matches)) {
+                        return false;
+                    }
+                }
+            } else if (value instanceof List) {
+                for (Object item : (List<Object>) value) {
+                    if (!evaluate(path, index, value, null, item, matches)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class Filter implements Segment {
+
+        final Condition condition;
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean evaluate(CompiledJsonPath path, int index, Object container, Object key, Object value, List<Match> matches) {
+            if (value instanceof List) {
+                List<Object> list = (List<Object>) value;
+                for (int i = 0; i < list.size(); i++) {
+                    Boolean accepted = condition.test(list.get(i));
+                    if (accepted == null
+                        || (accepted && !path.evaluate(index + 1, list, i, list.get(i), matches))) {
+                        return false;
+                    }
+                }
+                return true;
+            } else if (value instanceof Map) {
+                // Jayway applies filter to object itself, not its properties
+                Boolean accepted = condition.test(value);
+                return accepted != null
+                    && (!accepted || path.evaluate(index + 1, container, key, value, matches));
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * condition of a filter, applied to an item being filtered
+     */
+    @FunctionalInterface
+    interface Condition {
+
+        /**
+         * @return whether item is accepted; null if can't be certain of evaluating as Jayway would
+         */
+        Boolean test(Object item);
+
+        default Condition negate() {
+            return item -> {
+                Boolean accepted = test(item);
+                return accepted == null ? null : !accepted;
+            };
+        }
+    }
+
+    static class Conditions {
+
+        static final Object UNDEFINED = new Object();
+
+        static final Object UNSUPPORTED = new Object();
+
+        /**
+         * @return value at relative path within item; UNDEFINED if no such property; UNSUPPORTED if
+         * item, or some value along path, isn't an object
+         */
+        @SuppressWarnings("unchecked")
+        static Object resolve(Object item, List<String> relativePath) {
+            Object value = item;
+            for (String property : relativePath) {
+                if (!(value instanceof Map)) {
+                    return UNSUPPORTED;
+                }
+                Map<String, Object> map = (Map<String, Object>) value;
+                if (!map.containsKey(property)) {
+                    return UNDEFINED;
+                }
+                value = map.get(property);
+            }
+            return value;
+        }
+
+        static Condition exists(List<String> relativePath) {
+            return item -> {
+                Object value = resolve(item, relativePath);
+                return value == UNSUPPORTED ? null : value != UNDEFINED;
+            };
+        }
+
+        /**
+         * @param test applied to value at relative path, if a string
+         */
+        static Condition onString(List<String> relativePath, Predicate<String> test) {
+            return item -> {
+                Object value = resolve(item, relativePath);
+                if (!(value instanceof String)) {
+                    // Jayway coerces between strings, numbers; and missing values are edge-casey
+                    return null;
+                }
+                return test.test((String) value);
+            };
+        }
+
+        static Condition equalTo(List<String> relativePath, String literal) {
+            return onString(relativePath, literal::equals);
+        }
+
+        static Condition in(List<String> relativePath, List<String> literals) {
+            return onString(relativePath, literals::contains);
+        }
+
+        static Condition matches(List<String> relativePath, Pattern pattern) {
+            return onString(relativePath, s -> pattern.matcher(s).matches());
+        }
+    }
+}
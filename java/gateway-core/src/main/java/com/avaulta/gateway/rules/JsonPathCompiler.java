@@ -0,0 +1,300 @@
+package com.avaulta.gateway.rules;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * compiles JsonPaths into {@link CompiledJsonPath}s, which evaluate them directly against parsed
+ * documents rather than interpreting them token by token, as Jayway JsonPath does
+ * <p>
+ * supports the subset of JsonPath that rules use: properties (`.name`, `['name']`), wildcards
+ * (`.*`, `[*]`), deep scans to a named property (`..name`), array indexes (`[0]`, `[-1]`), slices
+ * with non-negative bounds (`[1:3]`, `[:2]`) and filters (`[?(...)]`) of the form:
+ * <ul>
+ *   <li>`@.a.b` - property exists</li>
+ *   <li>`@.a == 'x'`, `@.a != 'x'` - string (in)equality</li>
+ *   <li>`@.a =~ /regex/` or `/regex/i` - string matches regex</li>
+ *   <li>`@.a in ['x', 'y']` - string is one of those listed</li>
+ *   <li>`!(...)` - negation of any of the above</li>
+ * </ul>
+ * anything else (functions, `&&`/`||`, numeric comparisons, multiple properties/indexes, etc) isn't
+ * compiled, and should be evaluated by Jayway.
+ */
+public class JsonPathCompiler {
+
+    static final Pattern NAME = Pattern.compile("[A-Za-z_$@][A-Za-z0-9_$@\\-]*");
+    static final Pattern QUOTED = Pattern.compile("'([^'\"\\\\]+)'|\"([^'\"\\\\]+)\"");
+    static final Pattern INTEGER = Pattern.compile("-?\\d+");
+
+    /**
+     * @param jsonPath to compile
+     * @return compiled jsonPath, if within supported subset; empty otherwise
+     */
+    public Optional<CompiledJsonPath> compile(@NonNull String jsonPath) {
+        try {
+            Parser parser = new Parser(jsonPath);
+            List<CompiledJsonPath.Segment> segments = parser.segments();
+            boolean definite = segments.stream()
+                .allMatch(segment -> segment instanceof CompiledJsonPath.Property
+                    || segment instanceof CompiledJsonPath.ArrayIndex);
+            return Optional.of(new CompiledJsonPath(jsonPath, segments, definite));
+        } catch (Uncompilable | PatternSyntaxException e) {
+            return Optional.empty();
+        }
+    }
+
+    static class Uncompilable extends RuntimeException {
+
+        Uncompilable() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * recursive-descent parser of supported subset of JsonPath
+     */
+    static class Parser {
+
+        final String jsonPath;
+
+        int position = 0;
+
+        Parser(String jsonPath) {
+            this.jsonPath = jsonPath;
+        }
+
+        List<CompiledJsonPath.Segment> segments() {
+            expect("$");
+            List<CompiledJsonPath.Segment> segments = new ArrayList<>();
+            while (position < jsonPath.length()) {
+                segments.add(segment());
+            }
+            if (segments.isEmpty()) {
+                // root itself
+                throw new Uncompilable();
+            }
+            return segments;
+        }
+
+        CompiledJsonPath.Segment segment() {
+            if (consume("..")) {
+                String name = consume("[") ? quotedName() : name();
+                return new CompiledJsonPath.DeepScan(name);
+            } else if (consume(".*")) {
+                return new CompiledJsonPath.Wildcard();
+            } else if (consume(".")) {
+                return new CompiledJsonPath.Property(name());
+            } else if (consume("[")) {
+                skipWhitespace();
+                if (consume("*")) {
+                    skipWhitespace();
+                    expect("]");
+                    return new CompiledJsonPath.Wildcard();
+                } else if (consume("?(")) {
+                    CompiledJsonPath.Condition condition = expression();
+                    skipWhitespace();
+                    expect(")");
+                    skipWhitespace();
+                    expect("]");
+                    return new CompiledJsonPath.Filter(condition);
+                } else if (peek() == '\'' || peek() == '"') {
+                    return new CompiledJsonPath.Property(quotedName());
+                } else {
+                    return arrayItems();
+                }
+            } else {
+                throw new Uncompilable();
+            }
+        }
+
+        /**
+         * parse `[0]`, `[-1]`, `[1:3]`, `[1:]` or `[:3]`, from after opening bracket
+         */
+        CompiledJsonPath.Segment arrayItems() {
+            Integer from = optionalInteger();
+            skipWhitespace();
+            if (consume(":")) {
+                skipWhitespace();
+                Integer to = optionalInteger();
+                skipWhitespace();
+                expect("]");
+                if ((from != null && from < 0) || (to != null && to < 0)) {
+                    // Jayway counts negative bounds from end, with edge cases
+                    throw new Uncompilable();
+                }
+                return new CompiledJsonPath.ArraySlice(from == null ? 0 : from, to);
+            } else if (from != null) {
+                expect("]");
+                return new CompiledJsonPath.ArrayIndex(from);
+            } else {
+                throw new Uncompilable();
+            }
+        }
+
+        /**
+         * parse `['name']` or `["name"]`, from after opening bracket
+         */
+        String quotedName() {
+            skipWhitespace();
+            String name = quoted();
+            skipWhitespace();
+            expect("]");
+            return name;
+        }
+
+        String name() {
+            Matcher matcher = match(NAME);
+            String name = matcher.group();
+            if (position < jsonPath.length() && peek() != '.' && peek() != '[') {
+                // eg, function call
+                throw new Uncompilable();
+            }
+            return name;
+        }
+
+        String quoted() {
+            Matcher matcher = match(QUOTED);
+            return matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+        }
+
+        Integer optionalInteger() {
+            Matcher matcher = INTEGER.matcher(jsonPath).region(position, jsonPath.length());
+            if (!matcher.lookingAt()) {
+                return null;
+            }
+            position = matcher.end();
+            try {
+                return Integer.parseInt(matcher.group());
+            } catch (NumberFormatException e) {
+                throw new Uncompilable();
+            }
+        }
+
+        CompiledJsonPath.Condition expression() {
+            skipWhitespace();
+            if (consume("!")) {
+                skipWhitespace();
+                expect("(");
+                CompiledJsonPath.Condition negated = expression();
+                skipWhitespace();
+                expect(")");
+                return negated.negate();
+            }
+
+            List<String> relativePath = relativePath();
+            skipWhitespace();
+            if (consume("==")) {
+                skipWhitespace();
+                return CompiledJsonPath.Conditions.equalTo(relativePath, quoted());
+            } else if (consume("!=")) {
+                skipWhitespace();
+                return CompiledJsonPath.Conditions.equalTo(relativePath, quoted()).negate();
+            } else if (consume("=~")) {
+                skipWhitespace();
+                return CompiledJsonPath.Conditions.matches(relativePath, regex());
+            } else if (consume("in")) {
+                skipWhitespace();
+                expect("[");
+                List<String> literals = new ArrayList<>();
+                do {
+                    skipWhitespace();
+                    literals.add(quoted());
+                    skipWhitespace();
+                } while (consume(","));
+                expect("]");
+                return CompiledJsonPath.Conditions.in(relativePath, literals);
+            } else if (peek() == ')') {
+                return CompiledJsonPath.Conditions.exists(relativePath);
+            } else {
+                // other operators, '&&', '||', etc
+                throw new Uncompilable();
+            }
+        }
+
+        /**
+         * parse `@.a.b` or `@['a']['b']` as properties relative to item being filtered
+         */
+        List<String> relativePath() {
+            expect("@");
+            List<String> properties = new ArrayList<>();
+            while (position < jsonPath.length()) {
+                if (consume(".")) {
+                    properties.add(match(NAME).group());
+                } else if (consume("[")) {
+                    properties.add(quotedName());
+                } else {
+                    break;
+                }
+            }
+            if (properties.isEmpty()) {
+                throw new Uncompilable();
+            }
+            return properties;
+        }
+
+        /**
+         * parse `/regex/`, with optional `i` flag
+         */
+        Pattern regex() {
+            expect("/");
+            int start = position;
+            while (position < jsonPath.length() && peek() != '/') {
+                position += peek() == '\\' ? 2 : 1;
+            }
+            if (position >= jsonPath.length()) {
+                throw new Uncompilable();
+            }
+            String regex = jsonPath.substring(start, position);
+            position++;
+            if (consume("i")) {
+                return Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+            } else if (position < jsonPath.length() && Character.isLetter(peek())) {
+                // other flags
+                throw new Uncompilable();
+            }
+            return Pattern.compile(regex);
+        }
+
+        Matcher match(Pattern pattern) {
+            Matcher matcher = pattern.matcher(jsonPath).region(position, jsonPath.length());
+            if (!matcher.lookingAt()) {
+                throw new Uncompilable();
+            }
+            position = matcher.end();
+            return matcher;
+        }
+
+        char peek() {
+            if (position >= jsonPath.length()) {
+                throw new Uncompilable();
+            }
+            return jsonPath.charAt(position);
+        }
+
+        boolean consume(String token) {
+            if (jsonPath.startsWith(token, position)) {
+                position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        void expect(String token) {
+            if (!consume(token)) {
+                throw new Uncompilable();
+            }
+        }
+
+        void skipWhitespace() {
+            while (position < jsonPath.length() && Character.isWhitespace(jsonPath.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.avaulta.gateway.rules;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * specializes JsonPaths that use recursive descent ('..') into the concrete paths at which the
+ * descended-to property can occur in content filtered by a {@link JsonSchemaFilter}
+ * <p>
+ * eg, `$..email` against schema `{items: [{email, manager: {email}}]}` becomes
+ * `$['items'][*]['email']` and `$['items'][*]['manager']['email']`
+ * <p>
+ * deep scans visit every node of the document, while concrete paths visit only nodes along them;
+ * as filtered content can't contain properties not in schema, both match the same values. (This
+ * holds as transforms are applied too, as they only remove values or replace them with strings.)
+ * Concrete paths may be a superset of those that can actually occur (eg, all `oneOf`
+ * alternatives are followed), which is harmless: paths that don't occur match nothing.
+ * <p>
+ * supports paths with a single deep scan to a named property, preceded only by properties,
+ * wildcards and array indexes (eg, `$.issues[*]..accountId`); anything after that property is
+ * kept as-is. Other paths, and deep scans through recursive schemas, aren't specialized.
+ */
+public class JsonPathSpecializer {
+
+    /**
+     * max concrete paths to replace a deep scan with; beyond this, walking many paths from root
+     * may cost more than a single scan
+     */
+    static final int MAX_CONCRETE_PATHS = 32;
+
+    static final String DEFINITIONS_PREFIX = "#/definitions/";
+
+    static final String NAME = "([A-Za-z_$@][A-Za-z0-9_$@\\-]*)";
+    static final String QUOTED_NAME = "\\[\\s*['\"]([^'\",\\\\]+)['\"]\\s*]";
+
+    static final Pattern PROPERTY = Pattern.compile("^\\." + NAME);
+    static final Pattern QUOTED_PROPERTY = Pattern.compile("^" + QUOTED_NAME);
+    static final Pattern WILDCARD = Pattern.compile("^(\\.\\*|\\[\\s*\\*\\s*])");
+    static final Pattern ARRAY_INDEX = Pattern.compile("^\\[\\s*(\\d+)\\s*]");
+    static final Pattern DEEP_SCAN = Pattern.compile("^\\.\\.(?:" + NAME + "|" + QUOTED_NAME + ")");
+
+    /**
+     * @param jsonPath    to specialize
+     * @param schema      that content to which jsonPath will be applied has been filtered by
+     * @param definitions to resolve schema's `$ref`s against, if any
+     * @return concrete paths equivalent to jsonPath, if could be specialized; empty otherwise
+     */
+    public Optional<List<String>> specialize(@NonNull String jsonPath,
+                                             @NonNull JsonSchemaFilter schema,
+                                             Map<String, JsonSchemaFilter> definitions) {
+        if (!jsonPath.startsWith("$") || !jsonPath.contains("..")) {
+            return Optional.empty();
+        }
+
+        try {
+            Resolver resolver = new Resolver(definitions == null ? Map.of() : definitions);
+
+            // walk schema along path preceding deep scan
+            List<Location> locations = List.of(new Location("$", schema));
+            String remaining = jsonPath.substring(1);
+            Matcher matcher;
+            while (!remaining.startsWith("..")) {
+                List<Location> next = new ArrayList<>();
+                if ((matcher = PROPERTY.matcher(remaining)).find()
+                    || (matcher = QUOTED_PROPERTY.matcher(remaining)).find()) {
+                    for (Location location : locations) {
+                        for (JsonSchemaFilter alternative : resolver.resolve(location.schema, new HashSet<>())) {
+                            JsonSchemaFilter property = resolver.properties(alternative).get(matcher.group(1));
+                            if (property != null) {
+                                next.add(location.property(matcher.group(1), property));
+                            }
+                        }
+                    }
+                } else if ((matcher = WILDCARD.matcher(remaining)).find()
+                    || (matcher = ARRAY_INDEX.matcher(remaining)).find()) {
+                    String segment = matcher.pattern() == WILDCARD ? "[*]" : "[" + matcher.group(1) + "]";
+                    for (Location location : locations) {
+                        for (JsonSchemaFilter alternative : resolver.resolve(location.schema, new HashSet<>())) {
+                            if (alternative.isArray() && alternative.getItems() != null) {
+                                next.add(new Location(location.path + segment, alternative.getItems()));
+                            } else if (matcher.pattern() == WILDCARD) {
+                                resolver.properties(alternative)
+                                    .forEach((name, property) -> next.add(location.property(name, property)));
+                            }
+                        }
+                    }
+                } else {
+                    // filters, slices, etc; or no '..' outside of quoted property names
+                    return Optional.empty();
+                }
+                locations = next;
+                remaining = remaining.substring(matcher.end());
+            }
+
+            if (!(matcher = DEEP_SCAN.matcher(remaining)).find()) {
+                return Optional.empty();
+            }
+            String property = Optional.ofNullable(matcher.group(1)).orElse(matcher.group(2));
+            String suffix = remaining.substring(matcher.end());
+            if (suffix.contains("..")) {
+                return Optional.empty();
+            }
+
+            Set<String> concretePaths = new LinkedHashSet<>();
+            for (Location location : locations) {
+                scan(resolver, location, property, suffix, concretePaths, new HashSet<>());
+            }
+            return Optional.of(new ArrayList<>(concretePaths));
+        } catch (Unspecializable e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * add to concretePaths the paths to property anywhere within location, pre-order, so that - as
+     * with a deep scan - a match is transformed before any nested within it
+     *
+     * @param refsInScan `$ref`s resolved along current branch of scan, to detect recursion
+     */
+    private void scan(Resolver resolver, Location location, String property, String suffix,
+                      Set<String> concretePaths, Set<String> refsInScan) {
+        Set<String> resolvedRefs = new HashSet<>();
+        List<JsonSchemaFilter> alternatives = resolver.resolve(location.schema, resolvedRefs);
+        if (alternatives.stream().anyMatch(JsonSchemaFilter::isArray)
+            && alternatives.stream().anyMatch(alternative -> !resolver.properties(alternative).isEmpty())) {
+            // '[*]' also matches an object's properties, so same value could match both an
+            // alternative's concrete path and the array's
+            throw new Unspecializable();
+        }
+        for (JsonSchemaFilter alternative : alternatives) {
+            Set<String> branchRefs = new HashSet<>(refsInScan);
+            for (String ref : resolvedRefs) {
+                if (!branchRefs.add(ref)) {
+                    throw new Unspecializable(); // recursive schema
+                }
+            }
+
+            if (alternative.isArray() && alternative.getItems() != null) {
+                scan(resolver, new Location(location.path + "[*]", alternative.getItems()), property, suffix, concretePaths, branchRefs);
+            } else {
+                Map<String, JsonSchemaFilter> properties = resolver.properties(alternative);
+                JsonSchemaFilter match = properties.get(property);
+                if (match != null) {
+                    concretePaths.add(location.property(property, match).path + suffix);
+                    if (concretePaths.size() > MAX_CONCRETE_PATHS) {
+                        throw new Unspecializable();
+                    }
+                }
+                for (Map.Entry<String, JsonSchemaFilter> child : properties.entrySet()) {
+                    scan(resolver, location.property(child.getKey(), child.getValue()), property, suffix, concretePaths, branchRefs);
+                }
+            }
+        }
+    }
+
+    /**
+     * location within schema, and concrete path to it
+     */
+    static class Location {
+
+        final String path;
+
+        final JsonSchemaFilter schema;
+
+        Location(String path, JsonSchemaFilter schema) {
+            this.path = path;
+            this.schema = schema;
+        }
+
+        Location property(String name, JsonSchemaFilter schema) {
+            if (name.contains("'") || name.contains("\\")) {
+                throw new Unspecializable();
+            }
+            return new Location(path + "['" + name + "']", schema);
+        }
+    }
+
+    static class Unspecializable extends RuntimeException {
+
+        Unspecializable() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * resolves what a schema node permits in filtered content, following `$ref`s, `oneOf`s and
+     * `if`/`then`s as {@link JsonSchemaFilterUtils} does
+     */
+    static class Resolver {
+
+        final Map<String, JsonSchemaFilter> definitions;
+
+        Resolver(Map<String, JsonSchemaFilter> definitions) {
+            this.definitions = definitions;
+        }
+
+        /**
+         * @param resolvedRefs to which to add any `$ref`s followed
+         * @return schemas, none of which are refs/compound, that may apply to node's content
+         */
+        List<JsonSchemaFilter> resolve(JsonSchemaFilter schema, Set<String> resolvedRefs) {
+            List<JsonSchemaFilter> alternatives = new ArrayList<>();
+            resolve(schema, resolvedRefs, alternatives);
+            return alternatives;
+        }
+
+        private void resolve(JsonSchemaFilter schema, Set<String> resolvedRefs, List<JsonSchemaFilter> alternatives) {
+            if (schema.isRef()) {
+                String ref = schema.getRef();
+                if (!ref.startsWith(DEFINITIONS_PREFIX)
+                    || !definitions.containsKey(ref.substring(DEFINITIONS_PREFIX.length()))
+                    || !resolvedRefs.add(ref)) {
+                    // '#' self-reference, relative URI, missing definition, or ref to itself
+                    throw new Unspecializable();
+                }
+                resolve(definitions.get(ref.substring(DEFINITIONS_PREFIX.length())), resolvedRefs, alternatives);
+            } else if (schema.hashOneOf()) {
+                for (JsonSchemaFilter candidate : schema.getOneOf()) {
+                    resolve(candidate, resolvedRefs, alternatives);
+                }
+            } else if (schema instanceof JsonSchemaFilterUtils.ConditionJsonSchema) {
+                // only evaluated as condition; content filtered by 'then'
+            } else if (schema.hasType() && schema.hasIf()) {
+                if (schema.hasThen()) {
+                    resolve(schema.get_then(), resolvedRefs, alternatives);
+                }
+            } else {
+                alternatives.add(schema);
+            }
+        }
+
+        /**
+         * @param schema resolved
+         * @return properties content at node may have, if it's an object; otherwise, none
+         */
+        Map<String, JsonSchemaFilter> properties(JsonSchemaFilter schema) {
+            // 'then' of a conditional lists properties without a type
+            boolean isObject = schema.isObject() || schema instanceof JsonSchemaFilterUtils.ThenJsonSchema;
+            if (!isObject || schema.getProperties() == null) {
+                return Map.of();
+            }
+            return schema.getProperties();
+        }
+    }
+}
@@ -6,7 +6,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * utils for validating values conform to parameter schemas
@@ -17,6 +17,10 @@ import java.util.regex.Pattern;
  */
 public class ParameterSchemaUtils {
 
+    /**
+     * schema patterns, as compiled by each engine; bounded by patterns in rules
+     */
+    Map<Pair<RegexEngine, String>, RegexEngine.Regex> compiledPatterns = new ConcurrentHashMap<>();
 
     /**
      * validate that a value conforms to a schema
@@ -25,6 +29,17 @@ public class ParameterSchemaUtils {
      * @return whether value conforms to schema
      */
     public boolean validate(ParameterSchema schema, String value) {
+        return validate(schema, value, RegexEngine.JAVA);
+    }
+
+    /**
+     * validate that a value conforms to a schema
+     * @param schema to validate against
+     * @param value to validate
+     * @param regexEngine with which to evaluate schema's pattern, if any
+     * @return whether value conforms to schema
+     */
+    public boolean validate(ParameterSchema schema, String value, RegexEngine regexEngine) {
         if (value != null) {
             if (schema.getType() != null) {
                 if (schema.getType().equals(ParameterSchema.ValueType.INTEGER.getEncoding())) {
@@ -55,7 +70,9 @@ public class ParameterSchemaUtils {
             }
 
             if (schema.getPattern() != null) {
-                if (!Pattern.compile(schema.getPattern()).matcher(value).matches()) {
+                RegexEngine.Regex pattern = compiledPatterns.computeIfAbsent(Pair.of(regexEngine, schema.getPattern()),
+                    key -> key.getLeft().compile(key.getRight()));
+                if (!pattern.matches(value)) {
                     return false;
                 }
             }
@@ -75,6 +92,13 @@ public class ParameterSchemaUtils {
      * @return whether all bindings are valid for parameters with schema defined in schemas
      */
     public boolean validateAll(Map<String, ParameterSchema> schemas, List<Pair<String, String>> bindings) {
+        return validateAll(schemas, bindings, RegexEngine.JAVA);
+    }
+
+    /**
+     * as {@link #validateAll(Map, List)}, evaluating schemas' patterns with regexEngine
+     */
+    public boolean validateAll(Map<String, ParameterSchema> schemas, List<Pair<String, String>> bindings, RegexEngine regexEngine) {
         return schemas.entrySet().stream()
                 // all values, for all parameters that have defined schema, are valid
                 .allMatch(paramSchema ->
@@ -82,6 +106,6 @@ public class ParameterSchemaUtils {
                         bindings.stream()
                                 .filter(p -> p.getKey().equals(paramSchema.getKey()))
                                 .map(Pair::getValue)
-                                .allMatch(value -> validate(paramSchema.getValue(), value)));
+                                .allMatch(value -> validate(paramSchema.getValue(), value, regexEngine)));
     }
 }
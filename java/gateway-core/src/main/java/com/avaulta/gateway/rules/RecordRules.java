@@ -1,6 +1,7 @@
 package com.avaulta.gateway.rules;
 
 import com.avaulta.gateway.rules.transforms.RecordTransform;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 
@@ -33,6 +34,18 @@ public class RecordRules implements BulkDataRules {
     public enum Format {
         NDJSON,
         CSV,
+        /**
+         * **alpha**; flat schemas only (every field primitive and not repeated); each transform
+         * must target a top-level column. Columns that no transform targets are copied through
+         * without being decoded.
+         */
+        PARQUET,
+        /**
+         * **alpha**; single JSON document, which is either an array of records or an object in
+         * which the array of records is found at {@link #recordsPath}. Records are streamed one at
+         * a time, so document needn't fit in memory; everything outside the array is copied as-is.
+         */
+        JSON,
         ;
         //AVRO?
 
@@ -42,6 +55,15 @@ public class RecordRules implements BulkDataRules {
     @Builder.Default
     Format format = Format.NDJSON;
 
+    /**
+     * for {@link Format#JSON}, path to array of records within the document; eg, '$.records'. If
+     * omitted, the document itself must be the array of records.
+     *
+     * only paths through object properties are supported (no wildcards, filters, array indexes).
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String recordsPath;
+
     /**
      * transforms to apply, in order.
      *
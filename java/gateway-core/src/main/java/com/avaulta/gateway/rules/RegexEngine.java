@@ -0,0 +1,182 @@
+package com.avaulta.gateway.rules;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Optional;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * engine with which to compile and evaluate regexes supplied by rules (redactions, filters,
+ * tokenization, parameter schema patterns, etc)
+ * <p>
+ * JAVA (default) is `java.util.regex`, which backtracks; so some patterns, against some input, take
+ * time exponential in its length ('catastrophic backtracking', or ReDoS). RE2J evaluates regexes as
+ * automata, so in time linear in length of input for any pattern; at cost of not supporting
+ * backreferences, lookaround, possessive quantifiers or atomic groups.
+ * <p>
+ * both use same syntax for the constructs they support, including `$1` style group references in
+ * replacements.
+ *
+ * @see "https://github.com/google/re2j"
+ */
+public enum RegexEngine {
+
+    JAVA {
+        @Override
+        public Regex compile(@NonNull String regex) {
+            return new JavaRegex(java.util.regex.Pattern.compile(regex));
+        }
+    },
+    RE2J {
+        @Override
+        public Regex compile(@NonNull String regex) {
+            try {
+                return new Re2jRegex(com.google.re2j.Pattern.compile(regex));
+            } catch (com.google.re2j.PatternSyntaxException e) {
+                throw new PatternSyntaxException(e.getDescription(), regex, -1);
+            }
+        }
+    },
+    ;
+
+    /**
+     * @param regex to compile
+     * @return compiled regex
+     * @throws PatternSyntaxException if regex isn't valid, or uses constructs engine doesn't support
+     */
+    public abstract Regex compile(@NonNull String regex);
+
+    /**
+     * @param regex to check
+     * @return why regex can't be compiled by this engine, if it can't; empty otherwise
+     */
+    public Optional<String> incompatibility(@NonNull String regex) {
+        try {
+            compile(regex);
+            return Optional.empty();
+        } catch (PatternSyntaxException e) {
+            return Optional.of(e.getDescription());
+        }
+    }
+
+    /**
+     * @param engine as configured by rules, if any
+     * @return engine, or JAVA if none configured
+     */
+    public static RegexEngine orDefault(RegexEngine engine) {
+        return engine == null ? JAVA : engine;
+    }
+
+    /**
+     * regex compiled by a RegexEngine
+     */
+    public interface Regex {
+
+        String pattern();
+
+        Matcher matcher(@NonNull CharSequence input);
+
+        /**
+         * @return whether entire input matches regex
+         */
+        default boolean matches(@NonNull CharSequence input) {
+            return matcher(input).matches();
+        }
+
+        /**
+         * @return input with every match of regex replaced by replacement
+         */
+        default String replaceAll(@NonNull CharSequence input, @NonNull String replacement) {
+            return matcher(input).replaceAll(replacement);
+        }
+    }
+
+    /**
+     * subset of {@link java.util.regex.Matcher} that rules use
+     */
+    public interface Matcher {
+
+        boolean matches();
+
+        int groupCount();
+
+        String group(int group);
+
+        String replaceAll(String replacement);
+    }
+
+    @RequiredArgsConstructor
+    static class JavaRegex implements Regex {
+
+        final java.util.regex.Pattern pattern;
+
+        @Override
+        public String pattern() {
+            return pattern.pattern();
+        }
+
+        @Override
+        public Matcher matcher(@NonNull CharSequence input) {
+            java.util.regex.Matcher matcher = pattern.matcher(input);
+            return new Matcher() {
+                @Override
+                public boolean matches() {
+                    return matcher.matches();
+                }
+
+                @Override
+                public int groupCount() {
+                    return matcher.groupCount();
+                }
+
+                @Override
+                public String group(int group) {
+                    return matcher.group(group);
+                }
+
+                @Override
+                public String replaceAll(String replacement) {
+                    return matcher.replaceAll(replacement);
+                }
+            };
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class Re2jRegex implements Regex {
+
+        final com.google.re2j.Pattern pattern;
+
+        @Override
+        public String pattern() {
+            return pattern.pattern();
+        }
+
+        @Override
+        public Matcher matcher(@NonNull CharSequence input) {
+            com.google.re2j.Matcher matcher = pattern.matcher(input);
+            return new Matcher() {
+                @Override
+                public boolean matches() {
+                    return matcher.matches();
+                }
+
+                @Override
+                public int groupCount() {
+                    return matcher.groupCount();
+                }
+
+                @Override
+                public String group(int group) {
+                    return matcher.group(group);
+                }
+
+                @Override
+                public String replaceAll(String replacement) {
+                    return matcher.replaceAll(replacement);
+                }
+            };
+        }
+    }
+}
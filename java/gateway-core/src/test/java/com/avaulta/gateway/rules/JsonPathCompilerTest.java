@@ -0,0 +1,167 @@
+package com.avaulta.gateway.rules;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonPathCompilerTest {
+
+    JsonPathCompiler compiler = new JsonPathCompiler();
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    static final String DOCUMENT = "{\"kind\":\"list\",\"value\":[" +
+        "{\"id\":\"1\",\"organizer\":{\"email\":\"alice@acme.com\",\"name\":\"Alice\"}," +
+        "\"attendees\":[{\"email\":\"bob@acme.com\"},{\"email\":\"carol@acme.com\",\"optional\":true}]}," +
+        "{\"id\":\"2\",\"organizer\":\"not an object\",\"attendees\":[]}," +
+        "{\"id\":\"3\"}" +
+        "],\"headers\":[{\"name\":\"From\",\"value\":\"dan@acme.com\"},{\"name\":\"Subject\",\"value\":\"hi\"}]}";
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "$.kind",
+        "$['kind']",
+        "$[\"kind\"]",
+        "$.value[*].attendees[*].email",
+        "$.value.*.id",
+        "$..email",
+        "$..['email']",
+        "$.value[*]..email",
+        "$.value[0].id",
+        "$.value[-1].id",
+        "$.value[1:]",
+        "$.value[:2].id",
+        "$.value[0:2].id",
+        "$.headers[?(@.name)]",
+        "$.headers[?(@.name == 'From')].value",
+        "$.headers[?(@['name'] != \"From\")].value",
+        "$.headers[?(@.name =~ /^(From|To)$/i)].value",
+        "$.headers[?(!(@.name =~ /^(From|To)$/i))]",
+        "$.headers[?(@.name in ['From', 'To'])].value",
+        "$.headers[?(@.name =~ /^a\\/b$/)]",
+    })
+    void compile(String jsonPath) {
+        assertTrue(compiler.compile(jsonPath).isPresent(), jsonPath);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "$",
+        "kind",
+        "$.kind.length()",
+        "$['kind','value']",
+        "$.value[0,1]",
+        "$.value[-2:]",
+        "$..*",
+        "$..[?(@.email)]",
+        "$.headers[?(@.name == 'From' && @.value)]",
+        "$.headers[?(@.size > 1)]",
+        "$.headers[?(@.name =~ /From/m)]",
+        "$.headers[?(@.name =~ /unclosed)]",
+        "$.headers[?(@.name =~ /[/)]",
+        "$.headers[?(@.name nin ['From'])]",
+        "$.headers[?($.kind)]",
+        "$['it\\'s']",
+    })
+    void compile_unsupported(String jsonPath) {
+        assertEquals(Optional.empty(), compiler.compile(jsonPath));
+    }
+
+    @Test
+    void definite() {
+        assertTrue(compiler.compile("$.value[0].organizer['email']").get().isDefinite());
+        assertFalse(compiler.compile("$.value[*].id").get().isDefinite());
+        assertFalse(compiler.compile("$..email").get().isDefinite());
+        assertFalse(compiler.compile("$.headers[?(@.name)]").get().isDefinite());
+    }
+
+    @Test
+    void read() {
+        assertEquals(List.of("bob@acme.com", "carol@acme.com"),
+            read("$.value[*].attendees[*].email"));
+        assertEquals(List.of("alice@acme.com", "bob@acme.com", "carol@acme.com"),
+            read("$..email"));
+        assertEquals(List.of("3"), read("$.value[-1].id"));
+        assertEquals(List.of(), read("$.value[5].id"));
+        assertEquals(List.of("2", "3"), read("$.value[1:].id"));
+        assertEquals(List.of("1", "2"), read("$.value[:2].id"));
+        assertEquals(List.of("1", "2"), read("$.value[?(@.attendees)].id"));
+        assertEquals(List.of("dan@acme.com"), read("$.headers[?(@.name =~ /^from$/i)].value"));
+        assertEquals(List.of("hi"), read("$.headers[?(@.name != 'From')].value"));
+        assertEquals(List.of("hi"), read("$.headers[?(!(@.name in ['From', 'To']))].value"));
+        // filter applied to object itself
+        assertEquals(List.of("Alice"), read("$.value[0].organizer[?(@.email)].name"));
+    }
+
+    @Test
+    void map() {
+        Object document = parse(DOCUMENT);
+        CompiledJsonPath path = compiler.compile("$.value[*].attendees[*].email").get();
+
+        assertTrue(path.map(document, value -> "mapped:" + value));
+
+        assertEquals(List.of("mapped:bob@acme.com", "mapped:carol@acme.com"),
+            compiler.compile("$.value[*].attendees[*].email").get().read(document));
+    }
+
+    @Test
+    void map_order() {
+        // JsonPath applies updates in descending order of key, as string
+        Object document = parse("{\"a\":[\"x\",\"y\",\"z\"],\"b\":\"w\"}");
+        List<Object> seen = new ArrayList<>();
+
+        compiler.compile("$.a[*]").get().map(document, value -> {
+            seen.add(value);
+            return value;
+        });
+
+        assertEquals(List.of("z", "y", "x"), seen);
+    }
+
+    @Test
+    void delete() {
+        Object document = parse(DOCUMENT);
+
+        assertTrue(compiler.compile("$.value[*].organizer.email").get().delete(document));
+
+        assertEquals(List.of(), read(document, "$..organizer.email"));
+        assertEquals(List.of("Alice"), read(document, "$.value[*].organizer.name"));
+    }
+
+    @Test
+    void unsupportedContent() {
+        Object document = parse(DOCUMENT);
+
+        // index applied to object
+        assertNull(compiler.compile("$.value[0].organizer[0]").get().read(document));
+        // filter on value that isn't a string (missing, or boolean)
+        assertNull(compiler.compile("$.value[*].attendees[?(@.optional == 'true')]").get().read(document));
+        // filter on item that isn't an object
+        assertNull(compiler.compile("$.value[*].organizer.email[?(@.name)]").get().read(document));
+        // removing array items
+        CompiledJsonPath path = compiler.compile("$.value[*].attendees[*]").get();
+        assertFalse(path.delete(document));
+        assertEquals(2, path.read(document).size(), "document changed");
+    }
+
+    List<Object> read(String jsonPath) {
+        return read(parse(DOCUMENT), jsonPath);
+    }
+
+    List<Object> read(Object document, String jsonPath) {
+        return compiler.compile(jsonPath).get().read(document);
+    }
+
+    @SneakyThrows
+    Object parse(String json) {
+        return objectMapper.readValue(json, Object.class);
+    }
+}
@@ -0,0 +1,213 @@
+package com.avaulta.gateway.rules;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonPathSpecializerTest {
+
+    JsonPathSpecializer specializer = new JsonPathSpecializer();
+
+    ObjectMapper yamlMapper = new YAMLMapper();
+
+    static final String SCHEMA = "type: object\n" +
+        "properties:\n" +
+        "  kind:\n" +
+        "    type: string\n" +
+        "  items:\n" +
+        "    type: array\n" +
+        "    items:\n" +
+        "      type: object\n" +
+        "      properties:\n" +
+        "        email:\n" +
+        "          type: string\n" +
+        "        manager:\n" +
+        "          type: object\n" +
+        "          properties:\n" +
+        "            email:\n" +
+        "              type: string\n" +
+        "            name:\n" +
+        "              type: string\n" +
+        "        attendees:\n" +
+        "          type: array\n" +
+        "          items:\n" +
+        "            $ref: '#/definitions/Attendee'\n";
+
+    static final String DEFINITIONS = "Attendee:\n" +
+        "  type: object\n" +
+        "  properties:\n" +
+        "    email:\n" +
+        "      type: string\n" +
+        "    '@odata.type':\n" +
+        "      type: string\n";
+
+    @Test
+    void specialize() {
+        // pre-order; siblings in order of property name, as JsonSchemaFilter sorts properties
+        assertEquals(Optional.of(List.of(
+                "$['items'][*]['email']",
+                "$['items'][*]['attendees'][*]['email']",
+                "$['items'][*]['manager']['email']")),
+            specialize("$..email"));
+    }
+
+    @Test
+    void specialize_prefix() {
+        assertEquals(Optional.of(List.of("$['items'][*]['manager']['email']")),
+            specialize("$.items[*].manager..email"));
+        assertEquals(Optional.of(List.of(
+                "$['items'][0]['email']",
+                "$['items'][0]['attendees'][*]['email']",
+                "$['items'][0]['manager']['email']")),
+            specialize("$['items'][0]..email"));
+    }
+
+    @Test
+    void specialize_quoted() {
+        assertEquals(Optional.of(List.of("$['items'][*]['attendees'][*]['@odata.type']")),
+            specialize("$..['@odata.type']"));
+    }
+
+    @Test
+    void specialize_suffixKept() {
+        assertEquals(Optional.of(List.of("$['items'][*]['attendees'][*]")),
+            specialize("$..attendees[*]"));
+    }
+
+    @Test
+    void specialize_notInSchema() {
+        assertEquals(Optional.of(List.of()), specialize("$..phone"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "$.items[*].email", // no deep scan
+        "$..items..email", // multiple deep scans
+        "$..[?(@.email)]", // filter
+        "$.items[?(@.email)]..name", // filter before deep scan
+        "$..*", // wildcard deep scan
+        "$['a..b']", // not really a deep scan
+    })
+    void specialize_unsupported(String jsonPath) {
+        assertEquals(Optional.empty(), specialize(jsonPath));
+    }
+
+    @SneakyThrows
+    @Test
+    void specialize_recursive() {
+        JsonSchemaFilter schema = yamlMapper.readValue("type: object\n" +
+            "properties:\n" +
+            "  root:\n" +
+            "    $ref: '#/definitions/Node'\n", JsonSchemaFilter.class);
+        Map<String, JsonSchemaFilter> definitions = yamlMapper.readValue("Node:\n" +
+            "  type: object\n" +
+            "  properties:\n" +
+            "    name:\n" +
+            "      type: string\n" +
+            "    children:\n" +
+            "      type: array\n" +
+            "      items:\n" +
+            "        $ref: '#/definitions/Node'\n", new TypeReference<>() {});
+
+        // would be infinitely many concrete paths
+        assertEquals(Optional.empty(), specializer.specialize("$..name", schema, definitions));
+    }
+
+    @SneakyThrows
+    @Test
+    void specialize_sameDefinitionAtSiblings() {
+        JsonSchemaFilter schema = yamlMapper.readValue("type: object\n" +
+            "properties:\n" +
+            "  organizer:\n" +
+            "    $ref: '#/definitions/Attendee'\n" +
+            "  creator:\n" +
+            "    $ref: '#/definitions/Attendee'\n", JsonSchemaFilter.class);
+
+        assertEquals(Optional.of(List.of("$['creator']['email']", "$['organizer']['email']")),
+            specializer.specialize("$..email", schema, definitions()));
+    }
+
+    @SneakyThrows
+    @Test
+    void specialize_oneOf() {
+        JsonSchemaFilter schema = yamlMapper.readValue("type: object\n" +
+            "properties:\n" +
+            "  value:\n" +
+            "    oneOf:\n" +
+            "      - type: string\n" +
+            "      - type: object\n" +
+            "        properties:\n" +
+            "          email:\n" +
+            "            type: string\n" +
+            "      - $ref: '#/definitions/Attendee'\n", JsonSchemaFilter.class);
+
+        // all alternatives followed; same path from several, only once
+        assertEquals(Optional.of(List.of("$['value']['email']")),
+            specializer.specialize("$..email", schema, definitions()));
+        assertEquals(Optional.of(List.of("$['value']['@odata.type']")),
+            specializer.specialize("$..['@odata.type']", schema, definitions()));
+    }
+
+    @SneakyThrows
+    @Test
+    void specialize_oneOfObjectOrArray() {
+        // '[*]' matches properties of object too, so object's 'email's could be matched twice
+        JsonSchemaFilter schema = yamlMapper.readValue("type: object\n" +
+            "properties:\n" +
+            "  value:\n" +
+            "    oneOf:\n" +
+            "      - type: object\n" +
+            "        properties:\n" +
+            "          owner:\n" +
+            "            type: object\n" +
+            "            properties:\n" +
+            "              email:\n" +
+            "                type: string\n" +
+            "      - type: array\n" +
+            "        items:\n" +
+            "          type: object\n" +
+            "          properties:\n" +
+            "            email:\n" +
+            "              type: string\n", JsonSchemaFilter.class);
+
+        assertEquals(Optional.empty(), specializer.specialize("$..email", schema, null));
+    }
+
+    @Test
+    void specialize_tooManyPaths() {
+        StringBuilder schema = new StringBuilder("type: object\nproperties:\n");
+        for (int i = 0; i <= JsonPathSpecializer.MAX_CONCRETE_PATHS; i++) {
+            schema.append("  p").append(i).append(":\n")
+                .append("    type: object\n")
+                .append("    properties:\n")
+                .append("      email:\n")
+                .append("        type: string\n");
+        }
+
+        assertEquals(Optional.empty(), specializer.specialize("$..email", schema(schema.toString()), null));
+    }
+
+    Optional<List<String>> specialize(String jsonPath) {
+        return specializer.specialize(jsonPath, schema(SCHEMA), definitions());
+    }
+
+    @SneakyThrows
+    JsonSchemaFilter schema(String yaml) {
+        return yamlMapper.readValue(yaml, JsonSchemaFilter.class);
+    }
+
+    @SneakyThrows
+    Map<String, JsonSchemaFilter> definitions() {
+        return yamlMapper.readValue(DEFINITIONS, new TypeReference<>() {});
+    }
+}
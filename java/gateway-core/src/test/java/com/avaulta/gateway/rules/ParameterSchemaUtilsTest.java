@@ -2,6 +2,8 @@ package com.avaulta.gateway.rules;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 
 import java.util.Arrays;
 import java.util.Map;
@@ -42,6 +44,19 @@ class ParameterSchemaUtilsTest {
         assertTrue(parameterSchemaUtils.validate(parameterSchema, null));
     }
 
+    @ParameterizedTest
+    @EnumSource(RegexEngine.class)
+    public void validation_pattern(RegexEngine regexEngine) {
+        ParameterSchema parameterSchema = ParameterSchema.builder()
+                .type(ParameterSchema.ValueType.STRING.getEncoding())
+                .pattern("^[a-z]+(-[a-z]+)*$")
+                .build();
+
+        assertTrue(parameterSchemaUtils.validate(parameterSchema, "alpha-beta", regexEngine));
+        assertFalse(parameterSchemaUtils.validate(parameterSchema, "alpha--beta", regexEngine));
+        assertTrue(parameterSchemaUtils.validate(parameterSchema, null, regexEngine));
+    }
+
     @Test
     public void validation_number() {
         ParameterSchema parameterSchema = ParameterSchema.builder()
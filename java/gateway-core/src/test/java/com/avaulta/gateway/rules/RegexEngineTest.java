@@ -0,0 +1,108 @@
+package com.avaulta.gateway.rules;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegexEngineTest {
+
+    @ParameterizedTest
+    @EnumSource(RegexEngine.class)
+    void matches(RegexEngine engine) {
+        RegexEngine.Regex regex = engine.compile("(?i)^smtp:(.*)$");
+
+        assertTrue(regex.matches("SMTP:alice@acme.com"));
+        assertFalse(regex.matches("x400:alice"));
+
+        RegexEngine.Matcher matcher = regex.matcher("smtp:alice@acme.com");
+        assertTrue(matcher.matches());
+        assertEquals(1, matcher.groupCount());
+        assertEquals("alice@acme.com", matcher.group(1));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RegexEngine.class)
+    void replaceAll(RegexEngine engine) {
+        assertEquals("https://acme.zoom.us/123?&x=1",
+            engine.compile("(?i)pwd=[^&]*").replaceAll("https://acme.zoom.us/123?PWD=secret&x=1", ""));
+
+        assertEquals("bob@acme.com",
+            engine.compile("^(.*)@(.*)$").replaceAll("acme.com@bob", "$2@$1"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RegexEngine.class)
+    void quoted(RegexEngine engine) {
+        RegexEngine.Regex regex = engine.compile("(?i).*(" + java.util.regex.Pattern.quote("focus time") + "|" + java.util.regex.Pattern.quote("[prep]") + ").*");
+
+        RegexEngine.Matcher matcher = regex.matcher("Tuesday: [Prep] for review");
+        assertTrue(matcher.matches());
+        assertEquals("[Prep]", matcher.group(1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "(a)\\1",         // backreference
+        "foo(?=bar)",     // lookahead
+        "(?<!foo)bar",    // lookbehind
+        "a*+",            // possessive quantifier
+        "(?>a|ab)c",      // atomic group
+    })
+    void incompatibility(String regex) {
+        assertEquals(Optional.empty(), RegexEngine.JAVA.incompatibility(regex));
+        assertTrue(RegexEngine.RE2J.incompatibility(regex).isPresent(), regex);
+        assertThrows(PatternSyntaxException.class, () -> RegexEngine.RE2J.compile(regex));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RegexEngine.class)
+    void invalid(RegexEngine engine) {
+        assertTrue(engine.incompatibility("(unclosed").isPresent());
+        assertThrows(PatternSyntaxException.class, () -> engine.compile("(unclosed"));
+    }
+
+    /**
+     * patterns that backtrack catastrophically with java.util.regex, against inputs that almost
+     * match; linear-time engine should evaluate them promptly
+     */
+    @ParameterizedTest
+    @CsvSource(value = {
+        "(a+)+$;100000",
+        "(a|aa)+$;100000",
+        "(a|a?)+$;100000",
+        "(\\w+\\s?)+$;100000",
+        ".*(.*a.*a.*a.*a.*a.*)+.*b;20000",
+    }, delimiter = ';')
+    void reDoS(String regex, int length) {
+        String input = StringUtils.repeat('a', length) + "!";
+
+        RegexEngine.Regex compiled = RegexEngine.RE2J.compile(regex);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertFalse(compiled.matches(input));
+            // nothing to replace, as nothing matches at end of input
+            assertEquals(input, compiled.replaceAll(input, ""));
+        });
+    }
+
+    /**
+     * as RedactExceptSubstringsMatchingRegexes wraps its patterns, against an adversarial calendar
+     * title
+     */
+    @Test
+    void reDoS_wrapped() {
+        RegexEngine.Regex compiled = RegexEngine.RE2J.compile(".*((focus\\s*)+time\\s*\\w*).*");
+        String title = StringUtils.repeat("focus ", 20_000) + "!";
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertFalse(compiled.matches(title)));
+    }
+}
@@ -44,7 +44,7 @@ public class APIGatewayV1Handler implements com.amazonaws.services.lambda.runtim
     private static void staticInit() {
         awsContainer = DaggerAwsContainer.create();
         requestHandler = awsContainer.createHandler();
-        responseCompressionHandler = new ResponseCompressionHandler();
+        responseCompressionHandler = new ResponseCompressionHandler(awsContainer.responseCompression());
     }
 
     @Override
@@ -54,11 +54,11 @@ public class APIGatewayV1Handler implements com.amazonaws.services.lambda.runtim
         boolean base64Encoded = false;
         try {
             APIGatewayV1ProxyEventRequestAdapter httpEventRequestAdapter = APIGatewayV1ProxyEventRequestAdapter.of(input);
-            response = requestHandler.handle(httpEventRequestAdapter);
+            response = responseCompressionHandler.varyByAcceptEncoding(requestHandler.handle(httpEventRequestAdapter));
 
             context.getLogger().log(httpEventRequestAdapter.getHeader(HttpHeaders.ACCEPT_ENCODING).orElse("accept-encoding not found"));
             if (isCompressionRequested(httpEventRequestAdapter)) {
-                Pair<Boolean, HttpEventResponse> compressedResponse = responseCompressionHandler.compressIfNeeded(response);
+                Pair<Boolean, HttpEventResponse> compressedResponse = responseCompressionHandler.compressIfNeeded(httpEventRequestAdapter, response);
                 base64Encoded = compressedResponse.getLeft();
                 response = compressedResponse.getRight();
             }
@@ -38,7 +38,7 @@ public class Handler implements com.amazonaws.services.lambda.runtime.RequestHan
     private static void staticInit() {
         awsContainer = DaggerAwsContainer.create();
         requestHandler = awsContainer.createHandler();
-        responseCompressionHandler = new ResponseCompressionHandler();
+        responseCompressionHandler = new ResponseCompressionHandler(awsContainer.responseCompression());
     }
 
     @SneakyThrows
@@ -58,10 +58,10 @@ public class Handler implements com.amazonaws.services.lambda.runtime.RequestHan
         boolean base64Encoded = false;
         try {
             APIGatewayV2HTTPEventRequestAdapter httpEventRequestAdapter = new APIGatewayV2HTTPEventRequestAdapter(httpEvent);
-            response = requestHandler.handle(httpEventRequestAdapter);
+            response = responseCompressionHandler.varyByAcceptEncoding(requestHandler.handle(httpEventRequestAdapter));
 
             if (ResponseCompressionHandler.isCompressionRequested(httpEventRequestAdapter)) {
-                Pair<Boolean, HttpEventResponse> compressedResponse = responseCompressionHandler.compressIfNeeded(response);
+                Pair<Boolean, HttpEventResponse> compressedResponse = responseCompressionHandler.compressIfNeeded(httpEventRequestAdapter, response);
                 base64Encoded = compressedResponse.getLeft();
                 response = compressedResponse.getRight();
             } else {
@@ -2,71 +2,167 @@ package co.worklytics.psoxy;
 
 import co.worklytics.psoxy.gateway.HttpEventRequest;
 import co.worklytics.psoxy.gateway.HttpEventResponse;
+import co.worklytics.psoxy.gateway.impl.ResponseCompression;
+import co.worklytics.psoxy.utils.StageTimings;
 import com.google.common.annotations.VisibleForTesting;
-import org.apache.commons.codec.binary.Base64;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.HttpHeaders;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
 import java.util.Optional;
-import java.util.zip.GZIPOutputStream;
 
+@RequiredArgsConstructor
 class ResponseCompressionHandler {
 
-    static final String GZIP = "gzip";
-    static final int DEFAULT_COMPRESSION_BUFFER_SIZE = 2048;
-    static final int MIN_BYTES_TO_COMPRESS = 2048;
+    static final String GZIP = ResponseCompression.Encoding.GZIP.getContentEncoding();
 
+    @NonNull
+    final ResponseCompression compression;
+
+    ResponseCompressionHandler() {
+        this(ResponseCompression.builder().build());
+    }
 
     static boolean isCompressionRequested(HttpEventRequest request) {
-        return request.getHeader(HttpHeaders.ACCEPT_ENCODING).orElse("none").contains(ResponseCompressionHandler.GZIP);
+        return negotiate(request).isPresent();
+    }
+
+    static Optional<ResponseCompression.Encoding> negotiate(HttpEventRequest request) {
+        return ResponseCompression.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING).orElse(null));
     }
 
     @VisibleForTesting
     boolean compressionOutweighOverhead(String body) {
-        return StringUtils.length(body) >= MIN_BYTES_TO_COMPRESS;
+        return compressionOutweighOverhead(null, body);
+    }
+
+    /**
+     * @param contentType of body, if known
+     * @param body        to compress
+     * @return whether body is large enough to compress; length in chars approximates bytes, to
+     * avoid encoding body just to check
+     */
+    boolean compressionOutweighOverhead(String contentType, String body) {
+        return body != null && compression.shouldCompress(contentType, body.length());
     }
 
     /**
      * Compresses content as binary base64
      *
-     * @param body
+     * compressed bytes are written directly to a base64 encoder, rather than buffered and then
+     * encoded as a second full copy
+     *
+     * @param contentType of body, if known
+     * @param body        to compress
+     * @param encoding    to compress with
      * @return optional with content if compression has been applied
      */
-    Optional<String> compressBodyAndConvertToBase64(String body) {
-        if (compressionOutweighOverhead(body)) {
-            try (ByteArrayOutputStream bos = new ByteArrayOutputStream(DEFAULT_COMPRESSION_BUFFER_SIZE)) {
-                try (GZIPOutputStream output = new GZIPOutputStream(bos)) {
-                    output.write(body.getBytes(StandardCharsets.UTF_8.name()));
-                }
-                return Optional.ofNullable(Base64.encodeBase64String(bos.toByteArray()));
+    Optional<String> compressBodyAndConvertToBase64(String contentType, String body, ResponseCompression.Encoding encoding) {
+        if (compressionOutweighOverhead(contentType, body)) {
+            // compressed JSON usually < 1/4 of original; base64 adds 1/3
+            ByteArrayOutputStream base64 = new ByteArrayOutputStream(Math.max(256, body.length() / 3));
+            try (Writer writer = new OutputStreamWriter(compression.compress(encoding, Base64.getEncoder().wrap(base64)), StandardCharsets.UTF_8)) {
+                writer.write(body);
             } catch (IOException ignored) {
                 // do nothing, send uncompressed
+                return Optional.empty();
             }
+            return Optional.of(base64.toString(StandardCharsets.US_ASCII));
         }
         return Optional.empty();
     }
 
+    /**
+     * @param response that may be compressed, depending on request's 'Accept-Encoding'
+     * @return response, with 'Vary: Accept-Encoding' if it's large enough to be compressed; so
+     * caches between proxy and clients don't serve a compressed response to a client that didn't
+     * accept it (or vice versa). Whether or not this request asked for compression.
+     */
+    HttpEventResponse varyByAcceptEncoding(HttpEventResponse response) {
+        if (!compressionOutweighOverhead(getHeader(response, HttpHeaders.CONTENT_TYPE), response.getBody())) {
+            return response;
+        }
+
+        String varyHeader = response.getHeaders() == null ? null : response.getHeaders().keySet().stream()
+            .filter(header -> StringUtils.equalsIgnoreCase(header, HttpHeaders.VARY))
+            .findFirst()
+            .orElse(null);
+        String vary = varyHeader == null ? null : response.getHeaders().get(varyHeader);
+        if (StringUtils.containsIgnoreCase(vary, HttpHeaders.ACCEPT_ENCODING) || StringUtils.trimToEmpty(vary).equals("*")) {
+            return response;
+        }
+        return response.toBuilder()
+            .header(varyHeader == null ? HttpHeaders.VARY : varyHeader,
+                StringUtils.isBlank(vary) ? HttpHeaders.ACCEPT_ENCODING : vary + ", " + HttpHeaders.ACCEPT_ENCODING)
+            .build();
+    }
+
     /**
      * @param response
      * @return (bool, response) - bool indicates if the response has been compressed or not
      */
     Pair<Boolean, HttpEventResponse> compressIfNeeded(HttpEventResponse response) {
-        String uncompressed = response.getBody();
-        Optional<String> compressedBody = compressBodyAndConvertToBase64(uncompressed);
+        return compressIfNeeded(response, ResponseCompression.Encoding.GZIP);
+    }
+
+    /**
+     * @param request  whose 'Accept-Encoding' determines encoding of response
+     * @param response to compress, if client accepts a supported encoding and it's large enough
+     * @return (bool, response) - bool indicates if the response has been compressed or not
+     */
+    Pair<Boolean, HttpEventResponse> compressIfNeeded(HttpEventRequest request, HttpEventResponse response) {
+        return negotiate(request)
+            .map(encoding -> compressIfNeeded(response, encoding))
+            .orElse(Pair.of(false, response));
+    }
+
+    Pair<Boolean, HttpEventResponse> compressIfNeeded(HttpEventResponse response, ResponseCompression.Encoding encoding) {
+        // if response carries timings of earlier stages (development mode), add compression's
+        String serverTiming = getHeader(response, StageTimings.SERVER_TIMING_HEADER);
+
+        Optional<String> compressedBody;
+        try (StageTimings timings = serverTiming == null ? null : StageTimings.collect()) {
+            try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.COMPRESSION, encoding.getContentEncoding())) {
+                compressedBody = compressBodyAndConvertToBase64(getHeader(response, HttpHeaders.CONTENT_TYPE), response.getBody(), encoding);
+            }
+            if (timings != null && compressedBody.isPresent()) {
+                serverTiming = StringUtils.joinWith(", ", serverTiming, timings.toServerTimingHeader());
+            }
+        }
+
         HttpEventResponse returnResponse = response;
         boolean compressed = compressedBody.isPresent();
         if (compressed) {
-            returnResponse = HttpEventResponse.builder()
+            HttpEventResponse.HttpEventResponseBuilder builder = HttpEventResponse.builder()
                 .body(compressedBody.get())
                 .statusCode(response.getStatusCode())
                 .headers(response.getHeaders())
-                .header(HttpHeaders.CONTENT_ENCODING, GZIP)
-                .build();
+                .header(HttpHeaders.CONTENT_ENCODING, encoding.getContentEncoding());
+            if (serverTiming != null) {
+                builder.header(StageTimings.SERVER_TIMING_HEADER, serverTiming);
+            }
+            returnResponse = builder.build();
         }
         return Pair.of(compressed, returnResponse);
     }
+
+    private String getHeader(HttpEventResponse response, String header) {
+        if (response.getHeaders() == null) {
+            return null;
+        }
+        return response.getHeaders().entrySet().stream()
+            .filter(entry -> StringUtils.equalsIgnoreCase(entry.getKey(), header))
+            .map(Map.Entry::getValue)
+            .findFirst()
+            .orElse(null);
+    }
 }
@@ -69,11 +69,10 @@ public class S3Handler implements com.amazonaws.services.lambda.runtime.RequestH
         }
 
         byte[] processedData = null;
+        StorageEventRequest request =
+            storageHandler.buildRequest(importBucket, sourceKey, transform, sourceMetadata.getContentEncoding());
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
 
-            StorageEventRequest request =
-                storageHandler.buildRequest(importBucket, sourceKey, transform, sourceMetadata.getContentEncoding());
-
             storageEventResponse = storageHandler.handle(request, transform, () -> {
                 S3Object sourceObject = s3Client.getObject(new GetObjectRequest(importBucket, sourceKey));
                 return sourceObject.getObjectContent();
@@ -92,7 +91,7 @@ public class S3Handler implements com.amazonaws.services.lambda.runtime.RequestH
             // set headers iff they're non-null on source object
             Optional.ofNullable(sourceMetadata.getContentType())
                 .ifPresent(destinationMetadata::setContentType);
-            Optional.ofNullable(sourceMetadata.getContentEncoding())
+            storageHandler.getOutputContentEncoding(request, sourceMetadata.getContentEncoding())
                 .ifPresent(destinationMetadata::setContentEncoding);
 
             destinationMetadata.setUserMetadata(storageHandler.buildObjectMetadata(importBucket, sourceKey, transform));
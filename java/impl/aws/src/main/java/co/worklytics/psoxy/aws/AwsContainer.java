@@ -2,6 +2,7 @@ package co.worklytics.psoxy.aws;
 
 import co.worklytics.psoxy.*;
 import co.worklytics.psoxy.gateway.impl.CommonRequestHandler;
+import co.worklytics.psoxy.gateway.impl.ResponseCompression;
 import dagger.Component;
 
 import javax.inject.Singleton;
@@ -18,5 +19,7 @@ public interface AwsContainer {
 
     CommonRequestHandler createHandler();
 
+    ResponseCompression responseCompression();
+
     S3Handler injectS3Handler(S3Handler s3Handler);
 }
\ No newline at end of file
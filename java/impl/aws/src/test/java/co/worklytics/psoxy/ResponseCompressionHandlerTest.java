@@ -1,21 +1,38 @@
 package co.worklytics.psoxy;
 
+import co.worklytics.psoxy.gateway.HttpEventRequest;
 import co.worklytics.psoxy.gateway.HttpEventResponse;
+import co.worklytics.psoxy.gateway.impl.ResponseCompression;
+import co.worklytics.psoxy.storage.ZstdStreams;
+import co.worklytics.psoxy.storage.ZstdSupport;
 import lombok.SneakyThrows;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.HttpHeaders;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.Optional;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import static co.worklytics.psoxy.ResponseCompressionHandler.GZIP;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 class ResponseCompressionHandlerTest {
 
@@ -50,6 +67,203 @@ class ResponseCompressionHandlerTest {
         }
     }
 
+    @SneakyThrows
+    @ParameterizedTest
+    @CsvSource(value = {
+        "gzip|gzip",
+        "gzip, deflate, br|gzip",
+        "deflate|deflate",
+        "gzip, deflate, br, zstd|gzip",
+        "gzip;q=0.5, zstd|zstd",
+        "zstd;q=0.5, gzip|gzip",
+        "br|",
+        "|",
+    }, delimiter = '|')
+    void compressIfNeeded_negotiated(String acceptEncoding, String expectedContentEncoding) {
+        // zstd offered only if bundled (see `zstd` profile)
+        assumeTrue(!"zstd".equals(expectedContentEncoding) || ZstdSupport.isAvailable());
+
+        ResponseCompressionHandler responseCompressionHandler = new ResponseCompressionHandler();
+        String uncompressed = json(10_000);
+
+        HttpEventRequest request = mock(HttpEventRequest.class);
+        when(request.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn(Optional.ofNullable(acceptEncoding));
+
+        HttpEventResponse originalResponse =
+            HttpEventResponse.builder().statusCode(200).headers(new HashMap<>()).body(uncompressed).build();
+        Pair<Boolean, HttpEventResponse> compressedResponse = responseCompressionHandler.compressIfNeeded(request, originalResponse);
+
+        HttpEventResponse response = compressedResponse.getRight();
+        assertEquals(expectedContentEncoding != null, compressedResponse.getLeft());
+        assertEquals(expectedContentEncoding, response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+        if (expectedContentEncoding != null) {
+            try (InputStream in = decompress(expectedContentEncoding, Base64.getDecoder().decode(response.getBody()))) {
+                assertEquals(uncompressed, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } else {
+            assertSame(originalResponse, response);
+        }
+    }
+
+    @Test
+    void compressIfNeeded_perContentType() {
+        ResponseCompressionHandler responseCompressionHandler = new ResponseCompressionHandler(ResponseCompression.builder()
+            .minBytesForContentType(Pair.of("image/*", -1))
+            .minBytesForContentType(Pair.of("application/json", 100))
+            .build());
+        String body = json(500);
+
+        HttpEventResponse json = HttpEventResponse.builder().statusCode(200)
+            .header("content-type", "application/json; charset=utf-8").body(body).build();
+        assertTrue(responseCompressionHandler.compressIfNeeded(json).getLeft());
+
+        HttpEventResponse image = HttpEventResponse.builder().statusCode(200)
+            .header(HttpHeaders.CONTENT_TYPE, "image/png").body(body).build();
+        assertFalse(responseCompressionHandler.compressIfNeeded(image).getLeft());
+
+        // default threshold
+        HttpEventResponse text = HttpEventResponse.builder().statusCode(200)
+            .header(HttpHeaders.CONTENT_TYPE, "text/plain").body(body).build();
+        assertFalse(responseCompressionHandler.compressIfNeeded(text).getLeft());
+    }
+
+    @Test
+    void varyByAcceptEncoding() {
+        ResponseCompressionHandler responseCompressionHandler = new ResponseCompressionHandler();
+
+        // too small to compress, so doesn't vary
+        HttpEventResponse small = HttpEventResponse.builder().statusCode(200).body(json(10)).build();
+        assertSame(small, responseCompressionHandler.varyByAcceptEncoding(small));
+
+        HttpEventResponse large = HttpEventResponse.builder().statusCode(200).body(json(10_000)).build();
+        assertEquals(HttpHeaders.ACCEPT_ENCODING,
+            responseCompressionHandler.varyByAcceptEncoding(large).getHeaders().get(HttpHeaders.VARY));
+
+        // appended to existing value, under its existing name
+        HttpEventResponse varies = large.toBuilder().header("vary", "Origin").build();
+        assertEquals("Origin, " + HttpHeaders.ACCEPT_ENCODING,
+            responseCompressionHandler.varyByAcceptEncoding(varies).getHeaders().get("vary"));
+
+        HttpEventResponse alreadyVaries = large.toBuilder().header(HttpHeaders.VARY, "accept-encoding").build();
+        assertSame(alreadyVaries, responseCompressionHandler.varyByAcceptEncoding(alreadyVaries));
+
+        // kept when compressed
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, responseCompressionHandler
+            .compressIfNeeded(responseCompressionHandler.varyByAcceptEncoding(large)).getRight().getHeaders().get(HttpHeaders.VARY));
+    }
+
+    /**
+     * typical API response payloads, with multi-byte chars, streamed through each encoding into
+     * base64 encoder; must decode and decompress back to body, whatever length of compressed bytes
+     */
+    @SneakyThrows
+    @ParameterizedTest
+    @ValueSource(ints = {10_000, 100_001, 1_000_002})
+    void compressBodyAndConvertToBase64_roundTrip(int bodySize) {
+        ResponseCompressionHandler responseCompressionHandler = new ResponseCompressionHandler();
+        String body = json(bodySize).replace("\"summary\":null", "\"summary\":\"r\u00e9union \u20ac \ud83d\ude00\"");
+
+        for (ResponseCompression.Encoding encoding : ResponseCompression.Encoding.values()) {
+            if (encoding == ResponseCompression.Encoding.ZSTD && !ZstdSupport.isAvailable()) {
+                continue;
+            }
+            String base64 = responseCompressionHandler.compressBodyAndConvertToBase64("application/json", body, encoding)
+                .orElseThrow();
+            try (InputStream in = decompress(encoding.getContentEncoding(), Base64.getDecoder().decode(base64))) {
+                assertEquals(body, new String(in.readAllBytes(), StandardCharsets.UTF_8), encoding.name());
+            }
+        }
+    }
+
+    /**
+     * compares allocation and latency of compressing typical API response payloads, by prior
+     * approach (compress to buffer, then base64-encode copy of it) vs streaming into base64 encoder
+     */
+    @Disabled // benchmark; not for usual CI
+    @ParameterizedTest
+    @ValueSource(ints = {10_000, 100_000, 1_000_000, 5_000_000})
+    void benchmark(int bodySize) {
+        final int ITERATIONS = Integer.getInteger("responseCompression.iterations", 50);
+        ResponseCompressionHandler responseCompressionHandler = new ResponseCompressionHandler();
+        String body = json(bodySize);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        //warm-up
+        for (int i = 0; i < ITERATIONS; i++) {
+            legacyCompressBodyAndConvertToBase64(body);
+            responseCompressionHandler.compressBodyAndConvertToBase64("application/json", body, ResponseCompression.Encoding.GZIP);
+        }
+
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            legacyCompressBodyAndConvertToBase64(body);
+        }
+        long legacyNanos = (System.nanoTime() - start) / ITERATIONS;
+        long legacyAllocated = (threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / ITERATIONS;
+
+        for (ResponseCompression.Encoding encoding : ResponseCompression.Encoding.values()) {
+            if (encoding == ResponseCompression.Encoding.ZSTD && !ZstdSupport.isAvailable()) {
+                continue;
+            }
+            allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                responseCompressionHandler.compressBodyAndConvertToBase64("application/json", body, encoding);
+            }
+            long nanos = (System.nanoTime() - start) / ITERATIONS;
+            long allocated = (threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / ITERATIONS;
+
+            System.out.printf("%d bytes, %s: %.2f ms, %d KB allocated (prior gzip approach: %.2f ms, %d KB)%n",
+                bodySize, encoding, nanos / 1e6, allocated / 1024, legacyNanos / 1e6, legacyAllocated / 1024);
+        }
+    }
+
+    /**
+     * prior approach: compress whole body to buffer, then base64-encode copy of that
+     */
+    @SneakyThrows
+    String legacyCompressBodyAndConvertToBase64(String body) {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream(2048)) {
+            try (GZIPOutputStream output = new GZIPOutputStream(bos)) {
+                output.write(body.getBytes(StandardCharsets.UTF_8.name()));
+            }
+            return Base64.getEncoder().encodeToString(bos.toByteArray());
+        }
+    }
+
+    /**
+     * JSON resembling a page of a typical Google/Microsoft API list response
+     */
+    String json(int approximateLength) {
+        StringBuilder json = new StringBuilder("{\"kind\":\"calendar#events\",\"items\":[");
+        int i = 0;
+        while (json.length() < approximateLength) {
+            json.append(i > 0 ? "," : "")
+                .append("{\"id\":\"").append(RandomStringUtils.randomAlphanumeric(26))
+                .append("\",\"status\":\"confirmed\",\"summary\":null,\"organizer\":{\"email\":\"user").append(i % 50)
+                .append("@acme.com\"},\"start\":{\"dateTime\":\"2023-10-0").append(i % 9 + 1)
+                .append("T10:00:00-07:00\"},\"attendees\":[{\"email\":\"user").append((i * 7) % 50)
+                .append("@acme.com\",\"responseStatus\":\"accepted\"}]}");
+            i++;
+        }
+        return json.append("]}").toString();
+    }
+
+    @SneakyThrows
+    InputStream decompress(String contentEncoding, byte[] compressed) {
+        switch (contentEncoding) {
+            case "zstd":
+                return ZstdStreams.decompress(new ByteArrayInputStream(compressed));
+            case "gzip":
+                return new GZIPInputStream(new ByteArrayInputStream(compressed));
+            case "deflate":
+                return new InflaterInputStream(new ByteArrayInputStream(compressed));
+            default:
+                throw new IllegalArgumentException(contentEncoding);
+        }
+    }
 
     String uncompressBase64(String compressed) {
         try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(compressed.getBytes())))) {
@@ -73,7 +73,7 @@ public class GCSFileEvent implements BackgroundFunction<GCSFileEvent.GcsEvent> {
             Supplier<OutputStream> outputStreamSupplier = () -> {
                 BlobInfo destBlobInfo = BlobInfo.newBuilder(BlobId.of(request.getDestinationBucketName(), request.getDestinationObjectPath()))
                     .setContentType(sourceBlobInfo.getContentType())
-                    .setContentEncoding(sourceBlobInfo.getContentEncoding())
+                    .setContentEncoding(storageHandler.getOutputContentEncoding(request, sourceBlobInfo.getContentEncoding()).orElse(null))
                     .setMetadata(storageHandler.buildObjectMetadata(importBucket, sourceName, transform))
                     .build();
                 //NOTE: disableGzipContent() is important to avoid double compression
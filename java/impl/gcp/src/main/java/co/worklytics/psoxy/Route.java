@@ -4,17 +4,24 @@ import co.worklytics.psoxy.gateway.ConfigService;
 import co.worklytics.psoxy.gateway.HttpEventResponse;
 import co.worklytics.psoxy.gateway.impl.CommonRequestHandler;
 import co.worklytics.psoxy.gateway.impl.EnvVarsConfigService;
+import co.worklytics.psoxy.gateway.impl.ResponseCompression;
+import co.worklytics.psoxy.utils.StageTimings;
 import com.google.cloud.functions.HttpFunction;
 import com.google.cloud.functions.HttpRequest;
 import com.google.cloud.functions.HttpResponse;
 
 import lombok.extern.java.Log;
 import org.apache.commons.lang3.RandomUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
 
 import javax.inject.Inject;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
 import java.util.logging.Level;
 
 @Log
@@ -25,6 +32,9 @@ public class Route implements HttpFunction {
     @Inject
     EnvVarsConfigService envVarsConfigService;
 
+    @Inject
+    ResponseCompression responseCompression;
+
     @Override
     public void service(HttpRequest request, HttpResponse response)
             throws IOException {
@@ -56,11 +66,47 @@ public class Route implements HttpFunction {
                 Warning.COMPRESSION_NOT_REQUESTED.asHttpHeaderCode());
         }
 
+        String body = abstractResponse.getBody();
+
+        boolean compressible = body != null
+            && responseCompression.shouldCompress(getContentType(abstractResponse), body.length());
+
+        Optional<ResponseCompression.Encoding> encoding = compressible
+            ? ResponseCompression.negotiate(cloudFunctionRequest.getHeader(HttpHeaders.ACCEPT_ENCODING).orElse(null))
+            : Optional.empty();
+
+        if (compressible) {
+            // content varies by 'Accept-Encoding' whenever it's large enough to be compressed
+            response.appendHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        encoding.ifPresent(e -> response.appendHeader(HttpHeaders.CONTENT_ENCODING, e.getContentEncoding()));
+
         response.setStatusCode(abstractResponse.getStatusCode());
 
-        if (abstractResponse.getBody() != null) {
-            new ByteArrayInputStream(abstractResponse.getBody().getBytes(StandardCharsets.UTF_8))
-                    .transferTo(response.getOutputStream());
+        if (body != null) {
+            if (encoding.isPresent()) {
+                // compressed directly onto response stream, rather than buffering compressed copy;
+                // platform won't re-compress, as 'Content-Encoding' already set; as headers already
+                // sent, compression's timing is only recorded as JFR event, not in 'Server-Timing'
+                try (StageTimings.Span span = StageTimings.start(StageTimings.Stage.COMPRESSION, encoding.get().getContentEncoding());
+                     Writer writer = new OutputStreamWriter(
+                         responseCompression.compress(encoding.get(), response.getOutputStream()), StandardCharsets.UTF_8)) {
+                    writer.write(body);
+                }
+            } else {
+                response.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private String getContentType(HttpEventResponse response) {
+        if (response.getHeaders() == null) {
+            return null;
         }
+        return response.getHeaders().entrySet().stream()
+            .filter(header -> StringUtils.equalsIgnoreCase(header.getKey(), HttpHeaders.CONTENT_TYPE))
+            .map(Map.Entry::getValue)
+            .findFirst()
+            .orElse(null);
     }
 }
@@ -0,0 +1,228 @@
+package co.worklytics.psoxy;
+
+import co.worklytics.psoxy.gateway.HttpEventRequest;
+import co.worklytics.psoxy.gateway.HttpEventResponse;
+import co.worklytics.psoxy.gateway.impl.CommonRequestHandler;
+import co.worklytics.psoxy.gateway.impl.EnvVarsConfigService;
+import co.worklytics.psoxy.gateway.impl.ResponseCompression;
+import com.google.cloud.functions.HttpRequest;
+import com.google.cloud.functions.HttpResponse;
+import lombok.SneakyThrows;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.http.HttpHeaders;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RouteTest {
+
+    Route route;
+
+    @BeforeEach
+    void setup() {
+        route = new Route();
+        route.requestHandler = mock(CommonRequestHandler.class);
+        route.envVarsConfigService = mock(EnvVarsConfigService.class);
+        route.responseCompression = ResponseCompression.builder()
+            .minBytesForContentType(Pair.of("image/*", -1))
+            .build();
+    }
+
+    @SneakyThrows
+    @ParameterizedTest
+    @CsvSource(value = {
+        "gzip|application/json|5000|gzip",
+        "'gzip, deflate, br'|application/json|5000|gzip",
+        "deflate|application/json|5000|deflate",
+        "zstd;q=0.5, gzip|application/json|5000|gzip",
+        "'gzip, deflate, br, zstd'|application/json|5000|gzip",
+        "gzip|application/json|100|",   // below threshold
+        "gzip|image/png|5000|",          // disabled for content type
+        "identity|application/json|5000|",
+        "|application/json|5000|",
+    }, delimiter = '|')
+    void service(String acceptEncoding, String contentType, int size, String expectedEncoding) {
+        String body = json(size);
+        when(route.requestHandler.handle(any(HttpEventRequest.class))).thenReturn(HttpEventResponse.builder()
+            .statusCode(200)
+            .header(HttpHeaders.CONTENT_TYPE, contentType)
+            .body(body)
+            .build());
+
+        LocalHttpResponse response = new LocalHttpResponse();
+        route.service(request(acceptEncoding), response);
+
+        assertEquals(200, response.statusCode);
+        assertEquals(Optional.ofNullable(expectedEncoding), response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        if (expectedEncoding == null) {
+            assertEquals(body, response.body.toString(StandardCharsets.UTF_8));
+        } else {
+            assertTrue(response.body.size() < body.length());
+            assertEquals(Optional.of(HttpHeaders.ACCEPT_ENCODING), response.getHeader(HttpHeaders.VARY));
+            try (InputStream in = decompress(expectedEncoding, response.body.toByteArray())) {
+                assertEquals(body, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void service_streamsOntoResponse() {
+        String body = json(100_000);
+        when(route.requestHandler.handle(any(HttpEventRequest.class))).thenReturn(HttpEventResponse.builder()
+            .statusCode(200)
+            .header(HttpHeaders.CONTENT_TYPE, "application/json")
+            .body(body)
+            .build());
+
+        LocalHttpResponse response = new LocalHttpResponse();
+        route.service(request("gzip"), response);
+
+        // headers set before any of body written, and stream closed once compression finished
+        assertTrue(response.headersBeforeBody);
+        assertTrue(response.closed);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body.toByteArray()))) {
+            assertEquals(body, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    void service_noBody() {
+        when(route.requestHandler.handle(any(HttpEventRequest.class))).thenReturn(HttpEventResponse.builder()
+            .statusCode(204)
+            .build());
+
+        LocalHttpResponse response = new LocalHttpResponse();
+        route.service(request("gzip"), response);
+
+        assertEquals(204, response.statusCode);
+        assertTrue(response.getHeader(HttpHeaders.CONTENT_ENCODING).isEmpty());
+        assertEquals(0, response.body.size());
+    }
+
+    HttpRequest request(String acceptEncoding) {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getPath()).thenReturn("/calendar/v3/calendars/primary/events");
+        when(request.getHeaders()).thenReturn(acceptEncoding == null ? Map.of()
+            : Map.of(HttpHeaders.ACCEPT_ENCODING, List.of(acceptEncoding)));
+        return request;
+    }
+
+    String json(int approximateSize) {
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        for (int i = 0; json.length() < approximateSize; i++) {
+            json.append("{\"id\":\"").append(i).append("\",\"email\":\"t~abc").append(i).append("@acme.com\"},");
+        }
+        return json.append("{}]}").toString();
+    }
+
+    @SneakyThrows
+    InputStream decompress(String contentEncoding, byte[] compressed) {
+        if (contentEncoding.equals("gzip")) {
+            return new GZIPInputStream(new ByteArrayInputStream(compressed));
+        } else {
+            return new InflaterInputStream(new ByteArrayInputStream(compressed));
+        }
+    }
+
+    /**
+     * local stand-in for Cloud Function's response, capturing what's written to it
+     */
+    static class LocalHttpResponse implements HttpResponse {
+
+        int statusCode;
+
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        boolean closed = false;
+
+        boolean headersBeforeBody = true;
+
+        Optional<String> getHeader(String name) {
+            return Optional.ofNullable(headers.get(name)).map(values -> values.get(0));
+        }
+
+        @Override
+        public void setStatusCode(int code) {
+            statusCode = code;
+        }
+
+        @Override
+        public void setStatusCode(int code, String message) {
+            statusCode = code;
+        }
+
+        @Override
+        public void setContentType(String contentType) {
+            headers.put(HttpHeaders.CONTENT_TYPE, new ArrayList<>(List.of(contentType)));
+        }
+
+        @Override
+        public Optional<String> getContentType() {
+            return getHeader(HttpHeaders.CONTENT_TYPE);
+        }
+
+        @Override
+        public void appendHeader(String header, String value) {
+            if (body.size() > 0) {
+                headersBeforeBody = false;
+            }
+            headers.computeIfAbsent(header, k -> new ArrayList<>()).add(value);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    body.write(b, off, len);
+                }
+
+                @Override
+                public void close() {
+                    closed = true;
+                }
+            };
+        }
+
+        @Override
+        public BufferedWriter getWriter() {
+            return new BufferedWriter(new OutputStreamWriter(getOutputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}